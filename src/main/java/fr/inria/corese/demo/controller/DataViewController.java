@@ -2,12 +2,16 @@ package fr.inria.corese.demo.controller;
 
 import fr.inria.corese.demo.enums.icon.IconButtonType;
 import fr.inria.corese.demo.manager.ApplicationStateManager;
+import fr.inria.corese.demo.manager.DataLoadingService;
+import fr.inria.corese.demo.model.graph.GraphBackend;
 import fr.inria.corese.demo.view.FileListView;
 import fr.inria.corese.demo.view.TopBar;
 import fr.inria.corese.demo.factory.popup.*;
+import javafx.concurrent.Task;
+import javafx.concurrent.WorkerStateEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
-import javafx.scene.control.Alert;
+import javafx.scene.control.CheckBox;
 import javafx.scene.control.Label;
 import javafx.scene.control.ScrollPane;
 import javafx.scene.layout.HBox;
@@ -26,6 +30,7 @@ import java.util.List;
 public class DataViewController {
     private final ApplicationStateManager stateManager;
     private final PopupFactory popupFactory;
+    private final DataLoadingService loadingService;
     private RuleViewController ruleViewController;
     private LogDialog logDialog;
     private FileListView fileListView;
@@ -38,6 +43,7 @@ public class DataViewController {
     @FXML private Label tripletLabel;
     @FXML private Label graphLabel;
     @FXML private Label rulesLoadedLabel;
+    @FXML private CheckBox offHeapCheckBox;
     @FXML private TopBar topBar;
 
     /**
@@ -46,6 +52,7 @@ public class DataViewController {
     public DataViewController() {
         this.stateManager = ApplicationStateManager.getInstance();
         this.popupFactory = PopupFactory.getInstance();
+        this.loadingService = DataLoadingService.getInstance();
     }
 
     /**
@@ -69,6 +76,9 @@ public class DataViewController {
         topBar.setOnAction(IconButtonType.SAVE, this::handleSaveAs);
         topBar.setOnAction(IconButtonType.LOGS, this::handleShowLogs);
 
+        // Keep the statistics up to date when the graph changes in the background
+        stateManager.setGraphChangeListener(this::updateView);
+
         // Initialize components
         initializeComponents();
     }
@@ -113,6 +123,7 @@ public class DataViewController {
                 fileListView.getClearButton().setOnAction(e -> handleClearGraph());
                 fileListView.getReloadButton().setOnAction(e -> handleReloadFiles());
                 fileListView.getLoadButton().setOnAction(e -> handleLoadFiles());
+                fileListView.getBulkLoadButton().setOnAction(e -> handleBulkLoadFiles());
             }
 
         } catch (Exception e) {
@@ -160,8 +171,9 @@ public class DataViewController {
         DirectoryChooser directoryChooser = new DirectoryChooser();
         File selectedDirectory = directoryChooser.showDialog(null);
         if (selectedDirectory != null) {
-            stateManager.loadProject(selectedDirectory);
-            updateView();
+            runLoadingTask(loadingService.loadProject(selectedDirectory),
+                    "Opening project " + selectedDirectory.getName(),
+                    "Project '" + selectedDirectory.getName() + "' has been successfully loaded!");
         }
     }
 
@@ -172,7 +184,17 @@ public class DataViewController {
         FileChooser fileChooser = new FileChooser();
         File file = fileChooser.showSaveDialog(null);
         if (file != null) {
-            stateManager.saveProject(file);
+            Task<Void> task = loadingService.saveProject(file);
+            runBackgroundTask(task, "Saving project...",
+                    "Project saved successfully", "Saving cancelled. The previous files were kept.", "Error saving project: ");
+            task.addEventHandler(WorkerStateEvent.WORKER_STATE_SUCCEEDED, e -> {
+                String warning = stateManager.getInferenceCacheWarning();
+                if (warning != null) {
+                    IPopup warningPopup = popupFactory.createPopup(PopupFactory.TOAST_NOTIFICATION);
+                    warningPopup.setMessage(warning);
+                    warningPopup.displayPopup();
+                }
+            });
         }
     }
 
@@ -185,7 +207,15 @@ public class DataViewController {
         confirmPopup.displayPopup();
 
         if (((ClearGraphConfirmationPopup) confirmPopup).getResult()) {
-            stateManager.clearGraph();
+            try {
+                stateManager.clearGraph();
+            } catch (IllegalStateException e) {
+                // Un chargement ou un raisonnement est en cours sur le graphe
+                IPopup warningPopup = popupFactory.createPopup(PopupFactory.WARNING_POPUP);
+                warningPopup.setMessage(e.getMessage());
+                ((WarningPopup) warningPopup).getResult();
+                return;
+            }
             stateManager.clearFiles();
             updateView();
 
@@ -198,10 +228,24 @@ public class DataViewController {
 
     /**
      * Handles reloading files.
+     * Only the files that changed on disk are parsed again.
      */
     private void handleReloadFiles() {
-        stateManager.reloadFiles();
-        updateView();
+        runLoadingTask(loadingService.reloadFiles(),
+                "Reloading changed files",
+                "Changed files have been successfully reloaded!");
+    }
+
+    /**
+     * Handles switching the data between the Corese graph and the off-heap store.
+     * The loaded files are parsed again into the new storage, in the background.
+     */
+    @FXML
+    public void handleGraphBackendToggle() {
+        GraphBackend backend = offHeapCheckBox.isSelected() ? GraphBackend.OFF_HEAP : GraphBackend.CORESE;
+        runLoadingTask(loadingService.switchGraphBackend(backend),
+                "Moving the data to the " + backend.getLabel().toLowerCase(),
+                "The data is now stored in the " + backend.getLabel().toLowerCase() + "!");
     }
 
     /**
@@ -220,8 +264,12 @@ public class DataViewController {
      */
     private void handleLoadFiles() {
         FileChooser fileChooser = new FileChooser();
-        fileChooser.getExtensionFilters().add(
-                new FileChooser.ExtensionFilter("TTL files", "*.ttl")
+        fileChooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("TTL files", "*.ttl"),
+                new FileChooser.ExtensionFilter("N-Triples / N-Quads files", "*.nt", "*.nq"),
+                new FileChooser.ExtensionFilter("TriG files", "*.trig"),
+                new FileChooser.ExtensionFilter("Compressed files", "*.gz", "*.bz2", "*.zst"),
+                new FileChooser.ExtensionFilter("All files", "*.*")
         );
 
         // Get window from available components
@@ -236,44 +284,107 @@ public class DataViewController {
 
         File file = fileChooser.showOpenDialog(window);
         if (file != null) {
-            try {
-                stateManager.loadFile(file);
-                updateView();
-
-                // Show success notification
-                if (popupFactory != null) {
-                    IPopup successPopup = popupFactory.createPopup(PopupFactory.TOAST_NOTIFICATION);
-                    successPopup.setMessage("File '" + file.getName() + "' has been successfully loaded!");
-                    successPopup.displayPopup();
-                } else {
-                    // Fallback to standard alerts
-                    Alert alert = new Alert(Alert.AlertType.INFORMATION);
-                    alert.setTitle("Success");
-                    alert.setHeaderText(null);
-                    alert.setContentText("File '" + file.getName() + "' has been successfully loaded!");
-                    alert.showAndWait();
-                }
+            runLoadingTask(loadingService.loadFiles(List.of(file)),
+                    "Loading " + file.getName(),
+                    "File '" + file.getName() + "' has been successfully loaded!");
+        }
+    }
 
-            } catch (Exception e) {
-                String errorMessage = "Error loading file: " + e.getMessage();
-
-                // Error handling
-                if (popupFactory != null) {
-                    IPopup errorPopup = popupFactory.createPopup(PopupFactory.WARNING_POPUP);
-                    errorPopup.setMessage(errorMessage);
-                    ((WarningPopup) errorPopup).getResult();
-                } else {
-                    // Fallback to standard alerts
-                    Alert alert = new Alert(Alert.AlertType.ERROR);
-                    alert.setTitle("Error");
-                    alert.setHeaderText("Error Loading File");
-                    alert.setContentText(errorMessage);
-                    alert.showAndWait();
-                }
-            }
+    /**
+     * Handles loading several files at once.
+     * Reasoning is deferred until every selected file has been loaded.
+     */
+    private void handleBulkLoadFiles() {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Bulk load files");
+        fileChooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("TTL files", "*.ttl"),
+                new FileChooser.ExtensionFilter("N-Triples / N-Quads files", "*.nt", "*.nq"),
+                new FileChooser.ExtensionFilter("TriG files", "*.trig"),
+                new FileChooser.ExtensionFilter("Compressed files", "*.gz", "*.bz2", "*.zst"),
+                new FileChooser.ExtensionFilter("All files", "*.*")
+        );
+
+        javafx.stage.Window window = fileListView != null && fileListView.getScene() != null
+                ? fileListView.getScene().getWindow()
+                : null;
+
+        List<File> files = fileChooser.showOpenMultipleDialog(window);
+        if (files != null && !files.isEmpty()) {
+            runLoadingTask(loadingService.loadFiles(files),
+                    "Bulk loading " + files.size() + " files",
+                    files.size() + " files have been successfully loaded!");
         }
     }
 
+    /**
+     * Follows a background loading task with the loading popup.
+     * The popup shows the task progress and details and lets the user cancel it;
+     * the view is refreshed once the task ends, whatever its outcome.
+     *
+     * @param task The running loading task
+     * @param title The initial popup message
+     * @param successMessage The notification shown when the task succeeds
+     */
+    private void runLoadingTask(Task<Void> task, String title, String successMessage) {
+        runBackgroundTask(task, title, successMessage,
+                "Loading cancelled. Partially parsed data has been discarded.", "Error loading file: ");
+    }
+
+    /**
+     * Runs a background task behind a cancellable progress popup.
+     *
+     * @param task The running task
+     * @param title The initial popup message
+     * @param successMessage The notification shown when the task succeeds
+     * @param cancelMessage The notification shown when the task is cancelled
+     * @param errorPrefix The prefix of the warning shown when the task fails
+     */
+    private void runBackgroundTask(Task<Void> task, String title, String successMessage,
+                                   String cancelMessage, String errorPrefix) {
+        LoadingPopup loadingPopup = (LoadingPopup) popupFactory.createPopup(PopupFactory.LOADING_POPUP);
+        loadingPopup.setMessage(title);
+        loadingPopup.setIndeterminate(false);
+        loadingPopup.updateProgress(0);
+        loadingPopup.setOnCancel(task::cancel);
+        loadingPopup.displayPopup();
+        loadingPopup.setDetailMessage("");
+
+        task.titleProperty().addListener((obs, oldTitle, newTitle) -> loadingPopup.setMessage(newTitle));
+        task.messageProperty().addListener((obs, oldMessage, newMessage) -> loadingPopup.setDetailMessage(newMessage));
+        task.progressProperty().addListener((obs, oldProgress, newProgress) ->
+                loadingPopup.updateProgress(newProgress.doubleValue()));
+
+        task.setOnSucceeded(e -> {
+            loadingPopup.close();
+            updateView();
+
+            IPopup successPopup = popupFactory.createPopup(PopupFactory.TOAST_NOTIFICATION);
+            successPopup.setMessage(successMessage);
+            successPopup.displayPopup();
+        });
+
+        task.setOnCancelled(e -> {
+            loadingPopup.close();
+            updateView();
+
+            IPopup cancelPopup = popupFactory.createPopup(PopupFactory.TOAST_NOTIFICATION);
+            cancelPopup.setMessage(cancelMessage);
+            cancelPopup.displayPopup();
+        });
+
+        task.setOnFailed(e -> {
+            loadingPopup.close();
+            updateView();
+
+            Throwable error = task.getException();
+            String errorMessage = errorPrefix + (error != null ? error.getMessage() : "unknown error");
+            IPopup errorPopup = popupFactory.createPopup(PopupFactory.WARNING_POPUP);
+            errorPopup.setMessage(errorMessage);
+            ((WarningPopup) errorPopup).getResult();
+        });
+    }
+
     /**
      * Updates the view.
      * Updates statistics and rules.
@@ -290,5 +401,8 @@ public class DataViewController {
             graphLabel.setText("Number of graph: " + stateManager.getGraphCount());
             rulesLoadedLabel.setText("Number of rules loaded: " + stateManager.getLoadedRulesCount());
         }
+        if (offHeapCheckBox != null) {
+            offHeapCheckBox.setSelected(stateManager.getGraphBackend() == GraphBackend.OFF_HEAP);
+        }
     }
 }
\ No newline at end of file
@@ -2,10 +2,15 @@ package fr.inria.corese.demo.controller;
 
 import fr.inria.corese.demo.enums.icon.IconButtonType;
 import fr.inria.corese.demo.manager.ApplicationStateManager;
+import fr.inria.corese.demo.manager.DataLoadingService;
+import fr.inria.corese.demo.model.rule.RuleBudget;
+import fr.inria.corese.demo.model.rule.RuleGuard;
+import fr.inria.corese.demo.model.rule.RuleProfile;
 import fr.inria.corese.demo.view.icon.IconButtonView;
 import fr.inria.corese.demo.view.rule.RuleItem;
 import fr.inria.corese.demo.view.rule.RuleView;
 import fr.inria.corese.demo.factory.popup.*;
+import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.scene.layout.HBox;
@@ -24,6 +29,7 @@ public class RuleViewController {
     private RuleView view;
     private final Map<String, RuleItem> ruleItems;
     private final PopupFactory popupFactory;
+    private final DataLoadingService loadingService;
     private Runnable owlRLAction;
     private Runnable owlRLExtendedAction;
 
@@ -31,6 +37,17 @@ public class RuleViewController {
     @FXML private VBox owlRulesContainer;
     @FXML private VBox customRulesContainer;
     @FXML private Button loadRuleButton;
+    @FXML private Label profileSummaryLabel;
+    @FXML private TextField timeBudgetField;
+    @FXML private TextField tripleBudgetField;
+    @FXML private TextField ruleTripleCapField;
+    @FXML private TextField totalTripleCapField;
+    @FXML private TextField heapThresholdField;
+    @FXML private Label pendingChangesLabel;
+    @FXML private Button applyRulesButton;
+    @FXML private Button discardRulesButton;
+    @FXML private CheckBox goalDirectedCheckBox;
+    @FXML private CheckBox sameAsCheckBox;
 
     /**
      * Constructor for the rule view controller.
@@ -40,6 +57,7 @@ public class RuleViewController {
         this.ruleItems = new HashMap<>();
         this.stateManager = ApplicationStateManager.getInstance();
         this.popupFactory = PopupFactory.getInstance();
+        this.loadingService = DataLoadingService.getInstance();
     }
 
     /**
@@ -114,6 +132,20 @@ public class RuleViewController {
             // Display custom rules
             displayCustomRules(customRules);
         }
+
+        updatePendingChanges();
+        if (goalDirectedCheckBox != null) {
+            goalDirectedCheckBox.setSelected(stateManager.isGoalDirectedReasoning());
+        }
+        if (sameAsCheckBox != null) {
+            sameAsCheckBox.setSelected(stateManager.isSameAsCanonicalizationEnabled());
+        }
+
+        // Update the summary of the last rule run
+        if (profileSummaryLabel != null) {
+            RuleProfile profile = stateManager.getLastRuleProfile();
+            profileSummaryLabel.setText(profile != null ? profile.getSummary() : "No rule run yet");
+        }
     }
 
     /**
@@ -135,7 +167,8 @@ public class RuleViewController {
                 default -> stateManager.isCustomRuleEnabled(ruleName);
             };
 
-            item.getCheckBox().setSelected(isEnabled);
+            // A change not applied yet is shown as the user left it
+            item.getCheckBox().setSelected(stateManager.getPendingRuleChanges().getOrDefault(ruleName, isEnabled));
         }
     }
 
@@ -153,6 +186,12 @@ public class RuleViewController {
         ruleItem.getDocumentationButton().setOnAction(e -> handleShowDocumentation(ruleName));
         ruleItem.getCheckBox().setOnAction(e -> handleRuleToggle(ruleName, ruleItem.getCheckBox().isSelected()));
 
+        // The statistics of the rule set are reached from its context menu
+        MenuItem statisticsItem = new MenuItem("Statistics");
+        statisticsItem.setOnAction(e -> handleShowRuleSetProfile(ruleName));
+        ContextMenu contextMenu = new ContextMenu(statisticsItem);
+        ruleItem.setOnContextMenuRequested(e -> contextMenu.show(ruleItem, e.getScreenX(), e.getScreenY()));
+
         container.getChildren().add(ruleItem);
     }
 
@@ -223,52 +262,255 @@ public class RuleViewController {
         // TODO: Open documentation with external link
     }
 
+    /**
+     * Handles showing the statistics of a rule set in the last rule run.
+     *
+     * @param ruleName The name of the rule set
+     */
+    private void handleShowRuleSetProfile(String ruleName) {
+        // RDFS RL is run with the OWL RL rules
+        showProfile("RDFS RL".equals(ruleName) ? "OWL RL" : ruleName);
+    }
+
+    /**
+     * Handles showing the statistics of the last rule run.
+     */
+    @FXML
+    public void handleShowProfile() {
+        showProfile(null);
+    }
+
+    /**
+     * Shows the per-rule statistics of the last rule run.
+     *
+     * @param ruleSetName The rule set to show, or null for all rules
+     */
+    private void showProfile(String ruleSetName) {
+        RuleProfile profile = stateManager.getLastRuleProfile();
+        if (profile == null) {
+            IPopup popup = popupFactory.createPopup(PopupFactory.TOAST_NOTIFICATION);
+            popup.setMessage("No rule has been run yet");
+            popup.displayPopup();
+            return;
+        }
+        RuleInfoPopup popup = (RuleInfoPopup) popupFactory.createPopup(PopupFactory.RULE_INFO_POPUP);
+        popup.setRuleProfile(ruleSetName, profile);
+        popup.displayPopup();
+    }
+
+    /**
+     * Handles exporting the statistics of the last rule run as JSON.
+     */
+    @FXML
+    public void handleExportProfile() {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("JSON files (*.json)", "*.json"));
+        fileChooser.setInitialFileName("rule-profile.json");
+
+        File selectedFile = fileChooser.showSaveDialog(rdfsRulesContainer.getScene().getWindow());
+        if (selectedFile != null) {
+            try {
+                stateManager.exportRuleProfile(selectedFile);
+            } catch (Exception e) {
+                IPopup errorPopup = popupFactory.createPopup(PopupFactory.WARNING_POPUP);
+                errorPopup.setMessage("Error exporting rule profile: " + e.getMessage());
+                ((WarningPopup) errorPopup).getResult();
+            }
+        }
+    }
+
     /**
      * Handles toggling a rule.
+     * The change is only recorded, so that several toggles are applied together in one run.
      *
      * @param ruleName The name of the rule
      * @param selected Whether the rule is selected
      */
     private void handleRuleToggle(String ruleName, boolean selected) {
-        switch (ruleName) {
-            case "RDFS Subset":
-                stateManager.setRDFSSubsetEnabled(selected);
-                break;
-            case "RDFS RL":
-                stateManager.setRDFSRLEnabled(selected);
-                break;
-            case "OWL RL":
-                if (selected && owlRLAction != null) {
-                    owlRLAction.run();
-                }
-                stateManager.setOWLRLEnabled(selected);
-                // Save current state
-                stateManager.saveCurrentState();
-                break;
-            case "OWL RL Extended":
-                if (selected && owlRLExtendedAction != null) {
-                    owlRLExtendedAction.run();
-                }
-                stateManager.setOWLRLExtendedEnabled(selected);
-                // Save current state
-                stateManager.saveCurrentState();
-                break;
-            case "OWL RL Test":
-                stateManager.setOWLRLTestEnabled(selected);
-                break;
-            case "OWL Clean":
-                stateManager.setOWLCleanEnabled(selected);
-                break;
-            default:
-                // Custom rule handling
-                stateManager.setCustomRuleEnabled(ruleName, selected);
-                break;
+        if (selected && "OWL RL".equals(ruleName) && owlRLAction != null) {
+            owlRLAction.run();
+        } else if (selected && "OWL RL Extended".equals(ruleName) && owlRLExtendedAction != null) {
+            owlRLExtendedAction.run();
         }
 
-        // Update the view
+        stateManager.stageRuleChange(ruleName, selected);
+        updatePendingChanges();
+    }
+
+    /**
+     * Handles applying the pending rule changes.
+     * The rules are applied or retracted in the background, behind a cancellable progress popup.
+     */
+    @FXML
+    public void handleApplyRules() {
+        if (!stateManager.hasPendingRuleChanges()) {
+            return;
+        }
+        int count = stateManager.getPendingRuleChanges().size();
+        runRuleTask(loadingService.runRules("Applying " + count + " rule change(s)", () -> {
+            stateManager.applyPendingRuleChanges();
+            // Save current state
+            stateManager.saveCurrentState();
+        }));
+    }
+
+    /**
+     * Handles discarding the pending rule changes.
+     */
+    @FXML
+    public void handleDiscardRules() {
+        stateManager.discardPendingRuleChanges();
         updateView();
     }
 
+    /**
+     * Handles switching between materialized and goal-directed reasoning.
+     * Leaving goal-directed reasoning materializes every rule, in the background.
+     */
+    @FXML
+    public void handleGoalDirectedToggle() {
+        boolean enabled = goalDirectedCheckBox.isSelected();
+        runRuleTask(loadingService.runRules(enabled ? "Dropping materialized inferences" : "Materializing inferences",
+                () -> stateManager.setGoalDirectedReasoning(enabled)));
+    }
+
+    /**
+     * Handles switching the canonicalization of the owl:sameAs classes. The inferences are
+     * computed again, in the background.
+     */
+    @FXML
+    public void handleSameAsToggle() {
+        boolean enabled = sameAsCheckBox.isSelected();
+        runRuleTask(loadingService.runRules(enabled ? "Canonicalizing sameAs classes" : "Materializing sameAs",
+                () -> stateManager.setSameAsCanonicalizationEnabled(enabled)));
+    }
+
+    /**
+     * Shows the number of pending rule changes and the duration of the last apply.
+     */
+    private void updatePendingChanges() {
+        int count = stateManager.getPendingRuleChanges().size();
+        if (pendingChangesLabel != null) {
+            long lastApply = stateManager.getLastRuleApplyMillis();
+            String status = count == 0 ? "No pending change" : count + " pending change(s)";
+            if (lastApply >= 0) {
+                status += " - last apply took " + lastApply + " ms";
+            }
+            pendingChangesLabel.setText(status);
+        }
+        if (applyRulesButton != null) {
+            applyRulesButton.setDisable(count == 0);
+        }
+        if (discardRulesButton != null) {
+            discardRulesButton.setDisable(count == 0);
+        }
+    }
+
+    /**
+     * Runs a rule task behind a cancellable progress popup.
+     * A cancelled task or a task stopped by the budget keeps the triples inferred so far,
+     * a task aborted by the guard rolls them back.
+     *
+     * @param task The running task
+     */
+    private void runRuleTask(Task<Void> task) {
+        RuleProfile abortBefore = stateManager.getLastRuleAbort();
+        LoadingPopup loadingPopup = (LoadingPopup) popupFactory.createPopup(PopupFactory.LOADING_POPUP);
+        loadingPopup.setMessage(task.getTitle() != null && !task.getTitle().isEmpty() ? task.getTitle() : "Processing rules...");
+        loadingPopup.setIndeterminate(true);
+        loadingPopup.setOnCancel(task::cancel);
+        loadingPopup.displayPopup();
+        loadingPopup.setDetailMessage("");
+
+        task.titleProperty().addListener((obs, oldTitle, newTitle) -> loadingPopup.setMessage(newTitle));
+        task.messageProperty().addListener((obs, oldMessage, newMessage) -> loadingPopup.setDetailMessage(newMessage));
+        task.progressProperty().addListener((obs, oldProgress, newProgress) -> {
+            loadingPopup.setIndeterminate(newProgress.doubleValue() < 0);
+            loadingPopup.updateProgress(newProgress.doubleValue());
+        });
+
+        task.setOnSucceeded(e -> {
+            loadingPopup.close();
+            updateView();
+            RuleProfile abort = stateManager.getLastRuleAbort();
+            if (abort != null && abort != abortBefore) {
+                IPopup abortPopup = popupFactory.createPopup(PopupFactory.WARNING_POPUP);
+                abortPopup.setMessage("Reasoning aborted by rule " + abort.getOffendingRule() + ": "
+                        + abort.getStopReason() + ". Its " + abort.getTriplesRolledBack()
+                        + " inferred triples were rolled back.");
+                ((WarningPopup) abortPopup).getResult();
+            } else if (stateManager.isInferencesIncomplete()) {
+                IPopup budgetPopup = popupFactory.createPopup(PopupFactory.TOAST_NOTIFICATION);
+                budgetPopup.setMessage("Rule budget reached: the inferences are partial.");
+                budgetPopup.displayPopup();
+            }
+        });
+
+        task.setOnCancelled(e -> {
+            loadingPopup.close();
+            updateView();
+
+            IPopup cancelPopup = popupFactory.createPopup(PopupFactory.TOAST_NOTIFICATION);
+            cancelPopup.setMessage("Rule processing cancelled. The inferences computed so far were kept.");
+            cancelPopup.displayPopup();
+        });
+
+        task.setOnFailed(e -> {
+            loadingPopup.close();
+            updateView();
+
+            Throwable error = task.getException();
+            IPopup errorPopup = popupFactory.createPopup(PopupFactory.WARNING_POPUP);
+            errorPopup.setMessage("Error processing rules: " + (error != null ? error.getMessage() : "unknown error"));
+            ((WarningPopup) errorPopup).getResult();
+        });
+    }
+
+    /**
+     * Handles setting the budget of rule runs.
+     * Empty fields mean no limit.
+     */
+    @FXML
+    public void handleSetBudget() {
+        try {
+            long seconds = parseBudget(timeBudgetField);
+            long triples = parseBudget(tripleBudgetField);
+            stateManager.setRuleBudget(new RuleBudget(seconds * 1000, triples));
+        } catch (NumberFormatException e) {
+            IPopup errorPopup = popupFactory.createPopup(PopupFactory.WARNING_POPUP);
+            errorPopup.setMessage("The budget must be a whole number of seconds and of triples");
+            ((WarningPopup) errorPopup).getResult();
+        }
+    }
+
+    /**
+     * Handles setting the guard of rule runs: triples per rule, total triples and heap percentage.
+     * Empty fields mean no cap.
+     */
+    @FXML
+    public void handleSetGuard() {
+        try {
+            long ruleTriples = parseBudget(ruleTripleCapField);
+            long triples = parseBudget(totalTripleCapField);
+            long heapPercent = parseBudget(heapThresholdField);
+            if (heapPercent > 100) {
+                throw new NumberFormatException("Heap threshold above 100%");
+            }
+            stateManager.setRuleGuard(new RuleGuard(ruleTriples, triples, (int) heapPercent));
+        } catch (NumberFormatException e) {
+            IPopup errorPopup = popupFactory.createPopup(PopupFactory.WARNING_POPUP);
+            errorPopup.setMessage("The guard must be whole numbers of triples and a heap percentage up to 100");
+            ((WarningPopup) errorPopup).getResult();
+        }
+    }
+
+    private static long parseBudget(TextField field) {
+        if (field == null || field.getText() == null || field.getText().isBlank()) {
+            return 0;
+        }
+        return Long.parseLong(field.getText().trim());
+    }
+
     /**
      * Displays custom rules.
      *
@@ -300,7 +542,7 @@ public class RuleViewController {
 
                 // Set checkbox state from state manager
                 boolean isEnabled = stateManager.isCustomRuleEnabled(ruleName);
-                ruleItem.getCheckBox().setSelected(isEnabled);
+                ruleItem.getCheckBox().setSelected(stateManager.getPendingRuleChanges().getOrDefault(ruleName, isEnabled));
 
                 // Configure checkbox to update state when changed
                 ruleItem.getCheckBox().setOnAction(e ->
@@ -4,6 +4,7 @@ public enum IconButtonType {
     SAVE,
     OPEN_FILE,
     IMPORT,
+    BULK_IMPORT,
     EXPORT,
     CLEAR,
     UNDO,
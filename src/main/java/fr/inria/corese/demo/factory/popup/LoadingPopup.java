@@ -5,6 +5,7 @@ import javafx.animation.Timeline;
 import javafx.application.Platform;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
+import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.control.ProgressIndicator;
 import javafx.scene.effect.DropShadow;
@@ -21,6 +22,9 @@ public class LoadingPopup implements IPopup {
     private Stage stage;
     private String message = "Loading...";
     private Label messageLabel;
+    private Label detailLabel;
+    private Button cancelButton;
+    private Runnable onCancel;
     private ProgressIndicator progressIndicator;
     private Timeline pulseAnimation;
     private boolean indeterminate = true;
@@ -78,10 +82,27 @@ public class LoadingPopup implements IPopup {
         messageLabel = new Label(message);
         messageLabel.setStyle("-fx-text-fill: white; -fx-font-size: 16px; -fx-font-weight: bold;");
 
+        // Créer le label de détail (vide tant qu'aucun détail n'est fourni)
+        detailLabel = new Label();
+        detailLabel.setStyle("-fx-text-fill: #ecf0f1; -fx-font-size: 12px; -fx-font-style: italic;");
+        detailLabel.managedProperty().bind(detailLabel.textProperty().isNotEmpty());
+
+        // Créer le bouton d'annulation (visible seulement si une action est définie)
+        cancelButton = new Button("Cancel");
+        cancelButton.setVisible(onCancel != null);
+        cancelButton.setManaged(onCancel != null);
+        cancelButton.setOnAction(e -> {
+            cancelButton.setDisable(true);
+            messageLabel.setText("Cancelling...");
+            if (onCancel != null) {
+                onCancel.run();
+            }
+        });
+
         // Créer le conteneur principal
         VBox contentBox = new VBox(15);
         contentBox.setAlignment(Pos.CENTER);
-        contentBox.getChildren().addAll(progressIndicator, messageLabel);
+        contentBox.getChildren().addAll(progressIndicator, messageLabel, detailLabel, cancelButton);
 
         // Effet de pulsation pour l'indicateur
         setupPulseAnimation();
@@ -96,7 +117,7 @@ public class LoadingPopup implements IPopup {
         // Créer le panneau principal avec un fond semi-transparent
         StackPane root = new StackPane(contentBox);
         root.setStyle("-fx-background-color: rgba(44, 62, 80, 0.9); -fx-background-radius: 15px;");
-        root.setPrefWidth(300);
+        root.setPrefWidth(360);
         root.setPrefHeight(200);
         root.setPadding(new javafx.geometry.Insets(20));
 
@@ -173,21 +194,17 @@ public class LoadingPopup implements IPopup {
      * @param detailMessage message de détail
      */
     public void setDetailMessage(String detailMessage) {
-        if (stage != null && stage.isShowing()) {
-            Platform.runLater(() -> {
-                VBox contentBox = (VBox) ((StackPane) stage.getScene().getRoot()).getChildren().get(0);
-
-                // Vérifier si un message de détail existe déjà
-                if (contentBox.getChildren().size() > 2) {
-                    Label existingDetail = (Label) contentBox.getChildren().get(2);
-                    existingDetail.setText(detailMessage);
-                } else {
-                    // Créer un nouveau label de détail
-                    Label detailLabel = new Label(detailMessage);
-                    detailLabel.setStyle("-fx-text-fill: #ecf0f1; -fx-font-size: 12px; -fx-font-style: italic;");
-                    contentBox.getChildren().add(detailLabel);
-                }
-            });
+        if (detailLabel != null) {
+            Platform.runLater(() -> detailLabel.setText(detailMessage == null ? "" : detailMessage));
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Définit l'action exécutée lorsque l'utilisateur annule le chargement.
+     * Doit être appelé avant displayPopup ; null masque le bouton d'annulation.
+     * @param onCancel action d'annulation
+     */
+    public void setOnCancel(Runnable onCancel) {
+        this.onCancel = onCancel;
+    }
+}
@@ -1,9 +1,16 @@
 package fr.inria.corese.demo.factory.popup;
 
+import fr.inria.corese.demo.model.rule.RuleProfile;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.beans.property.ReadOnlyStringWrapper;
 import javafx.scene.control.*;
 import javafx.scene.layout.GridPane;
 import javafx.geometry.Insets;
 
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.function.Function;
+
 public class RuleInfoPopup extends BasePopup {
     private final Label nameLabel;
     private final Label typeLabel;
@@ -12,6 +19,7 @@ public class RuleInfoPopup extends BasePopup {
     private final Label sizeLabel;
     private final Label loadingTimeLabel;
     private final Label fileSizeLabel;
+    private final TableView<RuleProfile.RuleStats> statsTable;
 
     public RuleInfoPopup() {
         // Configurer le titre et le style
@@ -26,6 +34,7 @@ public class RuleInfoPopup extends BasePopup {
         sizeLabel = new Label();
         loadingTimeLabel = new Label();
         fileSizeLabel = new Label();
+        statsTable = createStatsTable();
 
         setupUI();
     }
@@ -58,6 +67,7 @@ public class RuleInfoPopup extends BasePopup {
 
         grid.add(bottomGrid, 0, 3, 2, 1);
         grid.add(bottomGrid2, 0, 4, 2, 1);
+        grid.add(statsTable, 0, 5, 2, 1);
 
         // Ajouter le bouton OK
         ButtonType okButton = new ButtonType("OK", ButtonBar.ButtonData.OK_DONE);
@@ -66,6 +76,59 @@ public class RuleInfoPopup extends BasePopup {
         getDialogPane().setContent(grid);
     }
 
+    /**
+     * Affiche les statistiques de la dernière exécution des règles.
+     *
+     * @param ruleSetName Le jeu de règles à afficher, ou null pour toutes les règles
+     * @param profile Le profil de la dernière exécution
+     */
+    public void setRuleProfile(String ruleSetName, RuleProfile profile) {
+        nameLabel.setText(ruleSetName != null ? ruleSetName : "All rules");
+        typeLabel.setText("Rule profiling (" + profile.getMode() + " run)");
+        moreInfoLabel.setText(profile.getSummary());
+        modifiedLabel.setText(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date(profile.getStartedAt())));
+        loadingTimeLabel.setText(profile.getElapsedMillis() + " ms");
+
+        statsTable.getItems().clear();
+        int inferred = 0;
+        for (RuleProfile.RuleStats stats : profile.getRuleStats()) {
+            if (ruleSetName == null || ruleSetName.equals(stats.getRuleSet())) {
+                statsTable.getItems().add(stats);
+                inferred += stats.getTriplesInferred();
+            }
+        }
+        sizeLabel.setText(statsTable.getItems().size() + " rules");
+        fileSizeLabel.setText(inferred + " triples inferred");
+        getDialogPane().setPrefWidth(700);
+    }
+
+    private TableView<RuleProfile.RuleStats> createStatsTable() {
+        TableView<RuleProfile.RuleStats> table = new TableView<>();
+        table.setPrefHeight(300);
+        table.setPlaceholder(new Label("No rule evaluated"));
+
+        TableColumn<RuleProfile.RuleStats, String> ruleColumn = new TableColumn<>("Rule");
+        ruleColumn.setCellValueFactory(cell -> new ReadOnlyStringWrapper(cell.getValue().getName()));
+        ruleColumn.setPrefWidth(220);
+
+        // Colonnes numériques : temps, évaluations, déclenchements et triplets inférés
+        table.getColumns().add(ruleColumn);
+        table.getColumns().add(numberColumn("Time (ms)", RuleProfile.RuleStats::getElapsedMillis));
+        table.getColumns().add(numberColumn("Evaluations", RuleProfile.RuleStats::getEvaluations));
+        table.getColumns().add(numberColumn("Firings", RuleProfile.RuleStats::getFirings));
+        table.getColumns().add(numberColumn("Triples", RuleProfile.RuleStats::getTriplesInferred));
+        table.getColumns().add(numberColumn("Max / iteration", RuleProfile.RuleStats::getMaxInferred));
+        return table;
+    }
+
+    private TableColumn<RuleProfile.RuleStats, Number> numberColumn(String title,
+                                                                    Function<RuleProfile.RuleStats, Number> value) {
+        TableColumn<RuleProfile.RuleStats, Number> column = new TableColumn<>(title);
+        column.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(value.apply(cell.getValue())));
+        column.setPrefWidth(90);
+        return column;
+    }
+
     private void addLabelRow(GridPane grid, String labelText, Label valueLabel, int row) {
         Label label = new Label(labelText);
         grid.add(label, 0, row);
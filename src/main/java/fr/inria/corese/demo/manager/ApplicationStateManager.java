@@ -3,20 +3,47 @@ package fr.inria.corese.demo.manager;
 import fr.inria.corese.core.Graph;
 import fr.inria.corese.core.load.Load;
 import fr.inria.corese.core.load.LoadException;
-import fr.inria.corese.core.load.RuleLoad;
 import fr.inria.corese.core.query.QueryProcess;
 import fr.inria.corese.core.rule.RuleEngine;
 import fr.inria.corese.demo.model.fileList.FileItem;
 import fr.inria.corese.demo.model.fileList.FileListModel;
 import fr.inria.corese.demo.model.graph.CoreseGraph;
+import fr.inria.corese.demo.model.graph.GraphBackend;
+import fr.inria.corese.demo.model.graph.OffHeapGraph;
+import fr.inria.corese.demo.model.graph.FileFingerprint;
 import fr.inria.corese.demo.model.graph.SemanticGraph;
-
+import fr.inria.corese.demo.model.graph.io.GraphSnapshot;
+import fr.inria.corese.demo.model.graph.io.ParallelGraphLoader;
+import fr.inria.corese.demo.model.graph.io.CompressedInput;
+import fr.inria.corese.demo.model.graph.io.FormatDetector;
+import fr.inria.corese.demo.model.graph.io.ProgressInputStream;
+import fr.inria.corese.demo.model.graph.io.StreamingGraphWriter;
+import fr.inria.corese.demo.model.graph.io.StreamingLineLoader;
+import fr.inria.corese.demo.model.rule.InferenceRule;
+import fr.inria.corese.demo.model.rule.RdfsSubsetReasoner;
+import fr.inria.corese.demo.model.rule.RuleBudget;
+import fr.inria.corese.demo.model.rule.RuleGuard;
+import fr.inria.corese.demo.model.rule.RuleMonitor;
+import fr.inria.corese.demo.model.rule.RuleProcessor;
+import fr.inria.corese.demo.model.rule.RuleProfile;
+import fr.inria.corese.demo.model.rule.RuleSet;
+import fr.inria.corese.demo.model.rule.SameAsCanonicalizer;
+import javafx.application.Platform;
+
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 
 /**
  * Application state manager that centralizes all state management.
@@ -24,19 +51,31 @@ import java.util.*;
  * for application data and state.
  */
 public class ApplicationStateManager {
+    private static final String SNAPSHOT_FILE = "project.snapshot";
+    private static final String INFERENCE_CACHE_FILE = "inferences.cache";
+    private static final String RULES_CONFIG_FILE = "rules.config";
+    private static final String RDFS_SUBSET_GRAPH = CoreseGraph.INFERENCE_GRAPH + "/RDFS_Subset";
+
     private static ApplicationStateManager instance;
 
-    // Core graph components
+    // Core graph components (the graph is owned by the semantic graph)
     private Graph graph;
     private QueryProcess queryProcess;
-    private final SemanticGraph semanticGraph;
-    private RuleEngine ruleEngine;
+    private final CoreseGraph semanticGraph;
+    private RuleProcessor ruleProcessor;
+    // Data storage; with the off-heap store, the Corese graph stays empty and only holds rules state
+    private GraphBackend graphBackend = GraphBackend.CORESE;
+    private OffHeapGraph offHeapGraph;
 
     // File management
     private final FileListModel fileListModel;
     private final List<File> loadedFiles;
     private final List<File> loadedRuleFiles;
     private String projectPath;
+    private boolean bulkLoading;
+    private ProjectWatcher projectWatcher;
+    private Consumer<Set<File>> projectChangeHandler;
+    private Runnable graphChangeListener;
 
     // Rule states
     private boolean rdfsSubsetEnabled;
@@ -46,6 +85,41 @@ public class ApplicationStateManager {
     private boolean owlRLTestEnabled;
     private boolean owlCleanEnabled;
     private final Map<String, Boolean> customRuleStates;
+    private final Map<Integer, RuleSet> profileRuleSets;
+    private final Map<String, RuleSet> customRuleSets;
+
+    // Files added during a bulk load, reasoned over incrementally when it ends
+    private final Set<File> pendingDeltaFiles;
+    private boolean fullReasoningNeeded;
+    // Set when only instance files were retracted: the inferred schema closure is kept
+    private boolean instanceReasoningNeeded;
+    // Loaded files holding schema (TBox) triples, the other files only hold instance data
+    private final Set<File> schemaFiles = new HashSet<>();
+    private RdfsSubsetReasoner rdfsSubsetReasoner;
+    private RuleProfile lastRuleProfile;
+    // Rules are evaluated one by one unless the user asks for more workers
+    private int ruleParallelism = 1;
+    private RuleBudget ruleBudget = RuleBudget.UNLIMITED;
+    private RuleGuard ruleGuard = RuleGuard.NONE;
+    // Profile of the last run aborted by the guard, naming the offending rule
+    private RuleProfile lastRuleAbort;
+    private boolean rulePruningEnabled = true;
+    private RuleMonitor ruleMonitor = RuleMonitor.NONE;
+    // Set when a rule run was cancelled or stopped by its budget: the graph is not at fixpoint
+    private boolean inferencesIncomplete;
+    // Why the last save did not cache the inferences, null if they were cached
+    private String inferenceCacheWarning;
+    // Rule states changed in the view but not applied yet, by rule name
+    private final Map<String, Boolean> pendingRuleChanges = new LinkedHashMap<>();
+    private long lastRuleApplyMillis = -1;
+    // Set when the rules are run for each query on what it reads, instead of being materialized
+    private boolean goalDirectedReasoning;
+    // Set when the owl:sameAs classes are reasoned on through one representative each, on request only
+    private boolean sameAsCanonicalizationEnabled = false;
+
+    // Background loads and rule runs hold the write lock while they modify the graph;
+    // queries and edits started from the interface are refused meanwhile instead of waiting
+    private final ReentrantReadWriteLock graphLock = new ReentrantReadWriteLock();
 
     // Logging
     private final List<String> logEntries;
@@ -60,7 +134,10 @@ public class ApplicationStateManager {
         this.loadedFiles = new ArrayList<>();
         this.loadedRuleFiles = new ArrayList<>();
         this.customRuleStates = new HashMap<>();
-        this.logEntries = new ArrayList<>();
+        this.profileRuleSets = new HashMap<>();
+        this.customRuleSets = new HashMap<>();
+        this.pendingDeltaFiles = new LinkedHashSet<>();
+        this.logEntries = Collections.synchronizedList(new ArrayList<>());
 
         // Initialize the graph and related components
         initializeGraph();
@@ -79,12 +156,17 @@ public class ApplicationStateManager {
     }
 
     /**
-     * Initializes the graph and associated query and rule engines.
+     * Binds the query and rule engines to the graph owned by the semantic graph.
      */
     private void initializeGraph() {
-        this.graph = Graph.create();
-        this.queryProcess = QueryProcess.create(graph);
-        this.ruleEngine = RuleEngine.create(graph);
+        this.graph = semanticGraph.getCoreseGraph();
+        this.queryProcess = graphBackend == GraphBackend.OFF_HEAP
+                ? offHeapGraph.createQueryProcess() : QueryProcess.create(graph);
+        this.ruleProcessor = createRuleProcessor();
+        this.rdfsSubsetReasoner = new RdfsSubsetReasoner(graph, RDFS_SUBSET_GRAPH);
+        pendingDeltaFiles.clear();
+        fullReasoningNeeded = false;
+        instanceReasoningNeeded = false;
     }
 
     /**
@@ -94,43 +176,179 @@ public class ApplicationStateManager {
      * @throws Exception If an error occurs during loading
      */
     public void loadFile(File file) throws Exception {
-        try {
-            // Create a loader with the appropriate format based on file extension
-            Load loader = Load.create(graph);
-            String fileName = file.getName().toLowerCase();
-
-            if (fileName.endsWith(".ttl")) {
-                loader.parse(file.getAbsolutePath(), Load.format.TURTLE_FORMAT);
-            } else if (fileName.endsWith(".rdf") || fileName.endsWith(".xml")) {
-                loader.parse(file.getAbsolutePath(), Load.format.RDFXML_FORMAT);
-            } else if (fileName.endsWith(".jsonld")) {
-                loader.parse(file.getAbsolutePath(), Load.format.JSONLD_FORMAT);
-            } else {
-                // Default to Turtle
-                loader.parse(file.getAbsolutePath(), Load.format.TURTLE_FORMAT);
-            }
+        loadFile(file, LoadMonitor.NONE);
+    }
 
-            // Add to the semantic graph and file list
-            semanticGraph.loadFile(file);
-            fileListModel.addFile(file.getName());
+    /**
+     * Loads a file into the graph, reporting progress to a monitor.
+     * A load that fails or is cancelled while parsing is rolled back,
+     * so the graph never keeps a partially parsed file.
+     * The load is refused while another task modifies the graph.
+     *
+     * @param file The file to load
+     * @param monitor The monitor notified of the bytes read and checked for cancellation
+     * @throws Exception If an error occurs during loading or if the load is cancelled
+     */
+    public void loadFile(File file, LoadMonitor monitor) throws Exception {
+        // The loading tasks already hold the write lock, which is reentrant
+        Lock lock = acquire(graphLock.writeLock());
+        try {
+            parseFile(file, monitor);
+            classifyFile(file);
 
-            // Update the loaded files list
+            // Update the loaded files list, a file parsed again keeps its entry
             if (!loadedFiles.contains(file)) {
                 loadedFiles.add(file);
+                runOnFxThread(() -> fileListModel.addFile(file.getName()));
             }
 
             addLogEntry("File loaded successfully: " + file.getName());
 
-            // Apply rules after loading
-            processRules();
-            addLogEntry("Applied " + getLoadedRulesCount() + " rules to the graph");
+            // Reason over the new triples only, unless inference is deferred to the end of a bulk load
+            if (bulkLoading) {
+                pendingDeltaFiles.add(file);
+            } else {
+                processDelta(Collections.singletonList(file));
+            }
 
         } catch (Exception e) {
             addLogEntry("Error loading file: " + e.getMessage());
             throw e;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Parses a file once into the active graph, rolling it back if parsing fails or is cancelled.
+     *
+     * @param file The file to parse
+     * @param monitor The monitor notified of the bytes read and checked for cancellation
+     * @throws Exception If an error occurs during parsing or if the load is cancelled
+     */
+    private void parseFile(File file, LoadMonitor monitor) throws Exception {
+        try {
+            if (graphBackend == GraphBackend.CORESE && StreamingLineLoader.supports(file)) {
+                // Line-based dumps are streamed in chunks to keep memory bounded
+                semanticGraph.loadLineBasedFile(file, bytes -> {
+                    monitor.bytesRead(bytes);
+                    monitor.parsing();
+                }, monitor::isCancelled);
+            } else {
+                // Compressed files are decompressed on a separate thread while the parser runs
+                try (InputStream input = new ProgressInputStream(CompressedInput.open(new ProgressInputStream(
+                        new BufferedInputStream(new FileInputStream(file)), monitor::bytesRead, monitor::isCancelled)),
+                        bytes -> monitor.parsing(), null)) {
+                    getActiveGraph().loadFile(file, input);
+                }
+            }
+        } catch (Exception e) {
+            getActiveGraph().unloadFile(file);
+            throw e;
+        }
+    }
+
+    /**
+     * Records whether a loaded file is part of the schema or only holds instance data.
+     *
+     * @param file The loaded file
+     */
+    private void classifyFile(File file) {
+        if (!graphBackend.supportsReasoning()) {
+            // Without rules, files are not told apart
+            return;
+        }
+        try {
+            if (semanticGraph.hasSchemaTriples(file)) {
+                schemaFiles.add(file);
+                addLogEntry(file.getName() + " contains schema triples");
+            } else {
+                schemaFiles.remove(file);
+            }
+        } catch (Exception e) {
+            // Unknown content is treated as schema, so that its retraction recomputes everything
+            schemaFiles.add(file);
+            addLogEntry("Could not classify " + file.getName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns whether a loaded file contains schema triples.
+     *
+     * @param file The loaded file
+     * @return True for a schema file, false for a file holding only instance data
+     */
+    public boolean isSchemaFile(File file) {
+        return schemaFiles.contains(file);
+    }
+
+    /**
+     * Loads several files in bulk mode.
+     * Inference is suspended while the files are added and runs once at the end,
+     * even if some files failed or the load was cancelled.
+     *
+     * @param files The files to load
+     * @param monitor The monitor notified of the loading progress and checked for cancellation
+     */
+    public void loadFiles(List<File> files, LoadMonitor monitor) {
+        beginBulkLoad();
+        try {
+            for (File file : files) {
+                if (monitor.isCancelled()) {
+                    addLogEntry("Bulk load cancelled before " + file.getName());
+                    break;
+                }
+                try {
+                    monitor.fileStarted(file);
+                    loadFile(file, monitor);
+                } catch (Exception e) {
+                    addLogEntry("Error loading file " + file.getName() + ": " + e.getMessage());
+                }
+            }
+        } finally {
+            endBulkLoad();
+        }
+    }
+
+    /**
+     * Starts a bulk load: files loaded until {@link #endBulkLoad()} do not trigger inference.
+     */
+    public void beginBulkLoad() {
+        if (!bulkLoading) {
+            bulkLoading = true;
+            addLogEntry("Bulk load started, inference suspended");
+        }
+    }
+
+    /**
+     * Ends a bulk load and runs the deferred inference once.
+     * Only the triples of the loaded files are reasoned over, unless triples were retracted
+     * during the load, in which case inference is recomputed over the whole graph.
+     */
+    public void endBulkLoad() {
+        if (bulkLoading) {
+            bulkLoading = false;
+            addLogEntry("Bulk load finished, running deferred inference");
+            if (fullReasoningNeeded) {
+                processRules();
+            } else if (instanceReasoningNeeded) {
+                processInstanceRules();
+            } else {
+                processDelta(new ArrayList<>(pendingDeltaFiles));
+            }
+            pendingDeltaFiles.clear();
         }
     }
 
+    /**
+     * Returns whether a bulk load is in progress.
+     *
+     * @return True if inference is currently deferred
+     */
+    public boolean isBulkLoading() {
+        return bulkLoading;
+    }
+
     /**
      * Loads a rule file into the rule engine and updates the state.
      *
@@ -138,10 +356,32 @@ public class ApplicationStateManager {
      * @throws Exception If an error occurs during loading
      */
     public void loadRuleFile(File file) throws Exception {
+        Lock lock = acquire(graphLock.writeLock());
+        try {
+            RuleSet ruleSet = addRuleFile(file);
+            // The graph is at fixpoint for the other rules, so only the new rules are started
+            applyNewRules(ruleSet);
+        } catch (Exception e) {
+            addLogEntry("Error loading rule file: " + e.getMessage());
+            throw e;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Registers a rule file in the rule processor without applying it.
+     *
+     * @param file The rule file to load
+     * @return The rules of the file
+     * @throws Exception If an error occurs during loading
+     */
+    private RuleSet addRuleFile(File file) throws Exception {
         try {
-            // Load the rule file into the rule engine
-            RuleLoad ruleLoader = RuleLoad.create(ruleEngine);
-            ruleLoader.parse(file.getAbsolutePath());
+            // Parse the rule file into rules the processor can drive one by one
+            RuleSet ruleSet = RuleSet.fromFile(file);
+            logUnsupportedRules(ruleSet);
+            customRuleSets.put(file.getName(), ruleSet);
 
             // Update the semantic graph
             semanticGraph.loadRuleFile(file);
@@ -153,11 +393,10 @@ public class ApplicationStateManager {
 
             // Mark this rule as enabled
             customRuleStates.put(file.getName(), true);
+            ruleProcessor = createRuleProcessor();
 
             addLogEntry("Rule file loaded successfully: " + file.getName());
-
-            // Process rules
-            ruleEngine.process();
+            return ruleSet;
 
         } catch (Exception e) {
             addLogEntry("Error loading rule file: " + e.getMessage());
@@ -165,26 +404,98 @@ public class ApplicationStateManager {
         }
     }
 
+    /**
+     * Returns the lock held by background tasks while they modify the graph.
+     *
+     * @return The write lock of the graph
+     */
+    public Lock getGraphWriteLock() {
+        return graphLock.writeLock();
+    }
+
+    /**
+     * Returns the lock held by background tasks that only read the graph, such as a save.
+     *
+     * @return The read lock of the graph
+     */
+    public Lock getGraphReadLock() {
+        return graphLock.readLock();
+    }
+
+    /**
+     * Checks whether a background task is modifying the graph.
+     *
+     * @return true if the graph is being modified
+     */
+    public boolean isGraphBusy() {
+        return graphLock.isWriteLocked();
+    }
+
+    /**
+     * Takes a lock on the graph without waiting, for an operation started from the interface.
+     *
+     * @param lock The read or write lock of the graph
+     * @return The lock, to release once the operation is done
+     * @throws IllegalStateException If a background task is modifying the graph
+     */
+    private Lock acquire(Lock lock) {
+        if (!lock.tryLock()) {
+            throw new IllegalStateException("The graph is being modified by a background task, "
+                    + "try again when it is finished");
+        }
+        return lock;
+    }
+
     /**
      * Executes a SPARQL query on the graph.
+     * The query is refused while a background task modifies the graph. In goal-directed reasoning
+     * the query writes the inferences it needs, so it takes the graph exclusively. When the sameAs
+     * classes are canonicalized, a query whose results cannot list the aliases is refused.
      *
      * @param queryString The SPARQL query to execute
      * @return An array containing the formatted result and the query type
      * @throws Exception If an error occurs during query execution
      */
     public Object[] executeQuery(String queryString) throws Exception {
+        Lock lock = acquire(goalDirectedReasoning ? graphLock.writeLock() : graphLock.readLock());
+        try {
+            return evaluateQuery(queryString);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Object[] evaluateQuery(String queryString) throws Exception {
         String queryType = determineQueryType(queryString);
-        fr.inria.corese.core.kgram.core.Mappings mappings = queryProcess.query(queryString);
+        if (goalDirectedReasoning && graphBackend.supportsReasoning() && !ruleProcessor.getRules().isEmpty()) {
+            deriveForQuery(queryString);
+        }
+        // Reasoning joins on the representatives of the sameAs classes: the query names them rather than their aliases
+        SameAsCanonicalizer canonicalizer = ruleProcessor.getSameAsCanonicalizer();
+        boolean expandAliases = canonicalizer != null && !canonicalizer.isEmpty();
+        fr.inria.corese.core.kgram.core.Mappings mappings = expandAliases
+                ? queryProcess.query(canonicalizer.rewrite(queryString)) : queryProcess.query(queryString);
+        if (expandAliases && !queryType.equals("ASK") && !SameAsCanonicalizer.isExpandable(mappings)) {
+            throw new Exception("The results of this query cannot list the owl:sameAs aliases: it has aggregates, "
+                    + "an order, a limit or an offset. Disable sameAs canonicalization to run it.");
+        }
         Object formattedResult;
 
+        // Results hold the representatives, their aliases are given back
         switch (queryType) {
             case "SELECT" -> {
+                if (expandAliases) {
+                    canonicalizer.expand(mappings);
+                }
                 formattedResult = fr.inria.corese.core.print.ResultFormat.create(mappings,
                         fr.inria.corese.core.print.ResultFormat.format.MARKDOWN_FORMAT).toString();
                 addLogEntry("SELECT query executed successfully");
             }
             case "CONSTRUCT" -> {
                 Graph resultGraph = (Graph) mappings.getGraph();
+                if (expandAliases && resultGraph != null) {
+                    canonicalizer.expand(resultGraph);
+                }
                 formattedResult = resultGraph != null ?
                         fr.inria.corese.core.print.ResultFormat.create(resultGraph,
                                 fr.inria.corese.core.print.ResultFormat.format.TRIG_FORMAT).toString() :
@@ -197,6 +508,9 @@ public class ApplicationStateManager {
             }
             case "DESCRIBE" -> {
                 Graph resultGraph = (Graph) mappings.getGraph();
+                if (expandAliases && resultGraph != null) {
+                    canonicalizer.expand(resultGraph);
+                }
                 formattedResult = resultGraph != null ?
                         fr.inria.corese.core.print.ResultFormat.create(resultGraph,
                                 fr.inria.corese.core.print.ResultFormat.format.TRIG_FORMAT).toString() :
@@ -210,278 +524,1552 @@ public class ApplicationStateManager {
     }
 
     /**
-     * Determines the type of a SPARQL query.
+     * Runs the rules a query needs before it is evaluated, in goal-directed reasoning.
+     *
+     * @param queryString The SPARQL query
+     * @throws Exception If a rule cannot be evaluated
+     */
+    private void deriveForQuery(String queryString) throws Exception {
+        long start = System.currentTimeMillis();
+        int inferred = ruleProcessor.processQuery(queryString);
+        int ruleCount = ruleProcessor.getLastQueryRuleCount();
+        int total = inferred;
+        // The RDFS Subset entailments of the new triples may enable more rules
+        while (inferred > 0 && rdfsSubsetEnabled && rdfsSubsetReasoner.materialize() > 0) {
+            ruleProcessor.resetGoals();
+            inferred = ruleProcessor.processQuery(queryString);
+            total += inferred;
+        }
+        if (ruleCount < 0) {
+            addLogEntry("Goal-directed reasoning: inferences of previous queries reused");
+        } else {
+            addLogEntry("Goal-directed reasoning: " + ruleCount + " of " + ruleProcessor.getRules().size()
+                    + " rules needed, " + total + " triples inferred in " + (System.currentTimeMillis() - start) + " ms");
+        }
+    }
+
+    /**
+     * Determines the type of a SPARQL query.
+     *
+     * @param queryString The query string to analyze
+     * @return The query type (SELECT, CONSTRUCT, ASK, or DESCRIBE)
+     */
+    private String determineQueryType(String queryString) {
+        // Remove prefixes and clean up the query string
+        String cleanedQuery = queryString.replaceAll("^\\s*PREFIX\\s+[^:]+:\\s*<[^>]+>\\s*", "")
+                .replaceAll("^\\s*PREFIX\\s+[^:]+:\\s*<[^>]+>\\s*", "")
+                .trim()
+                .toUpperCase();
+
+        if (cleanedQuery.startsWith("SELECT")) return "SELECT";
+        if (cleanedQuery.startsWith("CONSTRUCT")) return "CONSTRUCT";
+        if (cleanedQuery.startsWith("ASK")) return "ASK";
+        if (cleanedQuery.startsWith("DESCRIBE")) return "DESCRIBE";
+        return "UNKNOWN";
+    }
+
+    /**
+     * Clears the graph and resets rule engines.
+     */
+    public void clearGraph() {
+        Lock lock = acquire(graphLock.writeLock());
+        try {
+            stopWatchingProject();
+            semanticGraph.clearGraph();
+            if (offHeapGraph != null) {
+                offHeapGraph.clearGraph();
+            }
+            initializeGraph();
+            addLogEntry("Graph cleared");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Clears the file list.
+     */
+    public void clearFiles() {
+        runOnFxThread(fileListModel::clearFiles);
+        loadedFiles.clear();
+        schemaFiles.clear();
+    }
+
+    /**
+     * Reloads the files that changed on disk since they were loaded.
+     */
+    public void reloadFiles() {
+        reloadFiles(LoadMonitor.NONE);
+    }
+
+    /**
+     * Reloads the files that changed on disk since they were loaded.
+     * Each file lives in its own named graph, so unchanged files keep their triples,
+     * deleted files are dropped and modified files are dropped and parsed again.
+     * Inferences are then recomputed once, since some of them may come from the old content.
+     *
+     * @param monitor The monitor notified of the loading progress and checked for cancellation
+     */
+    public void reloadFiles(LoadMonitor monitor) {
+        List<File> changedFiles = getChangedFiles();
+        if (changedFiles.isEmpty()) {
+            addLogEntry("All files are up to date, nothing to reload");
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        applyFileChanges(changedFiles, monitor);
+        addLogEntry("Reloaded " + changedFiles.size() + " of " + loadedFiles.size() + " files in "
+                + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * Ingests a batch of project files reported by the project watcher.
+     * Only files that were added, modified or deleted are processed; events
+     * on a file whose content did not change are ignored.
+     *
+     * @param files The files reported as changed
+     * @param monitor The monitor notified of the loading progress and checked for cancellation
+     */
+    public void ingestChanges(Collection<File> files, LoadMonitor monitor) {
+        List<File> changedFiles = new ArrayList<>();
+        for (File file : files) {
+            File absoluteFile = file.getAbsoluteFile();
+            if (loadedFiles.contains(absoluteFile) ? isChanged(absoluteFile) : absoluteFile.exists()) {
+                changedFiles.add(absoluteFile);
+            }
+        }
+        if (changedFiles.isEmpty()) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        applyFileChanges(changedFiles, monitor);
+        addLogEntry("Ingested " + changedFiles.size() + " changed project files in "
+                + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * Brings the graph up to date with files that were added, modified or deleted.
+     * Each file lives in its own named graph, so unaffected files keep their triples,
+     * deleted files are dropped and modified files are dropped and parsed again.
+     * Inferences are recomputed once; they are cleared first only if triples were retracted,
+     * since added triples never invalidate earlier conclusions.
+     *
+     * @param changedFiles The files to bring up to date
+     * @param monitor The monitor notified of the loading progress and checked for cancellation
+     */
+    private void applyFileChanges(List<File> changedFiles, LoadMonitor monitor) {
+        boolean retracted = false;
+        boolean schemaChanged = false;
+        beginBulkLoad();
+        try {
+            for (File file : changedFiles) {
+                if (monitor.isCancelled()) {
+                    addLogEntry("Reload cancelled before " + file.getName());
+                    break;
+                }
+
+                boolean wasLoaded = loadedFiles.contains(file);
+                if (wasLoaded) {
+                    schemaChanged |= schemaFiles.contains(file);
+                    getActiveGraph().unloadFile(file);
+                    retracted = true;
+                }
+                if (file.exists()) {
+                    try {
+                        monitor.fileStarted(file);
+                        loadFile(file, monitor);
+                        addLogEntry((wasLoaded ? "Reloaded file: " : "Loaded new file: ") + file.getName());
+                    } catch (Exception e) {
+                        addLogEntry("Error reloading file " + file.getName() + ": " + e.getMessage());
+                    }
+                } else {
+                    loadedFiles.remove(file);
+                    schemaFiles.remove(file);
+                    runOnFxThread(() -> fileListModel.getFiles().removeIf(item -> item.getName().equals(file.getName())));
+                    addLogEntry("Removed deleted file: " + file.getName());
+                }
+            }
+
+            for (File file : changedFiles) {
+                schemaChanged |= schemaFiles.contains(file);
+            }
+
+            // Triples inferred from the previous content are recomputed by the deferred inference,
+            // which must then cover the whole graph instead of the new triples only. When only
+            // instance files changed, the inferred schema closure is kept and reused.
+            if (retracted && schemaChanged) {
+                semanticGraph.clearInferences();
+                rdfsSubsetReasoner.invalidateSchema();
+                fullReasoningNeeded = true;
+            } else if (retracted) {
+                semanticGraph.clearInstanceInferences();
+                instanceReasoningNeeded = true;
+            }
+        } finally {
+            endBulkLoad();
+        }
+        notifyGraphChanged();
+    }
+
+    /**
+     * Returns the loaded files whose content changed or that were deleted since they were loaded.
+     *
+     * @return The changed files
+     */
+    public List<File> getChangedFiles() {
+        List<File> changedFiles = new ArrayList<>();
+        for (File file : loadedFiles) {
+            if (isChanged(file)) {
+                changedFiles.add(file);
+            }
+        }
+        return changedFiles;
+    }
+
+    /**
+     * Returns whether a loaded file was deleted or its content changed since it was loaded.
+     *
+     * @param file The loaded file
+     * @return True if the file must be reloaded
+     */
+    private boolean isChanged(File file) {
+        FileFingerprint fingerprint = getActiveGraph().getContext().getFingerprint(file);
+        try {
+            return fingerprint == null || fingerprint.isChanged(file);
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Sets the handler receiving the batches of files changed in the watched project directory.
+     * Without a handler, batches are ingested directly on the watcher thread.
+     *
+     * @param handler The handler, typically scheduling {@link #ingestChanges} on the loading worker
+     */
+    public void setProjectChangeHandler(Consumer<Set<File>> handler) {
+        this.projectChangeHandler = handler;
+    }
+
+    /**
+     * Sets the listener notified on the JavaFX thread when the graph changed in the background.
+     *
+     * @param listener The listener, typically refreshing the statistics
+     */
+    public void setGraphChangeListener(Runnable listener) {
+        this.graphChangeListener = listener;
+    }
+
+    void notifyGraphChanged() {
+        Runnable listener = graphChangeListener;
+        if (listener != null) {
+            runOnFxThread(listener);
+        }
+    }
+
+    /**
+     * Starts watching a project directory for data files that are added, modified or deleted.
+     *
+     * @param directory The project directory
+     */
+    private void watchProject(File directory) {
+        stopWatchingProject();
+        ProjectWatcher watcher = new ProjectWatcher(directory, ProjectWatcher.DEFAULT_DEBOUNCE_MS, files -> {
+            Consumer<Set<File>> handler = projectChangeHandler;
+            if (handler != null) {
+                handler.accept(files);
+            } else {
+                ingestChanges(files, LoadMonitor.NONE);
+            }
+        });
+        try {
+            watcher.start();
+            projectWatcher = watcher;
+            addLogEntry("Watching project directory: " + directory.getAbsolutePath());
+        } catch (IOException e) {
+            watcher.stop();
+            addLogEntry("Could not watch project directory: " + e.getMessage());
+        }
+    }
+
+    private void stopWatchingProject() {
+        if (projectWatcher != null) {
+            projectWatcher.stop();
+            projectWatcher = null;
+        }
+    }
+
+    /**
+     * Loads a project from a directory.
+     *
+     * @param directory The project directory
+     */
+    public void loadProject(File directory) {
+        loadProject(directory, LoadMonitor.NONE);
+    }
+
+    /**
+     * Loads a project from a directory, reporting progress to a monitor.
+     *
+     * @param directory The project directory
+     * @param monitor The monitor notified of the loading progress and checked for cancellation
+     */
+    public void loadProject(File directory, LoadMonitor monitor) {
+        clearGraph();
+        clearFiles();
+        this.projectPath = directory.getAbsolutePath();
+        addLogEntry("Loading project from: " + directory.getAbsolutePath());
+        pendingRuleChanges.clear();
+        loadRulesConfiguration(directory);
+
+        // Reopen from the binary snapshot when it is still up to date, then try the context
+        if (!restoreSnapshot(directory) && !restoreContext(directory)) {
+            // Continue with normal loading: parse all files, then reason once
+            loadProjectFiles(directory, monitor);
+            loadProjectRules(directory);
+            if (!monitor.isCancelled() && !restoreInferenceCache()) {
+                processRules();
+            }
+        }
+
+        // Files dropped into the project from now on are ingested as they arrive
+        watchProject(directory);
+    }
+
+    /**
+     * Restores the project from its saved context, if there is one.
+     *
+     * @param directory The project directory
+     * @return True if the context was restored
+     */
+    private boolean restoreContext(File directory) {
+        try {
+            File contextFile = new File(directory, "project.context");
+            if (contextFile.exists()) {
+                getActiveGraph().loadContext(contextFile.getAbsolutePath());
+                addLogEntry("Project context restored");
+
+                // Reload the state from the semantic graph
+                restoreState();
+                return true;
+            }
+        } catch (Exception e) {
+            addLogEntry("Could not restore project context: " + e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Restores the graph from the project snapshot if it is not stale.
+     * A snapshot is stale when one of its source files changed, when a data file
+     * was added to the project or when the rule configuration differs.
+     *
+     * @param directory The project directory
+     * @return True if the graph was restored from the snapshot
+     */
+    private boolean restoreSnapshot(File directory) {
+        Path snapshot = directory.toPath().resolve(SNAPSHOT_FILE);
+        if (!graphBackend.supportsReasoning() || !Files.exists(snapshot)) {
+            return false;
+        }
+
+        try {
+            GraphSnapshot.Header header = GraphSnapshot.readHeader(snapshot);
+            String staleReason = getStaleReason(header, directory);
+            if (staleReason != null) {
+                addLogEntry("Project snapshot is stale (" + staleReason + "), parsing project files");
+                return false;
+            }
+
+            semanticGraph.readSnapshot(snapshot);
+            for (File file : header.getSources().keySet()) {
+                classifyFile(file);
+                if (!loadedFiles.contains(file)) {
+                    loadedFiles.add(file);
+                    runOnFxThread(() -> fileListModel.addFile(file.getName()));
+                }
+            }
+            addLogEntry("Project restored from snapshot, parsing and reasoning skipped");
+            return true;
+        } catch (Exception e) {
+            addLogEntry("Could not read project snapshot: " + e.getMessage());
+            clearGraph();
+            clearFiles();
+            return false;
+        }
+    }
+
+    /**
+     * Explains why a snapshot no longer matches the project, if it does not.
+     *
+     * @param header The snapshot header
+     * @param directory The project directory
+     * @return The reason the snapshot is stale, or null if it is up to date
+     * @throws IOException If a source file cannot be read
+     */
+    private String getStaleReason(GraphSnapshot.Header header, File directory) throws IOException {
+        if (!header.getRulesSignature().equals(getRulesSignature())) {
+            return "rule configuration changed";
+        }
+        for (Map.Entry<File, FileFingerprint> entry : header.getSources().entrySet()) {
+            if (entry.getValue().isChanged(entry.getKey())) {
+                return entry.getKey().getName() + " changed";
+            }
+        }
+        for (File file : getProjectDataFiles(directory)) {
+            if (!header.getSources().containsKey(file.getAbsoluteFile())) {
+                return file.getName() + " added";
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the data files of a project directory: every file with an RDF extension
+     * (Turtle, N-Triples, N-Quads, TriG, RDF/XML, JSON-LD), compressed or not.
+     *
+     * @param directory The project directory
+     * @return The data files found in the directory
+     */
+    public List<File> getProjectDataFiles(File directory) {
+        File[] dataFiles = directory.listFiles((dir, name) -> FormatDetector.isRdfFile(name));
+        return dataFiles != null ? Arrays.asList(dataFiles) : new ArrayList<>();
+    }
+
+    /**
+     * Loads all data files from a project directory.
+     * Files are parsed in parallel into staging graphs and merged in a deterministic order.
+     * N-Triples and N-Quads files are then streamed one by one, each cut in chunks parsed in parallel,
+     * so a single large dump does not end up on one parser thread.
+     * Rules are not applied here, the caller reasons once after all files are loaded.
+     *
+     * @param directory The project directory
+     * @param monitor The monitor notified of the loading progress and checked for cancellation
+     */
+    private void loadProjectFiles(File directory, LoadMonitor monitor) {
+        if (graphBackend == GraphBackend.OFF_HEAP) {
+            // The off-heap store is fed by one parser at a time, which streams each file into it
+            for (File file : getProjectDataFiles(directory)) {
+                if (monitor.isCancelled()) {
+                    addLogEntry("Project loading cancelled, only fully loaded files were kept");
+                    break;
+                }
+                monitor.fileStarted(file);
+                try {
+                    parseFile(file, monitor);
+                    registerProjectFile(file);
+                    addLogEntry("File loaded successfully: " + file.getName());
+                } catch (Exception e) {
+                    addLogEntry("Error loading file " + file.getName() + ": " + e.getMessage());
+                }
+            }
+            return;
+        }
+
+        List<File> documentFiles = new ArrayList<>();
+        List<File> lineBasedFiles = new ArrayList<>();
+        for (File file : getProjectDataFiles(directory)) {
+            (StreamingLineLoader.supports(file) ? lineBasedFiles : documentFiles).add(file);
+        }
+
+        try {
+            semanticGraph.loadFiles(documentFiles, new ParallelGraphLoader.Listener() {
+                @Override
+                public void fileLoaded(File file, int triples) {
+                    monitor.fileStarted(file);
+                    monitor.bytesRead(file.length());
+                    registerProjectFile(file);
+                    addLogEntry("File loaded successfully: " + file.getName() + " (" + triples + " triples)");
+                }
+
+                @Override
+                public void fileFailed(File file, Exception error) {
+                    addLogEntry("Error loading file " + file.getName() + ": " + error.getMessage());
+                }
+            }, monitor::isCancelled);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            addLogEntry("Project loading interrupted");
+        }
+
+        for (File file : lineBasedFiles) {
+            if (monitor.isCancelled()) {
+                break;
+            }
+            monitor.fileStarted(file);
+            try {
+                semanticGraph.loadLineBasedFile(file, bytes -> {
+                    monitor.bytesRead(bytes);
+                    monitor.parsing();
+                }, monitor::isCancelled);
+                registerProjectFile(file);
+                addLogEntry("File loaded successfully: " + file.getName());
+            } catch (Exception e) {
+                semanticGraph.unloadFile(file);
+                addLogEntry("Error loading file " + file.getName() + ": " + e.getMessage());
+            }
+        }
+
+        if (monitor.isCancelled()) {
+            addLogEntry("Project loading cancelled, only fully merged files were kept");
+        }
+    }
+
+    /**
+     * Adds a file loaded with its project to the loaded files and the file list.
+     *
+     * @param file The loaded file
+     */
+    private void registerProjectFile(File file) {
+        classifyFile(file);
+        if (!loadedFiles.contains(file)) {
+            loadedFiles.add(file);
+        }
+        runOnFxThread(() -> fileListModel.addFile(file.getName()));
+    }
+
+    /**
+     * Loads all rule files from a project directory.
+     *
+     * @param directory The project directory
+     */
+    private void loadProjectRules(File directory) {
+        File rulesDir = new File(directory, "rules");
+        if (rulesDir.exists() && rulesDir.isDirectory()) {
+            File[] ruleFiles = rulesDir.listFiles((dir, name) -> name.toLowerCase().endsWith(".rul"));
+            if (ruleFiles != null) {
+                for (File ruleFile : ruleFiles) {
+                    try {
+                        // A rule file disabled in the saved configuration stays disabled
+                        Boolean savedState = customRuleStates.get(ruleFile.getName());
+                        addRuleFile(ruleFile);
+                        if (savedState != null && !savedState) {
+                            customRuleStates.put(ruleFile.getName(), false);
+                            ruleProcessor = createRuleProcessor();
+                        }
+                    } catch (Exception e) {
+                        addLogEntry("Error loading rule file " + ruleFile.getName() + ": " + e.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Saves the current project to a file.
+     *
+     * @param targetFile The target file
+     */
+    public void saveProject(File targetFile) {
+        try {
+            saveProject(targetFile, null, null);
+        } catch (Exception e) {
+            // Already logged
+        }
+    }
+
+    /**
+     * Saves the current project to a file, reporting the progress of the graph serialization.
+     * The graph is written first since it is the longest step; a cancelled save leaves
+     * the previous project files untouched.
+     *
+     * @param targetFile The target file
+     * @param listener Receives the number of triples written, may be null
+     * @param cancelled Returns true when saving must stop, may be null
+     * @throws Exception If an error occurs during saving or if the save is cancelled
+     */
+    public void saveProject(File targetFile, StreamingGraphWriter.Listener listener, BooleanSupplier cancelled)
+            throws Exception {
+        try {
+            Path projectDir = Paths.get(targetFile.getParent());
+            Files.createDirectories(projectDir);
+
+            // Save project configuration
+            saveProjectConfiguration(targetFile, listener, cancelled);
+
+            // Save the context
+            getActiveGraph().saveContext();
+
+            // Save rules configuration
+            saveRulesConfiguration(projectDir);
+
+            if (graphBackend.supportsReasoning()) {
+                // Save the binary snapshot used to reopen the project without parsing
+                semanticGraph.writeSnapshot(projectDir.resolve(SNAPSHOT_FILE), getRulesSignature());
+
+                // Save the inferences alone, restored when the project is reopened from its files
+                writeInferenceCache(projectDir);
+            }
+
+            this.projectPath = projectDir.toString();
+            addLogEntry("Project and context saved successfully to: " + projectDir);
+        } catch (Exception e) {
+            addLogEntry("Error saving project: " + e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Saves the rules configuration to a file.
+     *
+     * @param projectDir The project directory
+     * @throws Exception If an error occurs during saving
+     */
+    private void saveRulesConfiguration(Path projectDir) throws Exception {
+        Path rulesDir = projectDir.resolve("rules");
+        Files.createDirectories(rulesDir);
+
+        StringBuilder configContent = createRulesConfigContent();
+        File configFile = new File(projectDir.toFile(), RULES_CONFIG_FILE);
+        try (FileOutputStream out = new FileOutputStream(configFile)) {
+            Properties props = new Properties();
+            props.setProperty("RDFS_SUBSET", String.valueOf(rdfsSubsetEnabled));
+            props.setProperty("RDFS_RL", String.valueOf(rdfsRLEnabled));
+            props.setProperty("OWL_RL", String.valueOf(owlRLEnabled));
+            props.setProperty("OWL_RL_EXTENDED", String.valueOf(owlRLExtendedEnabled));
+            props.setProperty("OWL_RL_TEST", String.valueOf(owlRLTestEnabled));
+            props.setProperty("OWL_CLEAN", String.valueOf(owlCleanEnabled));
+
+            // Save custom rule states
+            for (Map.Entry<String, Boolean> entry : customRuleStates.entrySet()) {
+                props.setProperty("CUSTOM_RULE_" + entry.getKey(), String.valueOf(entry.getValue()));
+            }
+
+            props.store(out, "Rules configuration");
+        }
+        addLogEntry("Rules configuration saved to: " + configFile.getAbsolutePath());
+    }
+
+    /**
+     * Restores the rule states saved with a project, without applying the rules.
+     *
+     * @param directory The project directory
+     */
+    private void loadRulesConfiguration(File directory) {
+        File configFile = new File(directory, RULES_CONFIG_FILE);
+        if (!configFile.exists()) {
+            return;
+        }
+        try (FileInputStream in = new FileInputStream(configFile)) {
+            Properties props = new Properties();
+            props.load(in);
+            rdfsSubsetEnabled = Boolean.parseBoolean(props.getProperty("RDFS_SUBSET"));
+            rdfsRLEnabled = Boolean.parseBoolean(props.getProperty("RDFS_RL"));
+            owlRLEnabled = Boolean.parseBoolean(props.getProperty("OWL_RL"));
+            owlRLExtendedEnabled = Boolean.parseBoolean(props.getProperty("OWL_RL_EXTENDED"));
+            owlRLTestEnabled = Boolean.parseBoolean(props.getProperty("OWL_RL_TEST"));
+            owlCleanEnabled = Boolean.parseBoolean(props.getProperty("OWL_CLEAN"));
+            for (String key : props.stringPropertyNames()) {
+                if (key.startsWith("CUSTOM_RULE_")) {
+                    customRuleStates.put(key.substring("CUSTOM_RULE_".length()),
+                            Boolean.parseBoolean(props.getProperty(key)));
+                }
+            }
+            ruleProcessor = createRuleProcessor();
+            addLogEntry("Rules configuration restored from: " + configFile.getAbsolutePath());
+        } catch (IOException e) {
+            addLogEntry("Could not read rules configuration: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the inferred triples of the project to the inference cache.
+     * Nothing is written when the inferences are partial.
+     *
+     * @param projectDir The project directory
+     */
+    private void writeInferenceCache(Path projectDir) {
+        Path cache = projectDir.resolve(INFERENCE_CACHE_FILE);
+        inferenceCacheWarning = null;
+        try {
+            if (inferencesIncomplete || goalDirectedReasoning
+                    || (ruleProcessor.getRules().isEmpty() && !rdfsSubsetEnabled)) {
+                Files.deleteIfExists(cache);
+                return;
+            }
+            if (semanticGraph.writeInferences(cache, getInferenceSources(), getRulesSignature()) < 0) {
+                Files.deleteIfExists(cache);
+                inferenceCacheWarning = "The inferences mention blank nodes and were not cached: "
+                        + "the rules will run again if the project is reopened from its files";
+            }
+        } catch (IOException e) {
+            addLogEntry("Could not write inference cache: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Loads the cached inferences of the project instead of reasoning, when the cache
+     * was computed from the same data files, rule files and rule configuration.
+     *
+     * @return True if the inferences were restored from the cache
+     */
+    private boolean restoreInferenceCache() {
+        if (projectPath == null || !graphBackend.supportsReasoning() || ruleProcessor.getRules().isEmpty()
+                || goalDirectedReasoning) {
+            return false;
+        }
+        Path cache = Paths.get(projectPath, INFERENCE_CACHE_FILE);
+        if (!Files.exists(cache)) {
+            return false;
+        }
+        try {
+            GraphSnapshot.Header header = GraphSnapshot.readHeader(cache);
+            String staleReason = null;
+            if (!header.getRulesSignature().equals(getRulesSignature())) {
+                staleReason = "rule configuration changed";
+            } else if (!header.getSources().keySet().equals(getInferenceSources().keySet())) {
+                staleReason = "different data or rule files";
+            } else {
+                for (Map.Entry<File, FileFingerprint> entry : header.getSources().entrySet()) {
+                    if (entry.getValue().isChanged(entry.getKey())) {
+                        staleReason = entry.getKey().getName() + " changed";
+                        break;
+                    }
+                }
+            }
+            if (staleReason != null) {
+                addLogEntry("Inference cache is stale (" + staleReason + "), reasoning");
+                return false;
+            }
+
+            long triples = semanticGraph.readInferences(cache);
+            pendingDeltaFiles.clear();
+            fullReasoningNeeded = false;
+            inferencesIncomplete = false;
+            addLogEntry("Inferences restored from cache (" + triples + " triples), reasoning skipped");
+            return true;
+        } catch (IOException e) {
+            addLogEntry("Could not read inference cache: " + e.getMessage());
+            semanticGraph.clearInferences();
+            return false;
+        }
+    }
+
+    /**
+     * Returns the files the inferences derive from: the loaded data files and rule files.
+     *
+     * @return The files with their fingerprints
+     * @throws IOException If a rule file cannot be read
+     */
+    private Map<File, FileFingerprint> getInferenceSources() throws IOException {
+        Map<File, FileFingerprint> sources = new TreeMap<>();
+        for (File file : loadedFiles) {
+            FileFingerprint fingerprint = semanticGraph.getContext().getFingerprint(file);
+            sources.put(file.getAbsoluteFile(), fingerprint != null ? fingerprint : FileFingerprint.of(file));
+        }
+        for (File ruleFile : loadedRuleFiles) {
+            sources.put(ruleFile.getAbsoluteFile(), FileFingerprint.of(ruleFile));
+        }
+        return sources;
+    }
+
+    /**
+     * Returns a description of the active rules, including custom rules.
+     * Two graphs materialized with the same signature contain the same inferences.
+     *
+     * @return The rules signature
+     */
+    private String getRulesSignature() {
+        StringBuilder signature = createRulesConfigContent();
+        signature.append("SAME_AS_CANONICALIZATION=").append(isSameAsCanonicalized()).append("\n");
+        for (String ruleName : new TreeSet<>(customRuleStates.keySet())) {
+            signature.append("CUSTOM_RULE_").append(ruleName).append("=")
+                    .append(customRuleStates.get(ruleName)).append("\n");
+        }
+        return signature.toString();
+    }
+
+    /**
+     * Creates the content for the rules configuration file.
+     *
+     * @return The rules configuration content
+     */
+    private StringBuilder createRulesConfigContent() {
+        StringBuilder configContent = new StringBuilder();
+        configContent.append("# Rules configuration\n");
+        configContent.append("RDFS_SUBSET=").append(rdfsSubsetEnabled).append("\n");
+        configContent.append("RDFS_RL=").append(rdfsRLEnabled).append("\n");
+        configContent.append("OWL_RL=").append(owlRLEnabled).append("\n");
+        configContent.append("OWL_RL_EXTENDED=").append(owlRLExtendedEnabled).append("\n");
+        configContent.append("OWL_RL_TEST=").append(owlRLTestEnabled).append("\n");
+        configContent.append("OWL_CLEAN=").append(owlCleanEnabled).append("\n");
+        return configContent;
+    }
+
+    /**
+     * Saves the graph next to the project configuration.
+     * The syntax follows the file extension (.ttl, .nt or .trig), Turtle being the default.
+     * Triples are streamed to disk, so the graph is never held in memory as text.
+     *
+     * @param targetFile The target file
+     * @param listener Receives the number of triples written, may be null
+     * @param cancelled Returns true when saving must stop, may be null
+     * @throws Exception If an error occurs during saving
+     */
+    private void saveProjectConfiguration(File targetFile, StreamingGraphWriter.Listener listener,
+                                          BooleanSupplier cancelled) throws Exception {
+        StreamingGraphWriter.Syntax syntax = StreamingGraphWriter.Syntax.of(targetFile);
+        String baseName = targetFile.getName();
+        if (!baseName.toLowerCase().endsWith(syntax.getExtension())) {
+            baseName += syntax.getExtension();
+        }
+        File graphFile = new File(targetFile.getParentFile(), baseName);
+        if (projectWatcher != null) {
+            // The saved graph must not be ingested back by the project watcher
+            projectWatcher.ignore(graphFile);
+        }
+
+        if (graphBackend == GraphBackend.OFF_HEAP) {
+            // The off-heap store is rebuilt from the project files, it is not written back
+            addLogEntry("Graph not saved: the off-heap store is loaded again from the project files");
+            return;
+        }
+        long start = System.currentTimeMillis();
+        long triples = StreamingGraphWriter.write(graph, graphFile.toPath(), syntax, listener, cancelled);
+        addLogEntry("Graph saved to: " + graphFile.getAbsolutePath() + " (" + triples + " triples in "
+                + (System.currentTimeMillis() - start) + " ms)");
+    }
+
+    /**
+     * Processes rules on the current graph.
+     * Every enabled rule is evaluated, then the rules triggered by the new inferences,
+     * until no new triple is inferred. In goal-directed reasoning, nothing is evaluated
+     * until a query needs it.
+     */
+    public void processRules() {
+        pendingDeltaFiles.clear();
+        fullReasoningNeeded = false;
+        instanceReasoningNeeded = false;
+        inferencesIncomplete = false;
+        if (!graphBackend.supportsReasoning()) {
+            addLogEntry("Rules are not applied to the " + graphBackend.getLabel().toLowerCase());
+            return;
+        }
+        if (goalDirectedReasoning) {
+            // The triples inferred so far stay sound, the next queries complete them
+            ruleProcessor.resetGoals();
+        } else {
+            try {
+                addLogEntry("Starting rule processing");
+
+                long start = System.currentTimeMillis();
+                int inferred = ruleProcessor.process();
+
+                long elapsed = System.currentTimeMillis() - start;
+                addLogEntry("Rules processing completed in " + elapsed + " ms. Added " +
+                        inferred + " new triples.");
+
+            } catch (Exception e) {
+                addLogEntry("Error processing rules: " + e.getMessage());
+            }
+        }
+        if (rdfsSubsetEnabled) {
+            materializeRdfsSubset();
+        }
+    }
+
+    /**
+     * Recomputes the instance-level inferences after instance files were retracted.
+     * The schema closure kept in the graph is reused: only the rules reading instance
+     * triples are started, joining them against the cached schema.
+     */
+    private void processInstanceRules() {
+        if (inferencesIncomplete || goalDirectedReasoning || !graphBackend.supportsReasoning()) {
+            // The schema closure itself may be partial, or left to the queries
+            processRules();
+            return;
+        }
+        pendingDeltaFiles.clear();
+        instanceReasoningNeeded = false;
+        try {
+            long start = System.currentTimeMillis();
+            int inferred = ruleProcessor.processInstances();
+            addLogEntry("Instance reasoning over the cached schema closure completed in "
+                    + (System.currentTimeMillis() - start) + " ms. Added " + inferred + " new triples.");
+        } catch (Exception e) {
+            addLogEntry("Error processing rules: " + e.getMessage());
+        }
+        if (rdfsSubsetEnabled) {
+            materializeRdfsSubset();
+        }
+    }
+
+    /**
+     * Brings the inferences up to date after files were added to a graph already at fixpoint.
+     * Only the rules reading the predicates of the new triples are started, so the cost
+     * follows the size of the new data rather than the size of the graph.
+     *
+     * @param files The files that were added
+     */
+    private void processDelta(Collection<File> files) {
+        if (files.isEmpty() || !graphBackend.supportsReasoning()) {
+            return;
+        }
+        if (ruleProcessor.getRules().isEmpty()) {
+            if (rdfsSubsetEnabled) {
+                materializeRdfsSubset();
+            }
+            return;
+        }
+        if (inferencesIncomplete || goalDirectedReasoning) {
+            // The graph is not at fixpoint, the new triples alone do not tell what is missing
+            processRules();
+            return;
+        }
+        try {
+            long start = System.currentTimeMillis();
+            Set<String> predicates = new HashSet<>();
+            for (File file : files) {
+                Load.format format = FormatDetector.detect(file);
+                if (format == Load.format.NQUADS_FORMAT || format == Load.format.TRIG_FORMAT) {
+                    // These files name their own graphs, their triples cannot be told apart
+                    addLogEntry(file.getName() + " declares its own named graphs, reasoning over the whole graph");
+                    processRules();
+                    return;
+                }
+                predicates.addAll(semanticGraph.getPredicates(file));
+            }
+
+            int inferred = ruleProcessor.processDelta(predicates);
+            addLogEntry("Incremental reasoning over " + files.size() + " file(s) completed in "
+                    + (System.currentTimeMillis() - start) + " ms. Added " + inferred + " new triples.");
+        } catch (Exception e) {
+            addLogEntry("Error processing rules: " + e.getMessage());
+        }
+        if (rdfsSubsetEnabled) {
+            materializeRdfsSubset();
+        }
+    }
+
+    /**
+     * Applies rules that were just enabled to a graph already at fixpoint for the other rules.
+     *
+     * @param ruleSet The enabled rules
+     * @throws Exception If a rule cannot be evaluated
+     */
+    private void applyNewRules(RuleSet ruleSet) throws Exception {
+        if (!graphBackend.supportsReasoning()) {
+            addLogEntry(ruleSet.getName() + " rules are not applied to the " + graphBackend.getLabel().toLowerCase());
+            return;
+        }
+        if (goalDirectedReasoning) {
+            ruleProcessor.resetGoals();
+        } else {
+            long start = System.currentTimeMillis();
+            int inferred = ruleProcessor.processRules(ruleSet.getRules());
+            addLogEntry(ruleSet.getName() + " rules applied in " + (System.currentTimeMillis() - start)
+                    + " ms. Added " + inferred + " new triples.");
+        }
+        if (rdfsSubsetEnabled) {
+            materializeRdfsSubset();
+        }
+    }
+
+    /**
+     * Materializes the RDFS Subset entailments of the graph.
+     * When rules are enabled as well, they are run over the new entailments, and the hierarchies
+     * are closed again over what they infer, until neither adds a triple.
+     */
+    private void materializeRdfsSubset() {
+        try {
+            long start = System.currentTimeMillis();
+            RdfsSubsetReasoner reasoner = rdfsSubsetReasoner;
+            int total = 0;
+            int inferred = reasoner.materialize();
+            boolean schemaReused = reasoner.isSchemaReused();
+            while (inferred > 0) {
+                total += inferred;
+                if (ruleProcessor.getRules().isEmpty() || goalDirectedReasoning
+                        || ruleProcessor.processDelta(reasoner.getProducedPredicates()) == 0) {
+                    break;
+                }
+                inferred = reasoner.materialize();
+            }
+            addLogEntry("RDFS Subset reasoning completed in " + (System.currentTimeMillis() - start)
+                    + " ms" + (schemaReused ? " with the cached schema closure" : "")
+                    + ". Added " + total + " new triples.");
+        } catch (Exception e) {
+            addLogEntry("Error processing RDFS Subset: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Retracts the RDFS Subset entailments. The rules that may have used them are run again
+     * over the whole graph.
+     */
+    private void retractRdfsSubset() {
+        try {
+            if (ruleProcessor.getRules().isEmpty()) {
+                QueryProcess.create(graph).query("CLEAR SILENT GRAPH <" + RDFS_SUBSET_GRAPH + ">");
+            } else {
+                semanticGraph.clearInferences();
+                processRules();
+            }
+        } catch (Exception e) {
+            addLogEntry("Error retracting RDFS Subset inferences: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Keeps the profile of the last rule run and logs its slowest rules.
+     *
+     * @param profile The profile of the run
+     */
+    private void recordRuleProfile(RuleProfile profile) {
+        if (profile.isAborted()) {
+            inferencesIncomplete = true;
+            lastRuleAbort = profile;
+            addLogEntry("Rule processing aborted by rule " + profile.getOffendingRule() + " ("
+                    + profile.getStopReason() + "), " + profile.getTriplesRolledBack()
+                    + " inferred triples rolled back");
+        } else if (!profile.isComplete()) {
+            inferencesIncomplete = true;
+            addLogEntry("Rule processing stopped (" + profile.getStopReason() + ") after "
+                    + profile.getTriplesInferred() + " inferred triples, inferences are partial");
+        }
+        logPrunedRules(profile);
+        if (profile.getIterations().isEmpty()) {
+            return;
+        }
+        lastRuleProfile = profile;
+        addLogEntry(profile.getSummary());
+        List<RuleProfile.RuleStats> slowest = profile.getRuleStats();
+        for (RuleProfile.RuleStats stats : slowest.subList(0, Math.min(3, slowest.size()))) {
+            addLogEntry("  " + stats.getName() + ": " + stats.getElapsedMillis() + " ms, "
+                    + stats.getEvaluations() + " evaluations, " + stats.getTriplesInferred() + " triples");
+        }
+    }
+
+    /**
+     * Logs the rules a run skipped because the graph lacks what they require.
+     *
+     * @param profile The profile of the run
+     */
+    private void logPrunedRules(RuleProfile profile) {
+        List<RuleProfile.PrunedRule> pruned = profile.getPrunedRules();
+        if (pruned.isEmpty()) {
+            return;
+        }
+        addLogEntry("Pruned " + pruned.size() + " rules that cannot match the graph (check took "
+                + profile.getPruningMillis() + " ms, saved about " + profile.getEstimatedSavedMillis() + " ms)");
+        for (RuleProfile.PrunedRule rule : pruned) {
+            addLogEntry("  " + rule.getRuleSet() + " / " + rule.getName() + ": no " + rule.getMissingTerm());
+        }
+    }
+
+    /**
+     * Returns whether the rules that cannot match the graph are skipped.
+     *
+     * @return True if rule pruning is enabled
+     */
+    public boolean isRulePruningEnabled() {
+        return rulePruningEnabled;
+    }
+
+    /**
+     * Sets whether the rules requiring a predicate or a class absent from the graph are skipped.
+     *
+     * @param enabled True to enable rule pruning
+     */
+    public void setRulePruningEnabled(boolean enabled) {
+        this.rulePruningEnabled = enabled;
+        ruleProcessor.setPruning(enabled);
+        addLogEntry("Rule pruning " + (enabled ? "enabled" : "disabled"));
+    }
+
+    /**
+     * Returns whether the owl:sameAs classes are canonicalized when an OWL RL profile is enabled.
+     *
+     * @return True if sameAs canonicalization is enabled
+     */
+    public boolean isSameAsCanonicalizationEnabled() {
+        return sameAsCanonicalizationEnabled;
+    }
+
+    /**
+     * Sets whether the owl:sameAs classes are canonicalized when an OWL RL profile is enabled,
+     * instead of copying every triple onto every alias. The inferences are computed again.
+     *
+     * @param enabled True to enable sameAs canonicalization
+     */
+    public void setSameAsCanonicalizationEnabled(boolean enabled) {
+        if (enabled == sameAsCanonicalizationEnabled) {
+            return;
+        }
+        this.sameAsCanonicalizationEnabled = enabled;
+        ruleProcessor = createRuleProcessor();
+        addLogEntry("sameAs canonicalization " + (enabled ? "enabled" : "disabled"));
+        if (!ruleProcessor.getRules().isEmpty()) {
+            semanticGraph.clearInferences();
+            processRules();
+        }
+    }
+
+    /**
+     * Returns whether the rule processor canonicalizes the sameAs classes: only the OWL RL
+     * rules, which RDFS RL relies on as well, materialize equality.
+     */
+    private boolean isSameAsCanonicalized() {
+        return sameAsCanonicalizationEnabled && (rdfsRLEnabled || owlRLEnabled || owlRLExtendedEnabled);
+    }
+
+    /**
+     * Keeps the sameAs canonicalization of the rule processor in line with the enabled rules.
+     * When it stops, the triples copied onto the representatives are no longer entailed and are dropped.
+     */
+    private void updateSameAsCanonicalization() {
+        boolean canonicalized = isSameAsCanonicalized();
+        if ((ruleProcessor.getSameAsCanonicalizer() != null) == canonicalized) {
+            return;
+        }
+        ruleProcessor.setSameAsCanonicalization(canonicalized);
+        if (canonicalized) {
+            return;
+        }
+        try {
+            if (ruleProcessor.getRules().isEmpty()) {
+                QueryProcess.create(graph).query("CLEAR SILENT GRAPH <" + ruleProcessor.getSameAsGraph() + ">");
+            } else {
+                // The remaining rules may have concluded from the copies
+                semanticGraph.clearInferences();
+                processRules();
+            }
+        } catch (Exception e) {
+            addLogEntry("Error retracting sameAs canonicalization: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns whether the rules are run for each query instead of being materialized.
+     *
+     * @return True if goal-directed reasoning is enabled
+     */
+    public boolean isGoalDirectedReasoning() {
+        return goalDirectedReasoning;
+    }
+
+    /**
+     * Sets whether the rules are run for each query on what it reads, instead of being materialized.
+     * Enabling it drops the materialized inferences; disabling it materializes every rule.
+     *
+     * @param enabled True to enable goal-directed reasoning
+     */
+    public void setGoalDirectedReasoning(boolean enabled) {
+        if (enabled == goalDirectedReasoning) {
+            return;
+        }
+        this.goalDirectedReasoning = enabled;
+        if (enabled) {
+            semanticGraph.clearInferences();
+            ruleProcessor.resetGoals();
+            inferencesIncomplete = false;
+            if (rdfsSubsetEnabled) {
+                materializeRdfsSubset();
+            }
+            addLogEntry("Goal-directed reasoning enabled, queries derive the inferences they need");
+        } else {
+            addLogEntry("Goal-directed reasoning disabled, materializing the inferences");
+            processRules();
+        }
+    }
+
+    /**
+     * Returns the number of rules evaluated concurrently within a fixpoint iteration.
+     *
+     * @return The number of rule worker threads
+     */
+    public int getRuleParallelism() {
+        return ruleParallelism;
+    }
+
+    /**
+     * Sets the number of rules evaluated concurrently within a fixpoint iteration.
+     *
+     * @param parallelism The number of rule worker threads, 1 to evaluate rules one by one
+     */
+    public void setRuleParallelism(int parallelism) {
+        this.ruleParallelism = Math.max(1, parallelism);
+        ruleProcessor.setParallelism(ruleParallelism);
+        addLogEntry("Rule evaluation parallelism set to " + ruleParallelism);
+    }
+
+    /**
+     * Returns the limits applied to each rule run.
+     *
+     * @return The rule budget
+     */
+    public RuleBudget getRuleBudget() {
+        return ruleBudget;
+    }
+
+    /**
+     * Sets the limits applied to each rule run.
+     * A run reaching a limit stops cleanly and keeps the triples inferred so far.
+     *
+     * @param budget The budget, or null for no limit
+     */
+    public void setRuleBudget(RuleBudget budget) {
+        this.ruleBudget = budget != null ? budget : RuleBudget.UNLIMITED;
+        ruleProcessor.setBudget(ruleBudget);
+        addLogEntry("Rule budget set to " + ruleBudget);
+    }
+
+    /**
+     * Returns the caps that abort a rule run.
+     *
+     * @return The rule guard
+     */
+    public RuleGuard getRuleGuard() {
+        return ruleGuard;
+    }
+
+    /**
+     * Sets the caps that abort a rule run. Unlike the budget, a run tripping the guard
+     * rolls back everything it inferred, and the offending rule is reported.
+     *
+     * @param guard The guard, or null for no cap
+     */
+    public void setRuleGuard(RuleGuard guard) {
+        this.ruleGuard = guard != null ? guard : RuleGuard.NONE;
+        ruleProcessor.setGuard(ruleGuard);
+        addLogEntry("Rule guard set to " + ruleGuard);
+    }
+
+    /**
+     * Returns the profile of the last rule run aborted by the guard.
+     *
+     * @return The profile, or null if no run was aborted
+     */
+    public RuleProfile getLastRuleAbort() {
+        return lastRuleAbort;
+    }
+
+    /**
+     * Sets the monitor notified of the progress of rule runs and asked whether to stop.
+     *
+     * @param monitor The monitor, or null to remove it
+     */
+    public void setRuleMonitor(RuleMonitor monitor) {
+        this.ruleMonitor = monitor != null ? monitor : RuleMonitor.NONE;
+        ruleProcessor.setMonitor(ruleMonitor);
+    }
+
+    /**
+     * Returns why the last save of the project did not cache the inferences, so that the user is told.
      *
-     * @param queryString The query string to analyze
-     * @return The query type (SELECT, CONSTRUCT, ASK, or DESCRIBE)
+     * @return The reason, or null if the inferences were cached or there was nothing to cache
      */
-    private String determineQueryType(String queryString) {
-        // Remove prefixes and clean up the query string
-        String cleanedQuery = queryString.replaceAll("^\\s*PREFIX\\s+[^:]+:\\s*<[^>]+>\\s*", "")
-                .replaceAll("^\\s*PREFIX\\s+[^:]+:\\s*<[^>]+>\\s*", "")
-                .trim()
-                .toUpperCase();
+    public String getInferenceCacheWarning() {
+        return inferenceCacheWarning;
+    }
 
-        if (cleanedQuery.startsWith("SELECT")) return "SELECT";
-        if (cleanedQuery.startsWith("CONSTRUCT")) return "CONSTRUCT";
-        if (cleanedQuery.startsWith("ASK")) return "ASK";
-        if (cleanedQuery.startsWith("DESCRIBE")) return "DESCRIBE";
-        return "UNKNOWN";
+    /**
+     * Returns whether the last rule run stopped before reaching the fixpoint.
+     *
+     * @return True if some inferences may be missing
+     */
+    public boolean isInferencesIncomplete() {
+        return inferencesIncomplete;
     }
 
     /**
-     * Clears the graph and resets rule engines.
+     * Returns the profile of the last rule run.
+     *
+     * @return The profile, or null if no rule was run yet
      */
-    public void clearGraph() {
-        initializeGraph();
-        semanticGraph.clearGraph();
-        addLogEntry("Graph cleared");
+    public RuleProfile getLastRuleProfile() {
+        return lastRuleProfile;
     }
 
     /**
-     * Clears the file list.
+     * Exports the profile of the last rule run as JSON.
+     *
+     * @param targetFile The JSON file to write
+     * @throws IOException If the file cannot be written
      */
-    public void clearFiles() {
-        fileListModel.clearFiles();
-        loadedFiles.clear();
+    public void exportRuleProfile(File targetFile) throws IOException {
+        if (lastRuleProfile == null) {
+            throw new IOException("No rule run to export");
+        }
+        Files.writeString(targetFile.toPath(), lastRuleProfile.toJson());
+        addLogEntry("Rule profile exported to: " + targetFile.getAbsolutePath());
     }
 
     /**
-     * Reloads all files in the project.
+     * Creates a rule processor holding the enabled rule sets.
+     *
+     * @return The rule processor
      */
-    public void reloadFiles() {
-        clearGraph();
-        for (File file : loadedFiles) {
-            try {
-                loadFile(file);
-                addLogEntry("Reloaded file: " + file.getName());
-            } catch (Exception e) {
-                addLogEntry("Error reloading file " + file.getName() + ": " + e.getMessage());
-            }
+    private RuleProcessor createRuleProcessor() {
+        RuleProcessor processor = new RuleProcessor(graph, CoreseGraph.INFERENCE_GRAPH);
+        processor.setProfileListener(this::recordRuleProfile);
+        processor.setParallelism(ruleParallelism);
+        processor.setBudget(ruleBudget);
+        processor.setGuard(ruleGuard);
+        processor.setMonitor(ruleMonitor);
+        processor.setPruning(rulePruningEnabled);
+        processor.setSameAsCanonicalization(isSameAsCanonicalized());
+        for (RuleSet ruleSet : getEnabledRuleSets()) {
+            processor.addRuleSet(ruleSet);
         }
+        return processor;
     }
 
     /**
-     * Loads a project from a directory.
+     * Returns the rule sets enabled by the rule states.
+     * RDFS RL relies on the OWL RL profile, which is only added once.
      *
-     * @param directory The project directory
+     * @return The enabled rule sets
      */
-    public void loadProject(File directory) {
-        clearGraph();
-        clearFiles();
-        this.projectPath = directory.getAbsolutePath();
-        addLogEntry("Loading project from: " + directory.getAbsolutePath());
+    private List<RuleSet> getEnabledRuleSets() {
+        Set<RuleSet> ruleSets = new LinkedHashSet<>();
+        if (rdfsRLEnabled || owlRLEnabled) addProfileRuleSet(ruleSets, RuleEngine.OWL_RL);
+        if (owlRLExtendedEnabled) addProfileRuleSet(ruleSets, RuleEngine.OWL_RL_EXT);
+        if (owlRLTestEnabled) addProfileRuleSet(ruleSets, RuleEngine.OWL_RL_TEST);
+
+        for (Map.Entry<String, RuleSet> entry : customRuleSets.entrySet()) {
+            if (customRuleStates.getOrDefault(entry.getKey(), false)) {
+                ruleSets.add(entry.getValue());
+            }
+        }
+        return new ArrayList<>(ruleSets);
+    }
 
-        // Try to load the context first
+    private void addProfileRuleSet(Set<RuleSet> ruleSets, int profile) {
         try {
-            File contextFile = new File(directory, "project.context");
-            if (contextFile.exists()) {
-                semanticGraph.loadContext(contextFile.getAbsolutePath());
-                addLogEntry("Project context restored");
-
-                // Reload the state from the semantic graph
-                restoreState();
-            }
+            ruleSets.add(getProfileRuleSet(profile));
         } catch (Exception e) {
-            addLogEntry("Could not restore project context: " + e.getMessage());
-            // Continue with normal loading
-            loadProjectFiles(directory);
-            loadProjectRules(directory);
+            addLogEntry("Error loading " + getProfileName(profile) + " rules: " + e.getMessage());
         }
     }
 
     /**
-     * Loads all TTL files from a project directory.
+     * Returns the rules of a Corese profile, read once and then cached.
      *
-     * @param directory The project directory
+     * @param profile The Corese profile
+     * @return The rule set
+     * @throws Exception If the profile cannot be loaded
      */
-    private void loadProjectFiles(File directory) {
-        File[] ttlFiles = directory.listFiles((dir, name) -> name.toLowerCase().endsWith(".ttl"));
-        if (ttlFiles != null) {
-            for (File file : ttlFiles) {
-                try {
-                    loadFile(file);
-                } catch (Exception e) {
-                    addLogEntry("Error loading file " + file.getName() + ": " + e.getMessage());
-                }
-            }
+    private RuleSet getProfileRuleSet(int profile) throws Exception {
+        RuleSet ruleSet = profileRuleSets.get(profile);
+        if (ruleSet == null) {
+            ruleSet = RuleSet.fromProfile(getProfileName(profile), profile);
+            logUnsupportedRules(ruleSet);
+            profileRuleSets.put(profile, ruleSet);
+        }
+        return ruleSet;
+    }
+
+    private static String getProfileName(int profile) {
+        if (profile == RuleEngine.OWL_RL_EXT) return "OWL RL Extended";
+        if (profile == RuleEngine.OWL_RL_TEST) return "OWL RL Test";
+        return "OWL RL";
+    }
+
+    private void logUnsupportedRules(RuleSet ruleSet) {
+        for (String rule : ruleSet.getUnsupportedRules()) {
+            addLogEntry("Rule skipped in " + ruleSet.getName() + ": " + rule);
         }
     }
 
     /**
-     * Loads all rule files from a project directory.
+     * Enables the rules of a Corese profile and applies them.
      *
-     * @param directory The project directory
+     * @param profile The Corese profile
+     * @param label The rule state shown to the user
      */
-    private void loadProjectRules(File directory) {
-        File rulesDir = new File(directory, "rules");
-        if (rulesDir.exists() && rulesDir.isDirectory()) {
-            File[] ruleFiles = rulesDir.listFiles((dir, name) -> name.toLowerCase().endsWith(".rul"));
-            if (ruleFiles != null) {
-                for (File ruleFile : ruleFiles) {
-                    try {
-                        loadRuleFile(ruleFile);
-                    } catch (Exception e) {
-                        addLogEntry("Error loading rule file " + ruleFile.getName() + ": " + e.getMessage());
-                    }
-                }
+    private void enableProfile(int profile, String label) {
+        try {
+            RuleSet ruleSet = getProfileRuleSet(profile);
+            boolean alreadyActive = ruleProcessor.getRuleSets().contains(ruleSet);
+            ruleProcessor = createRuleProcessor();
+            if (!alreadyActive) {
+                applyNewRules(ruleSet);
             }
+            addLogEntry(label + " rules enabled");
+        } catch (Exception e) {
+            addLogEntry("Error loading " + label + ": " + e.getMessage());
         }
     }
 
     /**
-     * Saves the current project to a file.
-     *
-     * @param targetFile The target file
+     * Reloads all rules.
      */
-    public void saveProject(File targetFile) {
-        try {
-            Path projectDir = Paths.get(targetFile.getParent());
-            Files.createDirectories(projectDir);
-
-            // Save the context
-            semanticGraph.saveContext();
-
-            // Save rules configuration
-            saveRulesConfiguration(projectDir);
+    public void reloadRules() {
+        // Drop what disabled rules inferred, custom rules are kept parsed
+        retractDisabledRules();
 
-            // Save project configuration
-            saveProjectConfiguration(targetFile);
+        // Apply all rules
+        processRules();
+    }
 
-            this.projectPath = projectDir.toString();
-            addLogEntry("Project and context saved successfully to: " + projectDir);
+    /**
+     * Removes the rule sets that are no longer enabled and retracts what they inferred.
+     * Each rule set infers into its own named graph, so the cost follows what the
+     * disabled rules inferred rather than the size of the graph.
+     */
+    private void retractDisabledRules() {
+        List<RuleSet> disabled = ruleProcessor.getRuleSets();
+        disabled.removeAll(getEnabledRuleSets());
+        if (disabled.isEmpty()) {
+            return;
+        }
+        if (goalDirectedReasoning) {
+            // Re-deriving would materialize the remaining rules: drop every inference, queries derive them again
+            ruleProcessor = createRuleProcessor();
+            semanticGraph.clearInferences();
+            if (rdfsSubsetEnabled) {
+                materializeRdfsSubset();
+            }
+            addLogEntry("Disabled " + disabled + ", inferences dropped");
+            return;
+        }
+        try {
+            long start = System.currentTimeMillis();
+            int retracted = ruleProcessor.removeRuleSets(disabled);
+            if (rdfsSubsetEnabled) {
+                // The subset entailments may come from the retracted triples, they are derived again
+                QueryProcess.create(graph).query("CLEAR SILENT GRAPH <" + RDFS_SUBSET_GRAPH + ">");
+                materializeRdfsSubset();
+            }
+            addLogEntry("Disabled " + disabled + " in " + (System.currentTimeMillis() - start)
+                    + " ms. Retracted " + retracted + " inferred triples.");
         } catch (Exception e) {
-            addLogEntry("Error saving project: " + e.getMessage());
+            addLogEntry("Error retracting inferred triples: " + e.getMessage());
         }
+        updateSameAsCanonicalization();
     }
 
     /**
-     * Saves the rules configuration to a file.
+     * Records a rule state change without applying it.
+     * Changing a rule back to its current state cancels the pending change.
      *
-     * @param projectDir The project directory
-     * @throws Exception If an error occurs during saving
+     * @param ruleName The name of the rule
+     * @param enabled The new state
      */
-    private void saveRulesConfiguration(Path projectDir) throws Exception {
-        Path rulesDir = projectDir.resolve("rules");
-        Files.createDirectories(rulesDir);
-
-        StringBuilder configContent = createRulesConfigContent();
-        File configFile = new File(projectDir.toFile(), "rules.config");
-        try (FileOutputStream out = new FileOutputStream(configFile)) {
-            Properties props = new Properties();
-            props.setProperty("RDFS_SUBSET", String.valueOf(rdfsSubsetEnabled));
-            props.setProperty("RDFS_RL", String.valueOf(rdfsRLEnabled));
-            props.setProperty("OWL_RL", String.valueOf(owlRLEnabled));
-            props.setProperty("OWL_RL_EXTENDED", String.valueOf(owlRLExtendedEnabled));
-            props.setProperty("OWL_RL_TEST", String.valueOf(owlRLTestEnabled));
-            props.setProperty("OWL_CLEAN", String.valueOf(owlCleanEnabled));
-
-            // Save custom rule states
-            for (Map.Entry<String, Boolean> entry : customRuleStates.entrySet()) {
-                props.setProperty("CUSTOM_RULE_" + entry.getKey(), String.valueOf(entry.getValue()));
-            }
-
-            props.store(out, "Rules configuration");
+    public void stageRuleChange(String ruleName, boolean enabled) {
+        if (isRuleEnabled(ruleName) == enabled) {
+            pendingRuleChanges.remove(ruleName);
+        } else {
+            pendingRuleChanges.put(ruleName, enabled);
         }
-        addLogEntry("Rules configuration saved to: " + configFile.getAbsolutePath());
     }
 
     /**
-     * Creates the content for the rules configuration file.
+     * Returns the rule state changes waiting to be applied.
      *
-     * @return The rules configuration content
+     * @return The new states, by rule name
      */
-    private StringBuilder createRulesConfigContent() {
-        StringBuilder configContent = new StringBuilder();
-        configContent.append("# Rules configuration\n");
-        configContent.append("RDFS_SUBSET=").append(rdfsSubsetEnabled).append("\n");
-        configContent.append("RDFS_RL=").append(rdfsRLEnabled).append("\n");
-        configContent.append("OWL_RL=").append(owlRLEnabled).append("\n");
-        configContent.append("OWL_RL_EXTENDED=").append(owlRLExtendedEnabled).append("\n");
-        configContent.append("OWL_RL_TEST=").append(owlRLTestEnabled).append("\n");
-        configContent.append("OWL_CLEAN=").append(owlCleanEnabled).append("\n");
-        return configContent;
+    public Map<String, Boolean> getPendingRuleChanges() {
+        return Collections.unmodifiableMap(pendingRuleChanges);
+    }
+
+    public boolean hasPendingRuleChanges() {
+        return !pendingRuleChanges.isEmpty();
     }
 
     /**
-     * Saves the project configuration to a file.
-     *
-     * @param targetFile The target file
-     * @throws Exception If an error occurs during saving
+     * Forgets the rule state changes waiting to be applied.
      */
-    private void saveProjectConfiguration(File targetFile) throws Exception {
-        String baseName = targetFile.getName();
-        if (!baseName.endsWith(".ttl")) {
-            baseName += ".ttl";
-        }
-        File graphFile = new File(targetFile.getParentFile(), baseName);
-        try (FileOutputStream out = new FileOutputStream(graphFile)) {
-            out.write(graph.toString().getBytes());
-        }
-        addLogEntry("Graph saved to: " + graphFile.getAbsolutePath());
+    public void discardPendingRuleChanges() {
+        pendingRuleChanges.clear();
     }
 
     /**
-     * Processes rules on the current graph.
+     * Returns how long the last application of pending rule changes took.
+     *
+     * @return The duration in milliseconds, or -1 if no change was applied yet
      */
-    public void processRules() {
-        try {
-            addLogEntry("Starting rule processing");
+    public long getLastRuleApplyMillis() {
+        return lastRuleApplyMillis;
+    }
 
-            int tripletsBefore = graph.size();
+    /**
+     * Applies every pending rule state change at once.
+     * The disabled rule sets are retracted together, then the enabled ones are
+     * evaluated in a single run, instead of one retraction or run per change.
+     */
+    public void applyPendingRuleChanges() {
+        if (pendingRuleChanges.isEmpty()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        Map<String, Boolean> changes = new LinkedHashMap<>(pendingRuleChanges);
+        pendingRuleChanges.clear();
+        for (Map.Entry<String, Boolean> change : changes.entrySet()) {
+            setRuleState(change.getKey(), change.getValue());
+            addLogEntry(change.getKey() + " rules " + (change.getValue() ? "enabled" : "disabled"));
+        }
 
-            // Process rules
-            ruleEngine.process();
+        retractDisabledRules();
 
-            int tripletsAfter = graph.size();
-            addLogEntry("Rules processing completed. Added " +
-                    (tripletsAfter - tripletsBefore) + " new triples.");
+        List<RuleSet> added = getEnabledRuleSets();
+        added.removeAll(ruleProcessor.getRuleSets());
+        updateSameAsCanonicalization();
+        if (!added.isEmpty()) {
+            List<InferenceRule> rules = new ArrayList<>();
+            for (RuleSet ruleSet : added) {
+                ruleProcessor.addRuleSet(ruleSet);
+                rules.addAll(ruleSet.getRules());
+            }
+            if (goalDirectedReasoning) {
+                ruleProcessor.resetGoals();
+            } else {
+                try {
+                    int inferred = ruleProcessor.processRules(rules);
+                    addLogEntry(added + " rules applied. Added " + inferred + " new triples.");
+                } catch (Exception e) {
+                    addLogEntry("Error processing rules: " + e.getMessage());
+                }
+            }
+        }
 
-        } catch (Exception e) {
-            addLogEntry("Error processing rules: " + e.getMessage());
+        Boolean subset = changes.get("RDFS Subset");
+        if (rdfsSubsetEnabled) {
+            materializeRdfsSubset();
+        } else if (Boolean.FALSE.equals(subset)) {
+            retractRdfsSubset();
         }
+
+        lastRuleApplyMillis = System.currentTimeMillis() - start;
+        addLogEntry("Applied " + changes.size() + " rule change(s) in " + lastRuleApplyMillis + " ms");
     }
 
     /**
-     * Reloads all rules.
+     * Returns the applied state of a rule.
+     *
+     * @param ruleName The name of the rule
+     * @return True if the rule is enabled
      */
-    public void reloadRules() {
-        // Save custom rules
-        Set<String> customRules = new HashSet<>(customRuleStates.keySet());
-
-        // Reset rule engine
-        this.ruleEngine = RuleEngine.create(graph);
-
-        // Reload predefined rules
-        if (rdfsSubsetEnabled) loadRDFSSubset();
-        if (rdfsRLEnabled) loadRDFSRL();
-        if (owlRLEnabled) loadOWLRL();
-        if (owlRLExtendedEnabled) loadOWLRLExtended();
-        if (owlRLTestEnabled) loadOWLRLTest();
-        if (owlCleanEnabled) loadOWLClean();
-
-        // Reload custom rules
-        for (String ruleName : customRules) {
-            if (customRuleStates.getOrDefault(ruleName, false)) {
-                for (File ruleFile : loadedRuleFiles) {
-                    if (ruleFile.getName().equals(ruleName)) {
-                        try {
-                            RuleLoad ruleLoader = RuleLoad.create(ruleEngine);
-                            ruleLoader.parse(ruleFile.getAbsolutePath());
-                        } catch (Exception e) {
-                            addLogEntry("Error reloading custom rule " + ruleName + ": " + e.getMessage());
-                        }
-                        break;
-                    }
-                }
-            }
-        }
+    private boolean isRuleEnabled(String ruleName) {
+        return switch (ruleName) {
+            case "RDFS Subset" -> rdfsSubsetEnabled;
+            case "RDFS RL" -> rdfsRLEnabled;
+            case "OWL RL" -> owlRLEnabled;
+            case "OWL RL Extended" -> owlRLExtendedEnabled;
+            case "OWL RL Test" -> owlRLTestEnabled;
+            case "OWL Clean" -> owlCleanEnabled;
+            default -> isCustomRuleEnabled(ruleName);
+        };
+    }
 
-        // Apply all rules
-        try {
-            ruleEngine.process();
-        } catch (Exception e) {
-            addLogEntry("Error processing rules: " + e.getMessage());
+    /**
+     * Sets the state of a rule without applying it.
+     *
+     * @param ruleName The name of the rule
+     * @param enabled The new state
+     */
+    private void setRuleState(String ruleName, boolean enabled) {
+        switch (ruleName) {
+            case "RDFS Subset" -> rdfsSubsetEnabled = enabled;
+            case "RDFS RL" -> rdfsRLEnabled = enabled;
+            case "OWL RL" -> owlRLEnabled = enabled;
+            case "OWL RL Extended" -> owlRLExtendedEnabled = enabled;
+            case "OWL RL Test" -> owlRLTestEnabled = enabled;
+            case "OWL Clean" -> owlCleanEnabled = enabled;
+            default -> customRuleStates.put(ruleName, enabled);
         }
     }
 
@@ -489,8 +2077,12 @@ public class ApplicationStateManager {
      * Loads and applies RDFS Subset rules.
      */
     public void loadRDFSSubset() {
-        // Implementation for RDFS Subset
-        addLogEntry("RDFS Subset rules " + (rdfsSubsetEnabled ? "enabled" : "disabled"));
+        if (rdfsSubsetEnabled) {
+            materializeRdfsSubset();
+            addLogEntry("RDFS Subset rules enabled");
+        } else {
+            addLogEntry("RDFS Subset rules disabled");
+        }
     }
 
     /**
@@ -498,14 +2090,7 @@ public class ApplicationStateManager {
      */
     public void loadRDFSRL() {
         if (rdfsRLEnabled) {
-            try {
-                RuleEngine engine = RuleEngine.create(graph);
-                engine.setProfile(RuleEngine.OWL_RL);
-                engine.process();
-                addLogEntry("RDFS RL rules enabled");
-            } catch (Exception e) {
-                addLogEntry("Error loading RDFS RL: " + e.getMessage());
-            }
+            enableProfile(RuleEngine.OWL_RL, "RDFS RL");
         } else {
             addLogEntry("RDFS RL rules disabled");
         }
@@ -516,13 +2101,7 @@ public class ApplicationStateManager {
      */
     public void loadOWLRL() {
         if (owlRLEnabled) {
-            try {
-                ruleEngine.setProfile(RuleEngine.OWL_RL);
-                ruleEngine.process();
-                addLogEntry("OWL RL rules enabled");
-            } catch (Exception e) {
-                addLogEntry("Error loading OWL RL: " + e.getMessage());
-            }
+            enableProfile(RuleEngine.OWL_RL, "OWL RL");
         } else {
             addLogEntry("OWL RL rules disabled");
         }
@@ -533,13 +2112,7 @@ public class ApplicationStateManager {
      */
     public void loadOWLRLExtended() {
         if (owlRLExtendedEnabled) {
-            try {
-                ruleEngine.setProfile(RuleEngine.OWL_RL_EXT);
-                ruleEngine.process();
-                addLogEntry("OWL RL Extended rules enabled");
-            } catch (Exception e) {
-                addLogEntry("Error loading OWL RL Extended: " + e.getMessage());
-            }
+            enableProfile(RuleEngine.OWL_RL_EXT, "OWL RL Extended");
         } else {
             addLogEntry("OWL RL Extended rules disabled");
         }
@@ -550,13 +2123,7 @@ public class ApplicationStateManager {
      */
     public void loadOWLRLTest() {
         if (owlRLTestEnabled) {
-            try {
-                ruleEngine.setProfile(RuleEngine.OWL_RL_TEST);
-                ruleEngine.process();
-                addLogEntry("OWL RL Test rules enabled");
-            } catch (Exception e) {
-                addLogEntry("Error loading OWL RL Test: " + e.getMessage());
-            }
+            enableProfile(RuleEngine.OWL_RL_TEST, "OWL RL Test");
         } else {
             addLogEntry("OWL RL Test rules disabled");
         }
@@ -576,9 +2143,15 @@ public class ApplicationStateManager {
      * @param ruleName The name of the rule to remove
      */
     public void removeRule(String ruleName) {
-        customRuleStates.put(ruleName, false);
-        reloadRules();
-        addLogEntry("Rule removed: " + ruleName);
+        Lock lock = acquire(graphLock.writeLock());
+        try {
+            pendingRuleChanges.remove(ruleName);
+            customRuleStates.put(ruleName, false);
+            retractDisabledRules();
+            addLogEntry("Rule removed: " + ruleName);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -587,7 +2160,7 @@ public class ApplicationStateManager {
     public void saveCurrentState() {
         try {
             // Save the context of the graph
-            semanticGraph.saveContext();
+            getActiveGraph().saveContext();
 
             addLogEntry("Current state saved");
         } catch (Exception e) {
@@ -599,31 +2172,54 @@ public class ApplicationStateManager {
      * Restores the state from the saved context.
      */
     public void restoreState() {
+        Lock lock = graphLock.writeLock();
+        if (!lock.tryLock()) {
+            // The background task updates the state itself when it finishes
+            addLogEntry("State not restored: a background task is modifying the graph");
+            return;
+        }
         try {
             // Load files and rules from the semantic graph
             loadedFiles.clear();
-            loadedFiles.addAll(semanticGraph.getLoadedFiles());
+            loadedFiles.addAll(getActiveGraph().getLoadedFiles());
+            schemaFiles.clear();
+            for (File file : loadedFiles) {
+                classifyFile(file);
+            }
 
             loadedRuleFiles.clear();
             loadedRuleFiles.addAll(semanticGraph.getLoadedRules());
 
             // Clear file list model and reload it
-            fileListModel.clearFiles();
-            for (File file : loadedFiles) {
-                fileListModel.addFile(file.getName());
-            }
+            List<File> restoredFiles = new ArrayList<>(loadedFiles);
+            runOnFxThread(() -> {
+                fileListModel.clearFiles();
+                for (File file : restoredFiles) {
+                    fileListModel.addFile(file.getName());
+                }
+            });
 
-            // Reload rules if OWL RL is enabled
-            if (owlRLEnabled) {
-                ruleEngine = RuleEngine.create(graph);
-                ruleEngine.setProfile(RuleEngine.OWL_RL);
-                ruleEngine.process();
-                addLogEntry("OWL RL rules reapplied after state restoration");
+            // Parse the restored rule files and reapply the enabled rules
+            for (File ruleFile : loadedRuleFiles) {
+                try {
+                    customRuleSets.put(ruleFile.getName(), RuleSet.fromFile(ruleFile));
+                } catch (Exception e) {
+                    addLogEntry("Error reloading rule file " + ruleFile.getName() + ": " + e.getMessage());
+                }
+            }
+            ruleProcessor = createRuleProcessor();
+            if (restoreInferenceCache()) {
+                addLogEntry("Cached inferences reused after state restoration");
+            } else if (!ruleProcessor.getRules().isEmpty()) {
+                processRules();
+                addLogEntry("Rules reapplied after state restoration");
             }
 
             addLogEntry("State restored");
         } catch (Exception e) {
             addLogEntry("Error restoring state: " + e.getMessage());
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -660,7 +2256,7 @@ public class ApplicationStateManager {
      * @return The number of semantic elements
      */
     public int getSemanticElementsCount() {
-        return semanticGraph.getSemanticElementsCount();
+        return getActiveGraph().getSemanticElementsCount();
     }
 
     /**
@@ -669,7 +2265,7 @@ public class ApplicationStateManager {
      * @return The number of triplets
      */
     public int getTripletCount() {
-        return semanticGraph.getTripletCount();
+        return getActiveGraph().getTripletCount();
     }
 
     /**
@@ -678,7 +2274,7 @@ public class ApplicationStateManager {
      * @return The number of graphs
      */
     public int getGraphCount() {
-        return semanticGraph.getGraphCount();
+        return getActiveGraph().getGraphCount();
     }
 
     /**
@@ -710,7 +2306,22 @@ public class ApplicationStateManager {
      */
     public void addLogEntry(String entry) {
         logEntries.add(entry);
-        semanticGraph.addLogEntry(entry);
+        getActiveGraph().addLogEntry(entry);
+    }
+
+    /**
+     * Runs an action on the JavaFX application thread.
+     * Observable models bound to the views must only be modified from that thread,
+     * while loading may run on a background worker.
+     *
+     * @param action The action to run
+     */
+    private void runOnFxThread(Runnable action) {
+        if (Platform.isFxApplicationThread()) {
+            action.run();
+        } else {
+            Platform.runLater(action);
+        }
     }
 
     /**
@@ -723,12 +2334,65 @@ public class ApplicationStateManager {
     }
 
     /**
-     * Returns the semantic graph.
+     * Returns the semantic graph holding the data, which depends on the graph backend.
      *
      * @return The semantic graph
      */
     public SemanticGraph getSemanticGraph() {
-        return semanticGraph;
+        return getActiveGraph();
+    }
+
+    private SemanticGraph getActiveGraph() {
+        return graphBackend == GraphBackend.OFF_HEAP ? offHeapGraph : semanticGraph;
+    }
+
+    /**
+     * Returns the storage used for the data.
+     *
+     * @return The graph backend
+     */
+    public GraphBackend getGraphBackend() {
+        return graphBackend;
+    }
+
+    /**
+     * Sets the storage used for the data. The graph is cleared and the loaded files
+     * are parsed again into the new storage; the off-heap store does not apply rules.
+     *
+     * @param backend The graph backend
+     * @throws IllegalStateException If a background task is modifying the graph
+     */
+    public void setGraphBackend(GraphBackend backend) {
+        setGraphBackend(backend, LoadMonitor.NONE);
+    }
+
+    /**
+     * Sets the storage used for the data, reporting the progress of reloading the files.
+     *
+     * @param backend The graph backend
+     * @param monitor The monitor notified of the loading progress and checked for cancellation
+     * @throws IllegalStateException If a background task is modifying the graph
+     */
+    public void setGraphBackend(GraphBackend backend, LoadMonitor monitor) {
+        if (backend == graphBackend) {
+            return;
+        }
+        Lock lock = acquire(graphLock.writeLock());
+        try {
+            List<File> files = new ArrayList<>(loadedFiles);
+            clearGraph();
+            clearFiles();
+            if (backend == GraphBackend.OFF_HEAP && offHeapGraph == null) {
+                offHeapGraph = new OffHeapGraph();
+            }
+            this.graphBackend = backend;
+            initializeGraph();
+            addLogEntry("Graph backend: " + backend.getLabel());
+            loadFiles(files, monitor);
+        } finally {
+            lock.unlock();
+        }
+        notifyGraphChanged();
     }
 
     /**
@@ -746,11 +2410,12 @@ public class ApplicationStateManager {
      * @param enabled The new state
      */
     public void setRDFSSubsetEnabled(boolean enabled) {
+        boolean wasEnabled = rdfsSubsetEnabled;
         this.rdfsSubsetEnabled = enabled;
         if (enabled) {
             loadRDFSSubset();
-        } else {
-            reloadRules();
+        } else if (wasEnabled) {
+            retractRdfsSubset();
         }
     }
 
@@ -773,7 +2438,7 @@ public class ApplicationStateManager {
         if (enabled) {
             loadRDFSRL();
         } else {
-            reloadRules();
+            retractDisabledRules();
         }
     }
 
@@ -796,7 +2461,7 @@ public class ApplicationStateManager {
         if (enabled) {
             loadOWLRL();
         } else {
-            reloadRules();
+            retractDisabledRules();
         }
     }
 
@@ -819,7 +2484,7 @@ public class ApplicationStateManager {
         if (enabled) {
             loadOWLRLExtended();
         } else {
-            reloadRules();
+            retractDisabledRules();
         }
     }
 
@@ -842,7 +2507,7 @@ public class ApplicationStateManager {
         if (enabled) {
             loadOWLRLTest();
         } else {
-            reloadRules();
+            retractDisabledRules();
         }
     }
 
@@ -865,7 +2530,7 @@ public class ApplicationStateManager {
         if (enabled) {
             loadOWLClean();
         } else {
-            reloadRules();
+            retractDisabledRules();
         }
     }
 
@@ -886,7 +2551,22 @@ public class ApplicationStateManager {
      * @param enabled The new state
      */
     public void setCustomRuleEnabled(String ruleName, boolean enabled) {
-        customRuleStates.put(ruleName, enabled);
-        reloadRules();
+        Lock lock = acquire(graphLock.writeLock());
+        try {
+            customRuleStates.put(ruleName, enabled);
+            RuleSet ruleSet = customRuleSets.get(ruleName);
+            if (!enabled) {
+                retractDisabledRules();
+            } else if (ruleSet != null && !ruleProcessor.getRuleSets().contains(ruleSet)) {
+                ruleProcessor.addRuleSet(ruleSet);
+                try {
+                    applyNewRules(ruleSet);
+                } catch (Exception e) {
+                    addLogEntry("Error processing rules: " + e.getMessage());
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
     }
 }
\ No newline at end of file
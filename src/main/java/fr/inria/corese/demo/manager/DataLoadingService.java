@@ -0,0 +1,400 @@
+package fr.inria.corese.demo.manager;
+
+import fr.inria.corese.demo.model.graph.GraphBackend;
+import fr.inria.corese.demo.model.rule.InferenceRule;
+import fr.inria.corese.demo.model.rule.RuleBudget;
+import fr.inria.corese.demo.model.rule.RuleMonitor;
+import javafx.concurrent.Task;
+
+import java.io.File;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Runs data loading operations on a background worker.
+ * Tasks report their progress (bytes read, triples per second and ETA) through
+ * the JavaFX {@link Task} properties and can be cancelled at any time.
+ * All tasks share a single worker so that writes to the graph never overlap, and hold
+ * the graph lock of the state manager so that queries never read a graph being modified.
+ */
+public class DataLoadingService {
+    private static final long UPDATE_INTERVAL_MS = 250;
+
+    private static DataLoadingService instance;
+
+    private final ApplicationStateManager stateManager;
+    private final ExecutorService executor;
+
+    /**
+     * Private constructor for singleton pattern.
+     */
+    private DataLoadingService() {
+        this.stateManager = ApplicationStateManager.getInstance();
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "data-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Files changed in the watched project directory are ingested on the same worker
+        this.stateManager.setProjectChangeHandler(this::ingestChanges);
+    }
+
+    /**
+     * Gets the singleton instance.
+     *
+     * @return The singleton instance
+     */
+    public static synchronized DataLoadingService getInstance() {
+        if (instance == null) {
+            instance = new DataLoadingService();
+        }
+        return instance;
+    }
+
+    /**
+     * Starts loading files in the background.
+     * The files are loaded in bulk mode: reasoning runs once after the last file.
+     *
+     * @param files The files to load
+     * @return The running task
+     */
+    public Task<Void> loadFiles(List<File> files) {
+        LoadingTask task = new LoadingTask(totalSize(files)) {
+            @Override
+            protected void load() {
+                stateManager.loadFiles(files, this);
+            }
+        };
+        executor.submit(task);
+        return task;
+    }
+
+    /**
+     * Starts loading a project directory in the background.
+     *
+     * @param directory The project directory
+     * @return The running task
+     */
+    public Task<Void> loadProject(File directory) {
+        LoadingTask task = new LoadingTask(totalSize(stateManager.getProjectDataFiles(directory))) {
+            @Override
+            protected void load() {
+                stateManager.loadProject(directory, this);
+            }
+        };
+        executor.submit(task);
+        return task;
+    }
+
+    /**
+     * Starts reloading the files that changed on disk in the background.
+     *
+     * @return The running task
+     */
+    public Task<Void> reloadFiles() {
+        LoadingTask task = new LoadingTask(totalSize(stateManager.getChangedFiles())) {
+            @Override
+            protected void load() {
+                stateManager.reloadFiles(this);
+            }
+        };
+        executor.submit(task);
+        return task;
+    }
+
+    /**
+     * Starts moving the data to another storage in the background: the loaded files are parsed again.
+     *
+     * @param backend The graph backend to use
+     * @return The running task
+     */
+    public Task<Void> switchGraphBackend(GraphBackend backend) {
+        LoadingTask task = new LoadingTask(totalSize(stateManager.getLoadedFiles())) {
+            @Override
+            protected void load() {
+                stateManager.setGraphBackend(backend, this);
+            }
+        };
+        executor.submit(task);
+        return task;
+    }
+
+    /**
+     * Starts ingesting files changed in the project directory in the background.
+     *
+     * @param files The files reported as added, modified or deleted
+     * @return The running task
+     */
+    public Task<Void> ingestChanges(Set<File> files) {
+        LoadingTask task = new LoadingTask(totalSize(List.copyOf(files))) {
+            @Override
+            protected void load() {
+                stateManager.ingestChanges(files, this);
+            }
+        };
+        executor.submit(task);
+        return task;
+    }
+
+    /**
+     * Starts saving the project in the background.
+     * The progress is the number of triples written out of the graph size.
+     *
+     * @param targetFile The target file
+     * @return The running task
+     */
+    public Task<Void> saveProject(File targetFile) {
+        Task<Void> task = new Task<>() {
+            private long startTime;
+            private long lastUpdate;
+
+            @Override
+            protected Void call() throws Exception {
+                startTime = System.currentTimeMillis();
+                long total = Math.max(stateManager.getTripletCount(), 1);
+                updateTitle("Saving " + targetFile.getName());
+                updateProgress(0, total);
+                // Saving only reads the graph, queries can still run
+                Lock lock = stateManager.getGraphReadLock();
+                lock.lock();
+                try {
+                    stateManager.saveProject(targetFile, count -> {
+                        long now = System.currentTimeMillis();
+                        if (now - lastUpdate >= UPDATE_INTERVAL_MS) {
+                            lastUpdate = now;
+                            double seconds = Math.max(now - startTime, 1) / 1000.0;
+                            updateProgress(Math.min(count, total), total);
+                            updateMessage(count + " / " + total + " triples - " + (long) (count / seconds) + " triples/s");
+                        }
+                    }, this::isCancelled);
+                } finally {
+                    lock.unlock();
+                }
+                return null;
+            }
+        };
+        executor.submit(task);
+        return task;
+    }
+
+    /**
+     * Starts a rule operation in the background, such as enabling a rule profile.
+     * The operation can be cancelled and is bounded by the rule budget of the state manager;
+     * in both cases it stops between two rule evaluations and keeps what was inferred.
+     *
+     * @param title The title of the task
+     * @param action The rule operation
+     * @return The running task
+     */
+    public Task<Void> runRules(String title, Runnable action) {
+        RuleTask task = new RuleTask(title, action);
+        executor.submit(task);
+        return task;
+    }
+
+    private static long totalSize(List<File> files) {
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        return total;
+    }
+
+    /**
+     * Formats a number of bytes for display.
+     *
+     * @param bytes The number of bytes
+     * @return The human readable size
+     */
+    static String formatBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        String units = "KMGT";
+        double value = bytes;
+        int unit = -1;
+        while (value >= 1024 && unit < units.length() - 1) {
+            value /= 1024;
+            unit++;
+        }
+        return String.format("%.1f %sB", value, units.charAt(unit));
+    }
+
+    /**
+     * Formats a duration in seconds for display.
+     *
+     * @param seconds The duration in seconds
+     * @return The human readable duration
+     */
+    static String formatDuration(long seconds) {
+        if (seconds < 60) {
+            return seconds + "s";
+        }
+        if (seconds < 3600) {
+            return (seconds / 60) + "m " + (seconds % 60) + "s";
+        }
+        return (seconds / 3600) + "h " + ((seconds % 3600) / 60) + "m";
+    }
+
+    /**
+     * Background task that turns rule processor notifications into task progress.
+     * The message holds the iteration, the number of inferred triples and the elapsed time;
+     * the progress follows the time budget when there is one.
+     */
+    private class RuleTask extends Task<Void> implements RuleMonitor {
+        private final String title;
+        private final Runnable action;
+        private long startTime;
+        private long lastUpdate;
+        private int iteration;
+        private int activeRules;
+        private long inferred;
+
+        RuleTask(String title, Runnable action) {
+            this.title = title;
+            this.action = action;
+        }
+
+        @Override
+        protected Void call() {
+            startTime = System.currentTimeMillis();
+            updateTitle(title);
+            updateProgress(-1, 1);
+            Lock lock = stateManager.getGraphWriteLock();
+            lock.lock();
+            stateManager.setRuleMonitor(this);
+            try {
+                action.run();
+            } finally {
+                stateManager.setRuleMonitor(null);
+                lock.unlock();
+                stateManager.notifyGraphChanged();
+            }
+            if (isCancelled()) {
+                stateManager.addLogEntry("Rule processing cancelled after " + inferred + " inferred triples");
+            }
+            return null;
+        }
+
+        @Override
+        public void iterationStarted(int iteration, int activeRules) {
+            this.iteration = iteration;
+            this.activeRules = activeRules;
+            report();
+        }
+
+        @Override
+        public void ruleEvaluated(InferenceRule rule, int inferred) {
+            this.inferred += inferred;
+            long now = System.currentTimeMillis();
+            if (now - lastUpdate >= UPDATE_INTERVAL_MS) {
+                lastUpdate = now;
+                report();
+            }
+        }
+
+        private void report() {
+            long elapsed = System.currentTimeMillis() - startTime;
+            RuleBudget budget = stateManager.getRuleBudget();
+            if (budget.getMaxMillis() > 0) {
+                updateProgress(Math.min(elapsed, budget.getMaxMillis()), budget.getMaxMillis());
+            }
+            updateMessage("Iteration " + iteration + " (" + activeRules + " rules) - " + inferred
+                    + " triples inferred - " + formatDuration(elapsed / 1000));
+        }
+    }
+
+    /**
+     * Background task that turns loader notifications into task progress.
+     * The title holds the file being loaded and the message holds the
+     * bytes read, the triples per second and the estimated time remaining.
+     */
+    private abstract class LoadingTask extends Task<Void> implements LoadMonitor {
+        private final long totalBytes;
+        // Written by the thread reading the files, which may not be the one writing the graph
+        private volatile long completedBytes;
+        private volatile long currentFileBytes;
+        private volatile long lastUpdate;
+        // Sampled by the thread writing the graph only
+        private volatile long loadedTriples;
+        private long lastSample;
+        private long startTime;
+        private long startTriples;
+
+        LoadingTask(long totalBytes) {
+            this.totalBytes = totalBytes;
+        }
+
+        /**
+         * Performs the loading work.
+         *
+         * @throws Exception If the loading fails
+         */
+        protected abstract void load() throws Exception;
+
+        @Override
+        protected Void call() throws Exception {
+            startTime = System.currentTimeMillis();
+            startTriples = stateManager.getTripletCount();
+            updateProgress(0, Math.max(totalBytes, 1));
+            Lock lock = stateManager.getGraphWriteLock();
+            lock.lock();
+            try {
+                load();
+            } finally {
+                lock.unlock();
+            }
+            if (isCancelled()) {
+                stateManager.addLogEntry("Loading cancelled after " + formatBytes(completedBytes + currentFileBytes));
+            } else {
+                loadedTriples = stateManager.getTripletCount() - startTriples;
+                report();
+            }
+            return null;
+        }
+
+        @Override
+        public void fileStarted(File file) {
+            completedBytes += currentFileBytes;
+            currentFileBytes = 0;
+            updateTitle("Loading " + file.getName());
+        }
+
+        @Override
+        public void bytesRead(long bytes) {
+            currentFileBytes = bytes;
+            long now = System.currentTimeMillis();
+            if (now - lastUpdate >= UPDATE_INTERVAL_MS) {
+                lastUpdate = now;
+                report();
+            }
+        }
+
+        @Override
+        public void parsing() {
+            long now = System.currentTimeMillis();
+            if (now - lastSample >= UPDATE_INTERVAL_MS) {
+                lastSample = now;
+                loadedTriples = stateManager.getTripletCount() - startTriples;
+            }
+        }
+
+        private void report() {
+            long done = Math.min(completedBytes + currentFileBytes, totalBytes);
+            updateProgress(done, Math.max(totalBytes, 1));
+
+            double seconds = Math.max(System.currentTimeMillis() - startTime, 1) / 1000.0;
+            long triplesPerSecond = (long) (loadedTriples / seconds);
+            double bytesPerSecond = done / seconds;
+            String eta = bytesPerSecond > 0
+                    ? formatDuration((long) ((totalBytes - done) / bytesPerSecond))
+                    : "unknown";
+
+            updateMessage(formatBytes(done) + " / " + formatBytes(totalBytes)
+                    + " - " + triplesPerSecond + " triples/s - ETA " + eta);
+        }
+    }
+}
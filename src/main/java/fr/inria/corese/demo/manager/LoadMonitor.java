@@ -0,0 +1,57 @@
+package fr.inria.corese.demo.manager;
+
+import java.io.File;
+
+/**
+ * Observer of a data loading operation.
+ * Receives progress notifications from the loader and tells it when to stop.
+ */
+public interface LoadMonitor {
+
+    /**
+     * Monitor that ignores progress and never cancels.
+     */
+    LoadMonitor NONE = new LoadMonitor() {
+        @Override
+        public void fileStarted(File file) {
+        }
+
+        @Override
+        public void bytesRead(long bytes) {
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+    };
+
+    /**
+     * Called before a file starts being parsed.
+     *
+     * @param file The file about to be loaded
+     */
+    void fileStarted(File file);
+
+    /**
+     * Called while a file is being parsed.
+     *
+     * @param bytes The number of bytes read so far from the current file
+     */
+    void bytesRead(long bytes);
+
+    /**
+     * Called by the thread writing the graph while a file is being parsed. Unlike
+     * {@link #bytesRead(long)}, which may come from a decompression thread, the graph
+     * can be looked at from here.
+     */
+    default void parsing() {
+    }
+
+    /**
+     * Returns whether the loading operation must stop.
+     *
+     * @return True if the operation has been cancelled
+     */
+    boolean isCancelled();
+}
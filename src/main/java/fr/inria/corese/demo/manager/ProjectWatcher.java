@@ -0,0 +1,153 @@
+package fr.inria.corese.demo.manager;
+
+import fr.inria.corese.demo.model.graph.io.FormatDetector;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Watches a project directory for added, modified and deleted data files.
+ *
+ * File events come in bursts (a copy or an editor save produces several of them),
+ * so changed files are collected until the directory has been quiet for the debounce
+ * delay, then handed over as a single batch.
+ */
+class ProjectWatcher {
+    static final long DEFAULT_DEBOUNCE_MS = 1000;
+
+    private final Path directory;
+    private final long debounceMs;
+    private final Consumer<Set<File>> onChanges;
+    private final Set<File> pending = new LinkedHashSet<>();
+    private final Set<Path> ignored = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService scheduler;
+    private WatchService watchService;
+    private ScheduledFuture<?> flush;
+
+    /**
+     * Creates a watcher, which does nothing until {@link #start()} is called.
+     *
+     * @param directory The directory to watch
+     * @param debounceMs The quiet period after the last event before a batch is handed over
+     * @param onChanges Receives each batch of changed data files, on the watcher thread
+     */
+    ProjectWatcher(File directory, long debounceMs, Consumer<Set<File>> onChanges) {
+        this.directory = directory.toPath().toAbsolutePath();
+        this.debounceMs = debounceMs;
+        this.onChanges = onChanges;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "project-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts watching the directory.
+     *
+     * @throws IOException If the directory cannot be watched
+     */
+    void start() throws IOException {
+        watchService = FileSystems.getDefault().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+
+        Thread thread = new Thread(this::poll, "project-watcher-events");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops watching, pending changes are dropped.
+     */
+    void stop() {
+        try {
+            if (watchService != null) {
+                watchService.close();
+            }
+        } catch (IOException e) {
+            // The watch service is discarded anyway
+        }
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Ignores events on a file written by the application itself, such as a saved graph.
+     *
+     * @param file The file to ignore
+     */
+    void ignore(File file) {
+        ignored.add(file.toPath().toAbsolutePath());
+    }
+
+    File getDirectory() {
+        return directory.toFile();
+    }
+
+    private void poll() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        // Events were lost, let the receiver check every data file
+                        File[] files = directory.toFile().listFiles((dir, name) -> FormatDetector.isRdfFile(name));
+                        if (files != null) {
+                            for (File file : files) {
+                                changed(file.toPath());
+                            }
+                        }
+                    } else {
+                        changed(directory.resolve((Path) event.context()));
+                    }
+                }
+                if (!key.reset()) {
+                    break;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Stopped
+        }
+    }
+
+    private synchronized void changed(Path path) {
+        if (ignored.contains(path) || !FormatDetector.isRdfFile(path.getFileName().toString())) {
+            return;
+        }
+        pending.add(path.toFile());
+        if (flush != null) {
+            flush.cancel(false);
+        }
+        if (!scheduler.isShutdown()) {
+            flush = scheduler.schedule(this::flush, debounceMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flush() {
+        Set<File> batch;
+        synchronized (this) {
+            batch = Collections.unmodifiableSet(new LinkedHashSet<>(pending));
+            pending.clear();
+            flush = null;
+        }
+        if (!batch.isEmpty()) {
+            onChanges.accept(batch);
+        }
+    }
+}
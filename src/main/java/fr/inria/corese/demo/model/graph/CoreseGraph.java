@@ -1,17 +1,44 @@
 package fr.inria.corese.demo.model.graph;
 
 import fr.inria.corese.core.Graph;
+import fr.inria.corese.core.kgram.api.core.Edge;
+import fr.inria.corese.core.kgram.api.core.Node;
+import fr.inria.corese.core.kgram.core.Mapping;
+import fr.inria.corese.core.kgram.core.Mappings;
 import fr.inria.corese.core.load.Load;
 import fr.inria.corese.core.load.LoadException;
+import fr.inria.corese.core.query.QueryProcess;
+import fr.inria.corese.core.sparql.exceptions.EngineException;
+import fr.inria.corese.demo.model.graph.io.CompressedInput;
+import fr.inria.corese.demo.model.graph.io.FormatDetector;
+import fr.inria.corese.demo.model.graph.io.GraphSnapshot;
+import fr.inria.corese.demo.model.graph.io.ParallelGraphLoader;
+import fr.inria.corese.demo.model.graph.io.ProgressInputStream;
+import fr.inria.corese.demo.model.graph.io.StreamingLineLoader;
+import fr.inria.corese.demo.model.rule.RuleProcessor;
+import fr.inria.corese.demo.model.rule.SchemaVocabulary;
 import java.io.*;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
 
 public class CoreseGraph implements SemanticGraph {
+    /**
+     * Named graph in which the Corese rule engine stores the triples it infers.
+     * Rule sets driven by the rule processor use named graphs below this one.
+     */
+    public static final String INFERENCE_GRAPH = "http://ns.inria.fr/corese/kgram/rule";
+
     private Graph graph;
     private final GraphContext context;
-    private final List<String> logEntries = new ArrayList<>();
+    private final List<String> logEntries = Collections.synchronizedList(new ArrayList<>());
 
     public CoreseGraph() {
         this.graph = Graph.create();
@@ -20,17 +47,350 @@ public class CoreseGraph implements SemanticGraph {
 
     @Override
     public void loadFile(File file) throws LoadException {
+        try (InputStream input = CompressedInput.open(new BufferedInputStream(new FileInputStream(file)))) {
+            loadFile(file, input);
+        } catch (IOException e) {
+            addLogEntry("Error loading file: " + e.getMessage());
+            throw new LoadException(e);
+        }
+    }
+
+    /**
+     * Parses a file from the given stream into its own named graph.
+     * The file is parsed only once, directly into the shared graph.
+     *
+     * @param file The file being loaded, used for the format and the graph name
+     * @param input The stream providing the file content
+     * @throws LoadException If the content cannot be parsed
+     */
+    @Override
+    public void loadFile(File file, InputStream input) throws LoadException {
         try {
+            long start = System.currentTimeMillis();
+            int sizeBefore = graph.size();
+
             Load ld = Load.create(graph);
-            ld.parse(file.getAbsolutePath());
-            context.addLoadedFile(file);
-            addLogEntry("File loaded: " + file.getName() + " with " + graph.size() + " triples");
+            ld.parse(input, getGraphName(file), getFormat(file));
+            recordLoadedFile(file);
+
+            long elapsed = Math.max(System.currentTimeMillis() - start, 1);
+            int triples = graph.size() - sizeBefore;
+            addLogEntry("File parsed: " + file.getName() + " (" + triples + " triples in " + elapsed + " ms, "
+                    + (triples * 1000L / elapsed) + " triples/s, " + graph.size() + " triples in graph)");
         } catch (LoadException e) {
             addLogEntry("Error loading file: " + e.getMessage());
             throw e;
         }
     }
 
+    /**
+     * Streams a line-based file (N-Triples or N-Quads) into the graph in bounded memory.
+     * A load that fails or is cancelled is rolled back by dropping the file's named graph;
+     * N-Quads name their own graphs, so their partial content cannot be rolled back that way.
+     *
+     * @param file The file to load
+     * @param listener Receives the number of bytes read, may be null
+     * @param cancelled Returns true when loading must stop, may be null
+     * @throws IOException If the file cannot be read or the load is cancelled
+     * @throws LoadException If the content cannot be parsed
+     */
+    public void loadLineBasedFile(File file, ProgressInputStream.Listener listener, BooleanSupplier cancelled)
+            throws IOException, LoadException {
+        try {
+            long start = System.currentTimeMillis();
+            int triples = new StreamingLineLoader().load(graph, file, listener, cancelled);
+            recordLoadedFile(file);
+
+            long elapsed = Math.max(System.currentTimeMillis() - start, 1);
+            addLogEntry("File streamed: " + file.getName() + " (" + triples + " triples in " + elapsed + " ms, "
+                    + (triples * 1000L / elapsed) + " triples/s, " + graph.size() + " triples in graph)");
+        } catch (IOException | LoadException e) {
+            addLogEntry("Error streaming file: " + e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Parses several files in parallel into staging graphs and merges them into the graph.
+     * The merge follows the file path order so the resulting graph is reproducible.
+     *
+     * @param files The files to load
+     * @param listener Notified after each file is merged or has failed
+     * @param cancelled Returns true when loading must stop, may be null
+     * @return The files that were merged
+     * @throws InterruptedException If the loading thread is interrupted
+     */
+    public List<File> loadFiles(List<File> files, ParallelGraphLoader.Listener listener, BooleanSupplier cancelled)
+            throws InterruptedException {
+        long start = System.currentTimeMillis();
+        int sizeBefore = graph.size();
+
+        List<File> merged = new ParallelGraphLoader().load(graph, files, listener, cancelled);
+        for (File file : merged) {
+            recordLoadedFile(file);
+        }
+
+        long elapsed = System.currentTimeMillis() - start;
+        addLogEntry("Files parsed in parallel: " + merged.size() + "/" + files.size() + " ("
+                + (graph.size() - sizeBefore) + " triples in " + elapsed + " ms)");
+        return merged;
+    }
+
+    /**
+     * Copies every triple of a staging graph, with its named graph, into a target graph.
+     * Blank nodes are copied by label: the parsers rename them from a counter shared by all
+     * graphs, so blank nodes of different staging graphs never share a label.
+     *
+     * @param target The graph receiving the triples
+     * @param staging The staging graph to merge
+     */
+    public static void merge(Graph target, Graph staging) {
+        target.copy(staging);
+    }
+
+    /**
+     * Writes a binary snapshot of the graph, inferred triples included.
+     *
+     * @param target The snapshot file
+     * @param rulesSignature Description of the rules that produced the inferred triples
+     * @throws IOException If the snapshot cannot be written
+     */
+    public void writeSnapshot(Path target, String rulesSignature) throws IOException {
+        long start = System.currentTimeMillis();
+        Map<File, FileFingerprint> sources = new LinkedHashMap<>();
+        for (File file : context.getLoadedFiles()) {
+            FileFingerprint fingerprint = context.getFingerprint(file);
+            if (fingerprint != null) {
+                sources.put(file, fingerprint);
+            }
+        }
+
+        long triples = GraphSnapshot.write(graph, sources, rulesSignature, target);
+        addLogEntry("Snapshot written: " + target.getFileName() + " (" + triples + " triples in "
+                + (System.currentTimeMillis() - start) + " ms)");
+    }
+
+    /**
+     * Writes the inferred triples to a binary cache, so that they can be restored
+     * instead of being recomputed while the sources and rules stay the same.
+     * Inferences mentioning a blank node are not cached: blank nodes get new identities
+     * each time their file is parsed, so the cached triples could not be linked back to them.
+     *
+     * @param target The cache file
+     * @param sources The data and rule files the inferences derive from, with their fingerprints
+     * @param rulesSignature Description of the rules that produced the inferred triples
+     * @return The number of triples written, or -1 if the inferences cannot be cached
+     * @throws IOException If the cache cannot be written
+     */
+    public long writeInferences(Path target, Map<File, FileFingerprint> sources, String rulesSignature)
+            throws IOException {
+        for (Edge edge : graph.getEdges()) {
+            if (isInferred(edge) && (edge.getNode(0).isBlank() || edge.getNode(1).isBlank())) {
+                addLogEntry("Inferences not cached: they mention blank nodes");
+                return -1;
+            }
+        }
+        long start = System.currentTimeMillis();
+        long triples = GraphSnapshot.write(graph, sources, rulesSignature, target, CoreseGraph::isInferred);
+        addLogEntry("Inference cache written: " + target.getFileName() + " (" + triples + " triples in "
+                + (System.currentTimeMillis() - start) + " ms)");
+        return triples;
+    }
+
+    /**
+     * Replaces the inferred triples with those of a cache written by {@link #writeInferences}.
+     *
+     * @param source The cache file
+     * @return The number of triples read
+     * @throws IOException If the cache cannot be read
+     */
+    public long readInferences(Path source) throws IOException {
+        clearInferences();
+        long start = System.currentTimeMillis();
+        long triples = GraphSnapshot.read(source, graph);
+        addLogEntry("Inference cache read: " + source.getFileName() + " (" + triples + " triples in "
+                + (System.currentTimeMillis() - start) + " ms)");
+        return triples;
+    }
+
+    private static boolean isInferred(Edge edge) {
+        return isInferenceGraph(edge.getGraph().getLabel());
+    }
+
+    /**
+     * Returns whether a named graph holds conclusions of the rules: an inference graph,
+     * or the constraint graph receiving the violations found by the constraint rules.
+     */
+    private static boolean isInferenceGraph(String name) {
+        return name.equals(INFERENCE_GRAPH) || name.startsWith(INFERENCE_GRAPH + "/")
+                || name.equals(RuleProcessor.CONSTRAINT_GRAPH);
+    }
+
+    /**
+     * Loads a binary snapshot into the graph and records its source files in the context.
+     *
+     * @param source The snapshot file
+     * @return The snapshot header, listing the source files
+     * @throws IOException If the snapshot cannot be read
+     */
+    public GraphSnapshot.Header readSnapshot(Path source) throws IOException {
+        long start = System.currentTimeMillis();
+        GraphSnapshot.Header header = GraphSnapshot.readHeader(source);
+        long triples = GraphSnapshot.read(source, graph);
+
+        for (Map.Entry<File, FileFingerprint> entry : header.getSources().entrySet()) {
+            context.addLoadedFile(entry.getKey());
+            context.setFingerprint(entry.getKey(), entry.getValue());
+        }
+        addLogEntry("Snapshot read: " + source.getFileName() + " (" + triples + " triples in "
+                + (System.currentTimeMillis() - start) + " ms)");
+        return header;
+    }
+
+    /**
+     * Records a loaded file in the context together with the fingerprint of its content.
+     *
+     * @param file The loaded file
+     */
+    private void recordLoadedFile(File file) {
+        context.addLoadedFile(file);
+        try {
+            context.setFingerprint(file, FileFingerprint.of(file));
+        } catch (IOException e) {
+            addLogEntry("Could not fingerprint " + file.getName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Removes every triple inferred by the rule engine.
+     * The rule engine stores its conclusions in dedicated named graphs, one per rule set, and the
+     * constraint violations in the constraint graph; they are dropped so that inference can be
+     * recomputed from the asserted triples.
+     */
+    public void clearInferences() {
+        try {
+            int sizeBefore = graph.size();
+            List<String> inferenceGraphs = new ArrayList<>();
+            for (Node graphNode : graph.getGraphNodes()) {
+                String name = graphNode.getLabel();
+                if (isInferenceGraph(name)) {
+                    inferenceGraphs.add(name);
+                }
+            }
+            QueryProcess exec = QueryProcess.create(graph);
+            exec.query("CLEAR SILENT GRAPH <" + INFERENCE_GRAPH + ">");
+            for (String name : inferenceGraphs) {
+                exec.query("CLEAR SILENT GRAPH <" + name + ">");
+            }
+            addLogEntry("Inferences cleared (" + (sizeBefore - graph.size()) + " triples removed)");
+        } catch (EngineException e) {
+            addLogEntry("Error clearing inferences: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Removes the inferred triples that belong to the instance data, keeping the inferred schema.
+     * Used when only instance files were retracted: the schema closure does not depend on them.
+     */
+    public void clearInstanceInferences() {
+        try {
+            int sizeBefore = graph.size();
+            QueryProcess exec = QueryProcess.create(graph);
+            exec.query("DELETE { GRAPH ?g { ?s ?p ?o } } WHERE { GRAPH ?g { ?s ?p ?o } "
+                    + "FILTER(?g = <" + INFERENCE_GRAPH + "> || strstarts(str(?g), \"" + INFERENCE_GRAPH + "/\") "
+                    + "|| ?g = <" + RuleProcessor.CONSTRAINT_GRAPH + ">) "
+                    + SchemaVocabulary.instanceTripleFilter() + " }");
+            addLogEntry("Instance inferences cleared (" + (sizeBefore - graph.size()) + " triples removed)");
+        } catch (EngineException e) {
+            addLogEntry("Error clearing inferences: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns whether a loaded file contains schema triples: class or property hierarchies,
+     * domains, ranges, OWL axioms or class and property declarations.
+     *
+     * @param file The loaded file
+     * @return True if the file is part of the schema
+     * @throws EngineException If the named graph of the file cannot be queried
+     */
+    public boolean hasSchemaTriples(File file) throws EngineException {
+        for (String predicate : getPredicates(file)) {
+            if (SchemaVocabulary.getPredicates().contains(predicate)) {
+                return true;
+            }
+        }
+        StringBuilder metaClasses = new StringBuilder();
+        for (String metaClass : SchemaVocabulary.getMetaClasses()) {
+            metaClasses.append(" <").append(metaClass).append(">");
+        }
+        QueryProcess exec = QueryProcess.create(graph);
+        Mappings mappings = exec.query("ASK { GRAPH <" + getGraphName(file) + "> { VALUES ?c {"
+                + metaClasses + " } ?s a ?c } }");
+        return mappings.size() > 0;
+    }
+
+    /**
+     * Removes every triple loaded from a file by dropping its named graph.
+     * Used to roll back a load that failed or was cancelled halfway.
+     *
+     * @param file The file to unload
+     */
+    @Override
+    public void unloadFile(File file) {
+        try {
+            QueryProcess exec = QueryProcess.create(graph);
+            exec.query("CLEAR SILENT GRAPH <" + getGraphName(file) + ">");
+            context.removeLoadedFile(file);
+            addLogEntry("File unloaded: " + file.getName());
+        } catch (EngineException e) {
+            addLogEntry("Error unloading file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the predicates used by the triples of a loaded file.
+     * Incremental reasoning only starts the rules that read these predicates.
+     *
+     * @param file The loaded file
+     * @return The predicate IRIs
+     * @throws EngineException If the named graph of the file cannot be queried
+     */
+    public Set<String> getPredicates(File file) throws EngineException {
+        Set<String> predicates = new HashSet<>();
+        QueryProcess exec = QueryProcess.create(graph);
+        Mappings mappings = exec.query("SELECT DISTINCT ?p WHERE { GRAPH <" + getGraphName(file) + "> { ?s ?p ?o } }");
+        for (Mapping mapping : mappings) {
+            Node predicate = mapping.getNode("?p");
+            if (predicate != null) {
+                predicates.add(predicate.getLabel());
+            }
+        }
+        return predicates;
+    }
+
+    /**
+     * Returns the named graph that holds the triples of a file.
+     *
+     * @param file The loaded file
+     * @return The named graph URI
+     */
+    public static String getGraphName(File file) {
+        return file.getAbsoluteFile().toURI().toString();
+    }
+
+    /**
+     * Determines the Corese parser format of a file.
+     * Known extensions are trusted, a compression extension is ignored,
+     * and other files are recognized from their first kilobytes.
+     *
+     * @param file The file to parse
+     * @return The Corese load format
+     */
+    public static Load.format getFormat(File file) {
+        return FormatDetector.detect(file);
+    }
+
     @Override
     public void loadRuleFile(File file) throws Exception {
         try {
@@ -187,7 +547,13 @@ public class CoreseGraph implements SemanticGraph {
         return true;
     }
 
-    // Méthode pour accéder au graphe Corese sous-jacent si nécessaire
+    /**
+     * Returns the underlying Corese graph. This is the single authoritative graph
+     * shared by the state manager, the query process and the rule engine.
+     * A new instance is created by {@link #clearGraph()}, so callers must fetch it again after clearing.
+     *
+     * @return The Corese graph
+     */
     public Graph getCoreseGraph() {
         return graph;
     }
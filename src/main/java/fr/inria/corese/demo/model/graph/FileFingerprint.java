@@ -0,0 +1,118 @@
+package fr.inria.corese.demo.model.graph;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Objects;
+
+/**
+ * Identity of a loaded file's content: size, modification time and SHA-256 hash.
+ * Used to decide whether a file must be parsed again on reload.
+ */
+public final class FileFingerprint {
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private final long size;
+    private final long lastModified;
+    private final String hash;
+
+    public FileFingerprint(long size, long lastModified, String hash) {
+        this.size = size;
+        this.lastModified = lastModified;
+        this.hash = hash;
+    }
+
+    /**
+     * Computes the fingerprint of a file.
+     *
+     * @param file The file to fingerprint
+     * @return The fingerprint of the file's current content
+     * @throws IOException If the file cannot be read
+     */
+    public static FileFingerprint of(File file) throws IOException {
+        return new FileFingerprint(file.length(), file.lastModified(), hash(file));
+    }
+
+    /**
+     * Returns whether a file no longer matches this fingerprint.
+     * The content is only hashed again when the size or the modification time differ,
+     * so a file that was merely touched is not considered changed.
+     *
+     * @param file The file to check
+     * @return True if the file was deleted or its content changed
+     * @throws IOException If the file cannot be read
+     */
+    public boolean isChanged(File file) throws IOException {
+        if (!file.exists()) {
+            return true;
+        }
+        if (file.length() == size && file.lastModified() == lastModified) {
+            return false;
+        }
+        return file.length() != size || !hash(file).equals(hash);
+    }
+
+    /**
+     * Parses a fingerprint written by {@link #toString()}.
+     *
+     * @param value The serialized fingerprint
+     * @return The fingerprint
+     * @throws IllegalArgumentException If the value is malformed
+     */
+    public static FileFingerprint parse(String value) {
+        String[] parts = value.split(";");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Invalid fingerprint: " + value);
+        }
+        return new FileFingerprint(Long.parseLong(parts[0]), Long.parseLong(parts[1]), parts[2]);
+    }
+
+    private static String hash(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 is not available", e);
+        }
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof FileFingerprint that)) return false;
+        return size == that.size && lastModified == that.lastModified && hash.equals(that.hash);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(size, lastModified, hash);
+    }
+
+    @Override
+    public String toString() {
+        return size + ";" + lastModified + ";" + hash;
+    }
+}
@@ -0,0 +1,35 @@
+package fr.inria.corese.demo.model.graph;
+
+/**
+ * Storage used for the data of the application.
+ */
+public enum GraphBackend {
+    /**
+     * A Corese graph on the Java heap, with rule reasoning and project snapshots.
+     */
+    CORESE("Corese graph"),
+    /**
+     * Dictionary-encoded quads outside the Java heap, for data sets too large for the heap.
+     * Files are loaded and queried with SPARQL, rules and snapshots are not available.
+     */
+    OFF_HEAP("Off-heap store");
+
+    private final String label;
+
+    GraphBackend(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * Returns whether rules and the project snapshot can be used with this storage.
+     *
+     * @return True for the Corese graph
+     */
+    public boolean supportsReasoning() {
+        return this == CORESE;
+    }
+}
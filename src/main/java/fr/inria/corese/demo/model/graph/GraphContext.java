@@ -3,6 +3,7 @@ package fr.inria.corese.demo.model.graph;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -10,16 +11,33 @@ public class GraphContext {
     private final List<File> loadedFiles;
     private final List<File> loadedRules;
     private final Map<String, Object> graphProperties;
+    private final Map<File, FileFingerprint> fingerprints;
     private String currentNamespace;
 
     public GraphContext() {
         this.loadedFiles = new ArrayList<>();
         this.loadedRules = new ArrayList<>();
         this.graphProperties = new HashMap<>();
+        this.fingerprints = new LinkedHashMap<>();
     }
 
     public void addLoadedFile(File file) {
-        loadedFiles.add(file);
+        if (!loadedFiles.contains(file)) {
+            loadedFiles.add(file);
+        }
+    }
+
+    public void removeLoadedFile(File file) {
+        loadedFiles.remove(file);
+        fingerprints.remove(file);
+    }
+
+    public void setFingerprint(File file, FileFingerprint fingerprint) {
+        fingerprints.put(file, fingerprint);
+    }
+
+    public FileFingerprint getFingerprint(File file) {
+        return fingerprints.get(file);
     }
 
     public void addLoadedRule(File rule) {
@@ -54,6 +72,7 @@ public class GraphContext {
         loadedFiles.clear();
         loadedRules.clear();
         graphProperties.clear();
+        fingerprints.clear();
         currentNamespace = null;
     }
 }
\ No newline at end of file
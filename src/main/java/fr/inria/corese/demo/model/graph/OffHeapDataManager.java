@@ -0,0 +1,235 @@
+package fr.inria.corese.demo.model.graph;
+
+import fr.inria.corese.core.Graph;
+import fr.inria.corese.core.NodeImpl;
+import fr.inria.corese.core.edge.EdgeImpl;
+import fr.inria.corese.core.kgram.api.core.Edge;
+import fr.inria.corese.core.kgram.api.core.ExpType;
+import fr.inria.corese.core.kgram.api.core.Node;
+import fr.inria.corese.core.sparql.api.IDatatype;
+import fr.inria.corese.core.sparql.datatype.DatatypeMap;
+import fr.inria.corese.core.storage.api.dataManager.DataManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Corese data manager over the off-heap dictionary and quad index.
+ *
+ * The Corese parser hands each statement to {@link #insert(Edge)}, so a file is encoded while
+ * it is parsed instead of being built as a Corese graph first. The query engine reads through
+ * {@link #getEdges}, which decodes the matching quads lazily into Corese edges.
+ *
+ * Terms are stored under a key that keeps their kind, lexical form, datatype and language,
+ * so they are decoded back to the same Corese values. Literals are matched on their lexical
+ * form: {@code "01"^^xsd:integer} and {@code "1"^^xsd:integer} are different terms here.
+ */
+class OffHeapDataManager implements DataManager {
+    // The parser graph only keeps the nodes of the statements in progress, it is emptied this often
+    private static final int PARSER_GRAPH_FLUSH = 50_000;
+    private static final char SEPARATOR = '\u0000';
+    // ID of a pattern term missing from the dictionary, which no quad can match
+    private static final long UNKNOWN = -2;
+
+    private final OffHeapDictionary dictionary;
+    private final OffHeapTripleIndex triples;
+    private Graph parserGraph;
+    private long inserted;
+
+    OffHeapDataManager(OffHeapDictionary dictionary, OffHeapTripleIndex triples) {
+        this.dictionary = dictionary;
+        this.triples = triples;
+    }
+
+    /**
+     * Sets the graph the parser creates its nodes in while it feeds this data manager.
+     * Corese indexes these nodes in the graph, so it is cleared regularly to keep the heap bounded.
+     *
+     * @param graph The graph given to the parser, or null once parsing is over
+     */
+    void setParserGraph(Graph graph) {
+        this.parserGraph = graph;
+        this.inserted = 0;
+    }
+
+    @Override
+    public Edge insert(Edge edge) {
+        Node graph = edge.getGraph();
+        triples.add(dictionary.encode(key(edge.getNode(0))),
+                dictionary.encode(key(edge.getEdgeNode())),
+                dictionary.encode(key(edge.getNode(1))),
+                dictionary.encode(graph == null ? resourceKey(ExpType.DEFAULT_GRAPH) : key(graph)));
+        if (parserGraph != null && ++inserted % PARSER_GRAPH_FLUSH == 0) {
+            parserGraph.clear();
+        }
+        return edge;
+    }
+
+    @Override
+    public Iterable<Edge> getEdges(Node subject, Node predicate, Node object, List<Node> contexts) {
+        long s = resolve(subject);
+        long p = resolve(predicate);
+        long o = resolve(object);
+        if (s == UNKNOWN || p == UNKNOWN || o == UNKNOWN) {
+            return new ArrayList<>(0);
+        }
+        List<Long> graphs = new ArrayList<>();
+        if (contexts == null || contexts.isEmpty()) {
+            graphs.add(OffHeapTripleIndex.ANY);
+        } else {
+            for (Node context : contexts) {
+                long g = resolve(context);
+                if (g != UNKNOWN) {
+                    graphs.add(g);
+                }
+            }
+        }
+        return () -> new EdgeIterator(s, p, o, graphs.iterator());
+    }
+
+    @Override
+    public int graphSize() {
+        return (int) Math.min(triples.size(), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int countEdges(Node predicate) {
+        long p = resolve(predicate);
+        if (p == UNKNOWN) {
+            return 0;
+        }
+        return (int) Math.min(triples.count(p), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public Iterable<Node> predicates(Node context) {
+        return nodes(triples.values(1));
+    }
+
+    @Override
+    public Iterable<Node> getNodes(Node context) {
+        Set<Long> ids = new TreeSet<>(triples.values(0));
+        ids.addAll(triples.values(2));
+        return nodes(ids);
+    }
+
+    @Override
+    public Iterable<Node> contexts() {
+        return nodes(triples.graphs());
+    }
+
+    /**
+     * Converts a pattern node to an ID: {@link OffHeapTripleIndex#ANY} for an unbound node,
+     * {@link #UNKNOWN} for a term that is not in the dictionary.
+     */
+    private long resolve(Node node) {
+        if (node == null) {
+            return OffHeapTripleIndex.ANY;
+        }
+        long id = dictionary.lookup(key(node));
+        return id < 0 ? UNKNOWN : id;
+    }
+
+    private List<Node> nodes(Set<Long> ids) {
+        List<Node> nodes = new ArrayList<>(ids.size());
+        for (long id : ids) {
+            nodes.add(node(id));
+        }
+        return nodes;
+    }
+
+    private Node node(long id) {
+        return NodeImpl.create(term(dictionary.decode(id)));
+    }
+
+    /**
+     * Returns the dictionary key of a term: its kind, then its label, and for a literal
+     * its datatype and language.
+     *
+     * @param node The term
+     * @return The key of the term
+     */
+    static String key(Node node) {
+        IDatatype value = node.getDatatypeValue();
+        if (value.isURI()) {
+            return resourceKey(value.getLabel());
+        }
+        if (value.isBlank()) {
+            return "_" + value.getLabel();
+        }
+        String lang = value.getLang() == null ? "" : value.getLang();
+        return "\"" + value.getLabel() + SEPARATOR + value.getDatatypeURI() + SEPARATOR + lang;
+    }
+
+    /**
+     * Returns the dictionary key of an IRI.
+     *
+     * @param iri The IRI
+     * @return The key of the IRI
+     */
+    static String resourceKey(String iri) {
+        return "<" + iri;
+    }
+
+    /**
+     * Rebuilds a term from its dictionary key.
+     *
+     * @param key The key built by {@link #key(Node)}
+     * @return The term
+     */
+    static IDatatype term(String key) {
+        String label = key.substring(1);
+        return switch (key.charAt(0)) {
+            case '<' -> DatatypeMap.createResource(label);
+            case '_' -> DatatypeMap.createBlank(label);
+            default -> {
+                // The lexical form may hold any character, the datatype and the language cannot
+                int langStart = label.lastIndexOf(SEPARATOR);
+                int datatypeStart = label.lastIndexOf(SEPARATOR, langStart - 1);
+                String lang = label.substring(langStart + 1);
+                yield DatatypeMap.createLiteral(label.substring(0, datatypeStart),
+                        label.substring(datatypeStart + 1, langStart), lang.isEmpty() ? null : lang);
+            }
+        };
+    }
+
+    /**
+     * Decodes the quads matching a pattern in each requested graph, one at a time.
+     */
+    private final class EdgeIterator implements Iterator<Edge> {
+        private final long subject;
+        private final long predicate;
+        private final long object;
+        private final Iterator<Long> graphs;
+        private Iterator<long[]> quads = Collections.emptyIterator();
+
+        private EdgeIterator(long subject, long predicate, long object, Iterator<Long> graphs) {
+            this.subject = subject;
+            this.predicate = predicate;
+            this.object = object;
+            this.graphs = graphs;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!quads.hasNext() && graphs.hasNext()) {
+                quads = triples.match(subject, predicate, object, graphs.next());
+            }
+            return quads.hasNext();
+        }
+
+        @Override
+        public Edge next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            long[] quad = quads.next();
+            return EdgeImpl.create(node(quad[3]), node(quad[0]), node(quad[1]), node(quad[2]));
+        }
+    }
+}
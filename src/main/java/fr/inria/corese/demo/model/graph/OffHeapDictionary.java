@@ -0,0 +1,207 @@
+package fr.inria.corese.demo.model.graph;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Dictionary mapping RDF terms to dense long IDs, stored outside the Java heap.
+ *
+ * Term bytes are appended to direct segments, the position of each term is kept
+ * in a direct offset table indexed by ID, and lookups go through an open-addressing
+ * hash table of IDs, also direct. The heap only holds the buffer objects themselves.
+ * IDs and table slots are longs, so the dictionary is not limited to 2^31 terms.
+ */
+class OffHeapDictionary {
+    private static final int SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final int INITIAL_SEGMENT_SIZE = 1 << 16;
+    private static final int INITIAL_CAPACITY = 1 << 12;
+
+    private final List<ByteBuffer> segments = new ArrayList<>();
+    private OffHeapLongArray offsets;
+    private OffHeapLongArray table;
+    private long tableCapacity;
+    private long size;
+
+    OffHeapDictionary() {
+        clear();
+    }
+
+    /**
+     * Returns the ID of a term, adding the term if it is not known yet.
+     *
+     * @param term The term key
+     * @return The term ID
+     */
+    long encode(String term) {
+        byte[] bytes = term.getBytes(StandardCharsets.UTF_8);
+        long slot = findSlot(bytes);
+        long entry = table.get(slot);
+        if (entry != 0) {
+            return entry - 1;
+        }
+
+        long id = size++;
+        offsets.ensureCapacity(size);
+        offsets.set(id, append(bytes));
+        table.set(slot, id + 1);
+
+        if (size * 2 > tableCapacity) {
+            rehash(tableCapacity * 2);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the ID of a term without adding it.
+     *
+     * @param term The term key
+     * @return The term ID, or -1 if the term is unknown
+     */
+    long lookup(String term) {
+        long entry = table.get(findSlot(term.getBytes(StandardCharsets.UTF_8)));
+        return entry - 1;
+    }
+
+    /**
+     * Returns the term with the given ID.
+     *
+     * @param id The term ID
+     * @return The term key
+     */
+    String decode(long id) {
+        return new String(bytesOf(id), StandardCharsets.UTF_8);
+    }
+
+    long size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of off-heap bytes reserved by the dictionary.
+     *
+     * @return The memory usage in bytes
+     */
+    long getMemoryUsage() {
+        long segmentBytes = 0;
+        for (ByteBuffer segment : segments) {
+            segmentBytes += segment.capacity();
+        }
+        return segmentBytes + offsets.getMemoryUsage() + table.getMemoryUsage();
+    }
+
+    void clear() {
+        segments.clear();
+        offsets = new OffHeapLongArray(INITIAL_CAPACITY);
+        tableCapacity = INITIAL_CAPACITY * 2;
+        table = new OffHeapLongArray(tableCapacity);
+        size = 0;
+    }
+
+    /**
+     * Finds the slot holding a term, or the empty slot where it would be inserted.
+     */
+    private long findSlot(byte[] bytes) {
+        long mask = tableCapacity - 1;
+        long slot = mix(hash(bytes)) & mask;
+        while (true) {
+            long entry = table.get(slot);
+            if (entry == 0 || sameBytes(entry - 1, bytes)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void rehash(long capacity) {
+        OffHeapLongArray newTable = new OffHeapLongArray(capacity);
+        long mask = capacity - 1;
+        for (long id = 0; id < size; id++) {
+            long slot = mix(hash(bytesOf(id))) & mask;
+            while (newTable.get(slot) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            newTable.set(slot, id + 1);
+        }
+        table = newTable;
+        tableCapacity = capacity;
+    }
+
+    /**
+     * Appends a term as (length, bytes) to the last segment.
+     * The first segment starts small and doubles up to the segment size,
+     * so that a small dictionary does not reserve a whole segment.
+     *
+     * @return The packed (segment, position) offset of the term
+     */
+    private long append(byte[] bytes) {
+        int needed = Integer.BYTES + bytes.length;
+        if (needed > SEGMENT_SIZE) {
+            throw new IllegalArgumentException("Term larger than " + SEGMENT_SIZE + " bytes");
+        }
+        ByteBuffer segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (segment != null && segment.remaining() < needed && segments.size() == 1) {
+            long capacity = segment.capacity();
+            while (capacity - segment.position() < needed) {
+                capacity *= 2;
+            }
+            if (capacity <= SEGMENT_SIZE) {
+                ByteBuffer grown = ByteBuffer.allocateDirect((int) capacity);
+                grown.put(segment.flip());
+                segments.set(0, grown);
+                segment = grown;
+            }
+        }
+        if (segment == null || segment.remaining() < needed) {
+            segment = ByteBuffer.allocateDirect(segments.isEmpty() ? Math.max(INITIAL_SEGMENT_SIZE, needed) : SEGMENT_SIZE);
+            segments.add(segment);
+        }
+
+        long offset = ((long) (segments.size() - 1) << 32) | segment.position();
+        segment.putInt(bytes.length);
+        segment.put(bytes);
+        return offset;
+    }
+
+    private byte[] bytesOf(long id) {
+        long offset = offsets.get(id);
+        ByteBuffer segment = segments.get((int) (offset >>> 32));
+        int position = (int) offset;
+        byte[] bytes = new byte[segment.getInt(position)];
+        segment.get(position + Integer.BYTES, bytes);
+        return bytes;
+    }
+
+    private boolean sameBytes(long id, byte[] bytes) {
+        long offset = offsets.get(id);
+        ByteBuffer segment = segments.get((int) (offset >>> 32));
+        int position = (int) offset;
+        if (segment.getInt(position) != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (segment.get(position + Integer.BYTES + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(byte[] bytes) {
+        int h = 1;
+        for (byte b : bytes) {
+            h = 31 * h + b;
+        }
+        return h;
+    }
+
+    /**
+     * Spreads a 32-bit hash over 64 bits, so that tables larger than 2^32 slots are used.
+     */
+    private static long mix(int h) {
+        long z = h * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        return z ^ (z >>> 31);
+    }
+}
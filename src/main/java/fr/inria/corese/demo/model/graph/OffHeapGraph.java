@@ -0,0 +1,233 @@
+package fr.inria.corese.demo.model.graph;
+
+import fr.inria.corese.core.Graph;
+import fr.inria.corese.core.load.Load;
+import fr.inria.corese.core.load.LoadException;
+import fr.inria.corese.core.query.QueryProcess;
+import fr.inria.corese.demo.model.graph.io.CompressedInput;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Semantic graph backend that keeps its data outside the Java heap.
+ *
+ * Terms are dictionary-encoded to long IDs and triples are stored as ID quads
+ * in sorted SPO, POS and OSP indexes, so a large graph costs a few dozen bytes
+ * per triple and adds almost nothing for the garbage collector to trace.
+ * The Corese parser feeds the store through a data manager, so each statement is encoded
+ * as it is parsed, and SPARQL queries are evaluated by Corese through the same data manager.
+ *
+ * Each file keeps its own named graph, as in {@link CoreseGraph}. Rule reasoning and
+ * snapshots need a Corese graph and are only offered by {@link CoreseGraph}.
+ */
+public class OffHeapGraph implements SemanticGraph {
+    private static final String CONTEXT_FILE = "offheap-graph-context.properties";
+
+    private final OffHeapDictionary dictionary = new OffHeapDictionary();
+    private final OffHeapTripleIndex triples = new OffHeapTripleIndex();
+    private final OffHeapDataManager dataManager = new OffHeapDataManager(dictionary, triples);
+    private final GraphContext context = new GraphContext();
+    private final List<String> logEntries = Collections.synchronizedList(new ArrayList<>());
+
+    @Override
+    public void loadFile(File file) throws LoadException {
+        try (InputStream input = CompressedInput.open(new BufferedInputStream(new FileInputStream(file)))) {
+            loadFile(file, input);
+        } catch (IOException e) {
+            addLogEntry("Error loading file: " + e.getMessage());
+            throw new LoadException(e);
+        }
+    }
+
+    /**
+     * Parses a file from the given stream and encodes its triples into the indexes as they are parsed.
+     *
+     * @param file The file being loaded, used for the format and the graph name
+     * @param input The stream providing the file content
+     * @throws LoadException If the content cannot be parsed
+     */
+    @Override
+    public synchronized void loadFile(File file, InputStream input) throws LoadException {
+        try {
+            long start = System.currentTimeMillis();
+            long sizeBefore = triples.size();
+
+            Graph parserGraph = Graph.create();
+            dataManager.setParserGraph(parserGraph);
+            try {
+                Load.create(parserGraph, dataManager).parse(input, CoreseGraph.getGraphName(file), CoreseGraph.getFormat(file));
+            } finally {
+                dataManager.setParserGraph(null);
+            }
+            triples.commit();
+            recordLoadedFile(file);
+
+            long elapsed = Math.max(System.currentTimeMillis() - start, 1);
+            long added = triples.size() - sizeBefore;
+            addLogEntry("File encoded off-heap: " + file.getName() + " (" + added + " triples in " + elapsed
+                    + " ms, " + (added * 1000L / elapsed) + " triples/s, " + triples.size() + " triples, "
+                    + (getMemoryUsage() / 1024) + " KB off-heap)");
+        } catch (LoadException e) {
+            addLogEntry("Error loading file: " + e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Removes the triples loaded from a file by dropping its named graph from the indexes.
+     * Its terms stay in the dictionary, which only grows until the graph is cleared.
+     *
+     * @param file The file to unload
+     */
+    @Override
+    public synchronized void unloadFile(File file) {
+        long graph = dictionary.lookup(OffHeapDataManager.resourceKey(CoreseGraph.getGraphName(file)));
+        long removed = graph < 0 ? 0 : triples.removeGraph(graph);
+        context.removeLoadedFile(file);
+        addLogEntry("File unloaded: " + file.getName() + " (" + removed + " triples)");
+    }
+
+    /**
+     * Creates a query process evaluating SPARQL queries on the off-heap indexes.
+     *
+     * @return The query process
+     */
+    public QueryProcess createQueryProcess() {
+        return QueryProcess.create(Graph.create(), dataManager);
+    }
+
+    /**
+     * Returns the number of off-heap bytes reserved by the dictionary and the indexes.
+     *
+     * @return The memory usage in bytes
+     */
+    public synchronized long getMemoryUsage() {
+        return dictionary.getMemoryUsage() + triples.getMemoryUsage();
+    }
+
+    private void recordLoadedFile(File file) {
+        context.addLoadedFile(file);
+        try {
+            context.setFingerprint(file, FileFingerprint.of(file));
+        } catch (IOException e) {
+            addLogEntry("Could not fingerprint " + file.getName() + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void loadRuleFile(File file) {
+        context.addLoadedRule(file);
+        addLogEntry("Rule file recorded, rules are not applied by the off-heap backend: " + file.getName());
+    }
+
+    @Override
+    public GraphContext getContext() {
+        return context;
+    }
+
+    @Override
+    public void saveContext() throws Exception {
+        Properties props = new Properties();
+
+        StringBuilder files = new StringBuilder();
+        for (File f : context.getLoadedFiles()) {
+            files.append(f.getAbsolutePath()).append(";");
+        }
+        props.setProperty("loadedFiles", files.toString());
+
+        try (FileOutputStream out = new FileOutputStream(CONTEXT_FILE)) {
+            props.store(out, "Off-heap Graph Context");
+        }
+    }
+
+    @Override
+    public void loadContext(String contextPath) throws Exception {
+        Properties props = new Properties();
+        try (FileInputStream in = new FileInputStream(contextPath)) {
+            props.load(in);
+        }
+
+        for (String filePath : props.getProperty("loadedFiles", "").split(";")) {
+            if (!filePath.isEmpty()) {
+                loadFile(new File(filePath));
+            }
+        }
+    }
+
+    @Override
+    public List<File> getLoadedFiles() {
+        return context.getLoadedFiles();
+    }
+
+    @Override
+    public List<File> getLoadedRules() {
+        return context.getLoadedRules();
+    }
+
+    @Override
+    public synchronized void clearGraph() {
+        dictionary.clear();
+        triples.clear();
+        context.clear();
+        addLogEntry("Off-heap graph and context cleared");
+    }
+
+    @Override
+    public synchronized void reloadFiles() {
+        List<File> files = new ArrayList<>(context.getLoadedFiles());
+        clearGraph();
+        for (File file : files) {
+            try {
+                loadFile(file);
+            } catch (LoadException e) {
+                // Already logged by loadFile, keep reloading the other files
+            }
+        }
+        addLogEntry("Off-heap graph reloaded");
+    }
+
+    /**
+     * Returns the number of distinct terms in the dictionary.
+     */
+    @Override
+    public synchronized int getSemanticElementsCount() {
+        return (int) Math.min(dictionary.size(), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the number of triples, capped to the largest int; the indexes themselves count in longs.
+     */
+    @Override
+    public synchronized int getTripletCount() {
+        return (int) Math.min(triples.size(), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public synchronized int getGraphCount() {
+        return triples.graphs().size();
+    }
+
+    @Override
+    public void addLogEntry(String entry) {
+        logEntries.add(entry);
+    }
+
+    @Override
+    public List<String> getLogEntries() {
+        return new ArrayList<>(logEntries);
+    }
+
+    @Override
+    public boolean applyRules() {
+        return false;
+    }
+}
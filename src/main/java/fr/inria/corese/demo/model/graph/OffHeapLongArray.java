@@ -0,0 +1,90 @@
+package fr.inria.corese.demo.model.graph;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/**
+ * Growable array of longs stored outside the Java heap, addressed by long indexes.
+ *
+ * Values live in direct chunks of a fixed size, so a large array grows by adding chunks
+ * without copying what is already stored, and is not limited by the int capacity of
+ * a single buffer. An array smaller than one chunk is kept in a single buffer sized
+ * to its content, so that small indexes do not reserve a whole chunk.
+ */
+class OffHeapLongArray {
+    private static final int CHUNK_SHIFT = 20;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private LongBuffer[] chunks = new LongBuffer[0];
+    private long capacity;
+
+    /**
+     * Creates an array holding at least the given number of longs, all set to zero.
+     *
+     * @param capacity The initial capacity
+     */
+    OffHeapLongArray(long capacity) {
+        ensureCapacity(capacity);
+    }
+
+    long get(long index) {
+        return chunks[(int) (index >>> CHUNK_SHIFT)].get((int) (index & CHUNK_MASK));
+    }
+
+    void set(long index, long value) {
+        chunks[(int) (index >>> CHUNK_SHIFT)].put((int) (index & CHUNK_MASK), value);
+    }
+
+    /**
+     * Adds chunks until the array holds at least the given number of longs.
+     * New values are zero, existing values are kept in place.
+     *
+     * @param minCapacity The required capacity
+     */
+    void ensureCapacity(long minCapacity) {
+        if (minCapacity <= capacity) {
+            return;
+        }
+        if (minCapacity <= CHUNK_SIZE) {
+            resizeFirstChunk((int) Math.max(minCapacity, Math.min(capacity * 2, CHUNK_SIZE)));
+            return;
+        }
+        if (capacity < CHUNK_SIZE) {
+            resizeFirstChunk(CHUNK_SIZE);
+        }
+        int needed = (int) ((minCapacity + CHUNK_MASK) >>> CHUNK_SHIFT);
+        LongBuffer[] grown = Arrays.copyOf(chunks, needed);
+        for (int i = chunks.length; i < needed; i++) {
+            grown[i] = ByteBuffer.allocateDirect(CHUNK_SIZE * Long.BYTES).asLongBuffer();
+        }
+        chunks = grown;
+        capacity = (long) needed << CHUNK_SHIFT;
+    }
+
+    private void resizeFirstChunk(int size) {
+        LongBuffer chunk = ByteBuffer.allocateDirect(size * Long.BYTES).asLongBuffer();
+        if (chunks.length > 0) {
+            chunk.put(chunks[0].rewind());
+            chunk.clear();
+        } else {
+            chunks = new LongBuffer[1];
+        }
+        chunks[0] = chunk;
+        capacity = size;
+    }
+
+    long capacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of off-heap bytes reserved by the array.
+     *
+     * @return The memory usage in bytes
+     */
+    long getMemoryUsage() {
+        return capacity * Long.BYTES;
+    }
+}
@@ -0,0 +1,518 @@
+package fr.inria.corese.demo.model.graph;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Quad table of dictionary IDs stored outside the Java heap.
+ *
+ * Quads are kept in three sorted copies, in SPO, POS and OSP order with the graph last,
+ * so that any pattern with bound positions is answered by a binary search on one of them.
+ * New quads are buffered and sorted into a run on {@link #commit()}, or as soon as the buffer
+ * is full. Runs hold distinct quads, so a new run only keeps the quads that no older run has.
+ * Each index is a list of runs of decreasing size: a run is merged with the previous one while
+ * it is at least half its size, so a quad is merged a logarithmic number of times and a commit
+ * never re-sorts what is already indexed.
+ */
+class OffHeapTripleIndex {
+    /**
+     * Wildcard for an unbound position in a pattern.
+     */
+    static final long ANY = -1;
+
+    private static final int WIDTH = 4;
+    private static final long RUN_SIZE = 1 << 20;
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    private final Order spo = new Order(0, 1, 2);
+    private final Order pos = new Order(1, 2, 0);
+    private final Order osp = new Order(2, 0, 1);
+    private final Set<Long> graphs = new LinkedHashSet<>();
+
+    private OffHeapLongArray pending;
+    private long pendingCount;
+    private long lastGraph;
+    private long size;
+
+    /**
+     * One sorted copy of the quads: the positions of the pattern stored in each column,
+     * the graph being the fourth column, and the runs holding the quads in that order.
+     */
+    private static final class Order {
+        private final int[] columns;
+        private final List<Run> runs = new ArrayList<>();
+
+        private Order(int first, int second, int third) {
+            this.columns = new int[]{first, second, third};
+        }
+    }
+
+    /**
+     * A sorted array of distinct quads.
+     */
+    private static final class Run {
+        private final OffHeapLongArray data;
+        private long size;
+
+        private Run(long quads) {
+            this.data = new OffHeapLongArray(quads * WIDTH);
+        }
+    }
+
+    OffHeapTripleIndex() {
+        clear();
+    }
+
+    /**
+     * Buffers a quad, sorting the buffer into a run once it is full.
+     */
+    void add(long subject, long predicate, long object, long graph) {
+        long base = pendingCount * WIDTH;
+        pending.ensureCapacity(base + WIDTH);
+        pending.set(base, subject);
+        pending.set(base + 1, predicate);
+        pending.set(base + 2, object);
+        pending.set(base + 3, graph);
+        if (++pendingCount >= RUN_SIZE) {
+            commit();
+        }
+        if (graph != lastGraph) {
+            graphs.add(graph);
+            lastGraph = graph;
+        }
+    }
+
+    /**
+     * Sorts the buffered quads into a new run of each index and merges the runs of similar size.
+     * Quads already indexed are dropped, so {@link #size()} counts distinct quads.
+     */
+    void commit() {
+        if (pendingCount == 0) {
+            return;
+        }
+        Run added = fill(new Run(pendingCount), pending, pendingCount, spo.columns);
+        sort(added.data, 0, added.size - 1);
+        added.size = dropKnown(added);
+        if (added.size > 0) {
+            push(spo, added);
+            push(pos, sorted(added, pos.columns));
+            push(osp, sorted(added, osp.columns));
+            size += added.size;
+        }
+        pendingCount = 0;
+    }
+
+    /**
+     * Returns the number of distinct quads, buffered quads included once committed.
+     */
+    long size() {
+        commit();
+        return size;
+    }
+
+    /**
+     * Returns the quads matching a pattern, as (subject, predicate, object, graph) arrays.
+     * The quads are read from the runs as the iterator advances.
+     *
+     * @param s The subject ID or {@link #ANY}
+     * @param p The predicate ID or {@link #ANY}
+     * @param o The object ID or {@link #ANY}
+     * @param g The graph ID or {@link #ANY}
+     * @return The matching quads
+     */
+    Iterator<long[]> match(long s, long p, long o, long g) {
+        commit();
+        long[] pattern = {s, p, o, g};
+        Order order = s != ANY ? (p == ANY && o != ANY ? osp : spo) : p != ANY ? pos : o != ANY ? osp : spo;
+        return new QuadIterator(order, pattern, prefix(order, pattern));
+    }
+
+    /**
+     * Counts the quads with a predicate, from the bounds of the POS runs.
+     *
+     * @param p The predicate ID or {@link #ANY}
+     * @return The number of quads
+     */
+    long count(long p) {
+        commit();
+        if (p == ANY) {
+            return size;
+        }
+        long count = 0;
+        long[] prefix = {p};
+        for (Run run : pos.runs) {
+            count += bound(run, prefix, true) - bound(run, prefix, false);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the distinct IDs found at a position of the quads, in ascending order.
+     * Each run is read by jumping from one value to the next, not quad by quad.
+     *
+     * @param position 0 for the subjects, 1 for the predicates, 2 for the objects
+     * @return The distinct IDs
+     */
+    Set<Long> values(int position) {
+        commit();
+        Order order = position == 0 ? spo : position == 1 ? pos : osp;
+        Set<Long> values = new TreeSet<>();
+        for (Run run : order.runs) {
+            long i = 0;
+            while (i < run.size) {
+                long value = run.data.get(i * WIDTH);
+                values.add(value);
+                i = bound(run, new long[]{value}, true);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Returns the IDs of the graphs holding at least one quad.
+     */
+    Set<Long> graphs() {
+        return graphs;
+    }
+
+    /**
+     * Removes the quads of a graph from every run, keeping the runs sorted.
+     *
+     * @param g The graph ID
+     * @return The number of quads removed
+     */
+    long removeGraph(long g) {
+        commit();
+        long removed = removeGraph(spo, g);
+        removeGraph(pos, g);
+        removeGraph(osp, g);
+        size -= removed;
+        graphs.remove(g);
+        lastGraph = ANY;
+        return removed;
+    }
+
+    /**
+     * Returns the number of runs of each index, which stays logarithmic in the number of quads.
+     */
+    int getRunCount() {
+        return spo.runs.size();
+    }
+
+    /**
+     * Returns the number of off-heap bytes reserved by the indexes and the buffer.
+     *
+     * @return The memory usage in bytes
+     */
+    long getMemoryUsage() {
+        long bytes = pending.getMemoryUsage();
+        for (Order order : new Order[]{spo, pos, osp}) {
+            for (Run run : order.runs) {
+                bytes += run.data.getMemoryUsage();
+            }
+        }
+        return bytes;
+    }
+
+    void clear() {
+        pending = new OffHeapLongArray(WIDTH);
+        pendingCount = 0;
+        spo.runs.clear();
+        pos.runs.clear();
+        osp.runs.clear();
+        graphs.clear();
+        lastGraph = ANY;
+        size = 0;
+    }
+
+    /**
+     * Adds a run to an index, then merges the last two runs while the last one is at least half the size of the other.
+     */
+    private static void push(Order order, Run run) {
+        List<Run> runs = order.runs;
+        runs.add(run);
+        while (runs.size() > 1 && runs.get(runs.size() - 2).size <= 2 * runs.get(runs.size() - 1).size) {
+            Run newer = runs.remove(runs.size() - 1);
+            Run older = runs.remove(runs.size() - 1);
+            runs.add(merge(older, newer));
+        }
+    }
+
+    /**
+     * Compacts the runs of an index without the quads of a graph, dropping the runs left empty.
+     */
+    private static long removeGraph(Order order, long g) {
+        long removed = 0;
+        for (Iterator<Run> runs = order.runs.iterator(); runs.hasNext(); ) {
+            Run run = runs.next();
+            long kept = 0;
+            for (long i = 0; i < run.size; i++) {
+                if (run.data.get(i * WIDTH + 3) != g) {
+                    copy(run.data, i, run.data, kept++);
+                }
+            }
+            removed += run.size - kept;
+            run.size = kept;
+            if (kept == 0) {
+                runs.remove();
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Merges two sorted runs holding different quads into a new run.
+     */
+    private static Run merge(Run a, Run b) {
+        Run result = new Run(a.size + b.size);
+        long i = 0;
+        long j = 0;
+        long k = 0;
+        while (i < a.size && j < b.size) {
+            if (compare(a.data, i, b.data, j) <= 0) {
+                copy(a.data, i++, result.data, k++);
+            } else {
+                copy(b.data, j++, result.data, k++);
+            }
+        }
+        while (i < a.size) {
+            copy(a.data, i++, result.data, k++);
+        }
+        while (j < b.size) {
+            copy(b.data, j++, result.data, k++);
+        }
+        result.size = k;
+        return result;
+    }
+
+    /**
+     * Copies quads stored in subject, predicate, object, graph order into a run, permuted into the columns of an index.
+     */
+    private static Run fill(Run run, OffHeapLongArray quads, long count, int[] columns) {
+        for (long i = 0; i < count; i++) {
+            long source = i * WIDTH;
+            long target = i * WIDTH;
+            for (int c = 0; c < 3; c++) {
+                run.data.set(target + c, quads.get(source + columns[c]));
+            }
+            run.data.set(target + 3, quads.get(source + 3));
+        }
+        run.size = count;
+        return run;
+    }
+
+    /**
+     * Builds a sorted run of an index from a run in SPO order.
+     */
+    private static Run sorted(Run spoRun, int[] columns) {
+        Run run = fill(new Run(spoRun.size), spoRun.data, spoRun.size, columns);
+        sort(run.data, 0, run.size - 1);
+        return run;
+    }
+
+    /**
+     * Removes from a sorted SPO run its repeated quads and the quads already held by the SPO runs.
+     *
+     * @return The number of quads kept
+     */
+    private long dropKnown(Run run) {
+        long kept = 0;
+        long[] quad = new long[WIDTH];
+        for (long i = 0; i < run.size; i++) {
+            if (kept > 0 && compare(run.data, i, run.data, kept - 1) == 0) {
+                continue;
+            }
+            for (int c = 0; c < WIDTH; c++) {
+                quad[c] = run.data.get(i * WIDTH + c);
+            }
+            if (!contains(spo, quad)) {
+                copy(run.data, i, run.data, kept++);
+            }
+        }
+        return kept;
+    }
+
+    private static boolean contains(Order order, long[] quad) {
+        for (Run run : order.runs) {
+            long index = bound(run, quad, false);
+            if (index < run.size && comparePrefix(run, index, quad) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the leading bound positions of a pattern, in the column order of an index.
+     */
+    private static long[] prefix(Order order, long[] pattern) {
+        int length = 0;
+        while (length < 3 && pattern[order.columns[length]] != ANY) {
+            length++;
+        }
+        long[] prefix = new long[length];
+        for (int c = 0; c < length; c++) {
+            prefix[c] = pattern[order.columns[c]];
+        }
+        return prefix;
+    }
+
+    /**
+     * Binary search for the first quad not below (or, if upper, strictly above) the prefix.
+     */
+    private static long bound(Run run, long[] prefix, boolean upper) {
+        long low = 0;
+        long high = run.size;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            int cmp = comparePrefix(run, mid, prefix);
+            if (cmp < 0 || (upper && cmp == 0)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int comparePrefix(Run run, long quad, long[] prefix) {
+        long base = quad * WIDTH;
+        for (int i = 0; i < prefix.length; i++) {
+            int cmp = Long.compare(run.data.get(base + i), prefix[i]);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * In-place quicksort of the quads between two positions, recursing on the smaller side.
+     */
+    private static void sort(OffHeapLongArray data, long low, long high) {
+        while (high - low > INSERTION_SORT_THRESHOLD) {
+            long middle = (low + high) >>> 1;
+            swap(data, middle, high);
+            long store = low;
+            for (long i = low; i < high; i++) {
+                if (compare(data, i, data, high) < 0) {
+                    swap(data, i, store++);
+                }
+            }
+            swap(data, store, high);
+
+            if (store - low < high - store) {
+                sort(data, low, store - 1);
+                low = store + 1;
+            } else {
+                sort(data, store + 1, high);
+                high = store - 1;
+            }
+        }
+        for (long i = low + 1; i <= high; i++) {
+            for (long j = i; j > low && compare(data, j - 1, data, j) > 0; j--) {
+                swap(data, j - 1, j);
+            }
+        }
+    }
+
+    private static int compare(OffHeapLongArray a, long i, OffHeapLongArray b, long j) {
+        long baseA = i * WIDTH;
+        long baseB = j * WIDTH;
+        for (int c = 0; c < WIDTH; c++) {
+            int cmp = Long.compare(a.get(baseA + c), b.get(baseB + c));
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    private static void swap(OffHeapLongArray data, long a, long b) {
+        if (a == b) {
+            return;
+        }
+        long baseA = a * WIDTH;
+        long baseB = b * WIDTH;
+        for (int c = 0; c < WIDTH; c++) {
+            long value = data.get(baseA + c);
+            data.set(baseA + c, data.get(baseB + c));
+            data.set(baseB + c, value);
+        }
+    }
+
+    private static void copy(OffHeapLongArray from, long i, OffHeapLongArray to, long j) {
+        for (int c = 0; c < WIDTH; c++) {
+            to.set(j * WIDTH + c, from.get(i * WIDTH + c));
+        }
+    }
+
+    /**
+     * Walks the range of each run that starts with the prefix and keeps the quads matching the whole pattern.
+     */
+    private static final class QuadIterator implements Iterator<long[]> {
+        private final Order order;
+        private final long[] pattern;
+        private final long[] prefix;
+        private int run = -1;
+        private long position;
+        private long end;
+        private long[] next;
+
+        private QuadIterator(Order order, long[] pattern, long[] prefix) {
+            this.order = order;
+            this.pattern = pattern;
+            this.prefix = prefix;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null) {
+                if (position >= end) {
+                    if (++run >= order.runs.size()) {
+                        return false;
+                    }
+                    Run current = order.runs.get(run);
+                    position = bound(current, prefix, false);
+                    end = bound(current, prefix, true);
+                    continue;
+                }
+                OffHeapLongArray data = order.runs.get(run).data;
+                long base = position++ * WIDTH;
+                long[] quad = new long[WIDTH];
+                for (int c = 0; c < 3; c++) {
+                    quad[order.columns[c]] = data.get(base + c);
+                }
+                quad[3] = data.get(base + 3);
+                if (matches(quad)) {
+                    next = quad;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public long[] next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            long[] quad = next;
+            next = null;
+            return quad;
+        }
+
+        private boolean matches(long[] quad) {
+            for (int i = 0; i < WIDTH; i++) {
+                if (pattern[i] != ANY && quad[i] != pattern[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
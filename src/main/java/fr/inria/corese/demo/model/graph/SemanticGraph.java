@@ -1,10 +1,14 @@
 package fr.inria.corese.demo.model.graph;
 
 import java.io.File;
+import java.io.InputStream;
 import java.util.List;
 
 public interface SemanticGraph {
     void loadFile(File file) throws Exception;
+    // Chargement depuis un flux déjà ouvert, et retrait des triplets d'un fichier
+    void loadFile(File file, InputStream input) throws Exception;
+    void unloadFile(File file);
     void clearGraph();
     void reloadFiles();
 
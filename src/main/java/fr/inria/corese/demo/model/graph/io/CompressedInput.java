@@ -0,0 +1,85 @@
+package fr.inria.corese.demo.model.graph.io;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdUtils;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Transparent decompression of gzip, bzip2 and zstd inputs.
+ *
+ * The compression is recognized from the first bytes of the stream, so a file
+ * does not need the matching extension. Decompression runs on its own thread
+ * through a {@link PipelinedInputStream}, overlapping with the parser.
+ */
+public final class CompressedInput {
+    private static final String[] EXTENSIONS = {".gz", ".gzip", ".bz2", ".zst"};
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private CompressedInput() {
+    }
+
+    /**
+     * Returns whether a file name carries a compression extension.
+     *
+     * @param file The file to check
+     * @return True for .gz, .bz2 and .zst files
+     */
+    public static boolean isCompressed(File file) {
+        return !stripExtension(file.getName()).equals(file.getName());
+    }
+
+    /**
+     * Removes a compression extension from a file name,
+     * so that {@code data.ttl.gz} is handled as {@code data.ttl}.
+     *
+     * @param fileName The file name
+     * @return The name without its compression extension
+     */
+    public static String stripExtension(String fileName) {
+        String lowerCase = fileName.toLowerCase();
+        for (String extension : EXTENSIONS) {
+            if (lowerCase.endsWith(extension)) {
+                return fileName.substring(0, fileName.length() - extension.length());
+            }
+        }
+        return fileName;
+    }
+
+    /**
+     * Wraps a stream with the decompressor matching its content.
+     * Uncompressed content is returned as is.
+     *
+     * @param input The raw stream
+     * @return A stream providing the decompressed content
+     * @throws IOException If the stream cannot be read or uses an unsupported compression
+     */
+    public static InputStream open(InputStream input) throws IOException {
+        InputStream buffered = input.markSupported() ? input : new BufferedInputStream(input, BUFFER_SIZE);
+        byte[] magic = new byte[4];
+        buffered.mark(magic.length);
+        int count = buffered.readNBytes(magic, 0, magic.length);
+        buffered.reset();
+
+        InputStream decompressed;
+        if (count >= 2 && (magic[0] & 0xFF) == 0x1F && (magic[1] & 0xFF) == 0x8B) {
+            decompressed = new GZIPInputStream(buffered, BUFFER_SIZE);
+        } else if (count >= 3 && magic[0] == 'B' && magic[1] == 'Z' && magic[2] == 'h') {
+            decompressed = new BZip2CompressorInputStream(buffered, true);
+        } else if (count >= 4 && (magic[0] & 0xFF) == 0x28 && (magic[1] & 0xFF) == 0xB5
+                && (magic[2] & 0xFF) == 0x2F && (magic[3] & 0xFF) == 0xFD) {
+            if (!ZstdUtils.isZstdCompressionAvailable()) {
+                throw new IOException("zstd input requires the zstd-jni library on the class path");
+            }
+            decompressed = new ZstdCompressorInputStream(buffered);
+        } else {
+            return buffered;
+        }
+        return new PipelinedInputStream(decompressed, "decompressor");
+    }
+}
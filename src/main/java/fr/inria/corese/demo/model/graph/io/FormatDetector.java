@@ -0,0 +1,193 @@
+package fr.inria.corese.demo.model.graph.io;
+
+import fr.inria.corese.core.load.Load;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Detects the RDF syntax of a file.
+ *
+ * Well-known extensions are trusted. Other files are recognized from their first
+ * few kilobytes, decompressed if needed: XML and JSON are identified by their first
+ * character, and lines made only of full terms ending with a dot are identified as
+ * N-Triples (three terms) or N-Quads (four terms). Anything else is Turtle, or TriG
+ * when a graph block is opened.
+ */
+public final class FormatDetector {
+    private static final int SAMPLE_SIZE = 8 * 1024;
+
+    private FormatDetector() {
+    }
+
+    /**
+     * Returns the format of a file, from its extension or, failing that, its content.
+     *
+     * @param file The file to inspect
+     * @return The Corese load format
+     */
+    public static Load.format detect(File file) {
+        Load.format format = fromExtension(CompressedInput.stripExtension(file.getName()).toLowerCase());
+        if (format != null) {
+            return format;
+        }
+        try (InputStream input = CompressedInput.open(new BufferedInputStream(new FileInputStream(file)))) {
+            return fromContent(new String(input.readNBytes(SAMPLE_SIZE), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            return Load.format.TURTLE_FORMAT;
+        }
+    }
+
+    /**
+     * Returns whether a file name has an RDF extension, optionally followed by a compression extension.
+     *
+     * @param fileName The file name
+     * @return True if the extension identifies an RDF syntax
+     */
+    public static boolean isRdfFile(String fileName) {
+        return fromExtension(CompressedInput.stripExtension(fileName).toLowerCase()) != null;
+    }
+
+    /**
+     * Returns whether a format is line-based, so a file can be cut on any line and parsed in parallel.
+     *
+     * @param format The format
+     * @return True for N-Triples and N-Quads
+     */
+    public static boolean isLineBased(Load.format format) {
+        return format == Load.format.NT_FORMAT || format == Load.format.NQUADS_FORMAT;
+    }
+
+    private static Load.format fromExtension(String fileName) {
+        if (fileName.endsWith(".ttl") || fileName.endsWith(".n3")) {
+            return Load.format.TURTLE_FORMAT;
+        } else if (fileName.endsWith(".rdf") || fileName.endsWith(".xml") || fileName.endsWith(".owl")) {
+            return Load.format.RDFXML_FORMAT;
+        } else if (fileName.endsWith(".jsonld")) {
+            return Load.format.JSONLD_FORMAT;
+        } else if (fileName.endsWith(".nt")) {
+            return Load.format.NT_FORMAT;
+        } else if (fileName.endsWith(".nq")) {
+            return Load.format.NQUADS_FORMAT;
+        } else if (fileName.endsWith(".trig")) {
+            return Load.format.TRIG_FORMAT;
+        }
+        return null;
+    }
+
+    /**
+     * Guesses the format of a sample of the file content.
+     *
+     * @param sample The first characters of the file
+     * @return The most likely format
+     */
+    private static Load.format fromContent(String sample) {
+        String content = sample.startsWith("\uFEFF") ? sample.substring(1) : sample;
+        String start = content.stripLeading();
+        if (start.startsWith("<?xml") || start.startsWith("<rdf:RDF") || start.startsWith("<!DOCTYPE")) {
+            return Load.format.RDFXML_FORMAT;
+        }
+        if (start.startsWith("{") || start.startsWith("[")) {
+            return Load.format.JSONLD_FORMAT;
+        }
+
+        // The last line may be cut by the sample size, it is not inspected
+        String[] lines = content.split("\r?\n");
+        int inspected = content.endsWith("\n") ? lines.length : lines.length - 1;
+        int terms = 0;
+        boolean graphBlock = false;
+        for (int i = 0; i < Math.max(inspected, 1) && i < lines.length; i++) {
+            String line = lines[i].strip();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            int count = countTerms(line);
+            if (count == 3 || count == 4) {
+                terms = terms == 0 || terms == count ? count : -1;
+            } else {
+                terms = -1;
+            }
+            if (line.endsWith("{") || line.startsWith("GRAPH ") || line.startsWith("graph ")) {
+                graphBlock = true;
+            }
+        }
+
+        if (terms == 3) {
+            return Load.format.NT_FORMAT;
+        } else if (terms == 4) {
+            return Load.format.NQUADS_FORMAT;
+        }
+        return graphBlock ? Load.format.TRIG_FORMAT : Load.format.TURTLE_FORMAT;
+    }
+
+    /**
+     * Counts the N-Triples terms of a statement line: IRIs, blank nodes and literals, followed by a final dot.
+     *
+     * @return The number of terms, or -1 if the line is not a single N-Triples or N-Quads statement
+     */
+    private static int countTerms(String line) {
+        int count = 0;
+        int i = 0;
+        while (i < line.length()) {
+            char c = line.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '.') {
+                return line.substring(i + 1).isBlank() || line.substring(i + 1).strip().startsWith("#") ? count : -1;
+            } else if (c == '<') {
+                i = line.indexOf('>', i);
+                if (i < 0) {
+                    return -1;
+                }
+                i++;
+                count++;
+            } else if (c == '_' && line.startsWith("_:", i)) {
+                while (i < line.length() && !Character.isWhitespace(line.charAt(i))) {
+                    i++;
+                }
+                // A label cannot end with a dot, which is then the end of the statement
+                if (line.charAt(i - 1) == '.') {
+                    i--;
+                }
+                count++;
+            } else if (c == '"') {
+                i = endOfLiteral(line, i);
+                if (i < 0) {
+                    return -1;
+                }
+                count++;
+            } else {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the position after a quoted literal and its language tag or datatype.
+     */
+    private static int endOfLiteral(String line, int start) {
+        int i = start + 1;
+        while (i < line.length() && line.charAt(i) != '"') {
+            i += line.charAt(i) == '\\' ? 2 : 1;
+        }
+        if (i >= line.length()) {
+            return -1;
+        }
+        i++;
+        if (line.startsWith("^^<", i)) {
+            int end = line.indexOf('>', i);
+            return end < 0 ? -1 : end + 1;
+        }
+        if (i < line.length() && line.charAt(i) == '@') {
+            while (i < line.length() && !Character.isWhitespace(line.charAt(i)) && line.charAt(i) != '.') {
+                i++;
+            }
+        }
+        return i;
+    }
+}
@@ -0,0 +1,353 @@
+package fr.inria.corese.demo.model.graph.io;
+
+import fr.inria.corese.core.Graph;
+import fr.inria.corese.core.kgram.api.core.Edge;
+import fr.inria.corese.core.kgram.api.core.Node;
+import fr.inria.corese.core.sparql.api.IDatatype;
+import fr.inria.corese.demo.model.graph.FileFingerprint;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Compact binary image of a graph, used to reopen a project without parsing
+ * its files or running the rules again.
+ *
+ * Layout:
+ * <pre>
+ * header     magic, version, rules signature, source files with their fingerprints
+ * triples    one (graph, subject, predicate, object) tuple of term IDs per triple
+ * dictionary term count, then for each term: kind, label, datatype, language
+ * footer     triple section offset, triple count, dictionary offset
+ * </pre>
+ * The snapshot is written to a temporary file then moved in place, and is read
+ * back sequentially through memory-mapped windows.
+ */
+public final class GraphSnapshot {
+    private static final int MAGIC = 0x43475350; // "CGSP"
+    private static final int VERSION = 1;
+    private static final int FOOTER_SIZE = 3 * Long.BYTES;
+    private static final long WINDOW_SIZE = 256L * 1024 * 1024;
+
+    private static final byte IRI = 0;
+    private static final byte BLANK = 1;
+    private static final byte LITERAL = 2;
+
+    private GraphSnapshot() {
+    }
+
+    /**
+     * Information stored in front of the triples, enough to decide whether a snapshot is stale.
+     */
+    public static final class Header {
+        private final String rulesSignature;
+        private final Map<File, FileFingerprint> sources;
+
+        Header(String rulesSignature, Map<File, FileFingerprint> sources) {
+            this.rulesSignature = rulesSignature;
+            this.sources = sources;
+        }
+
+        public String getRulesSignature() {
+            return rulesSignature;
+        }
+
+        public Map<File, FileFingerprint> getSources() {
+            return sources;
+        }
+    }
+
+    /**
+     * Writes a snapshot of a graph.
+     *
+     * @param graph The graph to save
+     * @param sources The source files of the graph with their fingerprints
+     * @param rulesSignature Description of the rules that produced the inferred triples
+     * @param target The snapshot file
+     * @return The number of triples written
+     * @throws IOException If the snapshot cannot be written
+     */
+    public static long write(Graph graph, Map<File, FileFingerprint> sources, String rulesSignature, Path target)
+            throws IOException {
+        return write(graph, sources, rulesSignature, target, edge -> true);
+    }
+
+    /**
+     * Writes a snapshot of the triples of a graph accepted by a filter.
+     *
+     * @param graph The graph to save
+     * @param sources The source files of the graph with their fingerprints
+     * @param rulesSignature Description of the rules that produced the inferred triples
+     * @param target The snapshot file
+     * @param filter Selects the triples to write
+     * @return The number of triples written
+     * @throws IOException If the snapshot cannot be written
+     */
+    public static long write(Graph graph, Map<File, FileFingerprint> sources, String rulesSignature, Path target,
+                             Predicate<Edge> filter) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        Map<String, Integer> ids = new HashMap<>();
+        List<Node> terms = new ArrayList<>();
+        long tripleCount = 0;
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeString(out, rulesSignature);
+            out.writeInt(sources.size());
+            for (Map.Entry<File, FileFingerprint> entry : sources.entrySet()) {
+                writeString(out, entry.getKey().getAbsolutePath());
+                writeString(out, entry.getValue().toString());
+            }
+
+            out.flush();
+            long triplesOffset = channel.position();
+            for (Edge edge : graph.getEdges()) {
+                if (!filter.test(edge)) {
+                    continue;
+                }
+                out.writeInt(termId(edge.getGraph(), ids, terms));
+                out.writeInt(termId(edge.getNode(0), ids, terms));
+                out.writeInt(termId(edge.getEdgeNode(), ids, terms));
+                out.writeInt(termId(edge.getNode(1), ids, terms));
+                tripleCount++;
+            }
+
+            out.flush();
+            long dictionaryOffset = channel.position();
+            out.writeInt(terms.size());
+            for (Node term : terms) {
+                IDatatype value = term.getDatatypeValue();
+                if (term.isBlank()) {
+                    out.writeByte(BLANK);
+                    writeString(out, term.getLabel());
+                } else if (value.isLiteral()) {
+                    out.writeByte(LITERAL);
+                    writeString(out, value.getLabel());
+                    writeString(out, value.getDatatypeURI() != null ? value.getDatatypeURI() : "");
+                    writeString(out, value.getLang() != null ? value.getLang() : "");
+                } else {
+                    out.writeByte(IRI);
+                    writeString(out, term.getLabel());
+                }
+            }
+
+            out.writeLong(triplesOffset);
+            out.writeLong(tripleCount);
+            out.writeLong(dictionaryOffset);
+            out.flush();
+            channel.force(false);
+        }
+
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return tripleCount;
+    }
+
+    /**
+     * Reads the header of a snapshot without loading its triples.
+     *
+     * @param source The snapshot file
+     * @return The snapshot header
+     * @throws IOException If the file is not a readable snapshot
+     */
+    public static Header readHeader(Path source) throws IOException {
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            return readHeader(new MappedReader(channel));
+        }
+    }
+
+    /**
+     * Loads the triples of a snapshot into a graph.
+     *
+     * @param source The snapshot file
+     * @param target The graph receiving the triples
+     * @return The number of triples read
+     * @throws IOException If the file is not a readable snapshot
+     */
+    public static long read(Path source, Graph target) throws IOException {
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            MappedReader reader = new MappedReader(channel);
+            readHeader(reader);
+
+            reader.seek(channel.size() - FOOTER_SIZE);
+            long triplesOffset = reader.readLong();
+            long tripleCount = reader.readLong();
+            long dictionaryOffset = reader.readLong();
+
+            // Decode the dictionary, nodes are created lazily for the role they play
+            reader.seek(dictionaryOffset);
+            int termCount = reader.readInt();
+            byte[] kinds = new byte[termCount];
+            String[] labels = new String[termCount];
+            String[] datatypes = new String[termCount];
+            String[] languages = new String[termCount];
+            for (int i = 0; i < termCount; i++) {
+                kinds[i] = reader.readByte();
+                labels[i] = reader.readString();
+                if (kinds[i] == LITERAL) {
+                    datatypes[i] = emptyToNull(reader.readString());
+                    languages[i] = emptyToNull(reader.readString());
+                }
+            }
+
+            Node[] values = new Node[termCount];
+            Node[] properties = new Node[termCount];
+            Node[] graphs = new Node[termCount];
+
+            reader.seek(triplesOffset);
+            for (long i = 0; i < tripleCount; i++) {
+                int g = reader.readInt();
+                int s = reader.readInt();
+                int p = reader.readInt();
+                int o = reader.readInt();
+
+                if (graphs[g] == null) {
+                    graphs[g] = target.addGraph(labels[g]);
+                }
+                if (properties[p] == null) {
+                    properties[p] = target.addProperty(labels[p]);
+                }
+                if (values[s] == null) {
+                    values[s] = createNode(target, kinds[s], labels[s], datatypes[s], languages[s]);
+                }
+                if (values[o] == null) {
+                    values[o] = createNode(target, kinds[o], labels[o], datatypes[o], languages[o]);
+                }
+                target.addEdge(graphs[g], values[s], properties[p], values[o]);
+            }
+            return tripleCount;
+        }
+    }
+
+    private static Header readHeader(MappedReader reader) throws IOException {
+        if (reader.readInt() != MAGIC) {
+            throw new IOException("Not a graph snapshot");
+        }
+        int version = reader.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot version " + version);
+        }
+
+        String rulesSignature = reader.readString();
+        int sourceCount = reader.readInt();
+        Map<File, FileFingerprint> sources = new LinkedHashMap<>();
+        for (int i = 0; i < sourceCount; i++) {
+            File file = new File(reader.readString());
+            sources.put(file, FileFingerprint.parse(reader.readString()));
+        }
+        return new Header(rulesSignature, sources);
+    }
+
+    /**
+     * Creates the node of a term. Blank nodes get a fresh label: the stored one came from the
+     * blank node counter of another run, which a later load in this run could hand out again.
+     */
+    private static Node createNode(Graph graph, byte kind, String label, String datatype, String language) {
+        return switch (kind) {
+            case BLANK -> graph.addBlank(graph.newBlankID());
+            case LITERAL -> graph.addLiteral(label, datatype, language);
+            default -> graph.addResource(label);
+        };
+    }
+
+    private static int termId(Node node, Map<String, Integer> ids, List<Node> terms) {
+        IDatatype value = node.getDatatypeValue();
+        String key = node.isBlank() ? "_:" + node.getLabel()
+                : value.isLiteral() ? "\"" + value.getLabel() + "\"" + value.getDatatypeURI() + "@" + value.getLang()
+                : "<" + node.getLabel();
+        Integer id = ids.get(key);
+        if (id == null) {
+            id = terms.size();
+            ids.put(key, id);
+            terms.add(node);
+        }
+        return id;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    /**
+     * Sequential reader over a file mapped in windows, so files larger than
+     * what a single mapping can address are supported.
+     */
+    private static final class MappedReader {
+        private final FileChannel channel;
+        private MappedByteBuffer window;
+        private long windowStart;
+        private long position;
+
+        MappedReader(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void seek(long newPosition) {
+            position = newPosition;
+        }
+
+        byte readByte() throws IOException {
+            return ensure(Byte.BYTES).get();
+        }
+
+        int readInt() throws IOException {
+            return ensure(Integer.BYTES).getInt();
+        }
+
+        long readLong() throws IOException {
+            return ensure(Long.BYTES).getLong();
+        }
+
+        String readString() throws IOException {
+            int length = readInt();
+            byte[] bytes = new byte[length];
+            ensure(length).get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Makes the next bytes available in the current window and advances the position.
+         */
+        private ByteBuffer ensure(int length) throws IOException {
+            long size = channel.size();
+            if (position + length > size) {
+                throw new IOException("Truncated snapshot");
+            }
+            if (window == null || position < windowStart || position + length > windowStart + window.limit()) {
+                windowStart = position;
+                long mapped = Math.max(length, Math.min(WINDOW_SIZE, size - position));
+                window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, mapped);
+            }
+            window.position((int) (position - windowStart));
+            position += length;
+            return window;
+        }
+    }
+}
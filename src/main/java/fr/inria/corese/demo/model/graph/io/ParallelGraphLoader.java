@@ -0,0 +1,133 @@
+package fr.inria.corese.demo.model.graph.io;
+
+import fr.inria.corese.core.Graph;
+import fr.inria.corese.core.load.Load;
+import fr.inria.corese.demo.model.graph.CoreseGraph;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Parses several files in parallel and merges them into a target graph.
+ *
+ * Each file is parsed on a worker into its own staging graph. The staging graphs
+ * are merged one at a time on the calling thread, in file path order, so the
+ * content of the target graph does not depend on which parse finishes first.
+ * At most twice as many files as workers are parsed ahead of the merge, which
+ * bounds the number of staging graphs held in memory.
+ */
+public class ParallelGraphLoader {
+
+    /**
+     * Receives the outcome of each file, in merge order.
+     */
+    public interface Listener {
+        void fileLoaded(File file, int triples);
+
+        void fileFailed(File file, Exception error);
+    }
+
+    private final int parallelism;
+
+    /**
+     * Creates a loader using one worker per available processor.
+     */
+    public ParallelGraphLoader() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a loader.
+     *
+     * @param parallelism The number of files parsed concurrently
+     */
+    public ParallelGraphLoader(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Parses the files and merges them into the target graph.
+     * A cancelled load stops between two merges, so every file is either
+     * fully present in the target graph or absent from it.
+     *
+     * @param target The graph receiving the merged triples
+     * @param files The files to load
+     * @param listener Notified after each file is merged or has failed
+     * @param cancelled Returns true when loading must stop, may be null
+     * @return The files that were merged, in merge order
+     * @throws InterruptedException If the calling thread is interrupted
+     */
+    public List<File> load(Graph target, List<File> files, Listener listener, BooleanSupplier cancelled)
+            throws InterruptedException {
+        List<File> ordered = new ArrayList<>(files);
+        ordered.sort(Comparator.comparing(File::getAbsolutePath));
+
+        List<File> merged = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "graph-parser");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            Deque<Future<Graph>> pending = new ArrayDeque<>();
+            int next = 0;
+            for (int i = 0; i < ordered.size(); i++) {
+                // Keep a bounded window of parses running ahead of the merge
+                while (next < ordered.size() && pending.size() < parallelism * 2) {
+                    File file = ordered.get(next++);
+                    pending.add(executor.submit(() -> parse(file, cancelled)));
+                }
+
+                File file = ordered.get(i);
+                Future<Graph> future = pending.poll();
+                if (cancelled != null && cancelled.getAsBoolean()) {
+                    break;
+                }
+
+                try {
+                    Graph staging = future.get();
+                    int triples = staging.size();
+                    CoreseGraph.merge(target, staging);
+                    merged.add(file);
+                    listener.fileLoaded(file, triples);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    listener.fileFailed(file, cause instanceof Exception ? (Exception) cause : e);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return merged;
+    }
+
+    /**
+     * Parses one file into a fresh staging graph.
+     *
+     * @param file The file to parse
+     * @param cancelled Returns true when parsing must stop
+     * @return The staging graph
+     * @throws Exception If the file cannot be read or parsed
+     */
+    private Graph parse(File file, BooleanSupplier cancelled) throws Exception {
+        Graph staging = Graph.create();
+        try (InputStream input = CompressedInput.open(new ProgressInputStream(
+                new BufferedInputStream(new FileInputStream(file)), null, cancelled))) {
+            Load.create(staging).parse(input, CoreseGraph.getGraphName(file), CoreseGraph.getFormat(file));
+        }
+        return staging;
+    }
+}
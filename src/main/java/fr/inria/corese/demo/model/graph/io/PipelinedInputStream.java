@@ -0,0 +1,147 @@
+package fr.inria.corese.demo.model.graph.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Input stream that reads its source on a separate thread.
+ *
+ * A producer thread fills blocks from the source and hands them over through a
+ * bounded queue, so expensive work done while reading, such as decompression,
+ * overlaps with the consumer's own work, such as parsing. Errors raised by the
+ * source, including runtime errors of a decompressor, are rethrown to the
+ * consumer as {@link IOException}s once the blocks read before them are consumed.
+ */
+public class PipelinedInputStream extends InputStream {
+    private static final int BLOCK_SIZE = 256 * 1024;
+    private static final int QUEUE_DEPTH = 8;
+    private static final byte[] END = new byte[0];
+
+    private final InputStream source;
+    private final BlockingQueue<byte[]> blocks = new ArrayBlockingQueue<>(QUEUE_DEPTH);
+    private final Thread producer;
+    private volatile boolean closed;
+    private volatile IOException failure;
+    private byte[] current = new byte[0];
+    private int position;
+    private boolean finished;
+
+    /**
+     * Starts reading a stream in the background.
+     *
+     * @param source The stream to read, closed by this stream
+     * @param name The name of the producer thread
+     */
+    public PipelinedInputStream(InputStream source, String name) {
+        this.source = source;
+        this.producer = new Thread(this::produce, name);
+        this.producer.setDaemon(true);
+        this.producer.start();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return current[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int count = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return current.length - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        producer.interrupt();
+        blocks.clear();
+        source.close();
+    }
+
+    /**
+     * Makes the next block current when the previous one is consumed.
+     *
+     * @return False at the end of the stream
+     */
+    private boolean fill() throws IOException {
+        while (position >= current.length) {
+            if (finished) {
+                return false;
+            }
+            try {
+                current = blocks.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Reading interrupted");
+            }
+            position = 0;
+            if (current == END) {
+                finished = true;
+                if (failure != null) {
+                    throw failure;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the source into blocks until its end, an error or the stream is closed.
+     * The end marker is always posted, so the consumer never waits for a producer that stopped.
+     */
+    private void produce() {
+        try {
+            while (!closed) {
+                byte[] block = new byte[BLOCK_SIZE];
+                int filled = 0;
+                int count;
+                while (filled < BLOCK_SIZE && (count = source.read(block, filled, BLOCK_SIZE - filled)) > 0) {
+                    filled += count;
+                }
+                if (filled == 0) {
+                    break;
+                }
+                put(filled == BLOCK_SIZE ? block : Arrays.copyOf(block, filled));
+            }
+        } catch (InterruptedException e) {
+            // The consumer closed the stream
+        } catch (Throwable e) {
+            failure = e instanceof IOException io ? io : new IOException("Reading failed: " + e, e);
+        } finally {
+            try {
+                put(END);
+            } catch (InterruptedException e) {
+                // The consumer closed the stream, nobody waits for the end marker
+            }
+        }
+    }
+
+    private void put(byte[] block) throws InterruptedException {
+        while (!closed) {
+            if (blocks.offer(block, 100, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package fr.inria.corese.demo.model.graph.io;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Input stream that reports the number of bytes read and aborts the read
+ * as soon as a cancellation is requested.
+ *
+ * Parsers consume the stream through this wrapper, so a cancelled load stops
+ * at the next buffer refill with an {@link InterruptedIOException}.
+ */
+public class ProgressInputStream extends FilterInputStream {
+
+    /**
+     * Receives the running number of bytes read from a stream.
+     */
+    @FunctionalInterface
+    public interface Listener {
+        void bytesRead(long totalBytes);
+    }
+
+    private final Listener listener;
+    private final BooleanSupplier cancelled;
+    private long totalBytes;
+
+    /**
+     * Creates a progress stream.
+     *
+     * @param in The stream to wrap
+     * @param listener The progress listener, may be null
+     * @param cancelled Returns true when reading must stop, may be null
+     */
+    public ProgressInputStream(InputStream in, Listener listener, BooleanSupplier cancelled) {
+        super(in);
+        this.listener = listener;
+        this.cancelled = cancelled;
+    }
+
+    @Override
+    public int read() throws IOException {
+        checkCancelled();
+        int b = super.read();
+        if (b >= 0) {
+            advance(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        checkCancelled();
+        int count = super.read(b, off, len);
+        if (count > 0) {
+            advance(count);
+        }
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        checkCancelled();
+        long skipped = super.skip(n);
+        if (skipped > 0) {
+            advance(skipped);
+        }
+        return skipped;
+    }
+
+    /**
+     * Returns the number of bytes read so far.
+     *
+     * @return The number of bytes read
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    private void advance(long count) {
+        totalBytes += count;
+        if (listener != null) {
+            listener.bytesRead(totalBytes);
+        }
+    }
+
+    private void checkCancelled() throws InterruptedIOException {
+        if (cancelled != null && cancelled.getAsBoolean()) {
+            throw new InterruptedIOException("Loading cancelled");
+        }
+    }
+}
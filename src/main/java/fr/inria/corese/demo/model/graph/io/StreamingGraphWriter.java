@@ -0,0 +1,163 @@
+package fr.inria.corese.demo.model.graph.io;
+
+import fr.inria.corese.core.Graph;
+import fr.inria.corese.core.kgram.api.core.Edge;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Writes a graph to a file one triple at a time, in Turtle, N-Triples or TriG.
+ *
+ * Triples go straight from the graph iterator to a buffered channel writer, so the
+ * memory used does not depend on the size of the graph. The output is written to a
+ * temporary file that replaces the target only once complete, so a failed or cancelled
+ * save leaves the previous file untouched.
+ */
+public final class StreamingGraphWriter {
+    private static final String DEFAULT_GRAPH = "http://ns.inria.fr/corese/kgram/default";
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int REPORT_INTERVAL = 10_000;
+
+    /**
+     * Output syntaxes.
+     */
+    public enum Syntax {
+        TURTLE(".ttl"),
+        NTRIPLES(".nt"),
+        TRIG(".trig");
+
+        private final String extension;
+
+        Syntax(String extension) {
+            this.extension = extension;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        /**
+         * Returns the syntax matching a file extension, Turtle by default.
+         *
+         * @param file The target file
+         * @return The syntax to write
+         */
+        public static Syntax of(File file) {
+            String fileName = file.getName().toLowerCase();
+            for (Syntax syntax : values()) {
+                if (fileName.endsWith(syntax.extension)) {
+                    return syntax;
+                }
+            }
+            return TURTLE;
+        }
+    }
+
+    /**
+     * Receives the running number of triples written.
+     */
+    @FunctionalInterface
+    public interface Listener {
+        void triplesWritten(long count);
+    }
+
+    private StreamingGraphWriter() {
+    }
+
+    /**
+     * Writes every triple of a graph to a file.
+     * Turtle and N-Triples flatten the named graphs; TriG keeps them, the default graph
+     * being written without a name. Consecutive triples sharing a subject (Turtle) or a
+     * named graph (TriG) are grouped.
+     *
+     * @param graph The graph to write
+     * @param target The file to create or replace
+     * @param syntax The output syntax
+     * @param listener Receives the number of triples written, may be null
+     * @param cancelled Returns true when writing must stop, may be null
+     * @return The number of triples written
+     * @throws IOException If the file cannot be written or the save is cancelled
+     */
+    public static long write(Graph graph, Path target, Syntax syntax, Listener listener, BooleanSupplier cancelled)
+            throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        long count = 0;
+
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                 Writer out = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8), BUFFER_SIZE)) {
+
+                String currentGraph = null;
+                String currentSubject = null;
+                for (Edge edge : graph.getEdges()) {
+                    String subject = TermFormatter.format(edge.getNode(0));
+                    String predicate = TermFormatter.format(edge.getEdgeNode());
+                    String object = TermFormatter.format(edge.getNode(1));
+
+                    if (syntax == Syntax.TRIG) {
+                        String graphName = edge.getGraph().getLabel();
+                        if (!graphName.equals(currentGraph)) {
+                            if (currentGraph != null) {
+                                out.write(" .\n}\n");
+                            }
+                            out.write(DEFAULT_GRAPH.equals(graphName) ? "{\n" : TermFormatter.format(edge.getGraph()) + " {\n");
+                            currentGraph = graphName;
+                            currentSubject = null;
+                        }
+                    }
+
+                    if (syntax == Syntax.NTRIPLES) {
+                        out.write(subject + " " + predicate + " " + object + " .\n");
+                    } else if (subject.equals(currentSubject)) {
+                        out.write(" ;\n    " + predicate + " " + object);
+                    } else {
+                        if (currentSubject != null) {
+                            out.write(" .\n");
+                        }
+                        out.write(subject + " " + predicate + " " + object);
+                        currentSubject = subject;
+                    }
+
+                    if (++count % REPORT_INTERVAL == 0) {
+                        if (cancelled != null && cancelled.getAsBoolean()) {
+                            throw new InterruptedIOException("Saving cancelled");
+                        }
+                        if (listener != null) {
+                            listener.triplesWritten(count);
+                        }
+                    }
+                }
+
+                if (currentSubject != null) {
+                    out.write(" .\n");
+                }
+                if (currentGraph != null) {
+                    out.write("}\n");
+                }
+                out.flush();
+                channel.force(false);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        if (listener != null) {
+            listener.triplesWritten(count);
+        }
+        return count;
+    }
+}
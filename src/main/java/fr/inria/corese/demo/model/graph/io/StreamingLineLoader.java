@@ -0,0 +1,241 @@
+package fr.inria.corese.demo.model.graph.io;
+
+import fr.inria.corese.core.Graph;
+import fr.inria.corese.core.kgram.api.core.Edge;
+import fr.inria.corese.core.kgram.api.core.Node;
+import fr.inria.corese.core.load.Load;
+import fr.inria.corese.core.load.LoadException;
+import fr.inria.corese.core.sparql.api.IDatatype;
+import fr.inria.corese.demo.model.graph.CoreseGraph;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Bounded-memory loader for line-based formats (N-Triples and N-Quads).
+ *
+ * The file is read over NIO in fixed-size chunks cut on line boundaries. Chunks
+ * are parsed on several workers into staging graphs, which are inserted into the
+ * target graph in file order, one batch per chunk. Only a small window of chunks
+ * is in flight at any time, so peak memory depends on the chunk size and the
+ * number of workers, not on the size of the file.
+ * Blank nodes get a fresh label per label of the file, shared by all its chunks.
+ * Compressed files are decompressed on the fly, progress is then reported in compressed bytes.
+ */
+public class StreamingLineLoader {
+    public static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+
+    private final int chunkSize;
+    private final int parallelism;
+
+    /**
+     * Creates a loader with the default chunk size and one worker per available processor.
+     */
+    public StreamingLineLoader() {
+        this(DEFAULT_CHUNK_SIZE, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a loader.
+     *
+     * @param chunkSize The number of bytes read per chunk, which bounds the length of a line
+     * @param parallelism The number of chunks parsed concurrently
+     */
+    public StreamingLineLoader(int chunkSize, int parallelism) {
+        this.chunkSize = chunkSize;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Returns whether a file uses a line-based format handled by this loader.
+     *
+     * @param file The file to check
+     * @return True for N-Triples and N-Quads files, compressed or not, whatever their extension
+     */
+    public static boolean supports(File file) {
+        return FormatDetector.isLineBased(CoreseGraph.getFormat(file));
+    }
+
+    /**
+     * Streams a file into the target graph.
+     *
+     * @param target The graph receiving the triples
+     * @param file The N-Triples or N-Quads file
+     * @param listener Receives the number of bytes read, may be null
+     * @param cancelled Returns true when loading must stop, may be null
+     * @return The number of triples added to the target graph
+     * @throws IOException If the file cannot be read or the load is cancelled
+     * @throws LoadException If a chunk cannot be parsed
+     */
+    public int load(Graph target, File file, ProgressInputStream.Listener listener, BooleanSupplier cancelled)
+            throws IOException, LoadException {
+        Load.format format = CoreseGraph.getFormat(file);
+        String graphName = CoreseGraph.getGraphName(file);
+        int sizeBefore = target.size();
+
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "line-parser");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try (ReadableByteChannel channel = openChannel(file, listener)) {
+            Deque<Future<Graph>> pending = new ArrayDeque<>();
+            Map<String, Node> blanks = new HashMap<>();
+            ByteBuffer buffer = ByteBuffer.allocate(chunkSize);
+            boolean endOfFile = false;
+
+            while (!endOfFile) {
+                if (cancelled != null && cancelled.getAsBoolean()) {
+                    throw new InterruptedIOException("Loading cancelled");
+                }
+
+                // Fill the buffer after the remainder of the previous chunk
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer) < 0) {
+                        endOfFile = true;
+                        break;
+                    }
+                }
+                if (listener != null && channel instanceof FileChannel fileChannel) {
+                    listener.bytesRead(fileChannel.position());
+                }
+
+                buffer.flip();
+                byte[] chunk = endOfFile ? remaining(buffer) : completeLines(buffer);
+                buffer.compact();
+
+                if (chunk.length > 0) {
+                    pending.add(executor.submit(() -> parse(chunk, graphName, format)));
+                }
+                while (pending.size() >= parallelism * 2 || (endOfFile && !pending.isEmpty())) {
+                    merge(target, await(pending.poll()), blanks);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return target.size() - sizeBefore;
+    }
+
+    /**
+     * Opens a file for chunked reading. Plain files are read directly from their channel,
+     * compressed files through a decompressing stream that reports the compressed bytes read.
+     */
+    private static ReadableByteChannel openChannel(File file, ProgressInputStream.Listener listener)
+            throws IOException {
+        if (!CompressedInput.isCompressed(file)) {
+            return FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        }
+        return Channels.newChannel(CompressedInput.open(new ProgressInputStream(
+                new BufferedInputStream(new FileInputStream(file)), listener, null)));
+    }
+
+    /**
+     * Takes the complete lines of the buffer, leaving the trailing partial line in place.
+     *
+     * @param buffer The buffer in read mode
+     * @return The bytes of the complete lines
+     * @throws IOException If a single line does not fit in a chunk
+     */
+    private byte[] completeLines(ByteBuffer buffer) throws IOException {
+        int end = buffer.limit() - 1;
+        while (end >= buffer.position() && buffer.get(end) != '\n') {
+            end--;
+        }
+        if (end < buffer.position()) {
+            throw new IOException("Line longer than the chunk size of " + chunkSize + " bytes");
+        }
+
+        byte[] chunk = new byte[end + 1 - buffer.position()];
+        buffer.get(chunk);
+        return chunk;
+    }
+
+    private static byte[] remaining(ByteBuffer buffer) {
+        byte[] chunk = new byte[buffer.remaining()];
+        buffer.get(chunk);
+        return chunk;
+    }
+
+    /**
+     * Parses one chunk into a staging graph.
+     * Blank node labels are kept so that a label shared by several chunks
+     * can be mapped to a single node when the chunks are merged.
+     */
+    private static Graph parse(byte[] chunk, String graphName, Load.format format) throws LoadException {
+        Graph staging = Graph.create();
+        Load ld = Load.create(staging);
+        ld.setRenameBlankNode(false);
+        ld.parse(new ByteArrayInputStream(chunk), graphName, format);
+        return staging;
+    }
+
+    /**
+     * Inserts a parsed chunk into the target graph.
+     * The chunk keeps the blank node labels of the file, which are only meaningful within it:
+     * each is mapped to a fresh blank node of the target graph, the same for every chunk.
+     *
+     * @param target The graph receiving the triples
+     * @param staging The parsed chunk
+     * @param blanks The blank nodes created so far for the file, by label
+     */
+    static void merge(Graph target, Graph staging, Map<String, Node> blanks) {
+        if (staging.nbBlanks() == 0) {
+            CoreseGraph.merge(target, staging);
+            return;
+        }
+        Map<Node, Node> nodes = new HashMap<>();
+        for (Edge edge : staging.getEdges()) {
+            Node graphNode = nodes.computeIfAbsent(edge.getGraph(), node -> target.addGraph(node.getLabel()));
+            Node property = nodes.computeIfAbsent(edge.getEdgeNode(), node -> target.addProperty(node.getLabel()));
+            Node subject = nodes.computeIfAbsent(edge.getNode(0), node -> copy(target, node, blanks));
+            Node object = nodes.computeIfAbsent(edge.getNode(1), node -> copy(target, node, blanks));
+            target.addEdge(graphNode, subject, property, object);
+        }
+    }
+
+    private static Node copy(Graph target, Node node, Map<String, Node> blanks) {
+        if (node.isBlank()) {
+            return blanks.computeIfAbsent(node.getLabel(), label -> target.addBlank(target.newBlankID()));
+        }
+        IDatatype value = node.getDatatypeValue();
+        if (value.isLiteral()) {
+            return target.addLiteral(value.getLabel(), value.getDatatypeURI(), value.getLang());
+        }
+        return target.addResource(node.getLabel());
+    }
+
+    private static Graph await(Future<Graph> future) throws IOException, LoadException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Loading interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof LoadException loadException) {
+                throw loadException;
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package fr.inria.corese.demo.model.graph.io;
+
+import fr.inria.corese.core.kgram.api.core.Node;
+import fr.inria.corese.core.sparql.api.IDatatype;
+
+/**
+ * Formats graph nodes as N-Triples terms.
+ * The same syntax is valid in Turtle, TriG and N-Quads.
+ */
+public final class TermFormatter {
+    private static final String XSD_STRING = "http://www.w3.org/2001/XMLSchema#string";
+    private static final String RDF_LANG_STRING = "http://www.w3.org/1999/02/22-rdf-syntax-ns#langString";
+
+    private TermFormatter() {
+    }
+
+    /**
+     * Formats a node as an N-Triples term.
+     *
+     * @param node The node to format
+     * @return The term, e.g. {@code <http://ex.org/a>}, {@code _:b1} or {@code "a"@en}
+     */
+    public static String format(Node node) {
+        if (node.isBlank()) {
+            String label = node.getLabel();
+            return label.startsWith("_:") ? label : "_:" + label;
+        }
+
+        IDatatype value = node.getDatatypeValue();
+        if (!value.isLiteral()) {
+            return "<" + escapeIri(node.getLabel()) + ">";
+        }
+
+        StringBuilder term = new StringBuilder();
+        term.append('"').append(escapeLiteral(value.getLabel())).append('"');
+        String language = value.getLang();
+        String datatype = value.getDatatypeURI();
+        if (language != null && !language.isEmpty()) {
+            term.append('@').append(language);
+        } else if (datatype != null && !datatype.equals(XSD_STRING) && !datatype.equals(RDF_LANG_STRING)) {
+            term.append("^^<").append(escapeIri(datatype)).append('>');
+        }
+        return term.toString();
+    }
+
+    private static String escapeLiteral(String label) {
+        StringBuilder escaped = new StringBuilder(label.length() + 8);
+        for (int i = 0; i < label.length(); i++) {
+            char c = label.charAt(i);
+            switch (c) {
+                case '"' -> escaped.append("\\\"");
+                case '\\' -> escaped.append("\\\\");
+                case '\n' -> escaped.append("\\n");
+                case '\r' -> escaped.append("\\r");
+                case '\t' -> escaped.append("\\t");
+                default -> escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    private static String escapeIri(String iri) {
+        StringBuilder escaped = new StringBuilder(iri.length());
+        for (int i = 0; i < iri.length(); i++) {
+            char c = iri.charAt(i);
+            if (c <= ' ' || c == '<' || c == '>' || c == '"' || c == '{' || c == '}'
+                    || c == '|' || c == '^' || c == '`' || c == '\\') {
+                escaped.append(String.format("\\u%04X", (int) c));
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+}
@@ -0,0 +1,286 @@
+package fr.inria.corese.demo.model.rule;
+
+import fr.inria.corese.core.Graph;
+import fr.inria.corese.core.kgram.api.core.Node;
+import fr.inria.corese.core.kgram.core.Mapping;
+import fr.inria.corese.core.query.QueryProcess;
+import fr.inria.corese.core.sparql.exceptions.EngineException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds the rules a query needs, by following the rules backward from the patterns of the query.
+ *
+ * A goal is a predicate, or a class for {@code rdf:type} patterns. A rule is relevant if its head
+ * can produce a goal, and the patterns of its body become goals in turn. A variable in predicate
+ * or class position is narrowed by a required body pattern binding it, such as
+ * {@code ?p rdfs:domain ?c}: only the terms found at that position in the graph are candidates.
+ * The binding pattern becomes a goal itself, so that the candidates are complete once the rules
+ * producing it have run; the processor plans again after each run until no rule is added.
+ */
+final class GoalPlanner {
+    private static final String RDF_TYPE = SchemaVocabulary.RDF_TYPE;
+
+    private final QueryProcess exec;
+    // Candidate terms of a variable, by binding pattern and position
+    private final Map<String, Set<String>> candidates = new HashMap<>();
+
+    GoalPlanner(Graph graph) {
+        this.exec = QueryProcess.create(graph);
+    }
+
+    /**
+     * Returns the rules that can contribute to the goals, in rule order.
+     * The goals are extended with everything these rules read.
+     *
+     * @param goals The goals, extended in place
+     * @param rules The rules to choose from
+     * @return The relevant rules
+     * @throws EngineException If the candidates of a variable cannot be queried
+     */
+    List<InferenceRule> relevantRules(Goals goals, List<InferenceRule> rules) throws EngineException {
+        Set<InferenceRule> relevant = Collections.newSetFromMap(new IdentityHashMap<>());
+        if (goals.isEmpty()) {
+            return new ArrayList<>();
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (InferenceRule rule : rules) {
+                if (!relevant.contains(rule) && produces(rule, goals)) {
+                    relevant.add(rule);
+                    addBodyGoals(rule, goals);
+                    changed = true;
+                }
+            }
+        }
+        List<InferenceRule> result = new ArrayList<>();
+        for (InferenceRule rule : rules) {
+            if (relevant.contains(rule)) {
+                result.add(rule);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns whether a pattern of the head of a rule can match a goal.
+     */
+    private boolean produces(InferenceRule rule, Goals goals) throws EngineException {
+        for (TriplePattern head : rule.getHeadPatterns()) {
+            if (head.hasVariablePredicate()) {
+                if (goals.anyPredicate) {
+                    return true;
+                }
+                Set<String> values = candidates(rule, head.getPredicateVariable(), goals);
+                if (values == null || !Collections.disjoint(values, goals.predicates)
+                        || (values.contains(RDF_TYPE) && (goals.anyClass || !goals.classes.isEmpty()))) {
+                    return true;
+                }
+            } else if (RDF_TYPE.equals(head.getPredicate())) {
+                if (goals.anyClass) {
+                    return true;
+                }
+                if (!TriplePattern.VARIABLE.equals(head.getObject())) {
+                    if (goals.classes.contains(head.getObject())) {
+                        return true;
+                    }
+                } else if (!goals.classes.isEmpty()) {
+                    Set<String> values = candidates(rule, head.getObjectVariable(), goals);
+                    if (values == null || !Collections.disjoint(values, goals.classes)) {
+                        return true;
+                    }
+                }
+            } else if (goals.predicates.contains(head.getPredicate())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Makes goals of the patterns read by a relevant rule.
+     */
+    private void addBodyGoals(InferenceRule rule, Goals goals) throws EngineException {
+        for (TriplePattern body : rule.getBodyPatterns()) {
+            if (body.hasVariablePredicate()) {
+                String variable = body.getPredicateVariable();
+                if (variable != null && isHeadVariable(rule, variable, false)) {
+                    // Bound to the goal the head matches, already a goal
+                    continue;
+                }
+                Set<String> values = candidates(rule, variable, goals);
+                if (values == null) {
+                    goals.anyPredicate = true;
+                    goals.anyClass = true;
+                } else {
+                    for (String value : values) {
+                        goals.addPredicate(value);
+                    }
+                }
+            } else if (RDF_TYPE.equals(body.getPredicate()) && TriplePattern.VARIABLE.equals(body.getObject())) {
+                String variable = body.getObjectVariable();
+                if (variable != null && isHeadVariable(rule, variable, true)) {
+                    continue;
+                }
+                Set<String> values = candidates(rule, variable, goals);
+                if (values == null) {
+                    goals.anyClass = true;
+                } else {
+                    goals.classes.addAll(values);
+                }
+            } else {
+                goals.add(body);
+            }
+        }
+    }
+
+    /**
+     * Returns whether a variable is the predicate, or the class of an {@code rdf:type} pattern, of the head.
+     */
+    private static boolean isHeadVariable(InferenceRule rule, String variable, boolean asClass) {
+        for (TriplePattern head : rule.getHeadPatterns()) {
+            if (asClass ? RDF_TYPE.equals(head.getPredicate()) && variable.equals(head.getObjectVariable())
+                    : variable.equals(head.getPredicateVariable())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the terms a variable of a rule can take, read from the graph through a required
+     * body pattern with a constant predicate that binds it. The binding pattern becomes a goal.
+     *
+     * @return The candidate terms, or null if no pattern binds the variable
+     */
+    private Set<String> candidates(InferenceRule rule, String variable, Goals goals) throws EngineException {
+        if (variable == null) {
+            return null;
+        }
+        for (TriplePattern pattern : rule.getBodyPatterns()) {
+            if (!pattern.isRequired() || pattern.hasVariablePredicate()) {
+                continue;
+            }
+            boolean subject = variable.equals(pattern.getSubjectVariable());
+            boolean object = variable.equals(pattern.getObjectVariable());
+            if (subject == object || (object && RDF_TYPE.equals(pattern.getPredicate()))) {
+                // Absent, bound twice, or the typing the class is looked for
+                continue;
+            }
+            goals.add(pattern);
+            String key = pattern + (subject ? " subject" : " object");
+            Set<String> values = candidates.get(key);
+            if (values == null) {
+                values = new HashSet<>();
+                String query = "SELECT DISTINCT ?v WHERE { "
+                        + (subject ? "?v" : term(pattern.getSubject(), "?s")) + " <" + pattern.getPredicate() + "> "
+                        + (object ? "?v" : term(pattern.getObject(), "?o")) + " }";
+                for (Mapping mapping : exec.query(query)) {
+                    Node node = mapping.getNode("?v");
+                    if (node != null) {
+                        values.add(node.getLabel());
+                    }
+                }
+                candidates.put(key, values);
+            }
+            return values;
+        }
+        return null;
+    }
+
+    private static String term(String term, String variable) {
+        if (TriplePattern.VARIABLE.equals(term)) {
+            return variable;
+        }
+        char first = term.isEmpty() ? ' ' : term.charAt(0);
+        if (first == '"' || first == '\'' || Character.isDigit(first) || first == '-' || first == '+'
+                || term.equals("true") || term.equals("false")) {
+            return term;
+        }
+        return "<" + term + ">";
+    }
+
+    /**
+     * The predicates and classes a query, and the rules it needs, read.
+     */
+    static final class Goals {
+        private final Set<String> predicates = new HashSet<>();
+        private final Set<String> classes = new HashSet<>();
+        private boolean anyPredicate;
+        private boolean anyClass;
+
+        /**
+         * Returns the goals of a list of query patterns.
+         *
+         * @param patterns The patterns of the query
+         * @return The goals
+         */
+        static Goals of(List<TriplePattern> patterns) {
+            Goals goals = new Goals();
+            for (TriplePattern pattern : patterns) {
+                goals.add(pattern);
+            }
+            return goals;
+        }
+
+        void add(TriplePattern pattern) {
+            if (pattern.hasVariablePredicate()) {
+                anyPredicate = true;
+                anyClass = true;
+            } else if (RDF_TYPE.equals(pattern.getPredicate())) {
+                if (TriplePattern.VARIABLE.equals(pattern.getObject())) {
+                    anyClass = true;
+                } else {
+                    classes.add(pattern.getObject());
+                }
+            } else {
+                predicates.add(pattern.getPredicate());
+            }
+        }
+
+        void addPredicate(String predicate) {
+            if (RDF_TYPE.equals(predicate)) {
+                anyClass = true;
+            } else {
+                predicates.add(predicate);
+            }
+        }
+
+        void addAll(Goals goals) {
+            predicates.addAll(goals.predicates);
+            classes.addAll(goals.classes);
+            anyPredicate |= goals.anyPredicate;
+            anyClass |= goals.anyClass;
+        }
+
+        /**
+         * Returns whether every goal of another set is one of these goals.
+         */
+        boolean covers(Goals goals) {
+            boolean predicatesCovered = anyPredicate
+                    || (!goals.anyPredicate && predicates.containsAll(goals.predicates));
+            boolean classesCovered = anyClass || (!goals.anyClass && classes.containsAll(goals.classes));
+            return predicatesCovered && classesCovered;
+        }
+
+        boolean isEmpty() {
+            return predicates.isEmpty() && classes.isEmpty() && !anyPredicate && !anyClass;
+        }
+
+        @Override
+        public String toString() {
+            if (anyPredicate) {
+                return "every predicate";
+            }
+            return predicates.size() + " predicates, " + (anyClass ? "every class" : classes.size() + " classes");
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package fr.inria.corese.demo.model.rule;
+
+import fr.inria.corese.core.Graph;
+import fr.inria.corese.core.kgram.api.core.Node;
+import fr.inria.corese.core.kgram.core.Mapping;
+import fr.inria.corese.core.kgram.core.Mappings;
+import fr.inria.corese.core.query.QueryProcess;
+import fr.inria.corese.core.sparql.exceptions.EngineException;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The predicates and classes present in a graph, used to skip the rules that cannot match it.
+ *
+ * A rule whose body requires a constant predicate absent from the graph, or an instance of
+ * a constant class that has none, cannot fire. The vocabulary grows with the conclusions of
+ * the rules during a run, so that a skipped rule is evaluated as soon as what it needs is inferred.
+ */
+final class GraphVocabulary {
+    private static final String RDF_TYPE = "http://www.w3.org/1999/02/22-rdf-syntax-ns#type";
+
+    private final Set<String> predicates = new HashSet<>();
+    private final Set<String> classes = new HashSet<>();
+    private boolean anyPredicate;
+    private boolean anyClass;
+
+    private GraphVocabulary() {
+    }
+
+    /**
+     * Reads the predicates and classes of every graph.
+     *
+     * @param graph The graph
+     * @return The vocabulary
+     * @throws EngineException If the graph cannot be queried
+     */
+    static GraphVocabulary of(Graph graph) throws EngineException {
+        GraphVocabulary vocabulary = new GraphVocabulary();
+        QueryProcess exec = QueryProcess.create(graph);
+        collect(exec.query("SELECT DISTINCT ?p WHERE { ?s ?p ?o }"), "?p", vocabulary.predicates);
+        collect(exec.query("SELECT DISTINCT ?c WHERE { ?s a ?c }"), "?c", vocabulary.classes);
+        return vocabulary;
+    }
+
+    /**
+     * Adds what a rule can infer.
+     *
+     * @param rule A rule that inferred new triples
+     */
+    void addConclusions(InferenceRule rule) {
+        for (TriplePattern pattern : rule.getHeadPatterns()) {
+            if (pattern.hasVariablePredicate()) {
+                anyPredicate = true;
+                anyClass = true;
+            } else {
+                predicates.add(pattern.getPredicate());
+                if (RDF_TYPE.equals(pattern.getPredicate())) {
+                    if (TriplePattern.VARIABLE.equals(pattern.getObject())) {
+                        anyClass = true;
+                    } else {
+                        classes.add(pattern.getObject());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the first term a rule requires that is absent from the graph.
+     *
+     * @param rule The rule
+     * @return The missing predicate or class, or null if the rule may match
+     */
+    String getMissingTerm(InferenceRule rule) {
+        for (TriplePattern pattern : rule.getBodyPatterns()) {
+            if (!pattern.isRequired() || pattern.hasVariablePredicate()) {
+                continue;
+            }
+            if (!anyPredicate && !predicates.contains(pattern.getPredicate())) {
+                return pattern.getPredicate();
+            }
+            if (RDF_TYPE.equals(pattern.getPredicate()) && !TriplePattern.VARIABLE.equals(pattern.getObject())
+                    && !anyClass && !classes.contains(pattern.getObject())) {
+                return pattern.getObject();
+            }
+        }
+        return null;
+    }
+
+    private static void collect(Mappings mappings, String variable, Set<String> terms) {
+        for (Mapping mapping : mappings) {
+            Node node = mapping.getNode(variable);
+            if (node != null) {
+                terms.add(node.getLabel());
+            }
+        }
+    }
+}
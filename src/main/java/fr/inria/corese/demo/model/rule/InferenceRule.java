@@ -0,0 +1,418 @@
+package fr.inria.corese.demo.model.rule;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A single inference rule, split from its SPARQL CONSTRUCT form into a template and a body.
+ *
+ * The rule is applied as a SPARQL update that inserts the template into an inference graph
+ * for every body match whose conclusion is not already in the graph. The predicates read by
+ * the body and written by the template tell which rules a new triple can trigger.
+ *
+ * Once a rule was evaluated, it only needs the matches that use a triple inferred since:
+ * when its body is a plain join of triple patterns, each pattern in turn is matched against
+ * the named graphs holding the last inferences, and the rest of the body against the whole graph.
+ *
+ * A constraint rule concludes violations of the ontology rather than new facts; like the
+ * Corese rule engine, the processor writes them into the constraint graph.
+ */
+public final class InferenceRule {
+    private static final Pattern PREFIX = Pattern.compile("(?i)prefix\\s+([\\w.-]*):\\s*<([^>]*)>");
+    private static final Pattern CONSTRUCT = Pattern.compile("(?i)\\bconstruct\\s*\\{");
+    private static final Pattern WHERE = Pattern.compile("(?i)^\\s*(where)?\\s*\\{");
+    private static final Map<String, String> DEFAULT_PREFIXES = Map.of(
+            "rdf", "http://www.w3.org/1999/02/22-rdf-syntax-ns#",
+            "rdfs", "http://www.w3.org/2000/01/rdf-schema#",
+            "owl", "http://www.w3.org/2002/07/owl#",
+            "xsd", "http://www.w3.org/2001/XMLSchema#");
+
+    private final String name;
+    private final String prologue;
+    private final String template;
+    private final String body;
+    private final boolean constraint;
+    // Whether every match of the body is a join of its triple patterns
+    private final boolean join;
+    private final List<TriplePattern> headPatterns;
+    private final List<TriplePattern> bodyPatterns;
+    private final Set<String> headPredicates = new LinkedHashSet<>();
+    private final Set<String> bodyPredicates = new LinkedHashSet<>();
+    private final boolean variableHeadPredicate;
+    private final boolean variableBodyPredicate;
+    // Duration of the last evaluation, rules are shared by every processor built from their rule set
+    private volatile long lastEvaluationNanos;
+
+    private InferenceRule(String name, String prologue, String template, String body, boolean constraint,
+                          List<TriplePattern> headPatterns, List<TriplePattern> bodyPatterns, boolean join) {
+        this.name = name;
+        this.prologue = prologue;
+        this.template = template;
+        this.body = body;
+        this.constraint = constraint;
+        this.join = join;
+        this.headPatterns = headPatterns;
+        this.bodyPatterns = bodyPatterns;
+
+        boolean variableHead = false;
+        for (TriplePattern pattern : headPatterns) {
+            if (pattern.hasVariablePredicate()) {
+                variableHead = true;
+            } else {
+                headPredicates.add(pattern.getPredicate());
+            }
+        }
+        boolean variableBody = false;
+        for (TriplePattern pattern : bodyPatterns) {
+            if (pattern.hasVariablePredicate()) {
+                variableBody = true;
+            } else {
+                bodyPredicates.add(pattern.getPredicate());
+            }
+        }
+        this.variableHeadPredicate = variableHead;
+        this.variableBodyPredicate = variableBody;
+    }
+
+    /**
+     * Splits a CONSTRUCT query into a rule.
+     *
+     * @param name The rule name
+     * @param query The CONSTRUCT query text
+     * @return The rule
+     * @throws IllegalArgumentException If the query is not a CONSTRUCT ... WHERE ... query
+     */
+    public static InferenceRule parse(String name, String query) {
+        return parse(name, query, false);
+    }
+
+    /**
+     * Splits a CONSTRUCT query into a rule or a constraint.
+     *
+     * @param name The rule name
+     * @param query The CONSTRUCT query text
+     * @param constraint True if the conclusions are constraint violations rather than inferences
+     * @return The rule
+     * @throws IllegalArgumentException If the query is not a CONSTRUCT ... WHERE ... query
+     */
+    public static InferenceRule parse(String name, String query, boolean constraint) {
+        Matcher construct = CONSTRUCT.matcher(query);
+        if (!construct.find()) {
+            throw new IllegalArgumentException("Not a CONSTRUCT query: " + name);
+        }
+        int templateEnd = closingBrace(query, construct.end() - 1);
+        Matcher where = WHERE.matcher(query.substring(templateEnd + 1));
+        if (!where.find()) {
+            throw new IllegalArgumentException("Missing WHERE clause: " + name);
+        }
+        int bodyStart = templateEnd + 1 + where.end() - 1;
+        int bodyEnd = closingBrace(query, bodyStart);
+        if (!query.substring(bodyEnd + 1).isBlank()) {
+            throw new IllegalArgumentException("Unsupported solution modifiers: " + name);
+        }
+
+        String prologue = query.substring(0, construct.start());
+        Map<String, String> prefixes = new HashMap<>(DEFAULT_PREFIXES);
+        Matcher prefix = PREFIX.matcher(prologue);
+        while (prefix.find()) {
+            prefixes.put(prefix.group(1), prefix.group(2));
+        }
+
+        String template = query.substring(construct.end(), templateEnd);
+        String body = query.substring(bodyStart + 1, bodyEnd);
+        return new InferenceRule(name, prologue, template, body, constraint,
+                PatternScanner.scan(template, prefixes), PatternScanner.scan(body, prefixes),
+                PatternScanner.isJoin(body));
+    }
+
+    /**
+     * Returns the triple patterns of the WHERE clause of a query, to tell which rules it needs.
+     *
+     * @param query The query text
+     * @return The patterns, empty if the query has no WHERE clause
+     */
+    static List<TriplePattern> queryPatterns(String query) {
+        int start = 0;
+        Matcher construct = CONSTRUCT.matcher(query);
+        if (construct.find()) {
+            // Skip the template
+            start = closingBrace(query, construct.end() - 1) + 1;
+        }
+        int bodyStart = query.indexOf('{', start);
+        if (bodyStart < 0) {
+            return List.of();
+        }
+        Map<String, String> prefixes = new HashMap<>(DEFAULT_PREFIXES);
+        Matcher prefix = PREFIX.matcher(query.substring(0, bodyStart));
+        while (prefix.find()) {
+            prefixes.put(prefix.group(1), prefix.group(2));
+        }
+        return PatternScanner.scan(query.substring(bodyStart + 1, closingBrace(query, bodyStart)), prefixes);
+    }
+
+    /**
+     * Returns the SPARQL update applying this rule.
+     * Conclusions already present in any graph are not inserted again,
+     * so applying a rule at fixpoint inserts nothing.
+     *
+     * @param graphName The named graph receiving the inferred triples
+     * @return The update text
+     */
+    public String toUpdate(String graphName) {
+        return toUpdate(graphName, 0);
+    }
+
+    /**
+     * Returns the SPARQL update applying this rule to at most a number of solutions of its body.
+     *
+     * @param graphName The named graph receiving the inferred triples
+     * @param limit The maximum number of solutions, 0 for no limit
+     * @return The update text
+     */
+    public String toUpdate(String graphName, long limit) {
+        return toUpdate(graphName, limit, null, null);
+    }
+
+    /**
+     * Returns the SPARQL update applying this rule to the matches that use a recently inferred triple.
+     *
+     * @param graphName The named graph receiving the inferred triples
+     * @param limit The maximum number of solutions, 0 for no limit
+     * @param deltaGraphs The named graphs holding the triples inferred since the last evaluation,
+     *                    null to match the whole body against the whole graph
+     * @param deltaPredicates The predicates of these triples, null if they may have any predicate
+     * @return The update text
+     */
+    public String toUpdate(String graphName, long limit, Collection<String> deltaGraphs, Set<String> deltaPredicates) {
+        return prologue
+                + "INSERT { GRAPH <" + graphName + "> {" + template + "} }\n"
+                + "WHERE " + where(limit, deltaGraphs, deltaPredicates);
+    }
+
+    /**
+     * Returns the CONSTRUCT query computing the new conclusions of this rule without
+     * modifying the graph, so that several rules can be evaluated concurrently.
+     *
+     * @param graphName The named graph the conclusions are meant for
+     * @return The query text
+     */
+    public String toConstruct(String graphName) {
+        return toConstruct(graphName, 0);
+    }
+
+    /**
+     * Returns the CONSTRUCT query computing the new conclusions of this rule for at most a
+     * number of solutions of its body.
+     *
+     * @param graphName The named graph the conclusions are meant for
+     * @param limit The maximum number of solutions, 0 for no limit
+     * @return The query text
+     */
+    public String toConstruct(String graphName, long limit) {
+        return toConstruct(graphName, limit, null, null);
+    }
+
+    /**
+     * Returns the CONSTRUCT query computing the new conclusions of this rule for the matches
+     * that use a recently inferred triple.
+     *
+     * @param graphName The named graph the conclusions are meant for
+     * @param limit The maximum number of solutions, 0 for no limit
+     * @param deltaGraphs The named graphs holding the triples inferred since the last evaluation,
+     *                    null to match the whole body against the whole graph
+     * @param deltaPredicates The predicates of these triples, null if they may have any predicate
+     * @return The query text
+     */
+    public String toConstruct(String graphName, long limit, Collection<String> deltaGraphs, Set<String> deltaPredicates) {
+        return prologue
+                + "CONSTRUCT { GRAPH <" + graphName + "> {" + template + "} }\n"
+                + "WHERE " + where(limit, deltaGraphs, deltaPredicates);
+    }
+
+    /**
+     * Returns the WHERE clause matching the new conclusions, wrapped in a limited subquery if needed.
+     */
+    private String where(long limit, Collection<String> deltaGraphs, Set<String> deltaPredicates) {
+        String matches = deltaGraphs != null && join ? deltaJoin(deltaGraphs, deltaPredicates) : null;
+        String where = "{" + (matches != null ? matches : body) + "\nFILTER NOT EXISTS {" + template + "} }";
+        return limit > 0 ? "{ SELECT * WHERE " + where + " LIMIT " + limit + " }" : where;
+    }
+
+    /**
+     * Returns the union of the body joined, pattern by pattern, with the triples of the delta graphs.
+     * A new match uses at least one new triple, matched by one of the patterns.
+     *
+     * @return The group text, or null if no pattern can match a new triple
+     */
+    private String deltaJoin(Collection<String> deltaGraphs, Set<String> deltaPredicates) {
+        StringBuilder graphs = new StringBuilder();
+        for (String deltaGraph : deltaGraphs) {
+            graphs.append(" <").append(deltaGraph).append('>');
+        }
+        List<String> branches = new ArrayList<>();
+        for (TriplePattern pattern : bodyPatterns) {
+            if (deltaPredicates != null && !pattern.hasVariablePredicate()
+                    && !deltaPredicates.contains(pattern.getPredicate())) {
+                continue;
+            }
+            branches.add("{ VALUES ?_delta {" + graphs + " } GRAPH ?_delta { "
+                    + term(pattern.getSubject(), pattern.getSubjectVariable(), 0) + " "
+                    + term(pattern.getPredicate(), pattern.getPredicateVariable(), 1) + " "
+                    + term(pattern.getObject(), pattern.getObjectVariable(), 2) + " }\n" + body + " }");
+        }
+        return branches.isEmpty() ? null : String.join("\nUNION\n", branches);
+    }
+
+    /**
+     * Writes a term of a pattern. Blank nodes cannot be shared with the body group,
+     * they become fresh variables: the join is then less selective, but still complete.
+     */
+    private static String term(String constant, String variable, int position) {
+        if (variable != null) {
+            return variable.startsWith("?") ? variable : "?_delta" + position;
+        }
+        if (TriplePattern.VARIABLE.equals(constant)) {
+            return "?_delta" + position;
+        }
+        char first = constant.charAt(0);
+        if (first == '"' || first == '\'' || first == '+' || first == '-' || first == '.' || Character.isDigit(first)
+                || constant.equals("true") || constant.equals("false")) {
+            return constant;
+        }
+        return "<" + constant + ">";
+    }
+
+    /**
+     * Returns whether the rule reports constraint violations instead of inferring triples.
+     *
+     * @return True for a constraint rule
+     */
+    public boolean isConstraint() {
+        return constraint;
+    }
+
+    /**
+     * Returns whether new triples with the given predicates can produce new matches of the body.
+     *
+     * @param predicates The predicates of the new triples
+     * @param anyPredicate Whether the new triples may have any predicate
+     * @return True if the rule must be evaluated again
+     */
+    public boolean isTriggeredBy(Set<String> predicates, boolean anyPredicate) {
+        if (bodyPatterns.isEmpty()) {
+            return false;
+        }
+        if (anyPredicate || (variableBodyPredicate && !predicates.isEmpty())) {
+            return true;
+        }
+        for (String predicate : bodyPredicates) {
+            if (predicates.contains(predicate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns how long the last evaluation of this rule took, to estimate what skipping it saves.
+     *
+     * @return The duration in nanoseconds, 0 if the rule was never evaluated
+     */
+    public long getLastEvaluationNanos() {
+        return lastEvaluationNanos;
+    }
+
+    void setLastEvaluationNanos(long nanos) {
+        this.lastEvaluationNanos = nanos;
+    }
+
+    public List<TriplePattern> getHeadPatterns() {
+        return Collections.unmodifiableList(headPatterns);
+    }
+
+    public List<TriplePattern> getBodyPatterns() {
+        return Collections.unmodifiableList(bodyPatterns);
+    }
+
+    /**
+     * Returns the constant predicates of the triples this rule infers.
+     *
+     * @return The predicate IRIs
+     */
+    public Set<String> getHeadPredicates() {
+        return Collections.unmodifiableSet(headPredicates);
+    }
+
+    /**
+     * Returns the constant predicates matched by the body.
+     *
+     * @return The predicate IRIs
+     */
+    public Set<String> getBodyPredicates() {
+        return Collections.unmodifiableSet(bodyPredicates);
+    }
+
+    /**
+     * Returns whether the rule infers triples whose predicate is a variable.
+     *
+     * @return True if the inferred predicates are not known in advance
+     */
+    public boolean hasVariableHeadPredicate() {
+        return variableHeadPredicate;
+    }
+
+    public boolean hasVariableBodyPredicate() {
+        return variableBodyPredicate;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    /**
+     * Returns the position of the brace closing the one at the given position,
+     * skipping IRIs and string literals.
+     */
+    private static int closingBrace(String text, int open) {
+        int depth = 0;
+        for (int i = open; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\'') {
+                i++;
+                while (i < text.length() && text.charAt(i) != c) {
+                    i += text.charAt(i) == '\\' ? 2 : 1;
+                }
+            } else if (c == '<') {
+                int end = i + 1;
+                while (end < text.length() && text.charAt(end) != '>' && !Character.isWhitespace(text.charAt(end))) {
+                    end++;
+                }
+                if (end < text.length() && text.charAt(end) == '>') {
+                    i = end;
+                }
+            } else if (c == '#') {
+                while (i < text.length() && text.charAt(i) != '\n') {
+                    i++;
+                }
+            } else if (c == '{') {
+                depth++;
+            } else if (c == '}' && --depth == 0) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unbalanced braces");
+    }
+}
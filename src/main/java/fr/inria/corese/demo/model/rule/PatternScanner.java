@@ -0,0 +1,390 @@
+package fr.inria.corese.demo.model.rule;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Extracts the triple patterns of a SPARQL group graph pattern.
+ *
+ * This is not a full SPARQL parser: it only needs to find which predicates and
+ * classes a rule reads and writes. Filters, bindings and inline data are skipped,
+ * patterns under NOT EXISTS and MINUS are ignored since new triples can only prevent
+ * them from matching, and patterns under OPTIONAL or in a UNION branch are kept
+ * but marked as not required. A property path such as {@code rdf:rest*}/{@code rdf:first}
+ * gives one pattern per predicate it mentions, not required either since a path may match
+ * without some of them; a negated property set gives a variable predicate.
+ *
+ * The scanner also tells whether a group is a plain join of its triple patterns, so that
+ * every match of the group uses one triple per pattern.
+ */
+final class PatternScanner {
+    private static final String RDF_TYPE = "http://www.w3.org/1999/02/22-rdf-syntax-ns#type";
+    private static final String BLANK = "[]";
+    private static final String VARIABLE_TERM = TriplePattern.VARIABLE;
+    private static final String PATH = "(path)";
+
+    private final List<String> tokens;
+    private final Map<String, String> prefixes;
+    private final List<TriplePattern> patterns = new ArrayList<>();
+    private List<String> pathPredicates = new ArrayList<>();
+    private int position;
+    // Cleared by anything a match may use besides one triple per pattern
+    private boolean join = true;
+
+    private PatternScanner(String text, Map<String, String> prefixes) {
+        this.tokens = tokenize(text);
+        this.prefixes = prefixes;
+    }
+
+    /**
+     * Returns the triple patterns of a group graph pattern.
+     *
+     * @param text The pattern text, with or without its enclosing braces
+     * @param prefixes The prefix declarations used to resolve prefixed names
+     * @return The triple patterns, in text order
+     */
+    static List<TriplePattern> scan(String text, Map<String, String> prefixes) {
+        PatternScanner scanner = new PatternScanner(text, prefixes);
+        scanner.group(true, false);
+        return scanner.patterns;
+    }
+
+    /**
+     * Returns whether every match of a group is a join of its triple patterns, each pattern matching
+     * one triple. Filters, bindings, inline data, NOT EXISTS, MINUS and named graphs keep a group a
+     * join; OPTIONAL, UNION, EXISTS, property paths, lists, services and subqueries do not.
+     *
+     * @param text The pattern text, with or without its enclosing braces
+     * @return True if the group has patterns and is a plain join of them
+     */
+    static boolean isJoin(String text) {
+        PatternScanner scanner = new PatternScanner(text, Map.of());
+        scanner.group(true, false);
+        return scanner.join && !scanner.patterns.isEmpty();
+    }
+
+    /**
+     * Scans patterns until the end of the current group.
+     *
+     * @param required Whether the patterns of this group are required
+     * @param ignored Whether the patterns of this group are discarded (NOT EXISTS, MINUS)
+     */
+    private void group(boolean required, boolean ignored) {
+        String subject = null;
+        String predicate = null;
+        Deque<String[]> nested = new ArrayDeque<>();
+        int lastGroupStart = -1;
+        boolean nextOptional = false;
+        boolean nextIgnored = false;
+
+        while (position < tokens.size()) {
+            String token = tokens.get(position++);
+            String keyword = token.toUpperCase();
+
+            switch (keyword) {
+                case "}" -> {
+                    return;
+                }
+                case "{" -> {
+                    int start = patterns.size();
+                    group(required && !nextOptional, ignored || nextIgnored);
+                    lastGroupStart = start;
+                    nextOptional = false;
+                    nextIgnored = false;
+                    subject = null;
+                    predicate = null;
+                }
+                case "OPTIONAL" -> {
+                    nextOptional = true;
+                    join = false;
+                }
+                case "SELECT", "EXISTS" -> join = false;
+                case "MINUS" -> nextIgnored = true;
+                case "UNION" -> {
+                    // Neither branch of a union is required
+                    if (lastGroupStart >= 0) {
+                        unrequire(lastGroupStart);
+                    }
+                    nextOptional = true;
+                    join = false;
+                }
+                case "GRAPH", "SERVICE" -> {
+                    join &= keyword.equals("GRAPH");
+                    position++;
+                    if (position < tokens.size() && tokens.get(position).equalsIgnoreCase("SILENT")) {
+                        position++;
+                    }
+                }
+                case "FILTER" -> {
+                    skipFilter();
+                    subject = null;
+                    predicate = null;
+                }
+                case "BIND" -> skipBalanced("(", ")");
+                case "VALUES" -> skipValues();
+                case "." -> {
+                    subject = null;
+                    predicate = null;
+                }
+                case ";" -> predicate = null;
+                case "," -> {
+                    // The next object shares the subject and predicate
+                }
+                case "(" -> {
+                    join = false;
+                    position--;
+                    skipBalanced("(", ")");
+                    String[] state = emit(subject, predicate, VARIABLE_TERM, required, ignored);
+                    subject = state[0];
+                    predicate = state[1];
+                }
+                case "[" -> {
+                    String[] state = emit(subject, predicate, BLANK, required, ignored);
+                    nested.push(state);
+                    subject = BLANK;
+                    predicate = null;
+                }
+                case "]" -> {
+                    if (!nested.isEmpty()) {
+                        String[] state = nested.pop();
+                        subject = state[0];
+                        predicate = state[1];
+                    }
+                }
+                default -> {
+                    if (subject != null && predicate == null && isPath(token)) {
+                        pathPredicates = resolvePath(token);
+                        predicate = PATH;
+                        join = false;
+                    } else {
+                        String[] state = emit(subject, predicate, resolve(token), required, ignored);
+                        subject = state[0];
+                        predicate = state[1];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Places a term in the current statement and records the pattern once it is complete.
+     *
+     * @return The subject and predicate to use for the next term
+     */
+    private String[] emit(String subject, String predicate, String term, boolean required, boolean ignored) {
+        if (subject == null) {
+            return new String[]{term, null};
+        }
+        if (predicate == null) {
+            return new String[]{subject, term};
+        }
+        if (ignored) {
+            return new String[]{subject, predicate};
+        }
+        if (PATH.equals(predicate)) {
+            if (pathPredicates.isEmpty()) {
+                patterns.add(new TriplePattern(VARIABLE_TERM, VARIABLE_TERM, VARIABLE_TERM, false));
+            }
+            for (String pathPredicate : pathPredicates) {
+                patterns.add(new TriplePattern(VARIABLE_TERM, pathPredicate, VARIABLE_TERM, false));
+            }
+        } else {
+            patterns.add(new TriplePattern(normalize(subject), predicate, normalize(term), required));
+        }
+        return new String[]{subject, predicate};
+    }
+
+    private void unrequire(int start) {
+        for (int i = start; i < patterns.size(); i++) {
+            TriplePattern pattern = patterns.get(i);
+            patterns.set(i, pattern.withRequired(false));
+        }
+    }
+
+    private void skipFilter() {
+        if (position >= tokens.size()) {
+            return;
+        }
+        String next = tokens.get(position).toUpperCase();
+        if (next.equals("NOT") || next.equals("EXISTS")) {
+            // FILTER NOT EXISTS { ... } and FILTER EXISTS { ... } do not add triples to match,
+            // but a new triple may make an EXISTS true
+            join &= next.equals("NOT");
+            while (position < tokens.size() && !tokens.get(position).equals("{")) {
+                position++;
+            }
+            skipBalanced("{", "}");
+        } else {
+            if (!next.equals("(")) {
+                // Function call such as FILTER regex(...)
+                position++;
+            }
+            skipBalanced("(", ")");
+        }
+    }
+
+    private void skipValues() {
+        while (position < tokens.size() && !tokens.get(position).equals("{")) {
+            position++;
+        }
+        skipBalanced("{", "}");
+    }
+
+    /**
+     * Skips a balanced block starting at the current token.
+     */
+    private void skipBalanced(String open, String close) {
+        if (position >= tokens.size() || !tokens.get(position).equals(open)) {
+            return;
+        }
+        int depth = 0;
+        while (position < tokens.size()) {
+            String token = tokens.get(position++);
+            if (token.equalsIgnoreCase("EXISTS") && !tokens.get(position - 2).equalsIgnoreCase("NOT")) {
+                // EXISTS within an expression, such as BIND(EXISTS { ... } AS ?x)
+                join = false;
+            }
+            if (token.equals(open)) {
+                depth++;
+            } else if (token.equals(close) && --depth == 0) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Resolves a term to a full IRI, keeping variable and blank node names.
+     */
+    private String resolve(String token) {
+        if (token.startsWith("?") || token.startsWith("$")) {
+            // Named variable, $x and ?x being the same variable
+            return "?" + token.substring(1);
+        }
+        if (token.startsWith("_:")) {
+            return token;
+        }
+        if (token.equals("a")) {
+            return RDF_TYPE;
+        }
+        if (token.startsWith("<") && token.endsWith(">")) {
+            return token.substring(1, token.length() - 1);
+        }
+        int colon = token.indexOf(':');
+        if (colon >= 0 && !token.startsWith("\"") && !token.startsWith("'")) {
+            String namespace = prefixes.get(token.substring(0, colon));
+            if (namespace != null) {
+                return namespace + token.substring(colon + 1);
+            }
+        }
+        return token;
+    }
+
+    /**
+     * Returns whether a predicate token is a property path rather than a single predicate.
+     */
+    private static boolean isPath(String token) {
+        if (token.startsWith("?") || token.startsWith("$") || token.startsWith("<")) {
+            return false;
+        }
+        for (char c : token.toCharArray()) {
+            if ("*+|/^!".indexOf(c) >= 0) {
+                return true;
+            }
+        }
+        return token.endsWith("?");
+    }
+
+    /**
+     * Returns the predicates a property path mentions, or no predicate for a negated property set.
+     */
+    private List<String> resolvePath(String token) {
+        List<String> result = new ArrayList<>();
+        if (token.startsWith("!")) {
+            return result;
+        }
+        for (String part : token.split("[*+?|/^()]")) {
+            if (!part.isEmpty()) {
+                result.add(resolve(part));
+            }
+        }
+        return result;
+    }
+
+    private static String normalize(String term) {
+        return BLANK.equals(term) ? VARIABLE_TERM : term;
+    }
+
+    /**
+     * Splits SPARQL text into IRIs, literals, names and punctuation.
+     */
+    private static List<String> tokenize(String text) {
+        List<String> result = new ArrayList<>();
+        int i = 0;
+        int length = text.length();
+        while (i < length) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '#') {
+                while (i < length && text.charAt(i) != '\n') {
+                    i++;
+                }
+            } else if (c == '<' && isIri(text, i)) {
+                int end = text.indexOf('>', i);
+                result.add(text.substring(i, end + 1));
+                i = end + 1;
+            } else if (c == '"' || c == '\'') {
+                int end = i + 1;
+                while (end < length && text.charAt(end) != c) {
+                    end += text.charAt(end) == '\\' ? 2 : 1;
+                }
+                end = Math.min(end + 1, length);
+                // Language tag or datatype
+                while (end < length && !Character.isWhitespace(text.charAt(end))
+                        && "{}()[];,".indexOf(text.charAt(end)) < 0
+                        && !(text.charAt(end) == '.' && (end + 1 >= length || Character.isWhitespace(text.charAt(end + 1))))) {
+                    end++;
+                }
+                result.add(text.substring(i, end));
+                i = end;
+            } else if ("{}()[];,".indexOf(c) >= 0) {
+                result.add(String.valueOf(c));
+                i++;
+            } else if (c == '.' && (i + 1 >= length || !Character.isDigit(text.charAt(i + 1)))) {
+                result.add(".");
+                i++;
+            } else {
+                int end = i;
+                while (end < length && !Character.isWhitespace(text.charAt(end))
+                        && "{}()[];,<\"'".indexOf(text.charAt(end)) < 0) {
+                    end++;
+                }
+                String word = text.substring(i, Math.max(end, i + 1));
+                i = Math.max(end, i + 1);
+                if (word.length() > 1 && word.endsWith(".")) {
+                    result.add(word.substring(0, word.length() - 1));
+                    result.add(".");
+                } else {
+                    result.add(word);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static boolean isIri(String text, int start) {
+        for (int i = start + 1; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '>') {
+                return true;
+            }
+            if (Character.isWhitespace(c) || c == '<' || c == '"' || c == '{' || c == '}') {
+                return false;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,430 @@
+package fr.inria.corese.demo.model.rule;
+
+import fr.inria.corese.core.Graph;
+import fr.inria.corese.core.kgram.api.core.Edge;
+import fr.inria.corese.core.kgram.api.core.Node;
+import fr.inria.corese.core.kgram.core.Mapping;
+import fr.inria.corese.core.kgram.core.Mappings;
+import fr.inria.corese.core.query.QueryProcess;
+import fr.inria.corese.core.sparql.api.IDatatype;
+import fr.inria.corese.core.sparql.exceptions.EngineException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Materializes the RDFS subset entailments in one pass over the graph, without rules.
+ *
+ * The class and property hierarchies are read first and closed once, each class and property
+ * getting a bitset of its ancestors. For every property, the classes implied by the domains and
+ * ranges of its super-properties are precomputed the same way. A single scan of the triples then
+ * derives the types of their subjects and objects and the triples of the super-properties.
+ *
+ * The entailments covered are rdfs2, rdfs3, rdfs5, rdfs7, rdfs9 and rdfs11: domain, range,
+ * subproperty and subclass, with the transitive closure of both hierarchies. Conclusions already
+ * present in any graph are not added again.
+ *
+ * The closed schema is kept between runs and reused as long as the number of hierarchy, domain
+ * and range triples does not change and {@link #invalidateSchema()} is not called, so reasoning
+ * over reloaded instance data only scans the instance triples against the cached closure.
+ */
+public final class RdfsSubsetReasoner {
+    private static final String RDF_TYPE = "http://www.w3.org/1999/02/22-rdf-syntax-ns#type";
+    private static final String RDFS = "http://www.w3.org/2000/01/rdf-schema#";
+    private static final String SUB_CLASS_OF = RDFS + "subClassOf";
+    private static final String SUB_PROPERTY_OF = RDFS + "subPropertyOf";
+
+    private final Graph graph;
+    private final String graphName;
+    private final Set<String> producedPredicates = new HashSet<>();
+    private Schema schema;
+    private boolean schemaReused;
+
+    /**
+     * Creates a reasoner.
+     *
+     * @param graph The graph to reason over
+     * @param graphName The named graph receiving the inferred triples
+     */
+    public RdfsSubsetReasoner(Graph graph, String graphName) {
+        this.graph = graph;
+        this.graphName = graphName;
+    }
+
+    /**
+     * Adds every missing RDFS subset entailment of the graph.
+     * Running it again on an unchanged graph adds nothing.
+     *
+     * @return The number of inferred triples
+     * @throws EngineException If the schema cannot be read
+     */
+    public int materialize() throws EngineException {
+        producedPredicates.clear();
+        QueryProcess exec = QueryProcess.create(graph);
+        long schemaSize = countSchemaTriples(exec);
+        schemaReused = schema != null && schema.size == schemaSize;
+        if (!schemaReused) {
+            schema = readSchema(exec, schemaSize);
+        }
+        Hierarchy classes = schema.classes;
+        Hierarchy properties = schema.properties;
+        if (classes.size() == 0 && properties.size() == 0) {
+            return 0;
+        }
+        BitSet[] superClasses = schema.superClasses;
+        BitSet[] superProperties = schema.superProperties;
+        BitSet[] domainTypes = schema.domainTypes;
+        BitSet[] rangeTypes = schema.rangeTypes;
+
+        // Single scan: collect the candidate conclusions and what is already asserted
+        Map<String, Node> nodes = new HashMap<>();
+        Map<String, BitSet> candidateTypes = new HashMap<>();
+        Map<String, BitSet> assertedTypes = new HashMap<>();
+        Map<String, Conclusion> candidateTriples = new HashMap<>();
+        Set<String> assertedTriples = new HashSet<>();
+        for (Edge edge : graph.getEdges()) {
+            Node subject = edge.getNode(0);
+            Node object = edge.getNode(1);
+            String predicate = edge.getEdgeNode().getLabel();
+            String subjectKey = key(subject);
+
+            if (RDF_TYPE.equals(predicate)) {
+                int type = classes.id(object.getLabel());
+                if (type >= 0) {
+                    bits(assertedTypes, subjectKey).set(type);
+                    bits(candidateTypes, subjectKey).or(superClasses[type]);
+                    nodes.putIfAbsent(subjectKey, subject);
+                }
+                continue;
+            }
+
+            int property = properties.id(predicate);
+            if (property < 0) {
+                continue;
+            }
+            String objectKey = key(object);
+            assertedTriples.add(subjectKey + " " + property + " " + objectKey);
+            if (!domainTypes[property].isEmpty()) {
+                bits(candidateTypes, subjectKey).or(domainTypes[property]);
+                nodes.putIfAbsent(subjectKey, subject);
+            }
+            if (!rangeTypes[property].isEmpty() && !object.getDatatypeValue().isLiteral()) {
+                bits(candidateTypes, objectKey).or(rangeTypes[property]);
+                nodes.putIfAbsent(objectKey, object);
+            }
+            BitSet supers = superProperties[property];
+            for (int q = supers.nextSetBit(0); q >= 0; q = supers.nextSetBit(q + 1)) {
+                if (q != property && !RDF_TYPE.equals(properties.label(q))) {
+                    candidateTriples.putIfAbsent(subjectKey + " " + q + " " + objectKey,
+                            new Conclusion(subject, q, object));
+                }
+            }
+        }
+
+        int sizeBefore = graph.size();
+        Node target = graph.addGraph(graphName);
+        Node type = graph.addProperty(RDF_TYPE);
+        for (Map.Entry<String, BitSet> entry : candidateTypes.entrySet()) {
+            BitSet added = (BitSet) entry.getValue().clone();
+            BitSet asserted = assertedTypes.get(entry.getKey());
+            if (asserted != null) {
+                added.andNot(asserted);
+            }
+            Node subject = nodes.get(entry.getKey());
+            for (int c = added.nextSetBit(0); c >= 0; c = added.nextSetBit(c + 1)) {
+                graph.addEdge(target, subject, type, classes.resource(graph, c));
+                producedPredicates.add(RDF_TYPE);
+            }
+        }
+        for (Map.Entry<String, Conclusion> entry : candidateTriples.entrySet()) {
+            if (!assertedTriples.contains(entry.getKey())) {
+                Conclusion triple = entry.getValue();
+                graph.addEdge(target, triple.subject, properties.property(graph, triple.property), triple.object);
+                producedPredicates.add(properties.label(triple.property));
+            }
+        }
+        if (!schemaReused) {
+            // A reused schema was closed when it was read, its closure is already in the graph
+            addClosure(target, classes, superClasses, SUB_CLASS_OF);
+            addClosure(target, properties, superProperties, SUB_PROPERTY_OF);
+            // The closure triples are part of the schema the next run compares with
+            schema.size = countSchemaTriples(exec);
+        }
+        return graph.size() - sizeBefore;
+    }
+
+    /**
+     * Forgets the closed schema, so that the next run reads it again.
+     * Needed when schema triples were replaced without changing their number.
+     */
+    public void invalidateSchema() {
+        schema = null;
+    }
+
+    /**
+     * Returns whether the last run reused the schema closed by an earlier run.
+     *
+     * @return True if the schema was not read again
+     */
+    public boolean isSchemaReused() {
+        return schemaReused;
+    }
+
+    /**
+     * Reads and closes the class and property hierarchies with the domains and ranges.
+     */
+    private static Schema readSchema(QueryProcess exec, long size) throws EngineException {
+        Hierarchy classes = new Hierarchy();
+        Hierarchy properties = new Hierarchy();
+        readPairs(exec, SUB_CLASS_OF, classes, classes);
+        readPairs(exec, SUB_PROPERTY_OF, properties, properties);
+        Map<Integer, BitSet> domains = new HashMap<>();
+        Map<Integer, BitSet> ranges = new HashMap<>();
+        readSchema(exec, RDFS + "domain", properties, classes, domains);
+        readSchema(exec, RDFS + "range", properties, classes, ranges);
+
+        BitSet[] superClasses = classes.close();
+        BitSet[] superProperties = properties.close();
+        return new Schema(size, classes, properties, superClasses, superProperties,
+                impliedTypes(superProperties, domains, superClasses),
+                impliedTypes(superProperties, ranges, superClasses));
+    }
+
+    private static long countSchemaTriples(QueryProcess exec) throws EngineException {
+        Mappings mappings = exec.query("SELECT (COUNT(*) AS ?n) WHERE { VALUES ?p { <" + SUB_CLASS_OF + "> <"
+                + SUB_PROPERTY_OF + "> <" + RDFS + "domain> <" + RDFS + "range> } ?a ?p ?b }");
+        for (Mapping mapping : mappings) {
+            Node count = mapping.getNode("?n");
+            if (count != null) {
+                return Long.parseLong(count.getLabel());
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the predicates of the triples inferred by the last call to {@link #materialize()},
+     * so that the rules reading them can be started.
+     *
+     * @return The predicate IRIs
+     */
+    public Set<String> getProducedPredicates() {
+        return new HashSet<>(producedPredicates);
+    }
+
+    /**
+     * Adds the hierarchy triples implied by transitivity.
+     */
+    private void addClosure(Node target, Hierarchy hierarchy, BitSet[] closure, String predicate) {
+        Node property = null;
+        for (int i = 0; i < hierarchy.size(); i++) {
+            BitSet implied = (BitSet) closure[i].clone();
+            implied.andNot(hierarchy.direct(i));
+            implied.clear(i);
+            for (int j = implied.nextSetBit(0); j >= 0; j = implied.nextSetBit(j + 1)) {
+                if (property == null) {
+                    property = graph.addProperty(predicate);
+                    producedPredicates.add(predicate);
+                }
+                graph.addEdge(target, hierarchy.resource(graph, i), property, hierarchy.resource(graph, j));
+            }
+        }
+    }
+
+    /**
+     * Returns, for each property, the classes implied for the subject or object of its triples
+     * by the domains or ranges of the property and of its super-properties.
+     */
+    private static BitSet[] impliedTypes(BitSet[] superProperties, Map<Integer, BitSet> declared, BitSet[] superClasses) {
+        BitSet[] implied = new BitSet[superProperties.length];
+        for (int p = 0; p < superProperties.length; p++) {
+            implied[p] = new BitSet();
+            BitSet supers = superProperties[p];
+            for (int q = supers.nextSetBit(0); q >= 0; q = supers.nextSetBit(q + 1)) {
+                BitSet classes = declared.get(q);
+                if (classes != null) {
+                    for (int c = classes.nextSetBit(0); c >= 0; c = classes.nextSetBit(c + 1)) {
+                        implied[p].or(superClasses[c]);
+                    }
+                }
+            }
+        }
+        return implied;
+    }
+
+    private static void readPairs(QueryProcess exec, String predicate, Hierarchy from, Hierarchy to) throws EngineException {
+        for (Mapping mapping : pairs(exec, predicate)) {
+            from.link(from.add(label(mapping, "?a")), to.add(label(mapping, "?b")));
+        }
+    }
+
+    private static void readSchema(QueryProcess exec, String predicate, Hierarchy properties, Hierarchy classes,
+                                   Map<Integer, BitSet> declared) throws EngineException {
+        for (Mapping mapping : pairs(exec, predicate)) {
+            int property = properties.add(label(mapping, "?a"));
+            int type = classes.add(label(mapping, "?b"));
+            declared.computeIfAbsent(property, k -> new BitSet()).set(type);
+        }
+    }
+
+    private static Mappings pairs(QueryProcess exec, String predicate) throws EngineException {
+        return exec.query("SELECT DISTINCT ?a ?b WHERE { ?a <" + predicate + "> ?b FILTER(isIRI(?a) && isIRI(?b)) }");
+    }
+
+    private static String label(Mapping mapping, String variable) {
+        return mapping.getNode(variable).getLabel();
+    }
+
+    private static BitSet bits(Map<String, BitSet> map, String key) {
+        return map.computeIfAbsent(key, k -> new BitSet());
+    }
+
+    /**
+     * Returns a key identifying a term, literals included.
+     */
+    private static String key(Node node) {
+        if (node.isBlank()) {
+            return "_:" + node.getLabel();
+        }
+        IDatatype value = node.getDatatypeValue();
+        if (value.isLiteral()) {
+            return "\"" + value.getLabel() + "\"" + value.getDatatypeURI() + "@" + value.getLang();
+        }
+        return "<" + node.getLabel();
+    }
+
+    /**
+     * The closed schema: hierarchies, their closures and the types implied by each property.
+     */
+    private static final class Schema {
+        private long size;
+        private final Hierarchy classes;
+        private final Hierarchy properties;
+        private final BitSet[] superClasses;
+        private final BitSet[] superProperties;
+        private final BitSet[] domainTypes;
+        private final BitSet[] rangeTypes;
+
+        private Schema(long size, Hierarchy classes, Hierarchy properties, BitSet[] superClasses,
+                       BitSet[] superProperties, BitSet[] domainTypes, BitSet[] rangeTypes) {
+            this.size = size;
+            this.classes = classes;
+            this.properties = properties;
+            this.superClasses = superClasses;
+            this.superProperties = superProperties;
+            this.domainTypes = domainTypes;
+            this.rangeTypes = rangeTypes;
+        }
+    }
+
+    /**
+     * A super-property triple derived during the scan, added once the scan is over.
+     */
+    private static final class Conclusion {
+        private final Node subject;
+        private final int property;
+        private final Node object;
+
+        private Conclusion(Node subject, int property, Node object) {
+            this.subject = subject;
+            this.property = property;
+            this.object = object;
+        }
+    }
+
+    /**
+     * Classes or properties numbered densely, with their direct parents and their closure.
+     */
+    private static final class Hierarchy {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> labels = new ArrayList<>();
+        private final List<Set<Integer>> parents = new ArrayList<>();
+        private final List<Node> nodes = new ArrayList<>();
+
+        int add(String label) {
+            Integer id = ids.get(label);
+            if (id == null) {
+                id = labels.size();
+                ids.put(label, id);
+                labels.add(label);
+                parents.add(new LinkedHashSet<>());
+                nodes.add(null);
+            }
+            return id;
+        }
+
+        int id(String label) {
+            return ids.getOrDefault(label, -1);
+        }
+
+        String label(int id) {
+            return labels.get(id);
+        }
+
+        int size() {
+            return labels.size();
+        }
+
+        void link(int child, int parent) {
+            parents.get(child).add(parent);
+        }
+
+        BitSet direct(int id) {
+            BitSet direct = new BitSet();
+            for (int parent : parents.get(id)) {
+                direct.set(parent);
+            }
+            return direct;
+        }
+
+        Node resource(Graph graph, int id) {
+            Node node = nodes.get(id);
+            if (node == null) {
+                node = graph.addResource(labels.get(id));
+                nodes.set(id, node);
+            }
+            return node;
+        }
+
+        Node property(Graph graph, int id) {
+            return graph.addProperty(labels.get(id));
+        }
+
+        /**
+         * Returns, for each member, the set of its ancestors including itself. Cycles are allowed.
+         */
+        BitSet[] close() {
+            BitSet[] closure = new BitSet[size()];
+            for (int start = 0; start < size(); start++) {
+                BitSet reached = new BitSet();
+                Deque<Integer> pending = new ArrayDeque<>();
+                reached.set(start);
+                pending.push(start);
+                while (!pending.isEmpty()) {
+                    int current = pending.pop();
+                    if (current < start && closure[current] != null) {
+                        // Ancestors of an already closed member are known
+                        reached.or(closure[current]);
+                        continue;
+                    }
+                    for (int parent : parents.get(current)) {
+                        if (!reached.get(parent)) {
+                            reached.set(parent);
+                            pending.push(parent);
+                        }
+                    }
+                }
+                closure[start] = reached;
+            }
+            return closure;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package fr.inria.corese.demo.model.rule;
+
+/**
+ * Limits on a run of the rule processor: a wall-clock time and a number of inferred triples.
+ * A run that reaches a limit stops between two rule evaluations and keeps what it inferred.
+ */
+public final class RuleBudget {
+    /**
+     * Budget without any limit.
+     */
+    public static final RuleBudget UNLIMITED = new RuleBudget(0, 0);
+
+    private final long maxMillis;
+    private final long maxTriples;
+
+    /**
+     * Creates a budget.
+     *
+     * @param maxMillis The maximum duration of a run in milliseconds, 0 for no limit
+     * @param maxTriples The maximum number of triples inferred by a run, 0 for no limit
+     */
+    public RuleBudget(long maxMillis, long maxTriples) {
+        this.maxMillis = Math.max(0, maxMillis);
+        this.maxTriples = Math.max(0, maxTriples);
+    }
+
+    public long getMaxMillis() {
+        return maxMillis;
+    }
+
+    public long getMaxTriples() {
+        return maxTriples;
+    }
+
+    public boolean isUnlimited() {
+        return maxMillis == 0 && maxTriples == 0;
+    }
+
+    /**
+     * Returns why a run must stop, if it exceeded the budget.
+     *
+     * @param elapsedMillis The time spent so far
+     * @param inferred The number of triples inferred so far
+     * @return The reason, or null if the run can go on
+     */
+    String exceeded(long elapsedMillis, long inferred) {
+        if (maxMillis > 0 && elapsedMillis >= maxMillis) {
+            return "time budget of " + maxMillis + " ms reached";
+        }
+        if (maxTriples > 0 && inferred >= maxTriples) {
+            return "budget of " + maxTriples + " inferred triples reached";
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        if (isUnlimited()) {
+            return "unlimited";
+        }
+        return (maxMillis > 0 ? maxMillis + " ms" : "no time limit") + ", "
+                + (maxTriples > 0 ? maxTriples + " triples" : "no triple limit");
+    }
+}
@@ -0,0 +1,110 @@
+package fr.inria.corese.demo.model.rule;
+
+/**
+ * Safety limits against inference explosions: a cap on the triples one rule may infer during
+ * a run, a cap on the triples of the whole run, and a threshold on the heap usage.
+ *
+ * Unlike a {@link RuleBudget}, which stops a run and keeps what it inferred, a guard aborts the
+ * run and rolls back all its inferences, naming the rule that tripped it. Each evaluation is
+ * limited to the solutions left under the caps, so a runaway rule is caught after one evaluation
+ * instead of filling the heap. The heap usage is checked between evaluations.
+ */
+public final class RuleGuard {
+    /**
+     * Guard without any limit.
+     */
+    public static final RuleGuard NONE = new RuleGuard(0, 0, 0);
+
+    private final long maxTriplesPerRule;
+    private final long maxTriples;
+    private final int maxHeapPercent;
+
+    /**
+     * Creates a guard.
+     *
+     * @param maxTriplesPerRule The maximum number of triples one rule may infer in a run, 0 for no limit
+     * @param maxTriples The maximum number of triples a run may infer, 0 for no limit
+     * @param maxHeapPercent The maximum heap usage in percent of the maximum heap size, 0 for no limit
+     */
+    public RuleGuard(long maxTriplesPerRule, long maxTriples, int maxHeapPercent) {
+        this.maxTriplesPerRule = Math.max(0, maxTriplesPerRule);
+        this.maxTriples = Math.max(0, maxTriples);
+        this.maxHeapPercent = Math.max(0, Math.min(100, maxHeapPercent));
+    }
+
+    public long getMaxTriplesPerRule() {
+        return maxTriplesPerRule;
+    }
+
+    public long getMaxTriples() {
+        return maxTriples;
+    }
+
+    public int getMaxHeapPercent() {
+        return maxHeapPercent;
+    }
+
+    public boolean isUnlimited() {
+        return maxTriplesPerRule == 0 && maxTriples == 0 && maxHeapPercent == 0;
+    }
+
+    /**
+     * Returns how many solutions the next evaluation of a rule may produce: one more than what
+     * is left under the caps, so that going over a cap is detected without going much further.
+     *
+     * @param ruleInferred The number of triples the rule inferred so far in the run
+     * @param inferred The number of triples the run inferred so far
+     * @return The solution limit, 0 for no limit
+     */
+    long evaluationLimit(long ruleInferred, long inferred) {
+        long limit = 0;
+        if (maxTriplesPerRule > 0) {
+            limit = Math.max(1, maxTriplesPerRule - ruleInferred + 1);
+        }
+        if (maxTriples > 0) {
+            long left = Math.max(1, maxTriples - inferred + 1);
+            limit = limit == 0 ? left : Math.min(limit, left);
+        }
+        return limit;
+    }
+
+    /**
+     * Returns why a run must be aborted after an evaluation, if it went over a limit.
+     *
+     * @param ruleName The rule just evaluated
+     * @param ruleInferred The number of triples the rule inferred so far in the run
+     * @param inferred The number of triples the run inferred so far
+     * @return The reason, or null if the run can go on
+     */
+    String exceeded(String ruleName, long ruleInferred, long inferred) {
+        if (maxTriplesPerRule > 0 && ruleInferred > maxTriplesPerRule) {
+            return "rule " + ruleName + " inferred more than " + maxTriplesPerRule + " triples";
+        }
+        if (maxTriples > 0 && inferred > maxTriples) {
+            return "more than " + maxTriples + " triples inferred, last by rule " + ruleName;
+        }
+        if (maxHeapPercent > 0) {
+            int heap = usedHeapPercent();
+            if (heap >= maxHeapPercent) {
+                return "heap usage at " + heap + "% after rule " + ruleName + ", over " + maxHeapPercent + "%";
+            }
+        }
+        return null;
+    }
+
+    private static int usedHeapPercent() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        return (int) (used * 100 / runtime.maxMemory());
+    }
+
+    @Override
+    public String toString() {
+        if (isUnlimited()) {
+            return "unlimited";
+        }
+        return (maxTriplesPerRule > 0 ? maxTriplesPerRule + " triples per rule" : "no rule cap") + ", "
+                + (maxTriples > 0 ? maxTriples + " triples per run" : "no run cap") + ", "
+                + (maxHeapPercent > 0 ? maxHeapPercent + "% heap" : "no heap threshold");
+    }
+}
@@ -0,0 +1,49 @@
+package fr.inria.corese.demo.model.rule;
+
+/**
+ * Observer of a run of the rule processor.
+ * Receives progress notifications and tells the processor when to stop.
+ */
+public interface RuleMonitor {
+
+    /**
+     * Monitor that ignores progress and never cancels.
+     */
+    RuleMonitor NONE = new RuleMonitor() {
+        @Override
+        public void iterationStarted(int iteration, int activeRules) {
+        }
+
+        @Override
+        public void ruleEvaluated(InferenceRule rule, int inferred) {
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+    };
+
+    /**
+     * Called before a fixpoint iteration starts.
+     *
+     * @param iteration The iteration number, starting at 1
+     * @param activeRules The number of rules evaluated in this iteration
+     */
+    void iterationStarted(int iteration, int activeRules);
+
+    /**
+     * Called after a rule was evaluated and its conclusions added to the graph.
+     *
+     * @param rule The evaluated rule
+     * @param inferred The number of triples the rule inferred
+     */
+    void ruleEvaluated(InferenceRule rule, int inferred);
+
+    /**
+     * Returns whether the run must stop.
+     *
+     * @return True if the run has been cancelled
+     */
+    boolean isCancelled();
+}
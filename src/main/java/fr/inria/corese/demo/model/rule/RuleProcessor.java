@@ -0,0 +1,944 @@
+package fr.inria.corese.demo.model.rule;
+
+import fr.inria.corese.core.Graph;
+import fr.inria.corese.core.kgram.api.core.Edge;
+import fr.inria.corese.core.kgram.api.core.Node;
+import fr.inria.corese.core.kgram.core.Mappings;
+import fr.inria.corese.core.logic.Entailment;
+import fr.inria.corese.core.query.QueryProcess;
+import fr.inria.corese.core.sparql.api.IDatatype;
+import fr.inria.corese.core.sparql.exceptions.EngineException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Drives inference rules to a fixpoint over a graph, semi-naively.
+ *
+ * Each iteration only evaluates the rules that the triples inferred by the previous
+ * iteration can trigger, i.e. whose body reads one of the predicates just written.
+ * The same mechanism makes incremental reasoning possible: after new data is added,
+ * only the rules reading the predicates of that data are started, and the fixpoint
+ * spreads from there instead of re-evaluating every rule over the whole graph.
+ *
+ * Past the first iteration, a rule only looks for the matches that use a triple inferred by the
+ * previous iteration: each iteration writes into delta graphs next to the inference graphs, the
+ * rules of the next iteration join their body with them (see {@link InferenceRule}), and the delta
+ * graphs are then added to their inference graph. When an iteration inferred a large part of the graph,
+ * scanning its delta graphs costs more than evaluating the whole body again: the next iteration does
+ * that instead and writes directly into the inference graphs, until an iteration infers little again.
+ *
+ * The conclusions of the constraint rules, the violations of the ontology, are written into the
+ * {@link #CONSTRAINT_GRAPH constraint graph} shared by every rule set, as the Corese rule engine does.
+ *
+ * Each rule set writes its conclusions into its own named graph, so that disabling a rule set
+ * retracts what it inferred by dropping that graph, without touching the rest of the data.
+ *
+ * With a parallelism above one, the rules of an iteration are evaluated concurrently as
+ * CONSTRUCT queries, and their conclusions are merged once every rule is done. The workers share
+ * the graph without copying it: it is only read while they run, and written once they are all over.
+ *
+ * A run can be cancelled through its {@link RuleMonitor} or limited by a {@link RuleBudget}.
+ * It then stops between two rule evaluations: every triple inferred so far is sound and kept,
+ * but the graph is no longer at fixpoint.
+ *
+ * With pruning enabled, the rules whose body requires a predicate or a class absent from the
+ * graph are not evaluated. They are checked again whenever they are triggered, against the
+ * vocabulary of the graph extended with what the run inferred so far.
+ *
+ * Instead of materializing every rule, the inferences can be derived per query: only the rules
+ * whose conclusions a query can read, directly or through the body of another such rule, are
+ * run to fixpoint (see {@link GoalPlanner}). What the queries already answered needed is kept.
+ *
+ * With sameAs canonicalization, the equality rules are replaced by a {@link SameAsCanonicalizer}:
+ * each run starts by copying the triples of the aliases onto their representative, and the
+ * classes are merged again whenever a rule infers an {@code owl:sameAs} triple.
+ *
+ * A {@link RuleGuard} protects against rules whose inferences explode. A guarded run writes into
+ * staging graphs next to the inference graphs, each evaluation is limited to what is left under
+ * the caps, and the guard is checked after every evaluation. When it trips, the run is aborted
+ * and the staging graphs are dropped, which rolls back everything the run inferred; otherwise
+ * they are added to the inference graphs once the run is over.
+ */
+public class RuleProcessor {
+    /** The named graph receiving the constraint violations, the one of the Corese rule engine. */
+    public static final String CONSTRAINT_GRAPH = Entailment.CONSTRAINT;
+    private static final String STAGING_SUFFIX = "/pending";
+    private static final String DELTA_SUFFIX = "/delta";
+    // The delta graphs are joined when they hold less than this fraction of the graph
+    private static final int DELTA_JOIN_FRACTION = 10;
+
+    private final Graph graph;
+    private final String inferenceGraph;
+    private final List<RuleSet> ruleSets = new ArrayList<>();
+    private final Map<InferenceRule, RuleSet> owners = new IdentityHashMap<>();
+    private Consumer<RuleProfile> profileListener;
+    private RuleProfile lastProfile;
+    private int parallelism = 1;
+    private RuleMonitor monitor = RuleMonitor.NONE;
+    private RuleBudget budget = RuleBudget.UNLIMITED;
+    private RuleGuard guard = RuleGuard.NONE;
+    private boolean pruning;
+    // What the queries answered since the last reset needed, at fixpoint in the graph
+    private GoalPlanner.Goals answeredGoals = new GoalPlanner.Goals();
+    private int lastQueryRuleCount = -1;
+    private SameAsCanonicalizer canonicalizer;
+
+    // State of the current run
+    private long runStart;
+    private int runSizeBefore;
+    private String stopReason;
+    // Staging graph of each inference graph written by a guarded run, null for an unguarded run
+    private Map<String, String> stagingGraphs;
+    private Map<InferenceRule, Long> runRuleInferred;
+    private InferenceRule offendingRule;
+    // Delta graphs written by the current iteration and by the previous one, with the graph each is added to
+    private Map<String, String> writtenDeltas;
+    private Map<String, String> joinedDeltas;
+    private int deltaParity;
+    // Predicates of the previous iteration's inferences, null for any; the delta graphs are not joined when unset
+    private Set<String> joinPredicates;
+    private boolean joinDeltas;
+    private boolean writeDeltas;
+
+    /**
+     * Creates a processor without rules.
+     *
+     * @param graph The graph to reason over
+     * @param inferenceGraph The base name of the named graphs receiving the inferred triples
+     */
+    public RuleProcessor(Graph graph, String inferenceGraph) {
+        this.graph = graph;
+        this.inferenceGraph = inferenceGraph;
+    }
+
+    public void addRuleSet(RuleSet ruleSet) {
+        if (!ruleSets.contains(ruleSet)) {
+            ruleSets.add(ruleSet);
+            for (InferenceRule rule : ruleSet.getRules()) {
+                owners.put(rule, ruleSet);
+            }
+        }
+    }
+
+    /**
+     * Sets the number of rules evaluated concurrently within an iteration.
+     *
+     * @param parallelism The number of worker threads, 1 to evaluate rules one by one
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the monitor notified of the progress of each run.
+     *
+     * @param monitor The monitor, or null to remove it
+     */
+    public void setMonitor(RuleMonitor monitor) {
+        this.monitor = monitor != null ? monitor : RuleMonitor.NONE;
+    }
+
+    /**
+     * Sets the limits applied to each run.
+     *
+     * @param budget The budget, or null for no limit
+     */
+    public void setBudget(RuleBudget budget) {
+        this.budget = budget != null ? budget : RuleBudget.UNLIMITED;
+    }
+
+    /**
+     * Sets the caps that abort a run and roll back its inferences.
+     *
+     * @param guard The guard, or null for no cap
+     */
+    public void setGuard(RuleGuard guard) {
+        this.guard = guard != null ? guard : RuleGuard.NONE;
+    }
+
+    public RuleGuard getGuard() {
+        return guard;
+    }
+
+    /**
+     * Sets whether the rules that cannot match the graph are skipped.
+     *
+     * @param pruning True to skip the rules requiring an absent predicate or class
+     */
+    public void setPruning(boolean pruning) {
+        this.pruning = pruning;
+    }
+
+    public boolean isPruning() {
+        return pruning;
+    }
+
+    /**
+     * Sets whether the owl:sameAs equivalence classes are canonicalized instead of materialized
+     * by the equality rules.
+     *
+     * @param enabled True to reason on one representative per equivalence class
+     */
+    public void setSameAsCanonicalization(boolean enabled) {
+        this.canonicalizer = enabled ? new SameAsCanonicalizer(graph, getSameAsGraph()) : null;
+    }
+
+    /**
+     * Returns the named graph receiving the triples copied onto the representatives of the sameAs classes.
+     *
+     * @return The named graph URI
+     */
+    public String getSameAsGraph() {
+        return inferenceGraph + "/sameAs";
+    }
+
+    /**
+     * Returns the canonicalizer of the sameAs equivalence classes.
+     *
+     * @return The canonicalizer, or null if sameAs canonicalization is disabled
+     */
+    public SameAsCanonicalizer getSameAsCanonicalizer() {
+        return canonicalizer;
+    }
+
+    /**
+     * Sets the listener receiving the profile of each run.
+     *
+     * @param listener The listener, may be null
+     */
+    public void setProfileListener(Consumer<RuleProfile> listener) {
+        this.profileListener = listener;
+    }
+
+    /**
+     * Returns the profile of the last run.
+     *
+     * @return The profile, or null if no rule was run yet
+     */
+    public RuleProfile getLastProfile() {
+        return lastProfile;
+    }
+
+    /**
+     * Removes rule sets and retracts what they inferred.
+     *
+     * The named graphs of the removed rule sets are dropped, together with the graphs of the
+     * remaining rule sets that read what a dropped graph contained, since their conclusions may
+     * depend on the retracted triples. The dropped rule sets that remain are then evaluated
+     * again, with the rules that can produce a retracted predicate: a triple inferred by several
+     * rule sets is only stored once, in the graph of the one that inferred it first.
+     *
+     * @param removed The rule sets to remove
+     * @return The number of triples removed from the graph, after re-derivation
+     * @throws EngineException If a graph cannot be dropped or a rule cannot be evaluated
+     */
+    public int removeRuleSets(Collection<RuleSet> removed) throws EngineException {
+        Set<RuleSet> cleared = new LinkedHashSet<>();
+        for (RuleSet ruleSet : removed) {
+            if (ruleSets.remove(ruleSet)) {
+                cleared.add(ruleSet);
+                for (InferenceRule rule : ruleSet.getRules()) {
+                    owners.remove(rule);
+                }
+            }
+        }
+        if (cleared.isEmpty()) {
+            return 0;
+        }
+
+        // Follow the dependencies: a rule set reading a retracted predicate is dropped as well
+        Set<String> retracted = new HashSet<>();
+        boolean anyPredicate = false;
+        List<RuleSet> pending = new ArrayList<>(cleared);
+        while (!pending.isEmpty()) {
+            for (RuleSet ruleSet : pending) {
+                for (InferenceRule rule : ruleSet.getRules()) {
+                    retracted.addAll(rule.getHeadPredicates());
+                    anyPredicate |= rule.hasVariableHeadPredicate();
+                }
+            }
+            pending = new ArrayList<>();
+            for (RuleSet ruleSet : ruleSets) {
+                if (!cleared.contains(ruleSet) && reads(ruleSet, retracted, anyPredicate)) {
+                    cleared.add(ruleSet);
+                    pending.add(ruleSet);
+                }
+            }
+        }
+
+        int sizeBefore = graph.size();
+        QueryProcess exec = QueryProcess.create(graph);
+        boolean violations = false;
+        for (RuleSet ruleSet : cleared) {
+            exec.query("CLEAR SILENT GRAPH <" + getInferenceGraph(ruleSet) + ">");
+            for (InferenceRule rule : ruleSet.getRules()) {
+                violations |= rule.isConstraint();
+            }
+        }
+        if (violations) {
+            // The constraint graph is shared: the remaining constraint rules report their violations again
+            exec.query("CLEAR SILENT GRAPH <" + CONSTRAINT_GRAPH + ">");
+        }
+
+        // Re-derive what the remaining rules can still conclude
+        List<InferenceRule> rederive = new ArrayList<>();
+        for (InferenceRule rule : getRules()) {
+            if (cleared.contains(owners.get(rule)) || rule.hasVariableHeadPredicate() || anyPredicate
+                    || violations && rule.isConstraint()
+                    || !Collections.disjoint(rule.getHeadPredicates(), retracted)) {
+                rederive.add(rule);
+            }
+        }
+        run("re-derivation", rederive);
+        return sizeBefore - graph.size();
+    }
+
+    /**
+     * Returns the named graph receiving the triples inferred by a rule set.
+     *
+     * @param ruleSet The rule set
+     * @return The named graph URI
+     */
+    public String getInferenceGraph(RuleSet ruleSet) {
+        return inferenceGraph + "/" + ruleSet.getName().replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    public List<RuleSet> getRuleSets() {
+        return new ArrayList<>(ruleSets);
+    }
+
+    /**
+     * Returns every rule of every rule set.
+     *
+     * @return The rules
+     */
+    public List<InferenceRule> getRules() {
+        List<InferenceRule> rules = new ArrayList<>();
+        for (RuleSet ruleSet : ruleSets) {
+            rules.addAll(ruleSet.getRules());
+        }
+        return rules;
+    }
+
+    /**
+     * Evaluates every rule until no new triple is inferred.
+     *
+     * @return The number of inferred triples
+     * @throws EngineException If a rule cannot be evaluated
+     */
+    public int process() throws EngineException {
+        return run("full", getRules());
+    }
+
+    /**
+     * Brings the inferences up to date after triples with the given predicates were added
+     * to a graph that was already at fixpoint. Only the rules reading these predicates
+     * are evaluated first.
+     *
+     * @param predicates The predicates of the added triples
+     * @return The number of inferred triples
+     * @throws EngineException If a rule cannot be evaluated
+     */
+    public int processDelta(Set<String> predicates) throws EngineException {
+        return run("delta", triggeredRules(predicates, false, getRules()));
+    }
+
+    /**
+     * Recomputes the instance-level inferences after they were cleared, keeping the schema closure.
+     * The rules reading only schema triples are not evaluated first: the schema did not change,
+     * so their conclusions are still in the graph. They run again only if an instance rule
+     * infers a schema triple.
+     *
+     * @return The number of inferred triples
+     * @throws EngineException If a rule cannot be evaluated
+     */
+    public int processInstances() throws EngineException {
+        List<InferenceRule> rules = new ArrayList<>();
+        for (InferenceRule rule : getRules()) {
+            if (!SchemaVocabulary.isSchemaRule(rule)) {
+                rules.add(rule);
+            }
+        }
+        return run("instances", rules);
+    }
+
+    /**
+     * Brings the inferences up to date after some rules were added to a graph that was
+     * at fixpoint for the other rules. Only the added rules are evaluated first.
+     *
+     * @param rules The added rules
+     * @return The number of inferred triples
+     * @throws EngineException If a rule cannot be evaluated
+     */
+    public int processRules(Collection<InferenceRule> rules) throws EngineException {
+        return run("new rules", new ArrayList<>(rules));
+    }
+
+    /**
+     * Derives what a query needs rather than every inference: the rules that can produce a
+     * predicate or a class the query reads are run to fixpoint, and nothing else. A query only
+     * reading what previous queries needed infers nothing.
+     *
+     * @param query The SPARQL query text
+     * @return The number of inferred triples
+     * @throws EngineException If a rule cannot be evaluated
+     */
+    public int processQuery(String query) throws EngineException {
+        GoalPlanner.Goals goals = GoalPlanner.Goals.of(InferenceRule.queryPatterns(query));
+        lastQueryRuleCount = -1;
+        if (goals.isEmpty() || answeredGoals.covers(goals)) {
+            return 0;
+        }
+        int sizeBefore = graph.size();
+        List<InferenceRule> rules = canonicalizer != null ? withoutEqualityRules(getRules()) : getRules();
+        List<InferenceRule> relevant = new ArrayList<>();
+        List<InferenceRule> added = new GoalPlanner(graph).relevantRules(goals, rules);
+        // The candidates of the variables come from the graph: plan again until the inferred triples add no rule
+        while (!added.isEmpty()) {
+            relevant.addAll(added);
+            run("goal", added, relevant);
+            if (stopReason != null) {
+                // Not at fixpoint, the goals are not answered
+                lastQueryRuleCount = relevant.size();
+                return graph.size() - sizeBefore;
+            }
+            added = new GoalPlanner(graph).relevantRules(goals, rules);
+            added.removeAll(relevant);
+        }
+        answeredGoals.addAll(goals);
+        lastQueryRuleCount = relevant.size();
+        return graph.size() - sizeBefore;
+    }
+
+    /**
+     * Returns how many rules the last query needed.
+     *
+     * @return The number of rules, or -1 if the inferences of previous queries were enough
+     */
+    public int getLastQueryRuleCount() {
+        return lastQueryRuleCount;
+    }
+
+    /**
+     * Forgets what the answered queries needed, after the data or the rules changed.
+     * The triples already inferred are kept, the next queries complete them.
+     */
+    public void resetGoals() {
+        answeredGoals = new GoalPlanner.Goals();
+    }
+
+    private int run(String mode, List<InferenceRule> initialRules) throws EngineException {
+        return run(mode, initialRules, getRules());
+    }
+
+    /**
+     * Runs the fixpoint loop from an initial set of rules, profiling every evaluation.
+     * Only the rules of the universe are triggered by the inferred triples.
+     */
+    private int run(String mode, List<InferenceRule> initialRules, List<InferenceRule> universe)
+            throws EngineException {
+        RuleProfile profile = new RuleProfile(mode);
+        long start = System.nanoTime();
+        int sizeBefore = graph.size();
+        runStart = start;
+        runSizeBefore = sizeBefore;
+        stopReason = null;
+        stagingGraphs = guard.isUnlimited() ? null : new LinkedHashMap<>();
+        runRuleInferred = new IdentityHashMap<>();
+        offendingRule = null;
+        writtenDeltas = new LinkedHashMap<>();
+        joinedDeltas = new LinkedHashMap<>();
+        deltaParity = 0;
+        joinDeltas = false;
+        writeDeltas = true;
+        QueryProcess exec = QueryProcess.create(graph);
+        List<InferenceRule> active = initialRules;
+        ExecutorService executor = null;
+
+        try {
+            if (canonicalizer != null) {
+                active = withoutEqualityRules(active);
+                universe = withoutEqualityRules(universe);
+                Set<String> copied = canonicalizer.canonicalize(true, targetGraph(getSameAsGraph()));
+                if (!copied.isEmpty()) {
+                    Set<InferenceRule> started = new LinkedHashSet<>(active);
+                    started.addAll(triggeredRules(copied, false, universe));
+                    active = new ArrayList<>(started);
+                }
+            }
+            GraphVocabulary vocabulary = null;
+            if (pruning && !active.isEmpty()) {
+                long pruningStart = System.nanoTime();
+                vocabulary = GraphVocabulary.of(graph);
+                profile.addPruningTime(System.nanoTime() - pruningStart);
+            }
+            while (!active.isEmpty() && !shouldStop()) {
+                if (vocabulary != null) {
+                    active = prune(active, vocabulary, profile);
+                    if (active.isEmpty()) {
+                        break;
+                    }
+                }
+                monitor.iterationStarted(profile.getIterations().size() + 1, active.size());
+                long iterationStart = System.nanoTime();
+                int iterationSize = graph.size();
+                List<InferenceRule> productive = new ArrayList<>();
+                if (parallelism > 1 && active.size() > 1) {
+                    if (executor == null) {
+                        executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+                            Thread thread = new Thread(runnable, "rule-worker");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+                    }
+                    productive.addAll(applyConcurrently(executor, active, profile));
+                } else {
+                    for (InferenceRule rule : active) {
+                        if (shouldStop()) {
+                            break;
+                        }
+                        if (apply(exec, rule, profile) > 0) {
+                            productive.add(rule);
+                        }
+                    }
+                }
+
+                Set<String> produced = new HashSet<>();
+                boolean anyPredicate = false;
+                boolean violations = false;
+                for (InferenceRule rule : productive) {
+                    violations |= rule.isConstraint();
+                    produced.addAll(rule.getHeadPredicates());
+                    anyPredicate |= rule.hasVariableHeadPredicate();
+                    if (vocabulary != null) {
+                        vocabulary.addConclusions(rule);
+                    }
+                }
+                if (canonicalizer != null && (anyPredicate || produced.contains(SameAsCanonicalizer.SAME_AS))) {
+                    // New aliases: their triples are copied onto the representative of their class
+                    produced.addAll(canonicalizer.canonicalize(false, targetGraph(getSameAsGraph())));
+                }
+                int inferred = graph.size() - iterationSize;
+                profile.recordIteration(active.size(), System.nanoTime() - iterationStart, inferred);
+
+                // The next iteration joins with what this one inferred, if it is small enough
+                flushDeltas(exec, joinedDeltas);
+                joinedDeltas = writtenDeltas;
+                writtenDeltas = new LinkedHashMap<>();
+                deltaParity ^= 1;
+                boolean small = (long) inferred * DELTA_JOIN_FRACTION < graph.size();
+                // Constraint violations are not in the delta graphs, the next iteration would miss them
+                joinDeltas = writeDeltas && small && !violations;
+                writeDeltas = small;
+                joinPredicates = anyPredicate ? null : produced;
+                active = triggeredRules(produced, anyPredicate, universe);
+            }
+            flushDeltas(exec, joinedDeltas);
+            flushDeltas(exec, writtenDeltas);
+            if (stagingGraphs != null) {
+                if (offendingRule != null) {
+                    int rolledBack = rollBack(exec);
+                    profile.abort(owners.get(offendingRule).getName() + " / " + offendingRule.getName(), rolledBack);
+                } else {
+                    commit(exec);
+                }
+            }
+        } catch (EngineException | RuntimeException e) {
+            try {
+                flushDeltas(exec, joinedDeltas);
+                flushDeltas(exec, writtenDeltas);
+                if (stagingGraphs != null) {
+                    // The run failed: what it inferred is dropped rather than half committed
+                    rollBack(exec);
+                }
+            } catch (EngineException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            profile.finish(System.nanoTime() - start, graph.size() - sizeBefore, stopReason);
+            lastProfile = profile;
+            if (profileListener != null) {
+                profileListener.accept(profile);
+            }
+        }
+        return graph.size() - sizeBefore;
+    }
+
+    /**
+     * Removes the rules that cannot match the graph, recording them in the profile.
+     */
+    private List<InferenceRule> prune(List<InferenceRule> rules, GraphVocabulary vocabulary, RuleProfile profile) {
+        long start = System.nanoTime();
+        List<InferenceRule> applicable = new ArrayList<>();
+        for (InferenceRule rule : rules) {
+            String missing = vocabulary.getMissingTerm(rule);
+            if (missing == null) {
+                applicable.add(rule);
+            } else {
+                profile.recordPruning(rule, owners.get(rule).getName(), missing, rule.getLastEvaluationNanos());
+            }
+        }
+        profile.addPruningTime(System.nanoTime() - start);
+        return applicable;
+    }
+
+    /**
+     * Applies a rule once.
+     *
+     * @return The number of triples the rule inserted
+     */
+    private int apply(QueryProcess exec, InferenceRule rule, RuleProfile profile) throws EngineException {
+        RuleSet ruleSet = owners.get(rule);
+        long start = System.nanoTime();
+        int before = graph.size();
+        String target = targetGraph(rule);
+        exec.query(rule.toUpdate(target, evaluationLimit(rule), deltaGraphs(), joinPredicates));
+        int inferred = graph.size() - before;
+        long nanos = System.nanoTime() - start;
+        rule.setLastEvaluationNanos(nanos);
+        profile.recordEvaluation(rule, ruleSet.getName(), nanos, inferred);
+        monitor.ruleEvaluated(rule, inferred);
+        checkGuard(rule, inferred);
+        return inferred;
+    }
+
+    /**
+     * Inserts the conclusions of a rule that are not already in the graph, up to a limit.
+     *
+     * @param conclusions The graph built by the rule query
+     * @param graphName The named graph receiving the new triples
+     * @param limit The maximum number of triples to insert, 0 for no limit
+     */
+    private void insertNew(Graph conclusions, String graphName, long limit) {
+        if (conclusions == null) {
+            return;
+        }
+        Node target = graph.addGraph(graphName);
+        long inserted = 0;
+        for (Edge edge : conclusions.getEdges()) {
+            if (limit > 0 && inserted >= limit) {
+                break;
+            }
+            IDatatype predicate = edge.getProperty().getDatatypeValue();
+            if (!graph.getEdges(edge.getSubjectValue(), predicate, edge.getObjectValue()).iterator().hasNext()
+                    && graph.addEdge(target, graph.addNode(edge.getSubjectNode()), graph.addProperty(predicate.getLabel()),
+                    graph.addNode(edge.getObjectNode())) != null) {
+                inserted++;
+            }
+        }
+    }
+
+    /**
+     * Returns the named graph receiving the conclusions of a rule during the current iteration.
+     * Constraint violations are never written into a delta graph: the rules of the Corese profiles
+     * recognize the constraint graph by its name, as they must not reason over the violations.
+     */
+    private String targetGraph(InferenceRule rule) {
+        if (!rule.isConstraint()) {
+            return targetGraph(getInferenceGraph(owners.get(rule)));
+        }
+        if (stagingGraphs == null) {
+            return CONSTRAINT_GRAPH;
+        }
+        stagingGraphs.put(CONSTRAINT_GRAPH + STAGING_SUFFIX, CONSTRAINT_GRAPH);
+        return CONSTRAINT_GRAPH + STAGING_SUFFIX;
+    }
+
+    /**
+     * Returns the named graph receiving the triples of an inference graph during the current iteration:
+     * its staging graph if the run is guarded, the graph itself otherwise, or the delta graph of that
+     * graph when the next iteration may join with it.
+     */
+    private String targetGraph(String graphName) {
+        String target = graphName;
+        if (stagingGraphs != null) {
+            target = graphName + STAGING_SUFFIX;
+            stagingGraphs.put(target, graphName);
+        }
+        if (!writeDeltas) {
+            return target;
+        }
+        String delta = target + DELTA_SUFFIX + deltaParity;
+        writtenDeltas.put(delta, target);
+        return delta;
+    }
+
+    /**
+     * Returns the delta graphs the rules of the current iteration join with.
+     *
+     * @return The graphs written by the previous iteration, null in the first iteration
+     */
+    private Collection<String> deltaGraphs() {
+        return joinDeltas ? new ArrayList<>(joinedDeltas.keySet()) : null;
+    }
+
+    /**
+     * Adds delta graphs to the graph they belong to, then drops them.
+     */
+    private void flushDeltas(QueryProcess exec, Map<String, String> deltas) throws EngineException {
+        for (Map.Entry<String, String> delta : deltas.entrySet()) {
+            exec.query("ADD SILENT <" + delta.getKey() + "> TO <" + delta.getValue() + ">");
+            exec.query("DROP SILENT GRAPH <" + delta.getKey() + ">");
+        }
+        deltas.clear();
+    }
+
+    /**
+     * Returns how many solutions the next evaluation of a rule may produce in a guarded run.
+     *
+     * @return The solution limit, 0 for no limit
+     */
+    private long evaluationLimit(InferenceRule rule) {
+        if (stagingGraphs == null) {
+            return 0;
+        }
+        return guard.evaluationLimit(runRuleInferred.getOrDefault(rule, 0L), graph.size() - runSizeBefore);
+    }
+
+    /**
+     * Counts the triples a rule just inferred and aborts the run if the guard trips.
+     */
+    private void checkGuard(InferenceRule rule, int inferred) {
+        if (stagingGraphs == null || offendingRule != null) {
+            return;
+        }
+        long ruleInferred = runRuleInferred.merge(rule, (long) inferred, Long::sum);
+        String reason = guard.exceeded(rule.getName(), ruleInferred, graph.size() - runSizeBefore);
+        if (reason != null) {
+            stopReason = reason;
+            offendingRule = rule;
+        }
+    }
+
+    /**
+     * Adds the staging graphs of the run to their inference graph, then drops them.
+     */
+    private void commit(QueryProcess exec) throws EngineException {
+        for (Map.Entry<String, String> staging : stagingGraphs.entrySet()) {
+            exec.query("ADD SILENT <" + staging.getKey() + "> TO <" + staging.getValue() + ">");
+            exec.query("DROP SILENT GRAPH <" + staging.getKey() + ">");
+        }
+        stagingGraphs.clear();
+    }
+
+    /**
+     * Drops the staging graphs of the run, removing everything it inferred.
+     *
+     * @return The number of triples removed
+     */
+    private int rollBack(QueryProcess exec) throws EngineException {
+        int sizeBefore = graph.size();
+        for (String staging : stagingGraphs.keySet()) {
+            exec.query("DROP SILENT GRAPH <" + staging + ">");
+        }
+        stagingGraphs.clear();
+        int rolledBack = sizeBefore - graph.size();
+        if (canonicalizer != null) {
+            // The classes may include aliases of rolled back sameAs triples
+            canonicalizer.canonicalize(false);
+        }
+        return rolledBack;
+    }
+
+    /**
+     * Returns whether the current run must stop, recording why.
+     */
+    private boolean shouldStop() {
+        if (stopReason == null) {
+            if (monitor.isCancelled()) {
+                stopReason = "cancelled";
+            } else {
+                stopReason = budget.exceeded((System.nanoTime() - runStart) / 1_000_000, graph.size() - runSizeBefore);
+            }
+        }
+        return stopReason != null;
+    }
+
+    /**
+     * Evaluates rules concurrently, then merges their conclusions in rule order.
+     * No rule sees the conclusions of another rule of the same iteration.
+     *
+     * The workers query the graph itself: it is indexed before they start and this thread waits for
+     * every evaluation before merging, so nothing writes to the graph while they read it.
+     *
+     * In a guarded run, each evaluation is limited to what was left under the caps when the iteration
+     * started, and each merge is limited again to what is left: the run never goes further over the
+     * caps than a sequential run, whose guard trips on the same merge.
+     *
+     * @return The rules that inferred new triples
+     */
+    private List<InferenceRule> applyConcurrently(ExecutorService executor, List<InferenceRule> active,
+                                                  RuleProfile profile) throws EngineException {
+        // Indexed once here, rather than lazily by the first workers to query it
+        graph.init();
+        long runInferred = graph.size() - runSizeBefore;
+        boolean guarded = stagingGraphs != null;
+        Collection<String> deltas = deltaGraphs();
+        Set<String> predicates = joinPredicates;
+
+        List<Future<Graph>> conclusions = new ArrayList<>();
+        List<long[]> durations = new ArrayList<>();
+        List<String> targets = new ArrayList<>();
+        AtomicBoolean abandoned = new AtomicBoolean();
+        CountDownLatch ended = new CountDownLatch(active.size());
+        for (InferenceRule rule : active) {
+            long[] duration = new long[1];
+            durations.add(duration);
+            String target = targetGraph(rule);
+            targets.add(target);
+            long limit = guarded ? guard.evaluationLimit(runRuleInferred.getOrDefault(rule, 0L), runInferred) : 0;
+            String query = rule.toConstruct(target, limit, deltas, predicates);
+            conclusions.add(executor.submit(() -> {
+                try {
+                    if (abandoned.get()) {
+                        return null;
+                    }
+                    long start = System.nanoTime();
+                    Mappings mappings = QueryProcess.create(graph).query(query);
+                    duration[0] = System.nanoTime() - start;
+                    return (Graph) mappings.getGraph();
+                } finally {
+                    ended.countDown();
+                }
+            }));
+        }
+
+        // Every evaluation is over before the graph is modified
+        List<Graph> results = new ArrayList<>();
+        try {
+            for (Future<Graph> future : conclusions) {
+                if (shouldStop()) {
+                    break;
+                }
+                results.add(await(future));
+            }
+        } finally {
+            if (results.size() < conclusions.size()) {
+                // Stopped or failed: the evaluations not started are abandoned, the running ones still read the graph
+                abandoned.set(true);
+                awaitEnd(ended);
+            }
+        }
+
+        List<InferenceRule> productive = new ArrayList<>();
+        for (int i = 0; i < results.size(); i++) {
+            if (shouldStop()) {
+                // Conclusions already merged are kept
+                break;
+            }
+            InferenceRule rule = active.get(i);
+            Graph result = results.get(i);
+            long start = System.nanoTime();
+            int before = graph.size();
+            long limit = evaluationLimit(rule);
+            if (limit > 0 && result != null && result.size() > limit) {
+                insertNew(result, targets.get(i), limit);
+            } else if (result != null && result.size() > 0) {
+                graph.copy(result);
+            }
+            int inferred = graph.size() - before;
+            long nanos = durations.get(i)[0] + System.nanoTime() - start;
+            rule.setLastEvaluationNanos(nanos);
+            profile.recordEvaluation(rule, owners.get(rule).getName(), nanos, inferred);
+            monitor.ruleEvaluated(rule, inferred);
+            checkGuard(rule, inferred);
+            if (inferred > 0) {
+                productive.add(rule);
+            }
+        }
+        return productive;
+    }
+
+    private static Graph await(Future<Graph> future) throws EngineException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Rule evaluation interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof EngineException) {
+                throw (EngineException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Waits until the abandoned evaluations are over, so that the graph can be modified again.
+     */
+    private static void awaitEnd(CountDownLatch ended) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                ended.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static List<InferenceRule> withoutEqualityRules(List<InferenceRule> rules) {
+        List<InferenceRule> kept = new ArrayList<>();
+        for (InferenceRule rule : rules) {
+            if (!SameAsCanonicalizer.isEqualityRule(rule)) {
+                kept.add(rule);
+            }
+        }
+        return kept;
+    }
+
+    private static boolean reads(RuleSet ruleSet, Set<String> predicates, boolean anyPredicate) {
+        for (InferenceRule rule : ruleSet.getRules()) {
+            if (rule.isTriggeredBy(predicates, anyPredicate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<InferenceRule> triggeredRules(Set<String> predicates, boolean anyPredicate,
+                                               List<InferenceRule> universe) {
+        Set<InferenceRule> triggered = new LinkedHashSet<>();
+        if (predicates.isEmpty() && !anyPredicate) {
+            return new ArrayList<>();
+        }
+        for (InferenceRule rule : universe) {
+            if (rule.isTriggeredBy(predicates, anyPredicate)) {
+                triggered.add(rule);
+            }
+        }
+        return new ArrayList<>(triggered);
+    }
+}
@@ -0,0 +1,425 @@
+package fr.inria.corese.demo.model.rule;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Statistics of one run of the rule processor, per rule and per fixpoint iteration.
+ *
+ * A run is a full evaluation, an incremental evaluation after new data, the evaluation
+ * of newly enabled rules or a re-derivation after a retraction. The profile tells which
+ * rules take the time and how many triples each one inferred, and can be exported as JSON
+ * to compare runs. It also lists the rules skipped because they could not match the graph.
+ */
+public final class RuleProfile {
+    private final String mode;
+    private final long startedAt;
+    private final Map<InferenceRule, RuleStats> rules = new LinkedHashMap<>();
+    private final List<IterationStats> iterations = new ArrayList<>();
+    private final Map<InferenceRule, PrunedRule> prunedRules = new LinkedHashMap<>();
+    private long pruningNanos;
+    private long elapsedNanos;
+    private int triplesInferred;
+    private String stopReason;
+    private String offendingRule;
+    private int triplesRolledBack;
+
+    RuleProfile(String mode) {
+        this.mode = mode;
+        this.startedAt = System.currentTimeMillis();
+    }
+
+    void recordEvaluation(InferenceRule rule, String ruleSet, long nanos, int inferred) {
+        RuleStats stats = rules.computeIfAbsent(rule, r -> new RuleStats(r.getName(), ruleSet));
+        stats.evaluations++;
+        stats.nanos += nanos;
+        stats.triplesInferred += inferred;
+        if (inferred > 0) {
+            stats.firings++;
+            stats.maxInferred = Math.max(stats.maxInferred, inferred);
+        }
+    }
+
+    void recordIteration(int activeRules, long nanos, int inferred) {
+        iterations.add(new IterationStats(iterations.size() + 1, activeRules, nanos, inferred));
+    }
+
+    void recordPruning(InferenceRule rule, String ruleSet, String missingTerm, long estimatedNanos) {
+        PrunedRule pruned = prunedRules.computeIfAbsent(rule, r -> new PrunedRule(r.getName(), ruleSet, missingTerm));
+        pruned.skippedEvaluations++;
+        pruned.estimatedNanos += estimatedNanos;
+    }
+
+    void addPruningTime(long nanos) {
+        pruningNanos += nanos;
+    }
+
+    void finish(long nanos, int inferred, String stopReason) {
+        this.elapsedNanos = nanos;
+        this.triplesInferred = inferred;
+        this.stopReason = stopReason;
+    }
+
+    void abort(String offendingRule, int rolledBack) {
+        this.offendingRule = offendingRule;
+        this.triplesRolledBack = rolledBack;
+    }
+
+    /**
+     * Returns the kind of run: full, delta, instances, new rules or re-derivation.
+     *
+     * @return The run mode
+     */
+    public String getMode() {
+        return mode;
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedNanos / 1_000_000;
+    }
+
+    public int getTriplesInferred() {
+        return triplesInferred;
+    }
+
+    /**
+     * Returns whether the run reached the fixpoint, i.e. it was neither cancelled,
+     * stopped by its budget nor aborted by its guard.
+     *
+     * @return True if the run completed
+     */
+    public boolean isComplete() {
+        return stopReason == null;
+    }
+
+    /**
+     * Returns why the run stopped before the fixpoint.
+     *
+     * @return The reason, or null if the run completed
+     */
+    public String getStopReason() {
+        return stopReason;
+    }
+
+    /**
+     * Returns whether the run was aborted by its guard, its inferences being rolled back.
+     *
+     * @return True if the run was aborted
+     */
+    public boolean isAborted() {
+        return offendingRule != null;
+    }
+
+    /**
+     * Returns the rule that made the guard abort the run, prefixed by its rule set.
+     *
+     * @return The rule, or null if the run was not aborted
+     */
+    public String getOffendingRule() {
+        return offendingRule;
+    }
+
+    /**
+     * Returns how many triples the run inferred before it was aborted and rolled back.
+     *
+     * @return The number of triples removed again
+     */
+    public int getTriplesRolledBack() {
+        return triplesRolledBack;
+    }
+
+    /**
+     * Returns the statistics of the evaluated rules, the slowest first.
+     *
+     * @return The rule statistics
+     */
+    public List<RuleStats> getRuleStats() {
+        List<RuleStats> stats = new ArrayList<>(rules.values());
+        stats.sort(Comparator.comparingLong(RuleStats::getNanos).reversed());
+        return stats;
+    }
+
+    public List<IterationStats> getIterations() {
+        return Collections.unmodifiableList(iterations);
+    }
+
+    /**
+     * Returns the rules skipped because the graph lacked a predicate or a class they require.
+     *
+     * @return The pruned rules, in the order they were first skipped
+     */
+    public List<PrunedRule> getPrunedRules() {
+        return new ArrayList<>(prunedRules.values());
+    }
+
+    /**
+     * Returns the time spent reading the vocabulary of the graph and checking the rules against it.
+     *
+     * @return The pruning time in milliseconds
+     */
+    public long getPruningMillis() {
+        return pruningNanos / 1_000_000;
+    }
+
+    /**
+     * Returns the estimated time the skipped evaluations would have taken, from the last
+     * evaluation of each pruned rule. Rules never evaluated before do not count.
+     *
+     * @return The estimated saved time in milliseconds
+     */
+    public long getEstimatedSavedMillis() {
+        long nanos = 0;
+        for (PrunedRule pruned : prunedRules.values()) {
+            nanos += pruned.estimatedNanos;
+        }
+        return nanos / 1_000_000;
+    }
+
+    /**
+     * Returns a one-line summary of the run.
+     *
+     * @return The summary
+     */
+    public String getSummary() {
+        return String.format(Locale.ROOT, "%s run: %d rules evaluated in %d iterations, %d triples inferred in %d ms%s",
+                mode, rules.size(), iterations.size(), triplesInferred, getElapsedMillis(),
+                isAborted() ? " (aborted by " + offendingRule + ", " + triplesRolledBack + " triples rolled back: " + stopReason + ")"
+                        : isComplete() ? "" : " (stopped: " + stopReason + ")")
+                + (prunedRules.isEmpty() ? "" : ", " + prunedRules.size() + " rules pruned");
+    }
+
+    /**
+     * Serializes the profile as JSON.
+     *
+     * @return The JSON document
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"mode\": ").append(quote(mode)).append(",\n");
+        json.append("  \"startedAt\": ").append(startedAt).append(",\n");
+        json.append("  \"elapsedMs\": ").append(millis(elapsedNanos)).append(",\n");
+        json.append("  \"triplesInferred\": ").append(triplesInferred).append(",\n");
+        json.append("  \"complete\": ").append(isComplete()).append(",\n");
+        if (!isComplete()) {
+            json.append("  \"stopReason\": ").append(quote(stopReason)).append(",\n");
+        }
+        if (isAborted()) {
+            json.append("  \"offendingRule\": ").append(quote(offendingRule)).append(",\n");
+            json.append("  \"triplesRolledBack\": ").append(triplesRolledBack).append(",\n");
+        }
+
+        json.append("  \"iterations\": [");
+        for (int i = 0; i < iterations.size(); i++) {
+            IterationStats iteration = iterations.get(i);
+            json.append(i == 0 ? "\n" : ",\n");
+            json.append("    {\"iteration\": ").append(iteration.getIndex())
+                    .append(", \"activeRules\": ").append(iteration.getActiveRules())
+                    .append(", \"elapsedMs\": ").append(millis(iteration.getNanos()))
+                    .append(", \"triplesInferred\": ").append(iteration.getTriplesInferred()).append("}");
+        }
+        json.append(iterations.isEmpty() ? "],\n" : "\n  ],\n");
+
+        json.append("  \"rules\": [");
+        List<RuleStats> stats = getRuleStats();
+        for (int i = 0; i < stats.size(); i++) {
+            RuleStats rule = stats.get(i);
+            json.append(i == 0 ? "\n" : ",\n");
+            json.append("    {\"rule\": ").append(quote(rule.getName()))
+                    .append(", \"ruleSet\": ").append(quote(rule.getRuleSet()))
+                    .append(", \"evaluations\": ").append(rule.getEvaluations())
+                    .append(", \"firings\": ").append(rule.getFirings())
+                    .append(", \"triplesInferred\": ").append(rule.getTriplesInferred())
+                    .append(", \"maxTriplesPerEvaluation\": ").append(rule.getMaxInferred())
+                    .append(", \"elapsedMs\": ").append(millis(rule.getNanos())).append("}");
+        }
+        json.append(stats.isEmpty() ? "],\n" : "\n  ],\n");
+
+        json.append("  \"pruning\": {\"elapsedMs\": ").append(millis(pruningNanos))
+                .append(", \"estimatedSavedMs\": ").append(getEstimatedSavedMillis())
+                .append(", \"rules\": [");
+        List<PrunedRule> pruned = getPrunedRules();
+        for (int i = 0; i < pruned.size(); i++) {
+            PrunedRule rule = pruned.get(i);
+            json.append(i == 0 ? "\n" : ",\n");
+            json.append("    {\"rule\": ").append(quote(rule.getName()))
+                    .append(", \"ruleSet\": ").append(quote(rule.getRuleSet()))
+                    .append(", \"missing\": ").append(quote(rule.getMissingTerm()))
+                    .append(", \"skippedEvaluations\": ").append(rule.getSkippedEvaluations()).append("}");
+        }
+        json.append(pruned.isEmpty() ? "]}\n" : "\n  ]}\n");
+        json.append("}\n");
+        return json.toString();
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1_000_000.0);
+    }
+
+    private static String quote(String text) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char c : text.toCharArray()) {
+            switch (c) {
+                case '"' -> quoted.append("\\\"");
+                case '\\' -> quoted.append("\\\\");
+                case '\n' -> quoted.append("\\n");
+                case '\r' -> quoted.append("\\r");
+                case '\t' -> quoted.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+                }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * Statistics of one rule over a run.
+     */
+    public static final class RuleStats {
+        private final String name;
+        private final String ruleSet;
+        private int evaluations;
+        private int firings;
+        private int triplesInferred;
+        private int maxInferred;
+        private long nanos;
+
+        private RuleStats(String name, String ruleSet) {
+            this.name = name;
+            this.ruleSet = ruleSet;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getRuleSet() {
+            return ruleSet;
+        }
+
+        /**
+         * Returns how many times the rule was evaluated, once per iteration in which it was active.
+         *
+         * @return The number of evaluations
+         */
+        public int getEvaluations() {
+            return evaluations;
+        }
+
+        /**
+         * Returns how many evaluations inferred at least one triple.
+         *
+         * @return The number of firings
+         */
+        public int getFirings() {
+            return firings;
+        }
+
+        public int getTriplesInferred() {
+            return triplesInferred;
+        }
+
+        /**
+         * Returns the largest number of triples inferred by a single evaluation,
+         * i.e. the largest number of new body matches joined in one iteration.
+         *
+         * @return The maximum number of triples per evaluation
+         */
+        public int getMaxInferred() {
+            return maxInferred;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public long getElapsedMillis() {
+            return nanos / 1_000_000;
+        }
+    }
+
+    /**
+     * A rule skipped over a run because it could not match the graph.
+     */
+    public static final class PrunedRule {
+        private final String name;
+        private final String ruleSet;
+        private final String missingTerm;
+        private int skippedEvaluations;
+        private long estimatedNanos;
+
+        private PrunedRule(String name, String ruleSet, String missingTerm) {
+            this.name = name;
+            this.ruleSet = ruleSet;
+            this.missingTerm = missingTerm;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getRuleSet() {
+            return ruleSet;
+        }
+
+        /**
+         * Returns the predicate or class the rule requires and the graph lacked when it was first skipped.
+         *
+         * @return The IRI of the missing term
+         */
+        public String getMissingTerm() {
+            return missingTerm;
+        }
+
+        public int getSkippedEvaluations() {
+            return skippedEvaluations;
+        }
+    }
+
+    /**
+     * Statistics of one fixpoint iteration.
+     */
+    public static final class IterationStats {
+        private final int index;
+        private final int activeRules;
+        private final long nanos;
+        private final int triplesInferred;
+
+        private IterationStats(int index, int activeRules, long nanos, int triplesInferred) {
+            this.index = index;
+            this.activeRules = activeRules;
+            this.nanos = nanos;
+            this.triplesInferred = triplesInferred;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public int getActiveRules() {
+            return activeRules;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public int getTriplesInferred() {
+            return triplesInferred;
+        }
+    }
+}
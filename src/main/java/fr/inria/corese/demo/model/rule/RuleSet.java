@@ -0,0 +1,121 @@
+package fr.inria.corese.demo.model.rule;
+
+import fr.inria.corese.core.Graph;
+import fr.inria.corese.core.load.RuleLoad;
+import fr.inria.corese.core.rule.Rule;
+import fr.inria.corese.core.rule.RuleEngine;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A named group of inference rules: a Corese profile such as OWL RL, or a custom .rul file.
+ *
+ * Rules are read from a Corese {@link RuleEngine} set up on an empty graph, which remains
+ * the reference for what the rule set contains: each rule is split into an {@link InferenceRule}
+ * so that it can be driven on its own. A rule set whose engine has a rule that cannot be split
+ * is refused, rather than evaluated differently from the engine. Only queries given as text
+ * that are not CONSTRUCT queries are reported as unsupported.
+ */
+public final class RuleSet {
+    private final String name;
+    private final List<InferenceRule> rules;
+    private final List<String> unsupportedRules;
+
+    private RuleSet(String name, List<InferenceRule> rules, List<String> unsupportedRules) {
+        this.name = name;
+        this.rules = rules;
+        this.unsupportedRules = unsupportedRules;
+    }
+
+    /**
+     * Creates the rule set of a Corese profile.
+     *
+     * @param name The display name of the rule set
+     * @param profile The Corese profile, e.g. {@link RuleEngine#OWL_RL}
+     * @return The rule set
+     * @throws Exception If the profile cannot be loaded, or has a rule that cannot be split
+     */
+    public static RuleSet fromProfile(String name, int profile) throws Exception {
+        RuleEngine engine = RuleEngine.create(Graph.create());
+        engine.setProfile(profile);
+        return fromEngine(name, engine);
+    }
+
+    /**
+     * Creates the rule set of a rule file.
+     *
+     * @param file The .rul file
+     * @return The rule set, named after the file
+     * @throws Exception If the file cannot be parsed, or has a rule that cannot be split
+     */
+    public static RuleSet fromFile(File file) throws Exception {
+        RuleEngine engine = RuleEngine.create(Graph.create());
+        RuleLoad.create(engine).parse(file.getAbsolutePath());
+        return fromEngine(file.getName(), engine);
+    }
+
+    /**
+     * Creates a rule set from CONSTRUCT queries.
+     *
+     * @param name The display name of the rule set
+     * @param queries The rule queries
+     * @return The rule set
+     */
+    public static RuleSet fromQueries(String name, List<String> queries) {
+        List<InferenceRule> rules = new ArrayList<>();
+        List<String> unsupported = new ArrayList<>();
+        for (int i = 0; i < queries.size(); i++) {
+            String ruleName = name + " #" + (i + 1);
+            try {
+                rules.add(InferenceRule.parse(ruleName, queries.get(i)));
+            } catch (IllegalArgumentException e) {
+                unsupported.add(ruleName + ": " + e.getMessage());
+            }
+        }
+        return new RuleSet(name, rules, unsupported);
+    }
+
+    private static RuleSet fromEngine(String name, RuleEngine engine) {
+        List<InferenceRule> rules = new ArrayList<>();
+        List<String> unsplit = new ArrayList<>();
+        int index = 0;
+        for (Rule rule : engine.getRules()) {
+            String ruleName = name + " #" + (++index);
+            try {
+                rules.add(InferenceRule.parse(ruleName, rule.getAST().toString(), rule.isConstraint()));
+            } catch (IllegalArgumentException e) {
+                unsplit.add(ruleName + " (" + e.getMessage() + ")");
+            }
+        }
+        if (!unsplit.isEmpty()) {
+            throw new IllegalArgumentException("Rules of " + name + " that cannot be split into a template and a body: "
+                    + String.join(", ", unsplit));
+        }
+        return new RuleSet(name, rules, new ArrayList<>());
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<InferenceRule> getRules() {
+        return Collections.unmodifiableList(rules);
+    }
+
+    /**
+     * Returns the queries that are not rules, i.e. not CONSTRUCT ... WHERE ... queries.
+     *
+     * @return The rule names with the reason
+     */
+    public List<String> getUnsupportedRules() {
+        return Collections.unmodifiableList(unsupportedRules);
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + rules.size() + " rules)";
+    }
+}
@@ -0,0 +1,414 @@
+package fr.inria.corese.demo.model.rule;
+
+import fr.inria.corese.core.Graph;
+import fr.inria.corese.core.kgram.api.core.Edge;
+import fr.inria.corese.core.kgram.api.core.Node;
+import fr.inria.corese.core.kgram.core.Mapping;
+import fr.inria.corese.core.kgram.core.Mappings;
+import fr.inria.corese.core.query.QueryProcess;
+import fr.inria.corese.core.sparql.datatype.DatatypeMap;
+import fr.inria.corese.core.sparql.exceptions.EngineException;
+import fr.inria.corese.core.sparql.triple.api.Walker;
+import fr.inria.corese.core.sparql.triple.parser.ASTQuery;
+import fr.inria.corese.core.sparql.triple.parser.Constant;
+import fr.inria.corese.core.sparql.triple.parser.Exp;
+import fr.inria.corese.core.sparql.triple.parser.Expression;
+import fr.inria.corese.core.sparql.triple.parser.Triple;
+import fr.inria.corese.core.sparql.triple.parser.Values;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Canonicalizes the {@code owl:sameAs} equivalence classes of a graph.
+ *
+ * OWL RL materializes equality by copying every triple of a resource onto each of its aliases
+ * (rules eq-rep-s, eq-rep-p and eq-rep-o), so a clique of n aliases multiplies their triples by n.
+ * Here the classes are computed with a union-find over the sameAs triples, each class elects one
+ * representative, its smallest IRI, and the triples of the other members are copied once onto it,
+ * into a dedicated inference graph. The rules reading {@code owl:sameAs} are then not evaluated:
+ * reasoning joins on the representatives. The aliases a query names are replaced by their
+ * representative before it is evaluated, and the aliases are given back when results are returned.
+ *
+ * The asserted triples of the aliases are left as they are, so that dropping the inference graphs
+ * or retracting a file stays possible without reloading the data.
+ */
+public final class SameAsCanonicalizer {
+    public static final String SAME_AS = "http://www.w3.org/2002/07/owl#sameAs";
+    private static final int BATCH_SIZE = 500;
+
+    private final Graph graph;
+    private final String targetGraph;
+    // Representative of each member of a class, members of each representative
+    private Map<String, String> representatives = new HashMap<>();
+    private Map<String, List<Node>> classes = new HashMap<>();
+
+    /**
+     * Creates a canonicalizer.
+     *
+     * @param graph The graph to canonicalize
+     * @param targetGraph The named graph receiving the triples copied onto the representatives
+     */
+    public SameAsCanonicalizer(Graph graph, String targetGraph) {
+        this.graph = graph;
+        this.targetGraph = targetGraph;
+    }
+
+    /**
+     * Returns whether a rule is replaced by the canonicalization: it reads {@code owl:sameAs},
+     * such as the symmetry, transitivity and replacement rules, or infers that a resource is the
+     * same as itself.
+     *
+     * @param rule The rule
+     * @return True if the rule must not be evaluated on a canonicalized graph
+     */
+    public static boolean isEqualityRule(InferenceRule rule) {
+        if (rule.getBodyPredicates().contains(SAME_AS)) {
+            return true;
+        }
+        for (TriplePattern head : rule.getHeadPatterns()) {
+            if (SAME_AS.equals(head.getPredicate()) && head.getSubjectVariable() != null
+                    && head.getSubjectVariable().equals(head.getObjectVariable())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Computes the equivalence classes from the sameAs triples of the graph and copies the
+     * triples of the aliases onto their representative.
+     *
+     * @param all True to copy the triples of every alias, to catch triples added since the last
+     *            call; false to only copy those of the members whose representative changed
+     * @return The predicates that may have received copied triples, empty if none was copied
+     * @throws EngineException If the graph cannot be queried or updated
+     */
+    public Set<String> canonicalize(boolean all) throws EngineException {
+        return canonicalize(all, targetGraph);
+    }
+
+    /**
+     * Computes the equivalence classes and copies the triples of the aliases into another named
+     * graph, such as a staging graph whose content may be rolled back.
+     *
+     * @param all True to copy the triples of every alias, false to only copy those of the
+     *            members whose representative changed
+     * @param targetGraph The named graph receiving the copied triples
+     * @return The predicates that may have received copied triples, empty if none was copied
+     * @throws EngineException If the graph cannot be queried or updated
+     */
+    public Set<String> canonicalize(boolean all, String targetGraph) throws EngineException {
+        QueryProcess exec = QueryProcess.create(graph);
+        Map<String, String> parents = new HashMap<>();
+        Map<String, Node> nodes = new HashMap<>();
+        Mappings sameAs = exec.query("SELECT ?s ?o WHERE { ?s <" + SAME_AS + "> ?o FILTER(isIRI(?s) && isIRI(?o)) }");
+        for (Mapping mapping : sameAs) {
+            Node subject = mapping.getNode("?s");
+            Node object = mapping.getNode("?o");
+            if (subject == null || object == null || subject.getLabel().equals(object.getLabel())) {
+                continue;
+            }
+            nodes.putIfAbsent(subject.getLabel(), subject);
+            nodes.putIfAbsent(object.getLabel(), object);
+            union(parents, subject.getLabel(), object.getLabel());
+        }
+
+        Map<String, String> newRepresentatives = new HashMap<>();
+        Map<String, List<Node>> newClasses = new HashMap<>();
+        List<String[]> aliases = new ArrayList<>();
+        for (String label : parents.keySet()) {
+            String representative = find(parents, label);
+            newRepresentatives.put(label, representative);
+            newClasses.computeIfAbsent(representative, key -> new ArrayList<>()).add(nodes.get(label));
+            if (!label.equals(representative) && (all || !representative.equals(representatives.get(label)))) {
+                aliases.add(new String[]{label, representative});
+            }
+        }
+        representatives = newRepresentatives;
+        classes = newClasses;
+        if (aliases.isEmpty()) {
+            return new HashSet<>();
+        }
+
+        // Subject, then predicate, then object: a triple linking two aliases ends up between their representatives
+        int sizeBefore = graph.size();
+        for (int start = 0; start < aliases.size(); start += BATCH_SIZE) {
+            String values = values(aliases.subList(start, Math.min(start + BATCH_SIZE, aliases.size())));
+            exec.query("INSERT { GRAPH <" + targetGraph + "> { ?r ?p ?o } } WHERE { " + values
+                    + " ?a ?p ?o FILTER(?p != <" + SAME_AS + ">) FILTER NOT EXISTS { ?r ?p ?o } }");
+        }
+        for (int start = 0; start < aliases.size(); start += BATCH_SIZE) {
+            String values = values(aliases.subList(start, Math.min(start + BATCH_SIZE, aliases.size())));
+            exec.query("INSERT { GRAPH <" + targetGraph + "> { ?s ?r ?o } } WHERE { " + values
+                    + " ?s ?a ?o FILTER NOT EXISTS { ?s ?r ?o } }");
+        }
+        for (int start = 0; start < aliases.size(); start += BATCH_SIZE) {
+            String values = values(aliases.subList(start, Math.min(start + BATCH_SIZE, aliases.size())));
+            exec.query("INSERT { GRAPH <" + targetGraph + "> { ?s ?p ?r } } WHERE { " + values
+                    + " ?s ?p ?a FILTER(?p != <" + SAME_AS + ">) FILTER NOT EXISTS { ?s ?p ?r } }");
+        }
+
+        Set<String> predicates = new HashSet<>();
+        if (graph.size() == sizeBefore) {
+            return predicates;
+        }
+        for (Mapping mapping : exec.query("SELECT DISTINCT ?p WHERE { GRAPH <" + targetGraph + "> { ?s ?p ?o } }")) {
+            Node predicate = mapping.getNode("?p");
+            if (predicate != null) {
+                predicates.add(predicate.getLabel());
+            }
+        }
+        return predicates;
+    }
+
+    /**
+     * Returns whether the graph has no equivalence class.
+     *
+     * @return True if no resource has an alias
+     */
+    public boolean isEmpty() {
+        return classes.isEmpty();
+    }
+
+    /**
+     * Returns the number of resources that are not the representative of their class.
+     *
+     * @return The number of aliases
+     */
+    public int getAliasCount() {
+        return representatives.size() - classes.size();
+    }
+
+    /**
+     * Replaces the aliases a query names by the representative of their class, since the reasoning
+     * only joins on the representatives. The query is parsed, so that prefixed names, relative IRIs
+     * and literals are read as the engine reads them; the IRIs of its triple patterns, property
+     * paths, expressions and VALUES are then replaced in its syntax tree.
+     *
+     * @param query The query text
+     * @return The syntax tree of the query on the representatives
+     * @throws EngineException If the query cannot be parsed
+     */
+    public ASTQuery rewrite(String query) throws EngineException {
+        ASTQuery ast = QueryProcess.create(graph).ast(query);
+        if (getAliasCount() == 0) {
+            return ast;
+        }
+        ast.walk(new Walker() {
+            @Override
+            public void enter(Exp exp) {
+                if (exp instanceof Triple triple) {
+                    replace(triple.getSubject());
+                    replace(triple.getObject());
+                    // The walker does not enter property paths
+                    replace(triple.isPath() ? triple.getRegex() : triple.getPredicate());
+                } else if (exp instanceof Values values) {
+                    for (List<Constant> row : values.getValues()) {
+                        for (Constant constant : row) {
+                            replace(constant);
+                        }
+                    }
+                }
+            }
+
+            @Override
+            public void enter(Expression expression) {
+                replace(expression);
+            }
+        });
+        return ast;
+    }
+
+    /**
+     * Replaces the aliases of an expression by their representative, in place.
+     */
+    private void replace(Expression expression) {
+        if (expression == null) {
+            return;
+        }
+        if (expression.isConstant()) {
+            Constant constant = expression.getConstant();
+            String representative = constant.isURI() ? representatives.get(constant.getLongName()) : null;
+            if (representative != null && !representative.equals(constant.getLongName())) {
+                constant.setLongName(representative);
+                constant.setName(representative);
+                constant.setQName(false);
+                constant.setDatatypeValue(DatatypeMap.newResource(representative));
+            }
+        } else if (expression.isTerm()) {
+            for (Expression arg : expression.getArgs()) {
+                replace(arg);
+            }
+        }
+    }
+
+    /**
+     * Returns whether aliases can be added to the results of a SELECT query without changing
+     * their meaning. Rows added after the evaluation would escape a LIMIT or an OFFSET, break an
+     * ORDER BY and not be counted by aggregates, so such results cannot list the aliases.
+     *
+     * @param mappings The results of a SELECT query
+     * @return True if the query has no aggregate, grouping, ordering, limit or offset
+     */
+    public static boolean isExpandable(Mappings mappings) {
+        ASTQuery ast = mappings.getAST();
+        if (ast == null || mappings.getQuery() == null) {
+            return true;
+        }
+        return !mappings.getQuery().isAggregate() && ast.getGroupBy().isEmpty() && ast.getOrderBy().isEmpty()
+                && !ast.hasLimit() && ast.getOffset() <= 0;
+    }
+
+    /**
+     * Adds to query results the rows in which representatives are replaced by their aliases.
+     * The results of a DISTINCT query stay distinct on the selected variables; otherwise every
+     * variable is expanded, so that a row is repeated as often as with materialized equality.
+     *
+     * @param mappings The results of a SELECT query, extended in place
+     * @see #isExpandable(Mappings)
+     */
+    public void expand(Mappings mappings) {
+        ASTQuery ast = mappings.getAST();
+        boolean distinct = ast != null && (ast.isDistinct() || ast.isReduced());
+        Set<String> selected = new HashSet<>();
+        for (Node node : mappings.getSelect()) {
+            selected.add(node.getLabel());
+        }
+        Set<String> seen = new HashSet<>();
+        for (Mapping mapping : mappings) {
+            seen.add(key(mapping, distinct, selected));
+        }
+        List<Mapping> added = new ArrayList<>();
+        for (Mapping mapping : mappings) {
+            List<Node[]> rows = new ArrayList<>();
+            rows.add(mapping.getNodes());
+            for (int i = 0; i < mapping.getNodes().length; i++) {
+                if (distinct && !selected.contains(mapping.getQueryNodes()[i].getLabel())) {
+                    continue;
+                }
+                List<Node> members = getMembers(mapping.getNodes()[i]);
+                if (members == null) {
+                    continue;
+                }
+                List<Node[]> expanded = new ArrayList<>();
+                for (Node[] row : rows) {
+                    for (Node member : members) {
+                        Node[] copy = row.clone();
+                        copy[i] = member;
+                        expanded.add(copy);
+                    }
+                }
+                rows = expanded;
+            }
+            for (Node[] row : rows) {
+                Mapping expanded = Mapping.create(mapping.getQueryNodes(), row);
+                if (seen.add(key(expanded, distinct, selected))) {
+                    added.add(expanded);
+                }
+            }
+        }
+        for (Mapping mapping : added) {
+            mappings.add(mapping);
+        }
+    }
+
+    /**
+     * Adds to a result graph the triples in which representatives are replaced by their aliases.
+     *
+     * @param result The result of a CONSTRUCT or DESCRIBE query, extended in place
+     */
+    public void expand(Graph result) {
+        List<Node[]> triples = new ArrayList<>();
+        for (Edge edge : result.getEdges()) {
+            List<Node> subjects = getMembers(edge.getNode(0));
+            List<Node> objects = getMembers(edge.getNode(1));
+            if (subjects == null && objects == null) {
+                continue;
+            }
+            for (Node subject : subjects != null ? subjects : List.of(edge.getNode(0))) {
+                for (Node object : objects != null ? objects : List.of(edge.getNode(1))) {
+                    if (!subject.getLabel().equals(edge.getNode(0).getLabel())
+                            || !object.getLabel().equals(edge.getNode(1).getLabel())) {
+                        triples.add(new Node[]{edge.getGraph(), subject, edge.getEdgeNode(), object});
+                    }
+                }
+            }
+        }
+        // Aliases are nodes of the reasoning graph, the result graph gets its own
+        for (Node[] triple : triples) {
+            Node subject = getMembers(triple[1]) != null ? result.addResource(triple[1].getLabel()) : triple[1];
+            Node object = getMembers(triple[3]) != null ? result.addResource(triple[3].getLabel()) : triple[3];
+            result.addEdge(triple[0], subject, triple[2], object);
+        }
+    }
+
+    /**
+     * Returns the members of the class of a resource, itself included.
+     *
+     * @return The members, or null if the resource has no alias
+     */
+    private List<Node> getMembers(Node node) {
+        if (node == null) {
+            return null;
+        }
+        String representative = representatives.get(node.getLabel());
+        return representative != null ? classes.get(representative) : null;
+    }
+
+    private static String find(Map<String, String> parents, String label) {
+        String root = label;
+        while (!parents.get(root).equals(root)) {
+            root = parents.get(root);
+        }
+        // Path compression
+        while (!parents.get(label).equals(root)) {
+            String next = parents.get(label);
+            parents.put(label, root);
+            label = next;
+        }
+        return root;
+    }
+
+    /**
+     * Merges the classes of two resources, keeping the smallest IRI as the root.
+     */
+    private static void union(Map<String, String> parents, String first, String second) {
+        parents.putIfAbsent(first, first);
+        parents.putIfAbsent(second, second);
+        String firstRoot = find(parents, first);
+        String secondRoot = find(parents, second);
+        if (firstRoot.compareTo(secondRoot) < 0) {
+            parents.put(secondRoot, firstRoot);
+        } else if (secondRoot.compareTo(firstRoot) < 0) {
+            parents.put(firstRoot, secondRoot);
+        }
+    }
+
+    private static String values(List<String[]> aliases) {
+        StringBuilder values = new StringBuilder("VALUES (?a ?r) {");
+        for (String[] alias : aliases) {
+            values.append(" (<").append(alias[0]).append("> <").append(alias[1]).append(">)");
+        }
+        return values.append(" }").toString();
+    }
+
+    /**
+     * Returns the key of a row: the values of the selected variables for a DISTINCT query, of every variable otherwise.
+     */
+    private static String key(Mapping mapping, boolean distinct, Set<String> selected) {
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i < mapping.getNodes().length; i++) {
+            if (distinct && !selected.contains(mapping.getQueryNodes()[i].getLabel())) {
+                continue;
+            }
+            Node node = mapping.getNodes()[i];
+            key.append(node == null ? "" : node.getLabel()).append('\u0000');
+        }
+        return key.toString();
+    }
+}
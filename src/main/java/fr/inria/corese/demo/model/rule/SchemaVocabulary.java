@@ -0,0 +1,97 @@
+package fr.inria.corese.demo.model.rule;
+
+import java.util.Set;
+
+/**
+ * The RDFS and OWL terms that make a triple part of the schema (TBox) rather than of the
+ * instance data (ABox).
+ *
+ * A schema triple uses one of the schema predicates, or types its subject with a meta-class
+ * such as {@code owl:Class} or {@code owl:TransitiveProperty}. Rules reading only schema triples
+ * compute the schema closure, which stays valid as long as the schema does not change.
+ */
+public final class SchemaVocabulary {
+    public static final String RDF_TYPE = "http://www.w3.org/1999/02/22-rdf-syntax-ns#type";
+    private static final String RDF = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+    private static final String RDFS = "http://www.w3.org/2000/01/rdf-schema#";
+    private static final String OWL = "http://www.w3.org/2002/07/owl#";
+
+    private static final Set<String> PREDICATES = Set.of(
+            RDFS + "subClassOf", RDFS + "subPropertyOf", RDFS + "domain", RDFS + "range",
+            OWL + "equivalentClass", OWL + "equivalentProperty", OWL + "inverseOf",
+            OWL + "propertyChainAxiom", OWL + "onProperty", OWL + "someValuesFrom",
+            OWL + "allValuesFrom", OWL + "hasValue", OWL + "intersectionOf", OWL + "unionOf",
+            OWL + "complementOf", OWL + "oneOf", OWL + "disjointWith", OWL + "propertyDisjointWith",
+            OWL + "hasKey", OWL + "maxCardinality", OWL + "maxQualifiedCardinality",
+            OWL + "onClass", OWL + "members", RDF + "first", RDF + "rest");
+
+    private static final Set<String> META_CLASSES = Set.of(
+            RDFS + "Class", RDFS + "Datatype", RDF + "Property", OWL + "Class", OWL + "Restriction",
+            OWL + "ObjectProperty", OWL + "DatatypeProperty", OWL + "AnnotationProperty",
+            OWL + "TransitiveProperty", OWL + "SymmetricProperty", OWL + "AsymmetricProperty",
+            OWL + "FunctionalProperty", OWL + "InverseFunctionalProperty", OWL + "ReflexiveProperty",
+            OWL + "IrreflexiveProperty", OWL + "AllDisjointClasses", OWL + "AllDisjointProperties",
+            OWL + "Ontology");
+
+    private SchemaVocabulary() {
+    }
+
+    public static Set<String> getPredicates() {
+        return PREDICATES;
+    }
+
+    public static Set<String> getMetaClasses() {
+        return META_CLASSES;
+    }
+
+    /**
+     * Returns whether a triple belongs to the schema.
+     *
+     * @param predicate The predicate IRI
+     * @param object The object IRI or label
+     * @return True for a schema triple
+     */
+    public static boolean isSchemaTriple(String predicate, String object) {
+        return PREDICATES.contains(predicate) || (RDF_TYPE.equals(predicate) && META_CLASSES.contains(object));
+    }
+
+    /**
+     * Returns whether a rule only reads schema triples, so that its conclusions
+     * do not depend on the instance data.
+     *
+     * @param rule The rule
+     * @return True for a rule of the schema closure
+     */
+    public static boolean isSchemaRule(InferenceRule rule) {
+        if (rule.getBodyPatterns().isEmpty()) {
+            return false;
+        }
+        for (TriplePattern pattern : rule.getBodyPatterns()) {
+            if (pattern.hasVariablePredicate() || !isSchemaTriple(pattern.getPredicate(), pattern.getObject())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a SPARQL filter keeping the bindings of {@code ?p} and {@code ?o} that form an instance triple.
+     *
+     * @return The filter text
+     */
+    public static String instanceTripleFilter() {
+        return "FILTER(?p NOT IN (" + iris(PREDICATES) + ") && (?p != <" + RDF_TYPE + "> || ?o NOT IN ("
+                + iris(META_CLASSES) + ")))";
+    }
+
+    private static String iris(Set<String> terms) {
+        StringBuilder list = new StringBuilder();
+        for (String term : terms) {
+            if (list.length() > 0) {
+                list.append(", ");
+            }
+            list.append('<').append(term).append('>');
+        }
+        return list.toString();
+    }
+}
@@ -0,0 +1,100 @@
+package fr.inria.corese.demo.model.rule;
+
+/**
+ * Triple pattern of a rule, with its constant terms resolved to full IRIs.
+ * Variables and blank nodes are represented by {@link #VARIABLE}; the names of
+ * variables are kept apart, to tell which patterns of a rule share them.
+ */
+public final class TriplePattern {
+    /**
+     * Placeholder for a term that is not a constant.
+     */
+    public static final String VARIABLE = "?";
+
+    private final String subject;
+    private final String predicate;
+    private final String object;
+    private final boolean required;
+    private final String subjectVariable;
+    private final String predicateVariable;
+    private final String objectVariable;
+
+    /**
+     * Creates a pattern. A term written {@code ?name} or {@code _:name} is a named variable.
+     */
+    TriplePattern(String subject, String predicate, String object, boolean required) {
+        this.subjectVariable = variableName(subject);
+        this.predicateVariable = variableName(predicate);
+        this.objectVariable = variableName(object);
+        this.subject = subjectVariable != null ? VARIABLE : subject;
+        this.predicate = predicateVariable != null ? VARIABLE : predicate;
+        this.object = objectVariable != null ? VARIABLE : object;
+        this.required = required;
+    }
+
+    private TriplePattern(TriplePattern pattern, boolean required) {
+        this.subject = pattern.subject;
+        this.predicate = pattern.predicate;
+        this.object = pattern.object;
+        this.subjectVariable = pattern.subjectVariable;
+        this.predicateVariable = pattern.predicateVariable;
+        this.objectVariable = pattern.objectVariable;
+        this.required = required;
+    }
+
+    TriplePattern withRequired(boolean required) {
+        return new TriplePattern(this, required);
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public String getPredicate() {
+        return predicate;
+    }
+
+    public String getObject() {
+        return object;
+    }
+
+    /**
+     * Returns whether the pattern must match for the rule to fire,
+     * i.e. it is not inside an OPTIONAL block or a UNION branch.
+     *
+     * @return True for a required pattern
+     */
+    public boolean isRequired() {
+        return required;
+    }
+
+    public boolean hasVariablePredicate() {
+        return VARIABLE.equals(predicate);
+    }
+
+    /**
+     * Returns the name of the variable in subject position.
+     *
+     * @return The name with its leading {@code ?}, or null for a constant or an anonymous blank node
+     */
+    public String getSubjectVariable() {
+        return subjectVariable;
+    }
+
+    public String getPredicateVariable() {
+        return predicateVariable;
+    }
+
+    public String getObjectVariable() {
+        return objectVariable;
+    }
+
+    private static String variableName(String term) {
+        return (term.startsWith("?") && term.length() > 1) || term.startsWith("_:") ? term : null;
+    }
+
+    @Override
+    public String toString() {
+        return subject + " " + predicate + " " + object;
+    }
+}
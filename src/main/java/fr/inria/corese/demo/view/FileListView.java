@@ -39,6 +39,7 @@ public class FileListView extends VBox {
     private Button clearButton;
     private Button reloadButton;
     private Button loadButton;
+    private Button bulkLoadButton;
 
     @FXML
     private ListView<FileItem> fileList;
@@ -84,18 +85,20 @@ public class FileListView extends VBox {
      *
      * Crée et positionne les boutons :
      * - Charger
+     * - Charger en masse
      * - Recharger
      * - Effacer
      */
     private void setupIconButtons() {
         // Créer les boutons avec IconButtonView
         loadButton = new IconButtonView(IconButtonType.IMPORT);
+        bulkLoadButton = new IconButtonView(IconButtonType.BULK_IMPORT);
         reloadButton = new IconButtonView(IconButtonType.RELOAD);
         clearButton = new IconButtonView(IconButtonType.DELETE);
 
         // Ajouter les boutons au conteneur vertical dans l'ordre souhaité
         buttonContainer.getChildren().clear();
-        buttonContainer.getChildren().addAll(loadButton, reloadButton, clearButton);
+        buttonContainer.getChildren().addAll(loadButton, bulkLoadButton, reloadButton, clearButton);
 
         // S'assurer que les boutons sont bien alignés en haut à gauche
         buttonContainer.setAlignment(Pos.TOP_LEFT);
@@ -218,6 +221,10 @@ public class FileListView extends VBox {
         return loadButton;
     }
 
+    public Button getBulkLoadButton() {
+        return bulkLoadButton;
+    }
+
     public ListView<FileItem> getFileList() {
         return fileList;
     }
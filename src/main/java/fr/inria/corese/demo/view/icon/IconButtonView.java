@@ -22,6 +22,7 @@ public class IconButtonView extends Button{
             case OPEN_FILE -> createIconButton(MaterialDesignF.FOLDER_OPEN, "Open file");
             case EXPORT -> createIconButton(MaterialDesignE.EXPORT, "Export");
             case IMPORT -> createIconButton(MaterialDesignI.IMPORT, "Import");
+            case BULK_IMPORT -> createIconButton(MaterialDesignF.FILE_MULTIPLE, "Bulk load files");
             case CLEAR -> createIconButton(MaterialDesignB.BROOM, "Clear");
             case UNDO -> createIconButton(MaterialDesignU.UNDO, "Undo");
             case REDO -> createIconButton(MaterialDesignR.REDO, "Redo");
@@ -11,6 +11,8 @@ module fr.inria.corese.demo {
     requires fr.inria.corese.corese_core;
     requires MaterialFX;
     requires java.logging;
+    requires org.apache.commons.compress;
+    requires com.github.luben.zstd_jni;
 
     exports fr.inria.corese.demo;
     exports fr.inria.corese.demo.controller;
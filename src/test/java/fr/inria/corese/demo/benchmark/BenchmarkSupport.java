@@ -0,0 +1,266 @@
+package fr.inria.corese.demo.benchmark;
+
+import fr.inria.corese.core.Graph;
+import fr.inria.corese.core.load.Load;
+import fr.inria.corese.core.load.LoadException;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
+/**
+ * Helpers shared by the benchmarks: synthetic data, timing and memory measurement.
+ *
+ * The benchmarks live with the tests so they never ship with the application. They are plain
+ * {@code main} classes, excluded from Surefire and run from the test classpath through the
+ * {@code benchmark} Maven profile.
+ */
+public final class BenchmarkSupport {
+    static final String NS = "http://example.org/bench#";
+
+    private static final int MAX_GC_ROUNDS = 20;
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * Result of a timed task: the median of the measured runs and the value of the last run.
+     */
+    public static final class Timing<T> {
+        private final long medianMillis;
+        private final T value;
+
+        Timing(long medianMillis, T value) {
+            this.medianMillis = medianMillis;
+            this.value = value;
+        }
+
+        public long getMedianMillis() {
+            return medianMillis;
+        }
+
+        public T getValue() {
+            return value;
+        }
+    }
+
+    /**
+     * Runs a task a few times after a warm-up run and returns the median duration, so one
+     * run slowed down by the JIT or a full GC does not decide the result.
+     *
+     * @param runs The number of measured runs
+     * @param task The task to time
+     * @return The median duration and the value of the last run
+     * @throws Exception If the task fails
+     */
+    public static <T> Timing<T> time(int runs, Callable<T> task) throws Exception {
+        task.call();
+        long[] durations = new long[Math.max(1, runs)];
+        T value = null;
+        for (int i = 0; i < durations.length; i++) {
+            long start = System.nanoTime();
+            value = task.call();
+            durations[i] = (System.nanoTime() - start) / 1_000_000;
+        }
+        Arrays.sort(durations);
+        return new Timing<>(durations[durations.length / 2], value);
+    }
+
+    /**
+     * Returns the heap in use once the garbage collector has nothing left to reclaim.
+     *
+     * A single {@code System.gc()} is only a hint and often leaves garbage behind, so collections
+     * are requested until the used heap stops shrinking, as reported by the memory MX bean.
+     *
+     * @return The used heap in bytes
+     */
+    public static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long used = memory.getHeapMemoryUsage().getUsed();
+        for (int round = 0; round < MAX_GC_ROUNDS; round++) {
+            memory.gc();
+            sleep();
+            long after = memory.getHeapMemoryUsage().getUsed();
+            if (after >= used - used / 100) {
+                return Math.min(used, after);
+            }
+            used = after;
+        }
+        return used;
+    }
+
+    /**
+     * Returns the native memory held by direct buffers, which the heap figures do not include.
+     *
+     * @return The memory used by direct buffers in bytes
+     */
+    public static long usedDirectMemory() {
+        long used = 0;
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if ("direct".equals(pool.getName())) {
+                used += pool.getMemoryUsed();
+            }
+        }
+        return used;
+    }
+
+    /**
+     * Writes a synthetic Turtle dataset: typed resources with a label, a language-tagged comment,
+     * a number, a link to another resource and a blank node.
+     *
+     * @param target The file to write
+     * @param instances The number of resources
+     * @return The number of triples written
+     * @throws IOException If the file cannot be written
+     */
+    public static long writeTurtle(Path target, int instances) throws IOException {
+        long triples = 0;
+        try (BufferedWriter out = Files.newBufferedWriter(target, StandardCharsets.UTF_8)) {
+            out.write("@prefix : <" + NS + "> .\n");
+            out.write("@prefix rdfs: <http://www.w3.org/2000/01/rdf-schema#> .\n");
+            for (int i = 0; i < instances; i++) {
+                out.write(":r" + i + " a :C" + (i % 50) + " ;\n"
+                        + "    rdfs:label \"Resource " + i + "\" ;\n"
+                        + "    rdfs:comment \"Ressource numéro " + i + "\"@fr ;\n"
+                        + "    :value " + i + " ;\n"
+                        + "    :link :r" + ((i * 31L + 7) % instances) + " ;\n"
+                        + "    :part [ :index " + i + " ] .\n");
+                triples += 7;
+            }
+        }
+        return triples;
+    }
+
+    /**
+     * Writes a synthetic N-Triples dataset with the same content as {@link #writeTurtle}.
+     *
+     * @param target The file to write
+     * @param instances The number of resources
+     * @return The number of triples written
+     * @throws IOException If the file cannot be written
+     */
+    public static long writeNTriples(Path target, int instances) throws IOException {
+        String type = "<http://www.w3.org/1999/02/22-rdf-syntax-ns#type>";
+        String label = "<http://www.w3.org/2000/01/rdf-schema#label>";
+        String comment = "<http://www.w3.org/2000/01/rdf-schema#comment>";
+        long triples = 0;
+        try (BufferedWriter out = Files.newBufferedWriter(target, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < instances; i++) {
+                String subject = "<" + NS + "r" + i + ">";
+                out.write(subject + " " + type + " <" + NS + "C" + (i % 50) + "> .\n");
+                out.write(subject + " " + label + " \"Resource " + i + "\" .\n");
+                out.write(subject + " " + comment + " \"Ressource numéro " + i + "\"@fr .\n");
+                out.write(subject + " <" + NS + "value> \"" + i + "\"^^<http://www.w3.org/2001/XMLSchema#integer> .\n");
+                out.write(subject + " <" + NS + "link> <" + NS + "r" + ((i * 31L + 7) % instances) + "> .\n");
+                out.write(subject + " <" + NS + "part> _:p" + i + " .\n");
+                out.write("_:p" + i + " <" + NS + "index> \"" + i + "\"^^<http://www.w3.org/2001/XMLSchema#integer> .\n");
+                triples += 7;
+            }
+        }
+        return triples;
+    }
+
+    /**
+     * Generates a synthetic ontology with its instances as Turtle, for the reasoning benchmarks: a class
+     * tree of depth about 5, property hierarchies with domains and ranges, a transitive property, a pair
+     * of inverse properties, and typed instances linked by these properties.
+     *
+     * @param instances The number of instances
+     * @return The Turtle text
+     */
+    public static String ontologyTurtle(int instances) {
+        int classes = 50;
+        int properties = 20;
+        StringBuilder ttl = new StringBuilder();
+        ttl.append("@prefix : <").append(NS).append("> .\n");
+        ttl.append("@prefix rdfs: <http://www.w3.org/2000/01/rdf-schema#> .\n");
+        ttl.append("@prefix owl: <http://www.w3.org/2002/07/owl#> .\n");
+
+        for (int c = 1; c < classes; c++) {
+            ttl.append(":C").append(c).append(" a owl:Class ; rdfs:subClassOf :C").append((c - 1) / 2).append(" .\n");
+        }
+        for (int p = 0; p < properties; p++) {
+            ttl.append(":p").append(p).append(" a owl:ObjectProperty");
+            if (p % 4 != 0) {
+                ttl.append(" ; rdfs:subPropertyOf :p").append(p - 1);
+            }
+            ttl.append(" ; rdfs:domain :C").append((p * 7) % classes)
+                    .append(" ; rdfs:range :C").append((p * 11) % classes).append(" .\n");
+        }
+        ttl.append(":p0 a owl:TransitiveProperty .\n");
+        ttl.append(":p4 owl:inverseOf :p8 .\n");
+
+        for (int i = 0; i < instances; i++) {
+            ttl.append(":i").append(i).append(" a :C").append(classes / 2 + i % (classes / 2))
+                    .append(" ; :p").append(i % properties).append(" :i").append((i * 31 + 7) % instances)
+                    .append(" .\n");
+        }
+        return ttl.toString();
+    }
+
+    /**
+     * Loads Turtle text into a new Corese graph.
+     *
+     * @param turtle The Turtle text
+     * @return The graph
+     * @throws LoadException If the text cannot be parsed
+     */
+    public static Graph loadTurtle(String turtle) throws LoadException {
+        Graph graph = Graph.create();
+        Load.create(graph).parse(new ByteArrayInputStream(turtle.getBytes(StandardCharsets.UTF_8)),
+                NS + "data", Load.format.TURTLE_FORMAT);
+        return graph;
+    }
+
+    /**
+     * Resets the peak usage of the heap memory pools, before a measured task.
+     */
+    public static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * Returns the peak heap usage since the last reset, summed over the heap memory pools.
+     * Pools peak at different times, so this is an upper bound of the actual peak.
+     *
+     * @return The peak heap usage in bytes
+     */
+    public static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    /**
+     * Formats a number of bytes in megabytes.
+     */
+    public static String megabytes(long bytes) {
+        return (bytes >> 20) + " MB";
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(50);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
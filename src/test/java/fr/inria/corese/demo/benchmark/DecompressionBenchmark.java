@@ -0,0 +1,133 @@
+package fr.inria.corese.demo.benchmark;
+
+import fr.inria.corese.core.Graph;
+import fr.inria.corese.core.load.Load;
+import fr.inria.corese.demo.model.graph.io.CompressedInput;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorOutputStream;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Decompression throughput of {@link CompressedInput} for gzip, bzip2 and zstd.
+ *
+ * A synthetic N-Triples file is compressed with each format. For each one, the benchmark reports
+ * the decompression throughput of the plain decompressor and of {@link CompressedInput}, which
+ * decompresses on its own thread, then the time to parse the compressed file with
+ * {@code Load.parse} against the uncompressed file.
+ *
+ * Usage: {@code DecompressionBenchmark [instances] [runs]}
+ */
+public final class DecompressionBenchmark {
+
+    private DecompressionBenchmark() {
+    }
+
+    private interface Codec {
+        OutputStream compress(OutputStream output) throws IOException;
+
+        InputStream decompress(InputStream input) throws IOException;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int instances = args.length > 0 ? Integer.parseInt(args[0]) : 300_000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        Path plain = Files.createTempFile("decompression-benchmark", ".nt");
+        try {
+            long triples = BenchmarkSupport.writeNTriples(plain, instances);
+            long size = Files.size(plain);
+            System.out.printf(Locale.ROOT, "%d triples, %d MB of N-Triples%n", triples, size >> 20);
+            BenchmarkSupport.Timing<Integer> parsePlain = BenchmarkSupport.time(runs, () -> parse(plain));
+            System.out.printf(Locale.ROOT, "%-6s parse %6d ms%n", "none", parsePlain.getMedianMillis());
+
+            measure("gzip", new Codec() {
+                @Override
+                public OutputStream compress(OutputStream output) throws IOException {
+                    return new GZIPOutputStream(output, 1 << 16);
+                }
+
+                @Override
+                public InputStream decompress(InputStream input) throws IOException {
+                    return new GZIPInputStream(input, 1 << 16);
+                }
+            }, plain, size, runs);
+            measure("bzip2", new Codec() {
+                @Override
+                public OutputStream compress(OutputStream output) throws IOException {
+                    return new BZip2CompressorOutputStream(output);
+                }
+
+                @Override
+                public InputStream decompress(InputStream input) throws IOException {
+                    return new BZip2CompressorInputStream(input, true);
+                }
+            }, plain, size, runs);
+            measure("zstd", new Codec() {
+                @Override
+                public OutputStream compress(OutputStream output) throws IOException {
+                    return new ZstdCompressorOutputStream(output);
+                }
+
+                @Override
+                public InputStream decompress(InputStream input) throws IOException {
+                    return new ZstdCompressorInputStream(input);
+                }
+            }, plain, size, runs);
+        } finally {
+            Files.deleteIfExists(plain);
+        }
+    }
+
+    private static void measure(String name, Codec codec, Path plain, long size, int runs) throws Exception {
+        Path compressed = Files.createTempFile("decompression-benchmark", ".nt." + name);
+        try {
+            try (OutputStream output = codec.compress(Files.newOutputStream(compressed))) {
+                Files.copy(plain, output);
+            }
+            BenchmarkSupport.Timing<Long> direct = BenchmarkSupport.time(runs,
+                    () -> drain(codec.decompress(new BufferedInputStream(Files.newInputStream(compressed), 1 << 16))));
+            BenchmarkSupport.Timing<Long> pipelined = BenchmarkSupport.time(runs,
+                    () -> drain(CompressedInput.open(Files.newInputStream(compressed))));
+            BenchmarkSupport.Timing<Integer> parse = BenchmarkSupport.time(runs, () -> parse(compressed));
+
+            System.out.printf(Locale.ROOT, "%-6s %4d MB, decompression %5d MB/s, pipelined %5d MB/s, parse %6d ms%n",
+                    name, Files.size(compressed) >> 20, throughput(size, direct), throughput(size, pipelined),
+                    parse.getMedianMillis());
+        } finally {
+            Files.deleteIfExists(compressed);
+        }
+    }
+
+    private static long drain(InputStream input) throws IOException {
+        try (input) {
+            return input.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+
+    private static int parse(Path file) throws Exception {
+        Graph graph = Graph.create();
+        try (InputStream input = CompressedInput.open(Files.newInputStream(file))) {
+            Load.create(graph).parse(input, plainName(file), Load.format.NT_FORMAT);
+        }
+        return graph.size();
+    }
+
+    private static String plainName(Path file) {
+        return file.getParent().resolve(CompressedInput.stripExtension(file.getFileName().toString())).toUri().toString();
+    }
+
+    private static long throughput(long bytes, BenchmarkSupport.Timing<Long> timing) {
+        return (bytes >> 20) * 1000 / Math.max(timing.getMedianMillis(), 1);
+    }
+}
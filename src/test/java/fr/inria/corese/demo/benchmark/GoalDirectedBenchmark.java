@@ -0,0 +1,101 @@
+package fr.inria.corese.demo.benchmark;
+
+import fr.inria.corese.core.Graph;
+import fr.inria.corese.core.kgram.core.Mappings;
+import fr.inria.corese.core.query.QueryProcess;
+import fr.inria.corese.core.rule.RuleEngine;
+import fr.inria.corese.demo.model.rule.RuleProcessor;
+import fr.inria.corese.demo.model.rule.RuleSet;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Compares full materialization with goal-directed reasoning on the OWL RL profile.
+ *
+ * The synthetic ontology of {@link BenchmarkSupport#ontologyTurtle} is loaded twice. The first graph
+ * is materialized once and then queried; in the second, each query first runs the rules it needs.
+ * For each query the benchmark reports the answer in both modes, which must match, and the latency:
+ * reasoning plus evaluation for the goal-directed mode, then again when the query is repeated.
+ *
+ * The size of each graph after all the queries is reported last, with the heap it retains and the
+ * peak heap while reasoning. Run with a fixed heap, e.g. {@code -Xmx4g}, so that both modes are
+ * measured the same way.
+ *
+ * Usage: {@code GoalDirectedBenchmark [instances]}
+ */
+public final class GoalDirectedBenchmark {
+    private static final String NS = BenchmarkSupport.NS;
+    private static final String INFERENCE_GRAPH = "http://ns.inria.fr/corese/kgram/rule";
+    private static final List<String> QUERIES = List.of(
+            "SELECT (COUNT(?x) AS ?n) WHERE { ?x a <" + NS + "C3> }",
+            "SELECT (COUNT(*) AS ?n) WHERE { ?x <" + NS + "p9> ?y }",
+            "SELECT (COUNT(*) AS ?n) WHERE { ?x <" + NS + "p0> ?y }");
+
+    private GoalDirectedBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int instances = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        String data = BenchmarkSupport.ontologyTurtle(instances);
+        RuleSet owlRL = RuleSet.fromProfile("OWL RL", RuleEngine.OWL_RL);
+        System.out.printf(Locale.ROOT, "OWL RL: %d rules, %d instances%n", owlRL.getRules().size(), instances);
+
+        // Full materialization, then the queries
+        long heapBefore = BenchmarkSupport.usedHeap();
+        BenchmarkSupport.resetPeakHeap();
+        Graph materialized = BenchmarkSupport.loadTurtle(data);
+        RuleProcessor processor = new RuleProcessor(materialized, INFERENCE_GRAPH);
+        processor.addRuleSet(owlRL);
+        long start = System.nanoTime();
+        processor.process();
+        System.out.printf(Locale.ROOT, "Materialization: %d ms%n", (System.nanoTime() - start) / 1_000_000);
+        String[] answers = new String[QUERIES.size()];
+        for (int i = 0; i < QUERIES.size(); i++) {
+            start = System.nanoTime();
+            answers[i] = answer(materialized, QUERIES.get(i));
+            System.out.printf(Locale.ROOT, "  materialized query %d: %6d ms, answer %s%n",
+                    i + 1, (System.nanoTime() - start) / 1_000_000, answers[i]);
+        }
+        long materializedPeak = BenchmarkSupport.peakHeap() - heapBefore;
+        long materializedHeap = BenchmarkSupport.usedHeap() - heapBefore;
+        int materializedSize = materialized.size();
+        // Released before measuring the goal-directed mode
+        processor = null;
+        materialized = null;
+
+        // Goal-directed: each query runs the rules it needs
+        heapBefore = BenchmarkSupport.usedHeap();
+        BenchmarkSupport.resetPeakHeap();
+        Graph graph = BenchmarkSupport.loadTurtle(data);
+        RuleProcessor goalProcessor = new RuleProcessor(graph, INFERENCE_GRAPH);
+        goalProcessor.addRuleSet(owlRL);
+        for (int i = 0; i < QUERIES.size(); i++) {
+            String query = QUERIES.get(i);
+            start = System.nanoTime();
+            goalProcessor.processQuery(query);
+            int rules = goalProcessor.getLastQueryRuleCount();
+            String answer = answer(graph, query);
+            long first = (System.nanoTime() - start) / 1_000_000;
+            start = System.nanoTime();
+            goalProcessor.processQuery(query);
+            answer(graph, query);
+            long repeated = (System.nanoTime() - start) / 1_000_000;
+            System.out.printf(Locale.ROOT, "  goal-directed query %d: %6d ms (%d rules), repeated %6d ms, answer %s%s%n",
+                    i + 1, first, rules, repeated, answer, answer.equals(answers[i]) ? "" : " MISMATCH");
+        }
+        long goalPeak = BenchmarkSupport.peakHeap() - heapBefore;
+        long goalHeap = BenchmarkSupport.usedHeap() - heapBefore;
+
+        System.out.printf(Locale.ROOT, "Materialized: %d triples, retained heap %s, peak heap +%s%n",
+                materializedSize, BenchmarkSupport.megabytes(materializedHeap), BenchmarkSupport.megabytes(materializedPeak));
+        // Keeps the goal-directed graph reachable until its heap is measured
+        System.out.printf(Locale.ROOT, "Goal-directed: %d triples, retained heap %s, peak heap +%s%n",
+                graph.size(), BenchmarkSupport.megabytes(goalHeap), BenchmarkSupport.megabytes(goalPeak));
+    }
+
+    private static String answer(Graph graph, String query) throws Exception {
+        Mappings mappings = QueryProcess.create(graph).query(query);
+        return mappings.isEmpty() ? "none" : mappings.get(0).getNode("?n").getLabel();
+    }
+}
@@ -0,0 +1,69 @@
+package fr.inria.corese.demo.benchmark;
+
+import fr.inria.corese.core.Graph;
+import fr.inria.corese.core.load.Load;
+import fr.inria.corese.demo.model.graph.CoreseGraph;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Checks that loading a file through {@link CoreseGraph} parses it only once.
+ *
+ * A synthetic Turtle file is loaded with a bare {@code Load.parse} into a fresh graph, then through
+ * {@link CoreseGraph#loadFile(File)}, which is the graph the application shares between statistics,
+ * queries and rules. Both paths must take about the same time and hold about the same heap; a file
+ * parsed twice would show a ratio close to 2.
+ *
+ * Usage: {@code LoadBenchmark [instances] [runs]}
+ */
+public final class LoadBenchmark {
+
+    private LoadBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int instances = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        Path file = Files.createTempFile("load-benchmark", ".ttl");
+        try {
+            long written = BenchmarkSupport.writeTurtle(file, instances);
+            System.out.printf(Locale.ROOT, "%d triples, %d MB of Turtle%n", written, Files.size(file) >> 20);
+
+            BenchmarkSupport.Timing<Integer> parse = BenchmarkSupport.time(runs, () -> {
+                Graph graph = Graph.create();
+                Load.create(graph).parse(file.toString(), Load.format.TURTLE_FORMAT);
+                return graph.size();
+            });
+            BenchmarkSupport.Timing<Integer> load = BenchmarkSupport.time(runs, () -> {
+                CoreseGraph graph = new CoreseGraph();
+                graph.loadFile(file.toFile());
+                return graph.getTripletCount();
+            });
+            System.out.printf(Locale.ROOT, "Load.parse:          %6d ms, %d triples%n",
+                    parse.getMedianMillis(), parse.getValue());
+            System.out.printf(Locale.ROOT, "CoreseGraph.loadFile: %6d ms, %d triples, %.2fx the time of one parse%n",
+                    load.getMedianMillis(), load.getValue(),
+                    load.getMedianMillis() / (double) Math.max(parse.getMedianMillis(), 1));
+
+            long before = BenchmarkSupport.usedHeap();
+            Graph parsed = Graph.create();
+            Load.create(parsed).parse(file.toString(), Load.format.TURTLE_FORMAT);
+            long parseHeap = BenchmarkSupport.usedHeap() - before;
+            parsed = null;
+
+            before = BenchmarkSupport.usedHeap();
+            CoreseGraph loaded = new CoreseGraph();
+            loaded.loadFile(file.toFile());
+            long loadHeap = BenchmarkSupport.usedHeap() - before;
+            System.out.printf(Locale.ROOT, "Heap: Load.parse %s, CoreseGraph %s for %d triples%n",
+                    BenchmarkSupport.megabytes(parseHeap), BenchmarkSupport.megabytes(loadHeap),
+                    loaded.getTripletCount());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package fr.inria.corese.demo.benchmark;
+
+import fr.inria.corese.core.query.QueryProcess;
+import fr.inria.corese.demo.model.graph.CoreseGraph;
+import fr.inria.corese.demo.model.graph.OffHeapGraph;
+import fr.inria.corese.demo.model.graph.SemanticGraph;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/**
+ * Compares the Corese graph with the off-heap store on the same synthetic Turtle file.
+ *
+ * For each backend, the file is loaded into a fresh graph and the benchmark reports the load time,
+ * the peak heap while loading, the heap retained once loaded, the direct memory reserved and the
+ * median latency of a few SPARQL queries: a point lookup, a predicate scan and a join.
+ *
+ * Run with a fixed heap, e.g. {@code -Xmx4g}, so that both backends are measured the same way.
+ *
+ * Usage: {@code OffHeapBenchmark [instances] [runs]}
+ */
+public final class OffHeapBenchmark {
+    private static final String PREFIXES = "PREFIX : <" + BenchmarkSupport.NS + "> "
+            + "PREFIX rdfs: <http://www.w3.org/2000/01/rdf-schema#> ";
+    private static final String[][] QUERIES = {
+            {"point lookup", "SELECT ?p ?o WHERE { :r4242 ?p ?o }"},
+            {"predicate scan", "SELECT (count(*) AS ?n) WHERE { ?s rdfs:label ?label }"},
+            {"join", "SELECT (count(*) AS ?n) WHERE { ?x a :C7 ; :link ?y . ?y rdfs:label ?label }"},
+    };
+
+    private OffHeapBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int instances = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        Path file = Files.createTempFile("offheap-benchmark", ".ttl");
+        try {
+            long written = BenchmarkSupport.writeTurtle(file, instances);
+            System.out.printf(Locale.ROOT, "%d triples, %d MB of Turtle%n", written, Files.size(file) >> 20);
+
+            measure("CoreseGraph", CoreseGraph::new, file.toFile(), runs);
+            measure("OffHeapGraph", OffHeapGraph::new, file.toFile(), runs);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static void measure(String name, Supplier<SemanticGraph> factory, File file, int runs) throws Exception {
+        BenchmarkSupport.Timing<Integer> load = BenchmarkSupport.time(runs, () -> {
+            SemanticGraph graph = factory.get();
+            graph.loadFile(file);
+            return graph.getTripletCount();
+        });
+
+        long heapBefore = BenchmarkSupport.usedHeap();
+        long directBefore = BenchmarkSupport.usedDirectMemory();
+        BenchmarkSupport.resetPeakHeap();
+        SemanticGraph graph = factory.get();
+        graph.loadFile(file);
+        long peakHeap = BenchmarkSupport.peakHeap() - heapBefore;
+        long retainedHeap = BenchmarkSupport.usedHeap() - heapBefore;
+        long direct = BenchmarkSupport.usedDirectMemory() - directBefore;
+
+        System.out.printf(Locale.ROOT, "%s: load %d ms for %d triples, peak heap +%s, retained heap %s, direct memory %s%n",
+                name, load.getMedianMillis(), load.getValue(), BenchmarkSupport.megabytes(peakHeap),
+                BenchmarkSupport.megabytes(retainedHeap), BenchmarkSupport.megabytes(direct));
+
+        QueryProcess queries = graph instanceof OffHeapGraph offHeap
+                ? offHeap.createQueryProcess() : QueryProcess.create(((CoreseGraph) graph).getCoreseGraph());
+        for (String[] query : QUERIES) {
+            BenchmarkSupport.Timing<Integer> timing = BenchmarkSupport.time(runs,
+                    () -> queries.query(PREFIXES + query[1]).size());
+            System.out.printf(Locale.ROOT, "  %-15s %6d ms, %d rows%n", query[0], timing.getMedianMillis(), timing.getValue());
+        }
+        // Keeps the graph reachable until its queries are measured
+        System.out.printf(Locale.ROOT, "  %d triples queried%n", graph.getTripletCount());
+    }
+}
@@ -0,0 +1,64 @@
+package fr.inria.corese.demo.benchmark;
+
+import fr.inria.corese.core.Graph;
+import fr.inria.corese.core.rule.RuleEngine;
+import fr.inria.corese.demo.model.rule.RdfsSubsetReasoner;
+import fr.inria.corese.demo.model.rule.RuleProcessor;
+import fr.inria.corese.demo.model.rule.RuleSet;
+
+import java.util.Locale;
+
+/**
+ * Scaling benchmark of the rule processor on the OWL RL profile.
+ *
+ * The synthetic ontology of {@link BenchmarkSupport#ontologyTurtle} is materialized with an
+ * increasing number of rule worker threads. Each run starts from a fresh copy of the data.
+ * The same data is finally materialized by the {@link RdfsSubsetReasoner}, for comparison.
+ *
+ * Usage: {@code RuleBenchmark [instances] [maxThreads]}
+ */
+public final class RuleBenchmark {
+    private static final String INFERENCE_GRAPH = "http://ns.inria.fr/corese/kgram/rule";
+
+    private RuleBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int instances = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        String data = BenchmarkSupport.ontologyTurtle(instances);
+        RuleSet owlRL = RuleSet.fromProfile("OWL RL", RuleEngine.OWL_RL);
+        System.out.printf(Locale.ROOT, "OWL RL: %d rules, %d instances%n", owlRL.getRules().size(), instances);
+
+        long baseline = 0;
+        int owlInferred = 0;
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            Graph graph = BenchmarkSupport.loadTurtle(data);
+            int asserted = graph.size();
+
+            RuleProcessor processor = new RuleProcessor(graph, INFERENCE_GRAPH);
+            processor.addRuleSet(owlRL);
+            processor.setParallelism(threads);
+
+            long start = System.nanoTime();
+            int inferred = processor.process();
+            long elapsed = (System.nanoTime() - start) / 1_000_000;
+            if (threads == 1) {
+                baseline = elapsed;
+                owlInferred = inferred;
+            }
+            System.out.printf(Locale.ROOT, "%2d threads: %6d ms, speedup %.2f, %d asserted, %d inferred, %d iterations%n",
+                    threads, elapsed, baseline / (double) Math.max(elapsed, 1), asserted, inferred,
+                    processor.getLastProfile().getIterations().size());
+        }
+
+        Graph graph = BenchmarkSupport.loadTurtle(data);
+        RdfsSubsetReasoner subset = new RdfsSubsetReasoner(graph, INFERENCE_GRAPH + "/RDFS_Subset");
+        long start = System.nanoTime();
+        int inferred = subset.materialize();
+        long elapsed = (System.nanoTime() - start) / 1_000_000;
+        System.out.printf(Locale.ROOT, "RDFS Subset: %6d ms, %.1fx faster than OWL RL on 1 thread, %d inferred (OWL RL: %d)%n",
+                elapsed, baseline / (double) Math.max(elapsed, 1), inferred, owlInferred);
+    }
+}
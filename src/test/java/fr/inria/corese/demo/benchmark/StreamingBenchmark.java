@@ -0,0 +1,67 @@
+package fr.inria.corese.demo.benchmark;
+
+import fr.inria.corese.core.Graph;
+import fr.inria.corese.core.load.Load;
+import fr.inria.corese.demo.model.graph.io.StreamingLineLoader;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Throughput of the streaming N-Triples loader against {@code Load.parse}.
+ *
+ * A synthetic N-Triples file is loaded with {@code Load.parse}, then with the
+ * {@link StreamingLineLoader} with an increasing number of workers. Each path reports its median
+ * time, its throughput in triples per second and its peak heap, the loaded graph included.
+ *
+ * Usage: {@code StreamingBenchmark [instances] [runs]}
+ */
+public final class StreamingBenchmark {
+
+    private StreamingBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int instances = args.length > 0 ? Integer.parseInt(args[0]) : 300_000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        Path file = Files.createTempFile("streaming-benchmark", ".nt");
+        try {
+            long written = BenchmarkSupport.writeNTriples(file, instances);
+            System.out.printf(Locale.ROOT, "%d triples, %d MB of N-Triples%n", written, Files.size(file) >> 20);
+
+            BenchmarkSupport.usedHeap();
+            BenchmarkSupport.resetPeakHeap();
+            BenchmarkSupport.Timing<Integer> parse = BenchmarkSupport.time(runs, () -> {
+                Graph graph = Graph.create();
+                try (InputStream input = new BufferedInputStream(new FileInputStream(file.toFile()))) {
+                    Load.create(graph).parse(input, file.toUri().toString(), Load.format.NT_FORMAT);
+                }
+                return graph.size();
+            });
+            report("Load.parse", parse, BenchmarkSupport.peakHeap());
+
+            int processors = Runtime.getRuntime().availableProcessors();
+            for (int workers = 1; workers <= processors; workers *= 2) {
+                StreamingLineLoader loader = new StreamingLineLoader(StreamingLineLoader.DEFAULT_CHUNK_SIZE, workers);
+                BenchmarkSupport.usedHeap();
+                BenchmarkSupport.resetPeakHeap();
+                BenchmarkSupport.Timing<Integer> streamed = BenchmarkSupport.time(runs,
+                        () -> loader.load(Graph.create(), file.toFile(), null, null));
+                report("Streaming, " + workers + " workers", streamed, BenchmarkSupport.peakHeap());
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static void report(String name, BenchmarkSupport.Timing<Integer> timing, long peakHeap) {
+        System.out.printf(Locale.ROOT, "%-22s %6d ms, %8d triples/s, peak heap %s%n", name + ":",
+                timing.getMedianMillis(), timing.getValue() * 1000L / Math.max(timing.getMedianMillis(), 1),
+                BenchmarkSupport.megabytes(peakHeap));
+    }
+}
@@ -0,0 +1,59 @@
+package fr.inria.corese.demo.manager;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.Lock;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ApplicationStateManagerTest {
+    private static final String QUERY = "SELECT * WHERE { ?s ?p ?o }";
+
+    @Test
+    void queryIsRefusedWhileABackgroundTaskWritesTheGraph() throws Exception {
+        ApplicationStateManager stateManager = ApplicationStateManager.getInstance();
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        Thread writer = new Thread(() -> {
+            Lock lock = stateManager.getGraphWriteLock();
+            lock.lock();
+            try {
+                locked.countDown();
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                lock.unlock();
+            }
+        });
+        writer.start();
+        locked.await();
+        try {
+            assertTrue(stateManager.isGraphBusy());
+            assertThrows(IllegalStateException.class, () -> stateManager.executeQuery(QUERY));
+            assertThrows(IllegalStateException.class, stateManager::clearGraph);
+        } finally {
+            done.countDown();
+            writer.join();
+        }
+
+        assertFalse(stateManager.isGraphBusy());
+        assertEquals("SELECT", stateManager.executeQuery(QUERY)[1]);
+    }
+
+    @Test
+    void queriesRunAlongsideATaskThatOnlyReads() throws Exception {
+        ApplicationStateManager stateManager = ApplicationStateManager.getInstance();
+        Lock lock = stateManager.getGraphReadLock();
+        lock.lock();
+        try {
+            assertEquals("SELECT", stateManager.executeQuery(QUERY)[1]);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package fr.inria.corese.demo.model.graph;
+
+import fr.inria.corese.core.NodeImpl;
+import fr.inria.corese.core.kgram.api.core.Node;
+import fr.inria.corese.core.kgram.core.Mapping;
+import fr.inria.corese.core.kgram.core.Mappings;
+import fr.inria.corese.core.query.QueryProcess;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OffHeapGraphTest {
+    private static final String EX = "http://example.org/";
+    private static final String PREFIXES = "PREFIX ex: <" + EX + "> PREFIX rdfs: <http://www.w3.org/2000/01/rdf-schema#> ";
+    private static final String DATA = "@prefix ex: <" + EX + "> .\n"
+            + "@prefix rdfs: <http://www.w3.org/2000/01/rdf-schema#> .\n"
+            + "@prefix xsd: <http://www.w3.org/2001/XMLSchema#> .\n"
+            + "ex:a a ex:Person ; rdfs:label \"Alice\" , \"Alice\"@en , \"Alicé\"@fr ;\n"
+            + "    ex:age 42 ; ex:height \"1.70\"^^xsd:decimal ; ex:note \"line\\nbreak\" ;\n"
+            + "    ex:knows ex:b , [ rdfs:label \"Carol\" ; ex:age 7 ] .\n"
+            + "ex:b a ex:Person ; rdfs:label \"Bob\" ; ex:age 30 ; ex:knows ex:a .\n";
+    private static final String OTHER = "@prefix ex: <" + EX + "> .\n"
+            + "ex:c a ex:Person ; ex:age 51 ; ex:knows ex:a .\n";
+
+    private static final String[] QUERIES = {
+            "SELECT ?x ?label WHERE { ?x rdfs:label ?label }",
+            "SELECT ?x ?y WHERE { ?x ex:knows ?y . ?y a ex:Person }",
+            "SELECT ?label WHERE { ex:a ex:knows ?f . ?f rdfs:label ?label }",
+            "SELECT ?x ?age WHERE { ?x ex:age ?age FILTER(?age > 20) }",
+            "SELECT ?x WHERE { ?x rdfs:label \"Alice\"@en }",
+            "SELECT ?p (count(*) AS ?n) WHERE { ?s ?p ?o } GROUP BY ?p",
+            "SELECT ?x ?n WHERE { ?x ex:note ?n ; ex:height ?h }",
+            "SELECT ?x WHERE { ?x ex:knows+ ex:a }",
+    };
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void queriesReturnTheSameResultsAsTheCoreseGraph() throws Exception {
+        File data = write("data.ttl", DATA);
+        File other = write("other.ttl", OTHER);
+        CoreseGraph corese = new CoreseGraph();
+        corese.loadFile(data);
+        corese.loadFile(other);
+        OffHeapGraph offHeap = new OffHeapGraph();
+        offHeap.loadFile(data);
+        offHeap.loadFile(other);
+
+        assertEquals(corese.getTripletCount(), offHeap.getTripletCount());
+        QueryProcess coreseQueries = QueryProcess.create(corese.getCoreseGraph());
+        QueryProcess offHeapQueries = offHeap.createQueryProcess();
+        for (String query : QUERIES) {
+            assertEquals(rows(coreseQueries.query(PREFIXES + query)), rows(offHeapQueries.query(PREFIXES + query)), query);
+        }
+    }
+
+    @Test
+    void eachFileKeepsItsNamedGraph() throws Exception {
+        File data = write("data.ttl", DATA);
+        File other = write("other.ttl", OTHER);
+        OffHeapGraph graph = new OffHeapGraph();
+        graph.loadFile(data);
+        graph.loadFile(other);
+
+        Mappings graphs = graph.createQueryProcess().query(
+                PREFIXES + "SELECT DISTINCT ?g WHERE { GRAPH ?g { ex:c ?p ?o } }");
+        assertEquals(List.of("<" + CoreseGraph.getGraphName(other) + ">"), rows(graphs));
+        assertEquals(2, graph.getGraphCount());
+    }
+
+    @Test
+    void unloadingAFileDropsOnlyItsTriples() throws Exception {
+        File data = write("data.ttl", DATA);
+        File other = write("other.ttl", OTHER);
+        OffHeapGraph graph = new OffHeapGraph();
+        graph.loadFile(data);
+        int dataTriples = graph.getTripletCount();
+        graph.loadFile(other);
+
+        graph.unloadFile(other);
+
+        assertEquals(dataTriples, graph.getTripletCount());
+        QueryProcess queries = graph.createQueryProcess();
+        assertTrue(queries.query(PREFIXES + "ASK { ex:c ?p ?o }").isEmpty());
+        assertFalse(queries.query(PREFIXES + "ASK { ex:b ex:knows ex:a }").isEmpty());
+        assertEquals(List.of(data), graph.getLoadedFiles());
+    }
+
+    @Test
+    void termsAreDecodedToTheSameValues() {
+        for (String term : new String[]{"<" + EX + "a", "__:bb42", "\"Alicé\u0000http://www.w3.org/1999/02/22-rdf-syntax-ns#langString\u0000fr",
+                "\"42\u0000http://www.w3.org/2001/XMLSchema#integer\u0000", "\"a\u0000b\u0000http://www.w3.org/2001/XMLSchema#string\u0000"}) {
+            Node node = NodeImpl.create(OffHeapDataManager.term(term));
+            assertEquals(term, OffHeapDataManager.key(node));
+        }
+    }
+
+    private File write(String name, String content) throws Exception {
+        Path file = directory.resolve(name);
+        Files.writeString(file, content);
+        return file.toFile();
+    }
+
+    /**
+     * Returns the rows of a result as sorted strings, blank nodes being named by their row only.
+     */
+    private static List<String> rows(Mappings mappings) {
+        List<String> rows = new ArrayList<>();
+        for (Mapping mapping : mappings) {
+            StringBuilder row = new StringBuilder();
+            for (Node variable : mappings.getSelect()) {
+                Node value = mapping.getNode(variable.getLabel());
+                if (row.length() > 0) {
+                    row.append(' ');
+                }
+                row.append(value == null ? "-" : value.isBlank() ? "_:b" : value.getDatatypeValue().toSparql());
+            }
+            rows.add(row.toString());
+        }
+        rows.sort(null);
+        return rows;
+    }
+}
@@ -0,0 +1,138 @@
+package fr.inria.corese.demo.model.graph;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static fr.inria.corese.demo.model.graph.OffHeapTripleIndex.ANY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OffHeapTripleIndexTest {
+
+    @Test
+    void everyPatternMatchesTheSameQuadsAsAScan() {
+        OffHeapTripleIndex index = new OffHeapTripleIndex();
+        Set<String> expected = new TreeSet<>();
+        Random random = new Random(42);
+        // Several commits of different sizes leave several runs in each index
+        for (int commit = 0; commit < 7; commit++) {
+            for (int i = 0; i < (50 << (commit % 4)); i++) {
+                long[] quad = {random.nextInt(20), random.nextInt(5), random.nextInt(20), random.nextInt(3)};
+                index.add(quad[0], quad[1], quad[2], quad[3]);
+                expected.add(Arrays.toString(quad));
+            }
+            index.commit();
+        }
+        assertEquals(expected.size(), index.size());
+
+        for (long s : new long[]{ANY, 3}) {
+            for (long p : new long[]{ANY, 2}) {
+                for (long o : new long[]{ANY, 7}) {
+                    for (long g : new long[]{ANY, 1}) {
+                        assertEquals(filter(expected, s, p, o, g), collect(index.match(s, p, o, g)),
+                                "pattern " + s + " " + p + " " + o + " " + g);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void aQuadAddedAgainIsCountedOnce() {
+        OffHeapTripleIndex index = new OffHeapTripleIndex();
+        index.add(1, 2, 3, 0);
+        index.add(1, 2, 3, 0);
+        index.commit();
+        index.add(1, 2, 3, 0);
+        index.add(1, 2, 3, 1);
+        index.commit();
+
+        assertEquals(2, index.size());
+        assertEquals(2, collect(index.match(1, 2, 3, ANY)).size());
+        assertEquals(2, index.count(2));
+    }
+
+    @Test
+    void runsOfSimilarSizeAreMerged() {
+        OffHeapTripleIndex index = new OffHeapTripleIndex();
+        for (int i = 0; i < 1000; i++) {
+            index.add(i, 0, i, 0);
+            index.commit();
+        }
+
+        assertEquals(1000, index.size());
+        assertTrue(index.getRunCount() <= 10, "runs: " + index.getRunCount());
+        assertEquals(List.of("[500, 0, 500, 0]"), new ArrayList<>(collect(index.match(500, ANY, ANY, ANY))));
+    }
+
+    @Test
+    void removingAGraphKeepsTheOtherGraphs() {
+        OffHeapTripleIndex index = new OffHeapTripleIndex();
+        for (int i = 0; i < 100; i++) {
+            index.add(i, 1, i + 1, i % 2);
+        }
+        index.commit();
+
+        assertEquals(50, index.removeGraph(0));
+        assertEquals(50, index.size());
+        assertEquals(Set.of(1L), index.graphs());
+        assertEquals(0, collect(index.match(ANY, ANY, ANY, 0)).size());
+        assertEquals(1, collect(index.match(ANY, ANY, 4, ANY)).size());
+        assertEquals(0, collect(index.match(ANY, ANY, 3, ANY)).size());
+    }
+
+    @Test
+    void valuesListsEachIdOnce() {
+        OffHeapTripleIndex index = new OffHeapTripleIndex();
+        index.add(1, 5, 2, 0);
+        index.add(1, 6, 3, 0);
+        index.commit();
+        index.add(4, 5, 1, 0);
+        index.commit();
+
+        assertEquals(Set.of(1L, 4L), index.values(0));
+        assertEquals(Set.of(5L, 6L), index.values(1));
+        assertEquals(Set.of(1L, 2L, 3L), index.values(2));
+    }
+
+    @Test
+    void longArrayGrowsPastOneChunkWithoutLosingValues() {
+        OffHeapLongArray array = new OffHeapLongArray(10);
+        array.set(9, 9);
+        array.ensureCapacity(3_000_000);
+        array.set(2_999_999, 42);
+
+        assertTrue(array.capacity() >= 3_000_000);
+        assertEquals(9, array.get(9));
+        assertEquals(42, array.get(2_999_999));
+        assertEquals(0, array.get(1_500_000));
+    }
+
+    private static Set<String> filter(Set<String> quads, long s, long p, long o, long g) {
+        Set<String> result = new TreeSet<>();
+        for (String quad : quads) {
+            long[] values = Arrays.stream(quad.substring(1, quad.length() - 1).split(", "))
+                    .mapToLong(Long::parseLong).toArray();
+            if ((s == ANY || values[0] == s) && (p == ANY || values[1] == p)
+                    && (o == ANY || values[2] == o) && (g == ANY || values[3] == g)) {
+                result.add(quad);
+            }
+        }
+        return result;
+    }
+
+    private static Set<String> collect(Iterator<long[]> quads) {
+        Set<String> result = new TreeSet<>();
+        while (quads.hasNext()) {
+            assertTrue(result.add(Arrays.toString(quads.next())), "quad returned twice");
+        }
+        return result;
+    }
+}
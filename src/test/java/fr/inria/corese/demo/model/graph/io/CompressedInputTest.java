@@ -0,0 +1,129 @@
+package fr.inria.corese.demo.model.graph.io;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorOutputStream;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompressedInputTest {
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    @Test
+    void gzipBzip2AndZstdAreDecompressed() throws Exception {
+        byte[] content = content();
+        assertArrayEquals(content, read(CompressedInput.open(new ByteArrayInputStream(compress(content, GZIPOutputStream::new)))));
+        assertArrayEquals(content, read(CompressedInput.open(new ByteArrayInputStream(compress(content, BZip2CompressorOutputStream::new)))));
+        assertArrayEquals(content, read(CompressedInput.open(new ByteArrayInputStream(compress(content, ZstdCompressorOutputStream::new)))));
+    }
+
+    @Test
+    void uncompressedContentIsReturnedAsIs() throws Exception {
+        byte[] content = content();
+        InputStream input = CompressedInput.open(new ByteArrayInputStream(content));
+
+        assertFalse(input instanceof PipelinedInputStream);
+        assertArrayEquals(content, read(input));
+    }
+
+    @Test
+    void compressionExtensionsAreStripped() {
+        assertEquals("data.ttl", CompressedInput.stripExtension("data.ttl.gz"));
+        assertEquals("data.nt", CompressedInput.stripExtension("data.nt.ZST"));
+        assertEquals("data.rdf", CompressedInput.stripExtension("data.rdf"));
+        assertTrue(CompressedInput.isCompressed(new File("data.ttl.bz2")));
+        assertFalse(CompressedInput.isCompressed(new File("data.ttl")));
+    }
+
+    @Test
+    void anIOExceptionOfTheSourceReachesTheConsumer() {
+        IOException failure = new IOException("truncated");
+        PipelinedInputStream input = new PipelinedInputStream(failingAfter(1000, failure), "test");
+
+        IOException thrown = assertTimeoutPreemptively(TIMEOUT, () -> assertThrows(IOException.class, () -> read(input)));
+        assertSame(failure, thrown);
+    }
+
+    @Test
+    void aRuntimeErrorOfTheSourceReachesTheConsumerInsteadOfBlockingIt() {
+        IllegalStateException failure = new IllegalStateException("corrupt block");
+        PipelinedInputStream input = new PipelinedInputStream(failingAfter(1000, failure), "test");
+
+        IOException thrown = assertTimeoutPreemptively(TIMEOUT, () -> assertThrows(IOException.class, () -> read(input)));
+        assertSame(failure, thrown.getCause());
+    }
+
+    @Test
+    void anErrorOfTheSourceReachesTheConsumerInsteadOfBlockingIt() {
+        StackOverflowError failure = new StackOverflowError();
+        PipelinedInputStream input = new PipelinedInputStream(failingAfter(0, failure), "test");
+
+        IOException thrown = assertTimeoutPreemptively(TIMEOUT, () -> assertThrows(IOException.class, () -> read(input)));
+        assertSame(failure, thrown.getCause());
+    }
+
+    private interface Compressor {
+        OutputStream wrap(OutputStream output) throws IOException;
+    }
+
+    private static byte[] content() {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 50_000; i++) {
+            content.append("<http://example.org/r").append(i).append("> <http://example.org/p> \"é").append(i).append("\" .\n");
+        }
+        return content.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] compress(byte[] content, Compressor compressor) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream output = compressor.wrap(bytes)) {
+            output.write(content);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] read(InputStream input) throws IOException {
+        try (input) {
+            return input.readAllBytes();
+        }
+    }
+
+    /**
+     * Returns a stream of zeros that fails once the given number of bytes are read.
+     */
+    private static InputStream failingAfter(int bytes, Throwable failure) {
+        return new InputStream() {
+            private int remaining = bytes;
+
+            @Override
+            public int read() throws IOException {
+                if (remaining-- > 0) {
+                    return 0;
+                }
+                if (failure instanceof IOException io) {
+                    throw io;
+                }
+                if (failure instanceof Error error) {
+                    throw error;
+                }
+                throw (RuntimeException) failure;
+            }
+        };
+    }
+}
@@ -0,0 +1,111 @@
+package fr.inria.corese.demo.model.graph.io;
+
+import fr.inria.corese.core.load.Load;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FormatDetectorTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void extensionsAreTrustedWithOrWithoutCompression() throws IOException {
+        // The content would be detected as N-Triples, the extension wins
+        String content = "<http://example.org/s> <http://example.org/p> <http://example.org/o> .\n";
+        assertEquals(Load.format.TURTLE_FORMAT, FormatDetector.detect(write("data.ttl", content)));
+        assertEquals(Load.format.RDFXML_FORMAT, FormatDetector.detect(write("data.OWL", content)));
+        assertEquals(Load.format.JSONLD_FORMAT, FormatDetector.detect(write("data.jsonld", content)));
+        assertEquals(Load.format.NQUADS_FORMAT, FormatDetector.detect(write("data.nq.gz", content)));
+        assertEquals(Load.format.TRIG_FORMAT, FormatDetector.detect(write("data.trig.bz2", content)));
+        assertTrue(FormatDetector.isRdfFile("data.nt.zst"));
+        assertFalse(FormatDetector.isRdfFile("data.txt"));
+        assertFalse(FormatDetector.isRdfFile("data.gz"));
+    }
+
+    @Test
+    void xmlAndJsonAreRecognizedFromTheirFirstCharacter() throws IOException {
+        assertEquals(Load.format.RDFXML_FORMAT, FormatDetector.detect(write("a.data",
+                "\uFEFF  <?xml version=\"1.0\"?>\n<rdf:RDF/>")));
+        assertEquals(Load.format.RDFXML_FORMAT, FormatDetector.detect(write("b.data",
+                "<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\"/>")));
+        assertEquals(Load.format.JSONLD_FORMAT, FormatDetector.detect(write("c.data", "\n{ \"@id\": \"x\" }")));
+        assertEquals(Load.format.JSONLD_FORMAT, FormatDetector.detect(write("d.data", "[ { \"@id\": \"x\" } ]")));
+    }
+
+    @Test
+    void statementsOfThreeOrFourTermsAreNTriplesOrNQuads() throws IOException {
+        String triples = "# comment\n"
+                + "<http://example.org/s> <http://example.org/p> \"a \\\" . quoted\"@en-GB .\n"
+                + "_:b1 <http://example.org/p> \"42\"^^<http://www.w3.org/2001/XMLSchema#integer> . # trailing\n"
+                + "\n"
+                + "<http://example.org/s> <http://example.org/p> _:b2.\n";
+        assertEquals(Load.format.NT_FORMAT, FormatDetector.detect(write("triples.data", triples)));
+
+        String quads = "<http://example.org/s> <http://example.org/p> \"o\" <http://example.org/g> .\r\n"
+                + "_:b <http://example.org/p> _:c _:g .\r\n";
+        assertEquals(Load.format.NQUADS_FORMAT, FormatDetector.detect(write("quads.data", quads)));
+    }
+
+    @Test
+    void abbreviatedSyntaxIsTurtleOrTrig() throws IOException {
+        assertEquals(Load.format.TURTLE_FORMAT, FormatDetector.detect(write("a.data",
+                "@prefix ex: <http://example.org/> .\nex:s ex:p ex:o .\n")));
+        // Terms of a statement spread over several lines
+        assertEquals(Load.format.TURTLE_FORMAT, FormatDetector.detect(write("b.data",
+                "<http://example.org/s> <http://example.org/p>\n    <http://example.org/o> .\n")));
+        // Mixed three and four term statements are not a single line-based syntax
+        assertEquals(Load.format.TURTLE_FORMAT, FormatDetector.detect(write("c.data",
+                "<http://example.org/s> <http://example.org/p> <http://example.org/o> .\n"
+                        + "<http://example.org/s> <http://example.org/p> <http://example.org/o> <http://example.org/g> .\n")));
+        assertEquals(Load.format.TRIG_FORMAT, FormatDetector.detect(write("d.data",
+                "@prefix ex: <http://example.org/> .\nex:g {\n  ex:s ex:p ex:o .\n}\n")));
+        assertEquals(Load.format.TRIG_FORMAT, FormatDetector.detect(write("e.data",
+                "PREFIX ex: <http://example.org/>\nGRAPH ex:g { ex:s ex:p ex:o }\n")));
+    }
+
+    @Test
+    void aLineCutByTheSampleIsNotInspected() throws IOException {
+        StringBuilder content = new StringBuilder();
+        while (content.length() < 20_000) {
+            content.append("<http://example.org/s> <http://example.org/p> \"").append(content.length()).append("\" .\n");
+        }
+        assertEquals(Load.format.NT_FORMAT, FormatDetector.detect(write("long.data", content.toString())));
+    }
+
+    @Test
+    void compressedContentIsInspectedOnceDecompressed() throws IOException {
+        Path file = directory.resolve("data.gz");
+        try (OutputStream output = new GZIPOutputStream(Files.newOutputStream(file))) {
+            output.write("<http://example.org/s> <http://example.org/p> <http://example.org/o> <http://example.org/g> .\n"
+                    .getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals(Load.format.NQUADS_FORMAT, FormatDetector.detect(file.toFile()));
+    }
+
+    @Test
+    void onlyNTriplesAndNQuadsAreLineBased() {
+        assertTrue(FormatDetector.isLineBased(Load.format.NT_FORMAT));
+        assertTrue(FormatDetector.isLineBased(Load.format.NQUADS_FORMAT));
+        assertFalse(FormatDetector.isLineBased(Load.format.TURTLE_FORMAT));
+        assertFalse(FormatDetector.isLineBased(Load.format.TRIG_FORMAT));
+    }
+
+    private File write(String name, String content) throws IOException {
+        Path file = directory.resolve(name);
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+        return file.toFile();
+    }
+}
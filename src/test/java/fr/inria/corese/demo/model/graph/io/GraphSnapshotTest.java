@@ -0,0 +1,162 @@
+package fr.inria.corese.demo.model.graph.io;
+
+import fr.inria.corese.core.Graph;
+import fr.inria.corese.core.kgram.api.core.Edge;
+import fr.inria.corese.core.kgram.api.core.Node;
+import fr.inria.corese.core.load.Load;
+import fr.inria.corese.demo.model.graph.FileFingerprint;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GraphSnapshotTest {
+    private static final String EX = "http://example.org/";
+    private static final String DATA = "@prefix ex: <" + EX + "> .\n"
+            + "@prefix xsd: <http://www.w3.org/2001/XMLSchema#> .\n"
+            + "ex:a a ex:Thing ; ex:name \"Alice\" , \"Alice\"@en , \"Alicé\"@fr ;\n"
+            + "    ex:age 42 ; ex:height \"1.70\"^^xsd:decimal ; ex:note \"line\\nbreak \\\"quoted\\\"\" ;\n"
+            + "    ex:knows [ ex:name \"Bob\" ; ex:knows [ ex:name \"Carol\" ] ] .\n";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void snapshotRoundTripKeepsEveryTriple() throws Exception {
+        Graph graph = Graph.create();
+        parse(graph, DATA, EX + "g1");
+        parse(graph, "<" + EX + "a> <" + EX + "p> <" + EX + "b> .", EX + "g2");
+        Path snapshot = directory.resolve("graph.snapshot");
+
+        long written = GraphSnapshot.write(graph, Map.of(), "rules", snapshot);
+        Graph restored = Graph.create();
+        long read = GraphSnapshot.read(snapshot, restored);
+
+        assertEquals(graph.size(), written);
+        assertEquals(written, read);
+        assertEquals(canonical(graph), canonical(restored));
+    }
+
+    @Test
+    void headerKeepsTheRulesSignatureAndTheSources() throws Exception {
+        File source = directory.resolve("data.ttl").toFile();
+        Files.writeString(source.toPath(), DATA);
+        Map<File, FileFingerprint> sources = new LinkedHashMap<>();
+        sources.put(source, FileFingerprint.of(source));
+        Path snapshot = directory.resolve("graph.snapshot");
+
+        GraphSnapshot.write(Graph.create(), sources, "OWL RL;custom.rul", snapshot);
+        GraphSnapshot.Header header = GraphSnapshot.readHeader(snapshot);
+
+        assertEquals("OWL RL;custom.rul", header.getRulesSignature());
+        assertEquals(sources.keySet(), header.getSources().keySet());
+        assertEquals(sources.get(source).toString(), header.getSources().get(source).toString());
+    }
+
+    @Test
+    void filterSelectsTheWrittenTriples() throws Exception {
+        Graph graph = Graph.create();
+        parse(graph, DATA, EX + "g1");
+        parse(graph, "<" + EX + "a> <" + EX + "p> <" + EX + "b> .", EX + "g2");
+        Path snapshot = directory.resolve("graph.snapshot");
+
+        long written = GraphSnapshot.write(graph, Map.of(), "", snapshot,
+                edge -> edge.getGraph().getLabel().equals(EX + "g2"));
+        Graph restored = Graph.create();
+        GraphSnapshot.read(snapshot, restored);
+
+        assertEquals(1, written);
+        assertEquals(1, restored.size());
+    }
+
+    @Test
+    void restoredBlankNodesGetFreshLabels() throws Exception {
+        Graph graph = Graph.create();
+        parse(graph, DATA, EX + "g1");
+        Path snapshot = directory.resolve("graph.snapshot");
+        GraphSnapshot.write(graph, Map.of(), "", snapshot);
+
+        Graph restored = Graph.create();
+        GraphSnapshot.read(snapshot, restored);
+
+        Set<String> labels = blankLabels(restored);
+        assertEquals(2, labels.size());
+        labels.retainAll(blankLabels(graph));
+        assertTrue(labels.isEmpty());
+    }
+
+    @Test
+    void truncatedOrForeignFilesAreRejected() throws Exception {
+        Graph graph = Graph.create();
+        parse(graph, DATA, EX + "g1");
+        Path snapshot = directory.resolve("graph.snapshot");
+        GraphSnapshot.write(graph, Map.of(), "", snapshot);
+
+        Path truncated = directory.resolve("truncated.snapshot");
+        byte[] bytes = Files.readAllBytes(snapshot);
+        Files.write(truncated, Arrays.copyOf(bytes, bytes.length / 2));
+        assertThrows(IOException.class, () -> GraphSnapshot.read(truncated, Graph.create()));
+
+        Path foreign = directory.resolve("foreign.snapshot");
+        Files.writeString(foreign, "not a snapshot at all");
+        IOException error = assertThrows(IOException.class, () -> GraphSnapshot.readHeader(foreign));
+        assertEquals("Not a graph snapshot", error.getMessage());
+    }
+
+    private static void parse(Graph graph, String turtle, String graphName) throws Exception {
+        Load.create(graph).parse(new ByteArrayInputStream(turtle.getBytes(StandardCharsets.UTF_8)),
+                graphName, Load.format.TURTLE_FORMAT);
+    }
+
+    /**
+     * Describes the triples with each blank node named after the triple that leads to it,
+     * so graphs with differently labelled blank nodes can be compared.
+     */
+    private static Set<String> canonical(Graph graph) {
+        Map<String, Edge> incoming = new HashMap<>();
+        for (Edge edge : graph.getEdges()) {
+            if (edge.getNode(1).isBlank()) {
+                incoming.put(edge.getNode(1).getLabel(), edge);
+            }
+        }
+        Set<String> triples = new HashSet<>();
+        for (Edge edge : graph.getEdges()) {
+            triples.add(name(edge.getNode(0), incoming) + " " + TermFormatter.format(edge.getEdgeNode()) + " "
+                    + name(edge.getNode(1), incoming) + " " + TermFormatter.format(edge.getGraph()));
+        }
+        return triples;
+    }
+
+    private static String name(Node node, Map<String, Edge> incoming) {
+        if (!node.isBlank()) {
+            return TermFormatter.format(node);
+        }
+        Edge edge = incoming.get(node.getLabel());
+        return edge == null ? "[]" : "[" + name(edge.getNode(0), incoming) + " " + TermFormatter.format(edge.getEdgeNode()) + "]";
+    }
+
+    private static Set<String> blankLabels(Graph graph) {
+        Set<String> labels = new HashSet<>();
+        for (Edge edge : graph.getEdges()) {
+            if (edge.getNode(0).isBlank()) {
+                labels.add(edge.getNode(0).getLabel());
+            }
+        }
+        return labels;
+    }
+}
@@ -0,0 +1,107 @@
+package fr.inria.corese.demo.model.graph.io;
+
+import fr.inria.corese.core.Graph;
+import fr.inria.corese.core.kgram.api.core.Edge;
+import fr.inria.corese.core.kgram.api.core.Node;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParallelGraphLoaderTest {
+    private static final String EX = "http://example.org/";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void blankNodesWithTheSameLabelInDifferentFilesStayDistinct() throws Exception {
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            files.add(write("file" + i + ".ttl", "@prefix ex: <" + EX + "> .\n"
+                    + "_:b0 ex:file " + i + " .\n"
+                    + "_:b1 ex:file " + i + " .\n"
+                    + "[] ex:file " + i + " .\n"));
+        }
+
+        Graph graph = Graph.create();
+        List<File> merged = new ParallelGraphLoader(4).load(graph, files, new RecordingListener(), null);
+
+        assertEquals(files.size(), merged.size());
+        // Each blank node carries the number of the file it comes from, and only that one
+        Map<String, Set<String>> filesByBlank = new HashMap<>();
+        for (Edge edge : graph.getEdges()) {
+            Node subject = edge.getNode(0);
+            assertTrue(subject.isBlank());
+            filesByBlank.computeIfAbsent(subject.getLabel(), label -> new HashSet<>())
+                    .add(edge.getNode(1).getLabel());
+        }
+        assertEquals(3 * files.size(), filesByBlank.size());
+        for (Set<String> origins : filesByBlank.values()) {
+            assertEquals(1, origins.size());
+        }
+    }
+
+    @Test
+    void blankNodesOfLaterLoadsDoNotReuseLabels() throws Exception {
+        File first = write("a.ttl", "_:b0 <" + EX + "p> 1 .\n");
+        File second = write("b.ttl", "_:b0 <" + EX + "p> 2 .\n");
+
+        Graph graph = Graph.create();
+        new ParallelGraphLoader(2).load(graph, List.of(first), new RecordingListener(), null);
+        new ParallelGraphLoader(2).load(graph, List.of(second), new RecordingListener(), null);
+
+        Set<String> blanks = new HashSet<>();
+        for (Edge edge : graph.getEdges()) {
+            blanks.add(edge.getNode(0).getLabel());
+        }
+        assertEquals(2, graph.size());
+        assertEquals(2, blanks.size());
+    }
+
+    @Test
+    void failedFilesAreReportedAndTheOthersMerged() throws Exception {
+        File good = write("good.ttl", "<" + EX + "s> <" + EX + "p> <" + EX + "o> .\n");
+        File bad = write("bad.ttl", "<" + EX + "s> <" + EX + "p> .\n");
+
+        Graph graph = Graph.create();
+        RecordingListener listener = new RecordingListener();
+        List<File> merged = new ParallelGraphLoader(2).load(graph, List.of(good, bad), listener, null);
+
+        assertEquals(List.of(good), merged);
+        assertEquals(List.of(bad), listener.failed);
+        assertEquals(1, graph.size());
+    }
+
+    private File write(String name, String content) throws IOException {
+        Path file = directory.resolve(name);
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+        return file.toFile();
+    }
+
+    private static final class RecordingListener implements ParallelGraphLoader.Listener {
+        private final List<File> failed = new ArrayList<>();
+
+        @Override
+        public void fileLoaded(File file, int triples) {
+        }
+
+        @Override
+        public void fileFailed(File file, Exception error) {
+            failed.add(file);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package fr.inria.corese.demo.model.graph.io;
+
+import fr.inria.corese.core.Graph;
+import fr.inria.corese.core.kgram.api.core.Edge;
+import fr.inria.corese.core.load.Load;
+import fr.inria.corese.demo.model.graph.CoreseGraph;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StreamingLineLoaderTest {
+    private static final String EX = "http://example.org/";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void smallChunksGiveTheSameTriplesAsLoadParse() throws Exception {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            content.append("<" + EX + "s").append(i).append("> <" + EX + "p> \"value ").append(i).append("\"@en .\n");
+            content.append("<" + EX + "s").append(i).append("> <" + EX + "n> \"").append(i)
+                    .append("\"^^<http://www.w3.org/2001/XMLSchema#integer> .\n");
+        }
+        File file = write("data.nt", content.toString());
+
+        Graph streamed = Graph.create();
+        int triples = new StreamingLineLoader(256, 3).load(streamed, file, null, null);
+        Graph parsed = Graph.create();
+        try (InputStream input = new FileInputStream(file)) {
+            Load.create(parsed).parse(input, CoreseGraph.getGraphName(file), Load.format.NT_FORMAT);
+        }
+
+        assertEquals(1000, triples);
+        assertEquals(quads(parsed), quads(streamed));
+    }
+
+    @Test
+    void blankNodeLabelsAreSharedByTheChunksOfOneFile() throws Exception {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            content.append("_:x <" + EX + "p> \"").append(i).append("\" .\n");
+        }
+        File first = write("first.nt", content.toString());
+        File second = write("second.nt", content.toString());
+
+        Graph graph = Graph.create();
+        StreamingLineLoader loader = new StreamingLineLoader(128, 4);
+        loader.load(graph, first, null, null);
+        loader.load(graph, second, null, null);
+
+        // One node for _:x in each file, whatever chunk the line was parsed in
+        Set<String> blanks = new HashSet<>();
+        for (Edge edge : graph.getEdges()) {
+            assertTrue(edge.getNode(0).isBlank());
+            blanks.add(edge.getNode(0).getLabel());
+        }
+        assertEquals(200, graph.size());
+        assertEquals(2, blanks.size());
+    }
+
+    @Test
+    void blankNodesDoNotMergeWithThoseOfTurtleFiles() throws Exception {
+        Graph graph = Graph.create();
+        Load.create(graph).parse(new ByteArrayInputStream(
+                ("_:b0 <" + EX + "p> 1 .").getBytes(StandardCharsets.UTF_8)), EX + "turtle", Load.format.TURTLE_FORMAT);
+        String turtleBlank = graph.getEdges().iterator().next().getNode(0).getLabel();
+        File file = write("blank.nt", turtleBlank + " <" + EX + "p> \"2\" .\n");
+
+        new StreamingLineLoader(1024, 1).load(graph, file, null, null);
+
+        Set<String> blanks = new HashSet<>();
+        for (Edge edge : graph.getEdges()) {
+            blanks.add(edge.getNode(0).getLabel());
+        }
+        assertEquals(2, blanks.size());
+    }
+
+    @Test
+    void quadsKeepTheirNamedGraphs() throws Exception {
+        File file = write("data.nq", "<" + EX + "s> <" + EX + "p> <" + EX + "o> <" + EX + "g1> .\n"
+                + "<" + EX + "s> <" + EX + "p> <" + EX + "o> <" + EX + "g2> .\n");
+
+        Graph graph = Graph.create();
+        new StreamingLineLoader(128, 2).load(graph, file, null, null);
+
+        Set<String> graphs = new HashSet<>();
+        for (Edge edge : graph.getEdges()) {
+            graphs.add(edge.getGraph().getLabel());
+        }
+        assertEquals(Set.of(EX + "g1", EX + "g2"), graphs);
+    }
+
+    @Test
+    void compressedFilesAreDecompressedOnTheFly() throws Exception {
+        Path file = directory.resolve("data.nt.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(file))) {
+            for (int i = 0; i < 200; i++) {
+                out.write(("<" + EX + "s" + i + "> <" + EX + "p> \"" + i + "\" .\n").getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        Graph graph = Graph.create();
+        assertEquals(200, new StreamingLineLoader(512, 2).load(graph, file.toFile(), null, null));
+    }
+
+    @Test
+    void aLineLongerThanTheChunkIsRejected() throws Exception {
+        File file = write("long.nt", "<" + EX + "s> <" + EX + "p> \"" + "x".repeat(200) + "\" .\n"
+                + "<" + EX + "s> <" + EX + "p> \"y\" .\n");
+
+        IOException error = assertThrows(IOException.class,
+                () -> new StreamingLineLoader(64, 1).load(Graph.create(), file, null, null));
+        assertTrue(error.getMessage().contains("chunk size"));
+    }
+
+    @Test
+    void cancellationStopsTheLoad() throws Exception {
+        File file = write("data.nt", "<" + EX + "s> <" + EX + "p> <" + EX + "o> .\n");
+
+        assertThrows(InterruptedIOException.class,
+                () -> new StreamingLineLoader(64, 1).load(Graph.create(), file, null, () -> true));
+    }
+
+    private File write(String name, String content) throws IOException {
+        Path file = directory.resolve(name);
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+        return file.toFile();
+    }
+
+    private static Set<String> quads(Graph graph) {
+        Set<String> quads = new HashSet<>();
+        for (Edge edge : graph.getEdges()) {
+            quads.add(TermFormatter.format(edge.getNode(0)) + " " + TermFormatter.format(edge.getEdgeNode()) + " "
+                    + TermFormatter.format(edge.getNode(1)) + " " + TermFormatter.format(edge.getGraph()));
+        }
+        return quads;
+    }
+}
@@ -0,0 +1,98 @@
+package fr.inria.corese.demo.model.rule;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InferenceRuleTest {
+    private static final String EX = "http://example.org/";
+    private static final String RDF_TYPE = "http://www.w3.org/1999/02/22-rdf-syntax-ns#type";
+
+    @Test
+    void bracesInStringsIrisAndCommentsDoNotEndTheTemplateOrTheBody() {
+        InferenceRule rule = InferenceRule.parse("rule", "PREFIX ex: <" + EX + ">\n"
+                + "CONSTRUCT { ?x ex:label \"a } b\" ; ex:note 'c { d' }\n"
+                + "WHERE {\n"
+                + "  ?x a ex:C . # a comment with a } brace\n"
+                + "  { ?x ex:p ?y FILTER(?y != <urn:x{y}>) }\n"
+                + "}");
+
+        assertEquals(Set.of(EX + "label", EX + "note"), rule.getHeadPredicates());
+        assertEquals(Set.of(RDF_TYPE, EX + "p"), rule.getBodyPredicates());
+        String update = rule.toUpdate("urn:g");
+        assertTrue(update.startsWith("PREFIX ex: <" + EX + ">\nINSERT { GRAPH <urn:g> {"), update);
+        assertTrue(update.contains("\"a } b\""), update);
+        assertTrue(update.contains("FILTER NOT EXISTS { ?x ex:label \"a } b\" ; ex:note 'c { d' }"), update);
+    }
+
+    @Test
+    void theWhereKeywordIsOptionalAndPrefixesAreResolved() {
+        InferenceRule rule = InferenceRule.parse("rule", "prefix my: <urn:my#>\n"
+                + "construct { ?x rdfs:label ?l } { ?x my:name ?l }");
+
+        assertEquals(Set.of("http://www.w3.org/2000/01/rdf-schema#label"), rule.getHeadPredicates());
+        assertEquals(Set.of("urn:my#name"), rule.getBodyPredicates());
+        assertTrue(rule.isTriggeredBy(Set.of("urn:my#name"), false));
+        assertFalse(rule.isTriggeredBy(Set.of("urn:my#other"), false));
+        assertTrue(rule.isTriggeredBy(Set.of(), true));
+    }
+
+    @Test
+    void queriesThatAreNotPlainConstructRulesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> InferenceRule.parse("select", "SELECT * WHERE { ?s ?p ?o }"));
+        assertThrows(IllegalArgumentException.class, () -> InferenceRule.parse("unbalanced", "CONSTRUCT { ?s ?p ?o WHERE { ?s ?p ?o }"));
+        assertThrows(IllegalArgumentException.class, () -> InferenceRule.parse("limit",
+                "CONSTRUCT { ?s ?p ?o } WHERE { ?s ?p ?o } LIMIT 5"));
+        assertThrows(IllegalArgumentException.class, () -> InferenceRule.parse("values",
+                "CONSTRUCT { ?s ?p ?o } WHERE { ?s ?p ?o } VALUES ?p { <urn:p> }"));
+    }
+
+    @Test
+    void aLimitedEvaluationUsesASubquery() {
+        InferenceRule rule = InferenceRule.parse("rule", "CONSTRUCT { ?x a <urn:C> } WHERE { ?x <urn:p> ?y }");
+
+        assertTrue(rule.toUpdate("urn:g", 10).contains("{ SELECT * WHERE {"));
+        assertTrue(rule.toUpdate("urn:g", 10).endsWith(" LIMIT 10 }"));
+        assertTrue(rule.toConstruct("urn:g").startsWith("CONSTRUCT { GRAPH <urn:g> {"));
+        assertFalse(rule.toConstruct("urn:g").contains("LIMIT"));
+    }
+
+    @Test
+    void theDeltaJoinKeepsConstantsAndRenamesBlankNodes() {
+        InferenceRule rule = InferenceRule.parse("rule", "PREFIX ex: <" + EX + ">\n"
+                + "CONSTRUCT { ?x a ex:C } WHERE { ?x ex:p \"v\"@en . _:b ex:q ?x . ?x ex:r 4 }");
+        String update = rule.toUpdate("urn:g", 0, List.of("urn:d1", "urn:d2"), null);
+
+        assertTrue(update.contains("VALUES ?_delta { <urn:d1> <urn:d2> }"), update);
+        assertTrue(update.contains("GRAPH ?_delta { ?x <" + EX + "p> \"v\"@en }"), update);
+        assertTrue(update.contains("GRAPH ?_delta { ?_delta0 <" + EX + "q> ?x }"), update);
+        assertTrue(update.contains("GRAPH ?_delta { ?x <" + EX + "r> 4 }"), update);
+        assertEquals(2, update.split("\nUNION\n").length - 1);
+    }
+
+    @Test
+    void aQueryWithSolutionModifiersCannotBeSplit() {
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class,
+                () -> InferenceRule.parse("limited", "CONSTRUCT { ?s ?p ?o } WHERE { ?s ?p ?o } LIMIT 1"));
+
+        assertTrue(error.getMessage().contains("limited"), error.getMessage());
+    }
+
+    @Test
+    void theWhereClauseOfAQueryGivesItsPatterns() {
+        List<TriplePattern> patterns = InferenceRule.queryPatterns("PREFIX ex: <" + EX + ">\n"
+                + "CONSTRUCT { ?x ex:t ?y } WHERE { ?x ex:p ?y OPTIONAL { ?y ex:q ?z } }");
+
+        assertEquals(2, patterns.size());
+        assertEquals(EX + "p", patterns.get(0).getPredicate());
+        assertTrue(patterns.get(0).isRequired());
+        assertFalse(patterns.get(1).isRequired());
+        assertTrue(InferenceRule.queryPatterns("ASK").isEmpty());
+    }
+}
@@ -0,0 +1,112 @@
+package fr.inria.corese.demo.model.rule;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PatternScannerTest {
+    private static final String EX = "http://example.org/";
+    private static final Map<String, String> PREFIXES = Map.of("ex", EX);
+
+    @Test
+    void abbreviationsGiveOnePatternPerTriple() {
+        List<TriplePattern> patterns = PatternScanner.scan(
+                "?x a ex:C ; ex:p ?y , ex:z . $y ex:q [ ex:r ?w ; ex:s \"lit . # }\" ] .", PREFIXES);
+
+        assertEquals(List.of(
+                "? http://www.w3.org/1999/02/22-rdf-syntax-ns#type http://example.org/C",
+                "? http://example.org/p ?",
+                "? http://example.org/p http://example.org/z",
+                "? http://example.org/q ?",
+                "? http://example.org/r ?",
+                "? http://example.org/s \"lit . # }\""), strings(patterns));
+        assertEquals("?y", patterns.get(3).getSubjectVariable());
+        assertEquals("?y", patterns.get(1).getObjectVariable());
+        // The blank node of a property list is anonymous
+        assertNull(patterns.get(4).getSubjectVariable());
+    }
+
+    @Test
+    void optionalAndUnionPatternsAreNotRequired() {
+        List<TriplePattern> patterns = PatternScanner.scan(
+                "{ ?x ex:a ?y OPTIONAL { ?y ex:b ?z } { ?x ex:c ?z } UNION { ?x ex:d ?z } ?x ex:e ?w }", PREFIXES);
+
+        assertEquals(List.of(true, false, false, false, true), required(patterns));
+        assertEquals(EX + "e", patterns.get(4).getPredicate());
+    }
+
+    @Test
+    void negatedPatternsFiltersAndInlineDataAreSkipped() {
+        List<TriplePattern> patterns = PatternScanner.scan("?x ex:a ?y .\n"
+                + "# ?x ex:comment ?y {\n"
+                + "FILTER NOT EXISTS { ?y ex:b ?x }\n"
+                + "MINUS { ?x ex:c ?y }\n"
+                + "FILTER regex(str(?y), \"^a(b\")\n"
+                + "FILTER (?y != <urn:a{b>)\n"
+                + "BIND (concat(\"x\", \"}\") AS ?z)\n"
+                + "VALUES (?w) { (ex:v) }\n"
+                + "?y ex:d 1.5 .", PREFIXES);
+
+        assertEquals(List.of("? http://example.org/a ?", "? http://example.org/d 1.5"), strings(patterns));
+    }
+
+    @Test
+    void propertyPathsGiveOptionalPatternsPerPredicate() {
+        List<TriplePattern> paths = PatternScanner.scan("?x ex:a/ex:b* ?y . ?y ^ex:c ?z", PREFIXES);
+        assertEquals(List.of("? http://example.org/a ?", "? http://example.org/b ?", "? http://example.org/c ?"),
+                strings(paths));
+        assertEquals(List.of(false, false, false), required(paths));
+
+        List<TriplePattern> negated = PatternScanner.scan("?x !ex:a ?y", PREFIXES);
+        assertEquals(1, negated.size());
+        assertTrue(negated.get(0).hasVariablePredicate());
+    }
+
+    @Test
+    void namedGraphsKeepTheirPatterns() {
+        List<TriplePattern> patterns = PatternScanner.scan("GRAPH ?g { ?x ex:a ?y } GRAPH <urn:g> { ?y ex:b ?z }", PREFIXES);
+
+        assertEquals(List.of("? http://example.org/a ?", "? http://example.org/b ?"), strings(patterns));
+        assertEquals(List.of(true, true), required(patterns));
+    }
+
+    @Test
+    void onlyPlainJoinsAreJoins() {
+        assertTrue(PatternScanner.isJoin("?x ex:a ?y . ?y ex:b ?z FILTER(?x != ?z)"));
+        assertTrue(PatternScanner.isJoin("?x ex:a ?y FILTER NOT EXISTS { ?y ex:b ?x } MINUS { ?x ex:c ?y }"));
+        assertTrue(PatternScanner.isJoin("GRAPH ?g { ?x ex:a ?y } BIND(1 AS ?one) VALUES ?y { ex:v }"));
+
+        assertFalse(PatternScanner.isJoin("FILTER(true)"));
+        assertFalse(PatternScanner.isJoin("?x ex:a ?y OPTIONAL { ?y ex:b ?z }"));
+        assertFalse(PatternScanner.isJoin("{ ?x ex:a ?y } UNION { ?x ex:b ?y }"));
+        assertFalse(PatternScanner.isJoin("?x ex:a+ ?y"));
+        assertFalse(PatternScanner.isJoin("?x ex:a ?y FILTER EXISTS { ?y ex:b ?x }"));
+        assertFalse(PatternScanner.isJoin("?x ex:a ?y FILTER(?x = ?y || EXISTS { ?y ex:b ?x })"));
+        assertFalse(PatternScanner.isJoin("?x ex:a ( ?y ?z )"));
+        assertFalse(PatternScanner.isJoin("?x ex:a ?y { SELECT ?y WHERE { ?y ex:b ?z } }"));
+        assertFalse(PatternScanner.isJoin("SERVICE <urn:s> { ?x ex:a ?y }"));
+    }
+
+    private static List<String> strings(List<TriplePattern> patterns) {
+        List<String> strings = new ArrayList<>();
+        for (TriplePattern pattern : patterns) {
+            strings.add(pattern.toString());
+        }
+        return strings;
+    }
+
+    private static List<Boolean> required(List<TriplePattern> patterns) {
+        List<Boolean> required = new ArrayList<>();
+        for (TriplePattern pattern : patterns) {
+            required.add(pattern.isRequired());
+        }
+        return required;
+    }
+}
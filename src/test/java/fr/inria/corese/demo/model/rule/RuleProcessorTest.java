@@ -0,0 +1,373 @@
+package fr.inria.corese.demo.model.rule;
+
+import fr.inria.corese.core.Graph;
+import fr.inria.corese.core.kgram.api.core.Node;
+import fr.inria.corese.core.kgram.core.Mapping;
+import fr.inria.corese.core.load.Load;
+import fr.inria.corese.core.query.QueryProcess;
+import fr.inria.corese.core.rule.RuleEngine;
+import fr.inria.corese.core.sparql.exceptions.EngineException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RuleProcessorTest {
+    private static final String EX = "http://example.org/";
+    private static final String INFERENCE_GRAPH = "http://example.org/inference";
+    private static final String RDF_TYPE = "http://www.w3.org/1999/02/22-rdf-syntax-ns#type";
+    private static final String ONTOLOGY = "@prefix ex: <" + EX + "> .\n"
+            + "@prefix owl: <http://www.w3.org/2002/07/owl#> .\n"
+            + "@prefix rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#> .\n"
+            + "@prefix rdfs: <http://www.w3.org/2000/01/rdf-schema#> .\n"
+            + "ex:Student rdfs:subClassOf ex:Person .\n"
+            + "ex:Person rdfs:subClassOf ex:Agent .\n"
+            + "ex:Human owl:equivalentClass ex:Person .\n"
+            + "ex:hasParent rdfs:domain ex:Person ; rdfs:range ex:Person ; owl:inverseOf ex:hasChild ;\n"
+            + "    rdfs:subPropertyOf ex:hasAncestor .\n"
+            + "ex:hasAncestor a owl:TransitiveProperty .\n"
+            + "ex:knows a owl:SymmetricProperty .\n"
+            + "ex:hasMother rdfs:subPropertyOf ex:hasParent ; a owl:FunctionalProperty .\n"
+            // Restrictions and lists are named, so that both graphs have the same terms
+            + "ex:Parent owl:equivalentClass ex:r1 .\n"
+            + "ex:r1 a owl:Restriction ; owl:onProperty ex:hasChild ; owl:someValuesFrom ex:Person .\n"
+            + "ex:French owl:equivalentClass ex:r2 .\n"
+            + "ex:r2 a owl:Restriction ; owl:onProperty ex:nationality ; owl:hasValue ex:France .\n"
+            + "ex:StudentParent owl:intersectionOf ex:l1 .\n"
+            + "ex:l1 rdf:first ex:Student ; rdf:rest ex:l2 . ex:l2 rdf:first ex:Parent ; rdf:rest rdf:nil .\n"
+            + "ex:hasUncle owl:propertyChainAxiom ex:l3 .\n"
+            + "ex:l3 rdf:first ex:hasParent ; rdf:rest ex:l4 . ex:l4 rdf:first ex:hasBrother ; rdf:rest rdf:nil .\n"
+            + "ex:alice a ex:Student ; ex:hasParent ex:bob ; ex:knows ex:carol ; ex:nationality ex:France ;\n"
+            + "    ex:hasMother ex:eve , ex:eve2 .\n"
+            + "ex:bob a ex:Student ; ex:hasParent ex:dan ; ex:hasBrother ex:fred .\n"
+            + "ex:dan ex:hasParent ex:gus .\n"
+            + "ex:carol owl:sameAs ex:caroline .\n"
+            + "ex:caroline ex:age 30 ; rdfs:label \"Caroline\"@en .\n";
+
+    private static final String UNIVERSITY = "http://example.org/university#";
+    private static final String TRANSITIVE = "PREFIX ex: <" + EX + ">\n"
+            + "CONSTRUCT { ?x ex:ancestor ?z } WHERE { ?x ex:ancestor ?y . ?y ex:ancestor ?z }";
+
+    @TempDir
+    Path directory;
+
+    @ParameterizedTest
+    @ValueSource(ints = {RuleEngine.OWL_RL, RuleEngine.OWL_RL_EXT, RuleEngine.OWL_RL_TEST})
+    void processInfersWhatTheCoreseRuleEngineInfers(int profile) throws Exception {
+        Graph reference = load(ONTOLOGY);
+        RuleEngine engine = RuleEngine.create(reference);
+        engine.setProfile(profile);
+        engine.process();
+        Set<String> expected = triples(reference);
+
+        RuleSet ruleSet = RuleSet.fromProfile("profile", profile);
+        assertTrue(ruleSet.getUnsupportedRules().isEmpty());
+        for (int parallelism : new int[]{1, 4}) {
+            Graph graph = load(ONTOLOGY);
+            RuleProcessor processor = new RuleProcessor(graph, INFERENCE_GRAPH);
+            processor.addRuleSet(ruleSet);
+            processor.setParallelism(parallelism);
+            processor.process();
+
+            assertEquals(expected, triples(graph), "parallelism " + parallelism);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {RuleEngine.OWL_RL, RuleEngine.OWL_RL_EXT, RuleEngine.OWL_RL_TEST})
+    void processInfersWhatTheCoreseRuleEngineInfersOnAnOntologyWithBlankNodes(int profile) throws Exception {
+        // The graphs are copies of one graph, so that the blank nodes of the data have the same labels in each
+        Graph schema = Graph.create();
+        try (InputStream in = getClass().getResourceAsStream("university.ttl")) {
+            Load.create(schema).parse(in, UNIVERSITY, Load.format.TURTLE_FORMAT);
+        }
+        Graph data = schema.copy();
+        Set<String> instancePredicates = loadStudents(data, 40);
+        Set<String> asserted = blankNodes(data);
+
+        Graph reference = data.copy();
+        RuleEngine engine = RuleEngine.create(reference);
+        engine.setProfile(profile);
+        try {
+            engine.process();
+        } catch (EngineException e) {
+            // The engine reports the constraint violations it inferred once it is done
+        }
+        Set<String> expected = triples(reference, asserted);
+        if (profile == RuleEngine.OWL_RL) {
+            // Conclusions of a constraint rule with a blank node head, of a rule with FILTER and of the one with BIND
+            assertTrue(expected.stream().anyMatch(triple -> triple.contains("sp:violationRoot <" + UNIVERSITY + "barbara>")));
+            assertTrue(expected.contains("<" + UNIVERSITY + "grace> <" + UNIVERSITY + "hasGrandAdvisor> <" + UNIVERSITY + "ada>"));
+            assertTrue(expected.contains("<" + UNIVERSITY + "ada> owl:sameAs <" + UNIVERSITY + "ada>"));
+        }
+
+        RuleSet ruleSet = RuleSet.fromProfile("profile", profile);
+        for (int parallelism : new int[]{1, 4}) {
+            Graph graph = data.copy();
+            RuleProcessor processor = new RuleProcessor(graph, INFERENCE_GRAPH);
+            processor.addRuleSet(ruleSet);
+            processor.setParallelism(parallelism);
+            processor.process();
+
+            assertEquals(expected, triples(graph, asserted), "parallelism " + parallelism);
+            // The violations are where the rules of the profile expect them
+            assertEquals(profile == RuleEngine.OWL_RL, !graphs(graph, RuleProcessor.CONSTRAINT_GRAPH).isEmpty());
+        }
+
+        // The same inferences when the instances are added to a schema at fixpoint
+        Graph graph = schema.copy();
+        RuleProcessor processor = new RuleProcessor(graph, INFERENCE_GRAPH);
+        processor.addRuleSet(ruleSet);
+        processor.process();
+        loadStudents(graph, 40);
+        processor.processDelta(instancePredicates);
+        assertEquals(expected, triples(graph, asserted), "incremental");
+    }
+
+    @Test
+    void aRuleFileWithARuleThatCannotBeSplitIsRefused() throws Exception {
+        File rules = directory.resolve("rules.rul").toFile();
+        Files.writeString(rules.toPath(), "<?xml version='1.0' encoding='UTF-8'?>\n"
+                + "<rdf:RDF xmlns:rdf='http://www.w3.org/1999/02/22-rdf-syntax-ns#' xmlns='http://ns.inria.fr/corese/rule/'>\n"
+                + "<rule><body><![CDATA[\n"
+                + "prefix ex: <" + EX + ">\n"
+                + "construct { ?x ex:related ?y } where { ?x ?p ?y } values ?p { ex:knows ex:likes }\n"
+                + "]]></body></rule>\n"
+                + "<rule><body><![CDATA[\n"
+                + "prefix ex: <" + EX + ">\n"
+                + "construct { ?x a ex:Social } where { ?x ex:related ?y }\n"
+                + "]]></body></rule>\n"
+                + "</rdf:RDF>\n");
+
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class, () -> RuleSet.fromFile(rules));
+        assertTrue(error.getMessage().contains("rules.rul #1"), error.getMessage());
+        assertFalse(error.getMessage().contains("rules.rul #2"), error.getMessage());
+    }
+
+    @Test
+    void laterIterationsOnlyJoinWithTheLastInferences() throws Exception {
+        int length = 40;
+        StringBuilder chain = new StringBuilder("@prefix ex: <" + EX + "> .\n");
+        for (int i = 0; i < length; i++) {
+            chain.append("ex:n").append(i).append(" ex:ancestor ex:n").append(i + 1).append(" .\n");
+        }
+        Graph graph = load(chain.toString());
+        RuleProcessor processor = new RuleProcessor(graph, INFERENCE_GRAPH);
+        processor.addRuleSet(RuleSet.fromQueries("chain", List.of(TRANSITIVE)));
+        processor.process();
+
+        // Every pair of the chain, and no delta graph left behind
+        assertEquals((length + 1) * length / 2, graph.size());
+        assertEquals(Set.of(EX + "inference/chain"), graphs(graph, INFERENCE_GRAPH));
+        assertTrue(processor.getLastProfile().getIterations().size() > 2);
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void smallIterationsJoinWithTheirDeltaGraphs(boolean guarded) throws Exception {
+        int length = 60;
+        StringBuilder chain = new StringBuilder("@prefix ex: <" + EX + "> .\n");
+        for (int i = 0; i < length; i++) {
+            chain.append("ex:n").append(i).append(" ex:next ex:n").append(i + 1).append(" .\n");
+        }
+        chain.append("ex:n").append(length).append(" ex:mark ex:end .\n");
+        Graph graph = load(chain.toString());
+        RuleProcessor processor = new RuleProcessor(graph, INFERENCE_GRAPH);
+        processor.addRuleSet(RuleSet.fromQueries("reach", List.of(
+                "PREFIX ex: <" + EX + ">\nCONSTRUCT { ?x ex:reach ?m } WHERE { ?x ex:mark ?m }",
+                "PREFIX ex: <" + EX + ">\nCONSTRUCT { ?x ex:reach ?m } WHERE { ?x ex:next ?y . ?y ex:reach ?m }")));
+        if (guarded) {
+            processor.setGuard(new RuleGuard(0, 1000, 0));
+        }
+
+        // One more node reaches the mark per iteration, each joined with the delta graph of the previous one
+        assertEquals(length + 1, processor.process());
+        assertEquals(length + 1, processor.getLastProfile().getIterations().size());
+        assertEquals(Set.of(EX + "inference/reach"), graphs(graph, INFERENCE_GRAPH));
+        assertEquals(0, processor.process());
+    }
+
+    @Test
+    void aParallelRunDoesNotGoFurtherOverTheGuardThanASequentialOne() throws Exception {
+        StringBuilder data = new StringBuilder("@prefix ex: <" + EX + "> .\n");
+        for (int i = 0; i < 50; i++) {
+            data.append("ex:s").append(i).append(" a ex:A .\n");
+        }
+        List<String> rules = new ArrayList<>();
+        for (int i = 1; i <= 4; i++) {
+            rules.add("PREFIX ex: <" + EX + ">\nCONSTRUCT { ?x a ex:B" + i + " } WHERE { ?x a ex:A }");
+        }
+        Graph graph = load(data.toString());
+        int asserted = graph.size();
+        RuleProcessor processor = new RuleProcessor(graph, INFERENCE_GRAPH);
+        processor.addRuleSet(RuleSet.fromQueries("fan-out", rules));
+        processor.setParallelism(4);
+        processor.setGuard(new RuleGuard(0, 60, 0));
+        long[] peak = new long[1];
+        processor.setMonitor(new RuleMonitor() {
+            @Override
+            public void iterationStarted(int iteration, int activeRules) {
+            }
+
+            @Override
+            public void ruleEvaluated(InferenceRule rule, int inferred) {
+                peak[0] = Math.max(peak[0], graph.size() - asserted);
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return false;
+            }
+        });
+
+        assertEquals(0, processor.process());
+        assertTrue(processor.getLastProfile().isAborted());
+        // One triple over the cap trips the guard, as when the rules are evaluated one by one
+        assertEquals(61, peak[0]);
+        assertEquals(asserted, graph.size());
+    }
+
+    @Test
+    void aBodyThatIsNotAPlainJoinIsEvaluatedWhole() {
+        InferenceRule join = InferenceRule.parse("join", "PREFIX ex: <" + EX + ">\n"
+                + "CONSTRUCT { ?x ex:p ?z } WHERE { ?x ex:q ?y . ?y a [] . FILTER NOT EXISTS { ?y ex:r ?x } }");
+        String update = join.toUpdate("urn:g", 0, List.of("urn:delta"), Set.of(EX + "q"));
+        assertTrue(update.contains("GRAPH ?_delta { ?x <" + EX + "q> ?y }"), update);
+        assertFalse(update.contains("?_delta2 }"), update);
+        // Without the predicate of a pattern among the new triples, that pattern is not joined
+        assertFalse(join.toUpdate("urn:g", 0, List.of("urn:delta"), Set.of("urn:other")).contains("?_delta"));
+
+        for (String body : new String[]{"?x ex:q ?y OPTIONAL { ?y ex:r ?z }", "{ ?x ex:q ?z } UNION { ?x ex:r ?z }",
+                "?x ex:q/ex:r ?z", "?x ex:q ?z FILTER EXISTS { ?z ex:r ?x }", "?x ex:q ?z BIND(EXISTS { ?z ex:r ?x } AS ?b)"}) {
+            InferenceRule rule = InferenceRule.parse("rule", "PREFIX ex: <" + EX + ">\n"
+                    + "CONSTRUCT { ?x ex:p ?z } WHERE { " + body + " }");
+            assertFalse(rule.toUpdate("urn:g", 0, List.of("urn:delta"), null).contains("?_delta"), body);
+        }
+    }
+
+    private static Graph load(String turtle) throws Exception {
+        Graph graph = Graph.create();
+        Load.create(graph).parse(new ByteArrayInputStream(turtle.getBytes(StandardCharsets.UTF_8)),
+                EX + "data", Load.format.TURTLE_FORMAT);
+        return graph;
+    }
+
+    /**
+     * Adds students to the university of university.ttl, with their courses and advisors.
+     *
+     * @return The predicates of the added triples
+     */
+    private static Set<String> loadStudents(Graph graph, int count) throws Exception {
+        StringBuilder students = new StringBuilder("@prefix : <" + UNIVERSITY + "> .\n");
+        for (int i = 0; i < count; i++) {
+            students.append(":student").append(i).append(" a :Student ; :takesCourse :course").append(i % 7)
+                    .append(" ; :hasAdvisor :professor").append(i % 5)
+                    .append(" ; :studentNumber \"S-").append(i).append("\" .\n");
+        }
+        for (int i = 0; i < 5; i++) {
+            students.append(":professor").append(i).append(" :worksFor :").append(i % 2 == 0 ? "cs" : "math")
+                    .append(" ; :colleagueOf :professor").append((i + 1) % 5)
+                    .append(" ; :teaches :course").append(i).append(" .\n");
+        }
+        Load.create(graph).parse(new ByteArrayInputStream(students.toString().getBytes(StandardCharsets.UTF_8)),
+                UNIVERSITY + "students", Load.format.TURTLE_FORMAT);
+        return Set.of(RDF_TYPE, UNIVERSITY + "takesCourse", UNIVERSITY + "hasAdvisor", UNIVERSITY + "studentNumber",
+                UNIVERSITY + "worksFor", UNIVERSITY + "colleagueOf", UNIVERSITY + "teaches");
+    }
+
+    /**
+     * Returns the distinct triples of a graph, whatever their named graph, blank nodes being named by their label.
+     */
+    private static Set<String> triples(Graph graph) throws Exception {
+        return triples(graph, null);
+    }
+
+    /**
+     * Returns the distinct triples of a graph, whatever their named graph. The blank nodes of the data are
+     * named by their label; the others, created by rules, by the triples they are the subject of, since
+     * two engines do not label them alike. A constraint violation is named by its label only: the order
+     * of the rules decides whether the sameAs rules merge two violations of one property before or after
+     * they are reported, not what is reported.
+     *
+     * @param asserted The labels of the blank nodes of the data, null to name every blank node by its label
+     */
+    private static Set<String> triples(Graph graph, Set<String> asserted) throws Exception {
+        List<Node[]> edges = new ArrayList<>();
+        for (Mapping mapping : QueryProcess.create(graph).query("SELECT DISTINCT ?s ?p ?o WHERE { ?s ?p ?o }")) {
+            edges.add(new Node[]{mapping.getNode("?s"), mapping.getNode("?p"), mapping.getNode("?o")});
+        }
+        Map<String, Set<String>> created = new HashMap<>();
+        for (Node[] edge : edges) {
+            if (asserted != null && isCreated(edge[0], asserted)) {
+                created.computeIfAbsent(edge[0].getLabel(), label -> new TreeSet<>())
+                        .add(term(edge[1]) + " " + (isCreated(edge[2], asserted) ? "[]" : term(edge[2])));
+            }
+        }
+        for (Set<String> description : created.values()) {
+            if (description.contains("rdf:type sp:ConstraintViolation")) {
+                description.removeIf(property -> !property.startsWith("rdfs:label "));
+            }
+        }
+        Set<String> triples = new TreeSet<>();
+        for (Node[] edge : edges) {
+            StringBuilder triple = new StringBuilder();
+            for (Node node : edge) {
+                Set<String> description = node.isBlank() ? created.get(node.getLabel()) : null;
+                triple.append(triple.length() > 0 ? " " : "")
+                        .append(description != null ? "[" + String.join(" ; ", description) + "]" : term(node));
+            }
+            triples.add(triple.toString());
+        }
+        return triples;
+    }
+
+    private static boolean isCreated(Node node, Set<String> asserted) {
+        return node.isBlank() && !asserted.contains(node.getLabel());
+    }
+
+    private static Set<String> blankNodes(Graph graph) throws Exception {
+        Set<String> labels = new HashSet<>();
+        for (Mapping mapping : QueryProcess.create(graph).query("SELECT DISTINCT ?s ?o WHERE { ?s ?p ?o }")) {
+            for (Node node : new Node[]{mapping.getNode("?s"), mapping.getNode("?o")}) {
+                if (node.isBlank()) {
+                    labels.add(node.getLabel());
+                }
+            }
+        }
+        return labels;
+    }
+
+    private static Set<String> graphs(Graph graph, String prefix) throws Exception {
+        Set<String> graphs = new TreeSet<>();
+        for (Mapping mapping : QueryProcess.create(graph).query("SELECT DISTINCT ?g WHERE { GRAPH ?g { ?s ?p ?o } }")) {
+            String name = mapping.getNode("?g").getLabel();
+            if (name.startsWith(prefix)) {
+                graphs.add(name);
+            }
+        }
+        return graphs;
+    }
+
+    private static String term(Node node) {
+        return node.isBlank() ? "_:" + node.getLabel() : node.getDatatypeValue().toSparql();
+    }
+}
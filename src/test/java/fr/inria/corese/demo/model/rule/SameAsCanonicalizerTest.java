@@ -0,0 +1,144 @@
+package fr.inria.corese.demo.model.rule;
+
+import fr.inria.corese.core.Graph;
+import fr.inria.corese.core.kgram.core.Mapping;
+import fr.inria.corese.core.kgram.core.Mappings;
+import fr.inria.corese.core.load.Load;
+import fr.inria.corese.core.query.QueryProcess;
+import fr.inria.corese.core.sparql.triple.parser.ASTQuery;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SameAsCanonicalizerTest {
+    private static final String EX = "http://example.org/";
+    private static final String PREFIXES = "PREFIX ex: <" + EX + ">\n"
+            + "PREFIX owl: <http://www.w3.org/2002/07/owl#>\n";
+    // ex:a, ex:c and ex:z are one resource, ex:a being the smallest IRI
+    private static final String DATA = "@prefix ex: <" + EX + "> .\n"
+            + "@prefix owl: <http://www.w3.org/2002/07/owl#> .\n"
+            + "ex:z owl:sameAs ex:a . ex:c owl:sameAs ex:z .\n"
+            + "ex:a a ex:Person ; ex:knows ex:d , ex:e .\n"
+            + "ex:z a ex:Agent .\n"
+            + "ex:b a ex:Person .\n";
+
+    private Graph graph;
+    private SameAsCanonicalizer canonicalizer;
+
+    @BeforeEach
+    void canonicalize() throws Exception {
+        graph = Graph.create();
+        Load.create(graph).parse(new ByteArrayInputStream(DATA.getBytes(StandardCharsets.UTF_8)),
+                EX + "data", Load.format.TURTLE_FORMAT);
+        canonicalizer = new SameAsCanonicalizer(graph, EX + "sameAs");
+        canonicalizer.canonicalize(true);
+    }
+
+    @Test
+    void classesAreMergedOntoTheirSmallestIri() throws Exception {
+        assertFalse(canonicalizer.isEmpty());
+        assertEquals(2, canonicalizer.getAliasCount());
+        // The triples of the aliases are copied onto the representative, not the other way round
+        assertTrue(ask("ASK { <" + EX + "a> a ex:Agent }"));
+        assertFalse(ask("ASK { <" + EX + "c> a ex:Person }"));
+        assertEquals(Set.of(EX + "Person", EX + "Agent"), values(query("SELECT ?t WHERE { <" + EX + "a> a ?t }"), "?t"));
+    }
+
+    @Test
+    void aliasesAreReplacedInTheQuery() throws Exception {
+        // A relative IRI, the keyword a, a property path, VALUES, BIND and a long string that looks like IRIs
+        String query = "BASE <" + EX + ">\n" + PREFIXES + "SELECT ?y WHERE {\n"
+                + "  <z> ex:knows ?y . ex:c a ex:Person . <z> ex:knows/^ex:knows ex:c # ex:b\n"
+                + "  VALUES ?x { ex:z } ?x ex:knows ?y BIND(ex:c AS ?w) ?w a ex:Person\n"
+                + "  FILTER(?y != ex:c && \"\"\"ex:z <c> \" }\"\"\" = \"ex:z <c> \\\" }\")\n"
+                + "}";
+        assertTrue(query(query).isEmpty());
+        assertEquals(Set.of(EX + "d", EX + "e"), values(query(canonicalizer.rewrite(query)), "?y"));
+    }
+
+    @Test
+    void aQueryOnAnAliasSeesWhatItsClassInferred() throws Exception {
+        String types = PREFIXES + "SELECT ?t WHERE { ex:z a ?t }";
+        assertEquals(Set.of(EX + "Agent"), values(query(types), "?t"));
+        assertEquals(Set.of(EX + "Person", EX + "Agent"), values(query(canonicalizer.rewrite(types)), "?t"));
+
+        String ask = PREFIXES + "ASK { ex:c a ex:Person }";
+        assertFalse(ask(ask));
+        assertFalse(query(canonicalizer.rewrite(ask)).isEmpty());
+    }
+
+    @Test
+    void resultsAreExpandedToTheAliases() throws Exception {
+        Mappings mappings = query(PREFIXES + "SELECT ?x WHERE { ?x a ex:Person }");
+        assertTrue(SameAsCanonicalizer.isExpandable(mappings));
+        canonicalizer.expand(mappings);
+        assertEquals(List.of(EX + "a", EX + "b", EX + "c", EX + "z"), sorted(mappings, "?x"));
+    }
+
+    @Test
+    void distinctResultsStayDistinct() throws Exception {
+        // ?y is not selected, its two values must not give two rows per alias
+        Mappings mappings = query(PREFIXES + "SELECT DISTINCT ?x WHERE { ?x ex:knows ?y }");
+        assertTrue(SameAsCanonicalizer.isExpandable(mappings));
+        canonicalizer.expand(mappings);
+        assertEquals(List.of(EX + "a", EX + "c", EX + "z"), sorted(mappings, "?x"));
+
+        // Without DISTINCT, each alias is repeated as often as its representative
+        mappings = query(PREFIXES + "SELECT ?x WHERE { ?x ex:knows ?y }");
+        canonicalizer.expand(mappings);
+        assertEquals(List.of(EX + "a", EX + "a", EX + "c", EX + "c", EX + "z", EX + "z"), sorted(mappings, "?x"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "SELECT ?x WHERE { ?x a ex:Person } LIMIT 1",
+            "SELECT ?x WHERE { ?x a ex:Person } OFFSET 1",
+            "SELECT ?x WHERE { ?x a ex:Person } ORDER BY ?x",
+            "SELECT (COUNT(?x) AS ?n) WHERE { ?x a ex:Person }",
+            "SELECT ?x (COUNT(?y) AS ?n) WHERE { ?x ex:knows ?y } GROUP BY ?x"})
+    void resultsWithModifiersOrAggregatesAreNotExpandable(String select) throws Exception {
+        assertFalse(SameAsCanonicalizer.isExpandable(query(select)));
+    }
+
+    private Mappings query(String query) throws Exception {
+        return QueryProcess.create(graph).query(query.startsWith("PREFIX") ? query : PREFIXES + query);
+    }
+
+    private Mappings query(ASTQuery ast) throws Exception {
+        return QueryProcess.create(graph).query(ast);
+    }
+
+    private boolean ask(String query) throws Exception {
+        return !query(query).isEmpty();
+    }
+
+    private static Set<String> values(Mappings mappings, String variable) {
+        return new TreeSet<>(labels(mappings, variable));
+    }
+
+    private static List<String> sorted(Mappings mappings, String variable) {
+        List<String> values = labels(mappings, variable);
+        values.sort(null);
+        return values;
+    }
+
+    private static List<String> labels(Mappings mappings, String variable) {
+        List<String> values = new ArrayList<>();
+        for (Mapping mapping : mappings) {
+            values.add(mapping.getNode(variable).getLabel());
+        }
+        return values;
+    }
+}